@@ -0,0 +1,14 @@
+package com.GitRemake;
+
+/**
+ * An abbreviated object name that more than one object starts with. The message lists the
+ * candidates; it stays an IllegalArgumentException so callers that only report the message need
+ * not tell it apart from other bad names.
+ */
+public class AmbiguousObjectException extends IllegalArgumentException {
+  private static final long serialVersionUID = 1L;
+
+  public AmbiguousObjectException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,202 @@
+package com.GitRemake;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CommandAdd {
+  // a file that needs hashing, with the mode and stat data it will be staged with
+  private static class PendingFile {
+    final String path;
+    final int mode;
+    final GitFileStat stat;
+
+    PendingFile(String path, int mode, GitFileStat stat) {
+      this.path = path;
+      this.mode = mode;
+      this.stat = stat;
+    }
+
+    GitIndexEntry toEntry(ObjectId id) {
+      return new GitIndexEntry(path, id, mode, stat);
+    }
+  }
+
+  /**
+   * Stages files, and everything below directories, under index.lock. A file whose stat data still
+   * matches its index entry is skipped without being read; the rest are hashed and written through
+   * {@link HashObjectPipeline}. Tracked files that are gone from a named directory, or that are
+   * named directly, are removed from the index, like git add does.
+   *
+   * <p>Untracked files that are ignored are left out of named directories, and ignored directories
+   * are not walked at all. Naming an ignored file is an error unless force is set.
+   */
+  public static void add(GitRepository repo, List<String> names, boolean force)
+      throws IOException {
+    Path root = Paths.get(repo.getWorkTree()).toAbsolutePath().normalize();
+    try (GitLockFile lock = GitIndex.lock(repo)) {
+      GitIndex index = GitIndex.read(repo);
+      GitIgnore ignore = force ? null : GitIgnore.load(repo);
+      List<String> paths = new ArrayList<>();
+
+      for (String name : names) {
+        String path = repo.worktreePath(name);
+        Path file = root.resolve(path);
+        boolean isDir = Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS);
+        if (!path.isEmpty() && isIgnored(index, ignore, path, isDir)) {
+          throw new IllegalArgumentException(
+              "The following paths are ignored by one of your .gitignore files: "
+                  + name
+                  + " (use -f to add them anyway)");
+        }
+        if (isDir) {
+          collectFiles(root, file, index, ignore, paths);
+          removeDeleted(root, index, path.isEmpty() ? "" : path + "/");
+        } else if (Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+          paths.add(path);
+        } else if (!index.remove(path)) {
+          throw new IllegalArgumentException("pathspec '" + name + "' did not match any files");
+        }
+      }
+
+      stage(repo, index, root, paths);
+      if (index.isChanged()) {
+        index.write(lock);
+      }
+    }
+  }
+
+  private static void stage(GitRepository repo, GitIndex index, Path root, List<String> paths)
+      throws IOException {
+    boolean trustFileMode = !"false".equalsIgnoreCase(repo.getConfig("core", "filemode"));
+    List<PendingFile> symlinks = new ArrayList<>();
+    List<PendingFile> files = new ArrayList<>();
+
+    for (String path : paths) {
+      Path file = root.resolve(path);
+      // stat before reading, so a write racing with us shows up as a change next time
+      GitFileStat stat = GitFileStat.of(file);
+      GitIndexEntry entry = index.getEntry(path);
+      int mode = GitIndexEntry.modeFor(stat, trustFileMode, entry);
+      if (entry != null && entry.getMode() == mode && stat.matches(entry.getStat())) {
+        continue;
+      }
+      PendingFile staged = new PendingFile(path, mode, stat);
+      if (stat.isSymLink()) {
+        symlinks.add(staged);
+      } else {
+        files.add(staged);
+      }
+    }
+
+    int workers = Runtime.getRuntime().availableProcessors();
+    List<ObjectId> ids = new ArrayList<>(files.size());
+    try (HashObjectPipeline pipeline =
+        new HashObjectPipeline(repo, "blob", workers, (path, id) -> ids.add(id))) {
+      for (PendingFile staged : files) {
+        pipeline.add(root.resolve(staged.path));
+      }
+      pipeline.finish();
+    }
+    // the pipeline reports ids in the order the files were added
+    for (int i = 0; i < files.size(); i++) {
+      index.add(files.get(i).toEntry(ids.get(i)));
+    }
+
+    // a symlink is stored as a blob holding its target
+    for (PendingFile staged : symlinks) {
+      Path target = Files.readSymbolicLink(root.resolve(staged.path));
+      byte[] content = target.toString().getBytes(StandardCharsets.UTF_8);
+      index.add(staged.toEntry(GitObjectUtil.objectWrite(repo, new GitBlob(content))));
+    }
+  }
+
+  /**
+   * Every file and symlink below dir, skipping .git and nested repositories. Without force, ignored
+   * directories with nothing tracked in them are not entered, and ignored untracked files are left
+   * out.
+   *
+   * @param ignore the ignore rules, or null to add everything
+   */
+  private static void collectFiles(
+      Path root, Path dir, GitIndex index, GitIgnore ignore, List<String> paths)
+      throws IOException {
+    Files.walkFileTree(
+        dir,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) {
+            if (path.getFileName().toString().equals(".git")
+                || (!path.equals(root) && Files.exists(path.resolve(".git")))) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            String relative = relativePath(root, path);
+            if (!relative.isEmpty() && isIgnored(index, ignore, relative, true)) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+            if (attrs.isRegularFile() || attrs.isSymbolicLink()) {
+              String relative = relativePath(root, path);
+              if (!isIgnored(index, ignore, relative, false)) {
+                paths.add(relative);
+              }
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  private static String relativePath(Path root, Path path) {
+    return root.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+  }
+
+  // tracked paths, and directories with tracked files below them, are never ignored
+  private static boolean isIgnored(GitIndex index, GitIgnore ignore, String path, boolean isDir) {
+    if (ignore == null) {
+      return false;
+    }
+    String prefix = isDir ? path + "/" : path;
+    int position = index.findPosition(prefix, 0);
+    if (position < 0) {
+      position = -position - 1;
+    }
+    if (position < index.size()) {
+      String next = index.getPath(position);
+      if (isDir ? next.startsWith(prefix) : next.equals(path)) {
+        return false;
+      }
+    }
+    GitIgnore.Rule rule = ignore.matchWithParents(path, isDir);
+    return rule != null && !rule.isNegated();
+  }
+
+  // drops the entries below prefix whose files no longer exist
+  private static void removeDeleted(Path root, GitIndex index, String prefix) {
+    List<String> deleted = new ArrayList<>();
+    int position = index.findPosition(prefix, 0);
+    for (int i = position < 0 ? -position - 1 : position; i < index.size(); i++) {
+      String path = index.getPath(i);
+      if (!path.startsWith(prefix)) {
+        break;
+      }
+      if (!Files.exists(root.resolve(path), LinkOption.NOFOLLOW_LINKS)) {
+        deleted.add(path);
+      }
+    }
+    for (String path : deleted) {
+      index.remove(path);
+    }
+  }
+}
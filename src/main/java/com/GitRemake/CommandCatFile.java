@@ -0,0 +1,82 @@
+package com.GitRemake;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Inflater;
+
+public class CommandCatFile {
+  /**
+   * Answers object names read from in, one per line, until the input ends. Every object gets a
+   * "<sha> <type> <size>" line, followed by its contents and a newline when contents is set; names
+   * that do not resolve get "<name> missing" or "<name> ambiguous" instead.
+   *
+   * <p>The whole session shares one repository, so pack mappings and the id index are set up once,
+   * and one Inflater is reused for every object. Without contents only the object headers are
+   * read; with them each object is streamed to out rather than loaded, so the object cache is not
+   * involved. Output is flushed only when no further input is waiting, so a piped list of names is
+   * answered in large writes while a caller feeding names one at a time sees each answer at once.
+   */
+  public static void batch(GitRepository repo, InputStream in, OutputStream out, boolean contents)
+      throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    Inflater inflater = GitZlib.getInflater();
+    try {
+      String name;
+      while ((name = reader.readLine()) != null) {
+        writeObject(repo, name, out, contents, inflater);
+        if (!reader.ready()) {
+          out.flush();
+        }
+      }
+    } finally {
+      GitZlib.release(inflater);
+      out.flush();
+    }
+  }
+
+  private static void writeObject(
+      GitRepository repo, String name, OutputStream out, boolean contents, Inflater inflater)
+      throws IOException {
+    ObjectId sha;
+    try {
+      sha = GitObjectUtil.objectFind(repo, name, null);
+    } catch (AmbiguousObjectException e) {
+      writeLine(out, name + " ambiguous");
+      return;
+    } catch (IllegalArgumentException e) {
+      // a bad or out-of-range @{...} selector names nothing, as far as git is concerned
+      writeLine(out, name + " missing");
+      return;
+    }
+
+    if (!contents) {
+      // the header is all batch-check needs
+      ObjectInfo info = sha == null ? null : GitObjectUtil.objectInfo(repo, sha);
+      if (info == null) {
+        writeLine(out, name + " missing");
+      } else {
+        writeLine(out, sha + " " + info.type + " " + info.size);
+      }
+      return;
+    }
+
+    try (ObjectStream object = sha == null ? null : GitObjectUtil.objectOpen(repo, sha, inflater)) {
+      if (object == null) {
+        writeLine(out, name + " missing");
+        return;
+      }
+      writeLine(out, sha + " " + object.getType() + " " + object.getSize());
+      object.transferTo(out);
+      out.write('\n');
+    }
+  }
+
+  private static void writeLine(OutputStream out, String line) throws IOException {
+    out.write(line.getBytes(StandardCharsets.UTF_8));
+    out.write('\n');
+  }
+}
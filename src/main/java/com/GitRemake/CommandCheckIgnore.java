@@ -0,0 +1,118 @@
+package com.GitRemake;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+public class CommandCheckIgnore {
+  private final GitRepository repo;
+  private final Path root;
+  private final GitIgnore ignore;
+  // null when tracked paths are checked like any other
+  private final GitIndex index;
+  private final boolean verbose;
+  private final boolean nonMatching;
+
+  private CommandCheckIgnore(
+      GitRepository repo, boolean verbose, boolean nonMatching, boolean noIndex)
+      throws IOException {
+    this.repo = repo;
+    this.root = Paths.get(repo.getWorkTree()).toAbsolutePath().normalize();
+    this.ignore = GitIgnore.load(repo);
+    this.index = noIndex ? null : GitIndex.read(repo);
+    this.verbose = verbose;
+    this.nonMatching = nonMatching;
+  }
+
+  /**
+   * Prints the names that are ignored, or with verbose the rule that decides each one. Tracked
+   * files are never ignored, so they are skipped unless noIndex is set.
+   *
+   * @param nonMatching with verbose, also print names that no rule matches
+   * @return whether any name matched
+   */
+  public static boolean checkIgnore(
+      GitRepository repo,
+      List<String> names,
+      boolean verbose,
+      boolean nonMatching,
+      boolean noIndex,
+      PrintWriter out)
+      throws IOException {
+    CommandCheckIgnore checker = new CommandCheckIgnore(repo, verbose, nonMatching, noIndex);
+    boolean matched = false;
+    for (String name : names) {
+      matched |= checker.check(name, out);
+    }
+    return matched;
+  }
+
+  /**
+   * Like {@link #checkIgnore(GitRepository, List, boolean, boolean, boolean, PrintWriter)}, with
+   * one name per line of in. The rules are compiled once for the whole stream, and output is
+   * flushed whenever the input has nothing more buffered, so a caller feeding one name at a time
+   * gets each answer straight away.
+   */
+  public static boolean checkIgnore(
+      GitRepository repo,
+      BufferedReader in,
+      boolean verbose,
+      boolean nonMatching,
+      boolean noIndex,
+      PrintWriter out)
+      throws IOException {
+    CommandCheckIgnore checker = new CommandCheckIgnore(repo, verbose, nonMatching, noIndex);
+    boolean matched = false;
+    String name;
+    while ((name = in.readLine()) != null) {
+      if (name.isEmpty()) {
+        continue;
+      }
+      matched |= checker.check(name, out);
+      if (!in.ready()) {
+        out.flush();
+      }
+    }
+    return matched;
+  }
+
+  private boolean check(String name, PrintWriter out) {
+    String path = repo.worktreePath(name);
+    if (path.isEmpty()) {
+      throw new IllegalArgumentException("'" + name + "' is the work tree itself");
+    }
+    if (index != null && isTracked(path)) {
+      return false;
+    }
+    boolean isDir =
+        name.endsWith("/") || Files.isDirectory(root.resolve(path), LinkOption.NOFOLLOW_LINKS);
+    GitIgnore.Rule rule = ignore.matchWithParents(path, isDir);
+    // a re-including rule only counts when asked to show rules
+    if (rule != null && rule.isNegated() && !verbose) {
+      rule = null;
+    }
+
+    if (verbose && rule != null) {
+      out.println(rule.getSource() + ":" + rule.getLine() + ":" + rule.getPattern() + "\t" + name);
+    } else if (verbose && nonMatching) {
+      out.println("::\t" + name);
+    } else if (rule != null) {
+      out.println(name);
+    }
+    return rule != null;
+  }
+
+  // whether the path has an entry at any stage
+  private boolean isTracked(String path) {
+    int position = index.findPosition(path, 0);
+    if (position < 0) {
+      position = -position - 1;
+    }
+    return position < index.size() && index.getPath(position).equals(path);
+  }
+}
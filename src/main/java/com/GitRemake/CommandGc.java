@@ -0,0 +1,336 @@
+package com.GitRemake;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class CommandGc {
+  // objects bigger than this are stored whole, indexing them for deltas costs too much memory
+  private static final long BIG_FILE_THRESHOLD = 64L * 1024 * 1024;
+
+  private static class ObjectToPack {
+    final ObjectId sha;
+    final String type;
+    final int nameHash;
+    long size;
+    int depth;
+
+    ObjectToPack(ObjectId sha, String type, int nameHash) {
+      this.sha = sha;
+      this.type = type;
+      this.nameHash = nameHash;
+    }
+  }
+
+  private static class PendingObject {
+    final ObjectId sha;
+    final String path;
+    // a parent commit, which a shallow or partial clone may legitimately not have
+    final boolean parent;
+
+    PendingObject(ObjectId sha, String path) {
+      this(sha, path, false);
+    }
+
+    PendingObject(ObjectId sha, String path, boolean parent) {
+      this.sha = sha;
+      this.path = path;
+      this.parent = parent;
+    }
+  }
+
+  private static class WindowEntry {
+    final ObjectToPack object;
+    final GitDelta.DeltaIndex index;
+
+    WindowEntry(ObjectToPack object, GitDelta.DeltaIndex index) {
+      this.object = object;
+      this.index = index;
+    }
+  }
+
+  /**
+   * Packs every object reachable from the refs and HEAD into a single new pack, then removes the
+   * old packs and the loose copies of anything that was packed. Unreachable loose objects are left
+   * alone; unreachable objects that only lived in an old pack are dropped, like "git repack -a -d".
+   *
+   * @param window how many previous objects of the same type are tried as delta bases
+   * @param depth the longest delta chain allowed
+   */
+  public static void repack(GitRepository repo, int window, int depth) throws IOException {
+    Map<ObjectId, ObjectToPack> objects = collectReachable(repo);
+    if (objects.isEmpty()) {
+      System.out.println("Nothing to pack");
+      return;
+    }
+    System.out.println("Counting objects: " + objects.size());
+
+    // group similar objects together so the window sees good delta candidates: same type, then
+    // same path name, then biggest first so deltas mostly remove data instead of adding it
+    List<ObjectToPack> sorted = new ArrayList<>(objects.values());
+    sorted.sort(
+        Comparator.comparingInt((ObjectToPack o) -> typeOrder(o.type))
+            .thenComparingInt(o -> o.nameHash)
+            .thenComparing(Comparator.comparingLong((ObjectToPack o) -> o.size).reversed()));
+
+    Path packDir = Paths.get(repo.repoDir(true, "objects", "pack"));
+    List<GitPackFile> oldPacks = repo.getPacks();
+    int deltas = 0;
+    Path packPath;
+    int level = repo.getPackCompression();
+
+    try (GitPackWriter writer = new GitPackWriter(packDir, sorted.size(), level)) {
+      Deque<WindowEntry> recent = new ArrayDeque<>();
+
+      for (ObjectToPack object : sorted) {
+        byte[] content;
+        try (ObjectStream in = GitObjectUtil.objectOpen(repo, object.sha)) {
+          content = in.readContent();
+        }
+
+        byte[] bestDelta = null;
+        WindowEntry bestBase = null;
+        for (WindowEntry candidate : recent) {
+          if (!candidate.object.type.equals(object.type) || candidate.object.depth >= depth) {
+            continue;
+          }
+          // a delta is only worth it when it is well under the size of the whole object
+          int maxSize = bestDelta == null ? content.length / 2 - 20 : bestDelta.length - 1;
+          if (maxSize <= 0) {
+            break;
+          }
+          byte[] delta = GitDelta.create(candidate.index, content, maxSize);
+          if (delta != null) {
+            bestDelta = delta;
+            bestBase = candidate;
+          }
+        }
+
+        // the sort order puts every base ahead of its deltas, so OFS_DELTA can point backwards
+        if (bestDelta != null) {
+          object.depth = bestBase.object.depth + 1;
+          writer.writeDelta(object.sha, bestBase.object.sha, bestDelta);
+          deltas++;
+        } else {
+          writer.writeWhole(object.sha, typeCode(object.type), content);
+        }
+
+        if (window > 0 && content.length < BIG_FILE_THRESHOLD) {
+          recent.addFirst(new WindowEntry(object, new GitDelta.DeltaIndex(content)));
+          if (recent.size() > window) {
+            recent.removeLast();
+          }
+        }
+      }
+
+      packPath = writer.finish();
+    }
+    System.out.println("Delta compressed " + deltas + " objects");
+
+    // everything reachable now lives in the new pack so the old ones can go
+    for (GitPackFile old : oldPacks) {
+      if (old.getPackPath().equals(packPath)) {
+        continue;
+      }
+      String base = old.getPackPath().toString();
+      base = base.substring(0, base.length() - ".pack".length());
+      Files.deleteIfExists(Paths.get(base + ".idx"));
+      Files.deleteIfExists(old.getPackPath());
+    }
+    repo.invalidatePacks();
+
+    int pruned = pruneLoose(repo, objects.keySet());
+    System.out.println("Wrote " + packPath.getFileName() + ", pruned " + pruned + " loose objects");
+
+    // like git gc, refresh the commit-graph while we are at it
+    int commits = GitCommitGraph.write(repo);
+    if (commits >= 0) {
+      System.out.println("Wrote commit-graph with " + commits + " commits");
+    }
+  }
+
+  /**
+   * Walks from every ref and HEAD, remembering the path each tree and blob was first seen at. Like
+   * git, the old and new id of every reflog entry and every staged blob count as roots too, so
+   * ref@{n} and what was added but not committed survive a gc. A parent commit that is missing
+   * ends the walk there, as it does in a shallow clone.
+   */
+  private static Map<ObjectId, ObjectToPack> collectReachable(GitRepository repo)
+      throws IOException {
+    Set<ObjectId> tips = new HashSet<>();
+    collectRefShas(GitRefUtil.refList(repo, null), tips);
+    ObjectId head = GitRefUtil.refResolve(repo, "HEAD");
+    if (head != null) {
+      tips.add(head);
+    }
+    for (String name : GitReflog.names(repo)) {
+      for (GitReflog.Entry entry : GitReflog.read(repo, name)) {
+        addRoot(repo, entry.getOldId(), tips);
+        addRoot(repo, entry.getNewId(), tips);
+      }
+    }
+    for (GitIndexEntry entry : GitIndex.read(repo).getEntries()) {
+      // a submodule's commit lives in the submodule's own repository
+      if (entry.getMode() != GitIndexEntry.MODE_GITLINK) {
+        addRoot(repo, entry.getSha(), tips);
+      }
+    }
+
+    Map<ObjectId, ObjectToPack> objects = new LinkedHashMap<>();
+    // an explicit stack instead of recursion so long histories cannot overflow
+    Deque<PendingObject> pending = new ArrayDeque<>();
+    for (ObjectId tip : tips) {
+      pending.push(new PendingObject(tip, ""));
+    }
+
+    while (!pending.isEmpty()) {
+      PendingObject next = pending.pop();
+      ObjectId sha = next.sha;
+      String path = next.path;
+      if (objects.containsKey(sha)) {
+        continue;
+      }
+
+      ObjectInfo info = GitObjectUtil.objectInfo(repo, sha);
+      if (info == null && next.parent) {
+        // the history was cut off here, the walk ends like it does at a root commit
+        continue;
+      }
+      if (info == null) {
+        throw new IOException("Missing object " + sha + " while walking " + path);
+      }
+      String type = info.type;
+      long size = info.size;
+
+      // blobs are only needed for their size here, which the header already gave us
+      GitObject object = null;
+      CommitInfo commit = null;
+      if (!type.equals("blob")) {
+        try (ObjectStream in = GitObjectUtil.objectOpen(repo, sha)) {
+          if (type.equals("commit")) {
+            commit = GitCommit.parseInfo(sha, in.readContent());
+          } else {
+            object = GitObjectUtil.createObject(type, in.readContent());
+          }
+        }
+      }
+
+      ObjectToPack toPack = new ObjectToPack(sha, type, nameHash(path));
+      toPack.size = size;
+      objects.put(sha, toPack);
+
+      if (commit != null) {
+        for (ObjectId parent : commit.parents) {
+          pending.push(new PendingObject(parent, "", true));
+        }
+        pending.push(new PendingObject(commit.tree, ""));
+      } else if (object instanceof GitTree) {
+        for (GitTreeEntry entry : ((GitTree) object).getEntries()) {
+          // submodule commits live in another repository
+          if (entry.isTree() || entry.isFile() || entry.isSymLink()) {
+            pending.push(new PendingObject(entry.getSha(), entry.getPath()));
+          }
+        }
+      } else if (object instanceof GitTag) {
+        pending.push(new PendingObject(((GitTag) object).getObject(), ""));
+      }
+    }
+    return objects;
+  }
+
+  // a reflog or index id, unless it is the zero id of a creation or already gone
+  private static void addRoot(GitRepository repo, ObjectId id, Set<ObjectId> roots) {
+    if (!id.equals(ObjectId.zeroId()) && GitObjectUtil.objectExists(repo, id)) {
+      roots.add(id);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static void collectRefShas(Map<String, Object> refs, Set<ObjectId> shas) {
+    for (Object value : refs.values()) {
+      if (value instanceof Map) {
+        collectRefShas((Map<String, Object>) value, shas);
+      } else if (value instanceof ObjectId) {
+        shas.add((ObjectId) value);
+      }
+    }
+  }
+
+  // deletes the loose copy of every object that is now in the pack
+  private static int pruneLoose(GitRepository repo, Set<ObjectId> packed) {
+    File objectsDir = new File(repo.repoDir(false, "objects"));
+    File[] fanout = objectsDir.listFiles((dir, name) -> name.matches("[0-9a-f]{2}"));
+    if (fanout == null) {
+      return 0;
+    }
+
+    int pruned = 0;
+    for (File dir : fanout) {
+      File[] files = dir.listFiles();
+      if (files == null) {
+        continue;
+      }
+      for (File file : files) {
+        String name = dir.getName() + file.getName();
+        if (ObjectId.isId(name) && packed.contains(ObjectId.fromString(name)) && file.delete()) {
+          pruned++;
+        }
+      }
+      // only succeeds when the directory is now empty
+      dir.delete();
+    }
+    return pruned;
+  }
+
+  // git's pack name hash: mostly the last characters of the name, so "*.c" files cluster
+  private static int nameHash(String path) {
+    int hash = 0;
+    for (int i = 0; i < path.length(); i++) {
+      char c = path.charAt(i);
+      if (Character.isWhitespace(c)) {
+        continue;
+      }
+      hash = (hash >>> 2) + (c << 24);
+    }
+    return hash;
+  }
+
+  private static int typeOrder(String type) {
+    switch (type) {
+      case "commit":
+        return 0;
+      case "tag":
+        return 1;
+      case "tree":
+        return 2;
+      default:
+        return 3;
+    }
+  }
+
+  static int typeCode(String type) {
+    switch (type) {
+      case "commit":
+        return GitPackFile.OBJ_COMMIT;
+      case "tree":
+        return GitPackFile.OBJ_TREE;
+      case "blob":
+        return GitPackFile.OBJ_BLOB;
+      case "tag":
+        return GitPackFile.OBJ_TAG;
+      default:
+        throw new IllegalArgumentException("Unknown object type: " + type);
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package com.GitRemake;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+public class CommandMergeBase {
+  /**
+   * Whether ancestor can be reached from descendant by following parents. When the commit-graph
+   * covers the ancestor, any commit whose generation is not above the ancestor's cannot lead to it,
+   * so the walk stops there instead of running down to the root commits.
+   */
+  public static boolean isAncestor(GitRepository repo, ObjectId ancestor, ObjectId descendant) {
+    if (ancestor.equals(descendant)) {
+      return true;
+    }
+    CommitInfo target = GitObjectUtil.commitInfo(repo, ancestor);
+    if (target == null) {
+      throw new IllegalArgumentException("Error: commit not found: " + ancestor);
+    }
+
+    Set<ObjectId> seen = new HashSet<>();
+    Deque<ObjectId> pending = new ArrayDeque<>();
+    pending.push(descendant);
+    seen.add(descendant);
+
+    while (!pending.isEmpty()) {
+      CommitInfo commit = GitObjectUtil.commitInfo(repo, pending.pop());
+      if (commit == null) {
+        throw new IllegalArgumentException("Error: commit not found while walking history");
+      }
+      // commits outside the graph have an infinite generation and are always walked
+      if (target.generation != CommitInfo.GENERATION_INFINITY
+          && commit.generation <= target.generation) {
+        continue;
+      }
+      for (ObjectId parent : commit.parents) {
+        if (parent.equals(ancestor)) {
+          return true;
+        }
+        if (seen.add(parent)) {
+          pending.push(parent);
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,97 @@
+package com.GitRemake;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+public class CommandPackRefs {
+  private CommandPackRefs() {}
+
+  /**
+   * Moves loose refs into packed-refs, as git pack-refs does. Tags are always packed, and branches
+   * and everything else under refs/ only with all, since those move often and a loose ref is
+   * cheaper to update. Refs that are already packed stay packed, and each annotated tag gets the
+   * object it peels to recorded next to it. In a reftable repository this merges the whole stack
+   * into one table instead.
+   *
+   * @param prune whether to delete the loose files once their refs are packed
+   * @return the number of loose refs packed
+   */
+  public static int packRefs(GitRepository repo, boolean all, boolean prune) throws IOException {
+    if (repo.usesReftable()) {
+      // there are no loose refs, packing merges the tables into one
+      repo.getReftableStack().compact();
+      return 0;
+    }
+    SortedMap<String, ObjectId> loose =
+        GitRefUtil.listLooseRefs(repo, all ? "refs/" : "refs/tags/");
+
+    try (GitLockFile lock = new GitLockFile(GitPackedRefs.path(repo))) {
+      // read under the lock, so no other writer can change it in between
+      GitPackedRefs packed = GitPackedRefs.read(GitPackedRefs.path(repo));
+      SortedMap<String, ObjectId> refs = new TreeMap<>();
+      for (String name : packed.names("")) {
+        refs.put(name, packed.find(name));
+      }
+      refs.putAll(loose);
+
+      Map<String, ObjectId> peeled = new HashMap<>();
+      for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+        String name = ref.getKey();
+        ObjectId target;
+        if (!loose.containsKey(name) && packed.isPeelKnown(name)) {
+          target = packed.findPeeled(name);
+        } else {
+          target = GitRefUtil.refPeel(repo, name, ref.getValue());
+        }
+        if (target != null) {
+          peeled.put(name, target);
+        }
+      }
+
+      GitPackedRefs.write(lock, refs, peeled);
+      lock.commit();
+    } finally {
+      repo.invalidatePackedRefs();
+    }
+
+    if (prune) {
+      for (Map.Entry<String, ObjectId> ref : loose.entrySet()) {
+        pruneLoose(repo, ref.getKey(), ref.getValue());
+      }
+    }
+    return loose.size();
+  }
+
+  /**
+   * Deletes a loose ref that now lives in packed-refs. Like git, it takes the ref's lock first, so
+   * an update that renames a new value into place cannot slip in between the check and the delete;
+   * a ref that is locked or no longer holds the packed value is left alone.
+   */
+  private static void pruneLoose(GitRepository repo, String name, ObjectId id) throws IOException {
+    Path file = Paths.get(repo.getGitDir(), name);
+    GitLockFile lock;
+    try {
+      lock = new GitLockFile(file);
+    } catch (IOException e) {
+      // someone is updating it, and the value they write wins over the packed one
+      return;
+    }
+    try (lock) {
+      if (!id.name().equals(GitRefUtil.readLoose(repo, name))) {
+        return;
+      }
+      Files.delete(file);
+    } catch (NoSuchFileException e) {
+      return;
+    }
+    // once the lock is gone too
+    GitRefTransaction.removeEmptyParents(repo, file);
+  }
+}
@@ -0,0 +1,134 @@
+package com.GitRemake;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CommandRm {
+  /**
+   * Removes paths from the index and, unless cached, from the work tree, under index.lock. Every
+   * name is checked before anything is removed. A file whose content no longer matches its entry
+   * is only removed with force, so uncommitted work is not lost; the stat data answers that for
+   * untouched files without reading them.
+   *
+   * @param recursive whether a directory name removes everything below it
+   */
+  public static void rm(
+      GitRepository repo,
+      List<String> names,
+      boolean cached,
+      boolean recursive,
+      boolean force,
+      PrintWriter out)
+      throws IOException {
+    Path root = Paths.get(repo.getWorkTree()).toAbsolutePath().normalize();
+    try (GitLockFile lock = GitIndex.lock(repo)) {
+      GitIndex index = GitIndex.read(repo);
+      List<String> paths = new ArrayList<>();
+
+      for (String name : names) {
+        String path = repo.worktreePath(name);
+        List<String> matched = matchPaths(index, path);
+        if (matched.isEmpty()) {
+          throw new IllegalArgumentException("pathspec '" + name + "' did not match any files");
+        }
+        if (!recursive && !(matched.size() == 1 && matched.get(0).equals(path))) {
+          throw new IllegalArgumentException(
+              "not removing '" + name + "' recursively without -r");
+        }
+        paths.addAll(matched);
+      }
+
+      if (!cached && !force) {
+        for (String path : paths) {
+          checkUnmodified(index, root, path);
+        }
+      }
+
+      for (String path : paths) {
+        index.remove(path);
+        out.println("rm '" + path + "'");
+        if (!cached) {
+          Path file = root.resolve(path);
+          Files.deleteIfExists(file);
+          removeEmptyParents(root, file.getParent());
+        }
+      }
+      index.write(lock);
+    }
+  }
+
+  // the path itself if it is staged, otherwise every staged path below it
+  private static List<String> matchPaths(GitIndex index, String path) {
+    List<String> matched = new ArrayList<>();
+    String prefix = path.isEmpty() ? "" : path + "/";
+    int position = index.findPosition(path, 0);
+    int start = position < 0 ? -position - 1 : position;
+    for (int i = start; i < index.size(); i++) {
+      String candidate = index.getPath(i);
+      if (candidate.equals(path)) {
+        // one name per path, whatever stages it has
+        if (matched.isEmpty()) {
+          matched.add(candidate);
+        }
+        continue;
+      }
+      if (!candidate.startsWith(prefix)) {
+        // "a-b" sorts between "a" and "a/", keep looking past paths that only share the start
+        if (GitIndex.comparePaths(candidate, prefix) > 0) {
+          break;
+        }
+        continue;
+      }
+      if (matched.isEmpty() || !matched.get(matched.size() - 1).equals(candidate)) {
+        matched.add(candidate);
+      }
+    }
+    return matched;
+  }
+
+  private static void checkUnmodified(GitIndex index, Path root, String path) throws IOException {
+    GitIndexEntry entry = index.getEntry(path);
+    Path file = root.resolve(path);
+    if (entry == null || !Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+      return;
+    }
+    if (entry.getStat().matches(GitFileStat.of(file))) {
+      return;
+    }
+    ObjectId current;
+    if (Files.isSymbolicLink(file)) {
+      byte[] target = Files.readSymbolicLink(file).toString().getBytes(StandardCharsets.UTF_8);
+      current = GitObjectUtil.objectWrite(null, new GitBlob(target));
+    } else {
+      // hashed without being stored
+      current = GitObjectUtil.objectWrite(null, "blob", file);
+    }
+    if (!current.equals(entry.getSha())) {
+      throw new IllegalStateException(
+          "'"
+              + path
+              + "' has local modifications (use --cached to keep the file, or -f to force"
+              + " removal)");
+    }
+  }
+
+  // deletes directories left empty, up to but not including the work tree
+  private static void removeEmptyParents(Path root, Path dir) throws IOException {
+    while (dir != null && !dir.equals(root) && dir.startsWith(root)) {
+      try {
+        Files.deleteIfExists(dir);
+      } catch (DirectoryNotEmptyException e) {
+        return;
+      }
+      dir = dir.getParent();
+    }
+  }
+}
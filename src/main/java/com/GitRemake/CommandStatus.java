@@ -0,0 +1,666 @@
+package com.GitRemake;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class CommandStatus {
+  // a path's place in the HEAD tree
+  private static class TreeFile {
+    final int mode;
+    final ObjectId sha;
+
+    TreeFile(int mode, ObjectId sha) {
+      this.mode = mode;
+      this.sha = sha;
+    }
+  }
+
+  // stat data to record for an entry whose file was hashed and found unchanged
+  private static class Refresh {
+    final int position;
+    final GitFileStat stat;
+
+    Refresh(int position, GitFileStat stat) {
+      this.position = position;
+      this.stat = stat;
+    }
+  }
+
+  /**
+   * Compares the work tree against the index, and the index against HEAD.
+   *
+   * <p>A file is only read when its stat data no longer matches its index entry, or when the entry
+   * is racily clean, so once the index is fresh a status costs one lstat per tracked file. Files
+   * that were hashed and turned out unchanged get their stat data written back to the index when
+   * index.lock can be taken, so the next run does not hash them again. Directories are scanned in
+   * parallel, one fork/join task each. With core.untrackedCache set, directories whose stat data
+   * is unchanged are not read again, see {@link GitUntrackedCache}.
+   *
+   * @param shortFormat whether to print "XY path" lines instead of the long format
+   */
+  public static void status(GitRepository repo, boolean shortFormat, PrintWriter out)
+      throws IOException {
+    GitIndex index = GitIndex.read(repo);
+    CommandStatus status = new CommandStatus(repo, index);
+    status.compareHead();
+    status.scanWorkTree();
+    status.refreshIndex();
+    if (shortFormat) {
+      status.printShort(out);
+    } else {
+      status.printLong(out);
+    }
+  }
+
+  private final GitRepository repo;
+  private final GitIndex index;
+  private final Path root;
+  private final GitIgnore ignore;
+  private final boolean trustFileMode;
+  private final List<GitIndexEntry> entries;
+  // the first entry of each path
+  private final Map<String, Integer> positions;
+  // every directory with a tracked file below it, "" for the top
+  private final Set<String> trackedDirs = new HashSet<>();
+  // the positions of the tracked files directly in each directory, by the directory's prefix
+  private final Map<String, List<Integer>> filesByDir = new HashMap<>();
+  // the names of the tracked directories directly in each directory, by the directory's prefix
+  private final Map<String, List<String>> dirsByDir = new HashMap<>();
+  // entries whose path turned up in the work tree; each is set by the one task that owns the path
+  private final boolean[] seen;
+  private final Map<String, Character> staged = new TreeMap<>(GitIndex::comparePaths);
+  private final Map<String, String> unmerged = new TreeMap<>(GitIndex::comparePaths);
+  private final Map<String, Character> unstaged = new ConcurrentHashMap<>();
+  private final Set<String> untracked = ConcurrentHashMap.newKeySet();
+  private final ConcurrentLinkedQueue<Refresh> refreshes = new ConcurrentLinkedQueue<>();
+  private int scanStartSeconds;
+  // null when core.untrackedCache leaves the cache off
+  private GitUntrackedCache untrackedCache;
+  // whether the untracked cache needs writing back to the index
+  private volatile boolean untrackedChanged;
+
+  private CommandStatus(GitRepository repo, GitIndex index) throws IOException {
+    this.repo = repo;
+    this.index = index;
+    this.root = Paths.get(repo.getWorkTree()).toAbsolutePath().normalize();
+    this.ignore = GitIgnore.load(repo);
+    this.trustFileMode = !"false".equalsIgnoreCase(repo.getConfig("core", "filemode"));
+    // decoded once up front, the scan tasks only read them
+    this.entries = new ArrayList<>(index.getEntries());
+    this.positions = new HashMap<>(entries.size() * 2);
+    this.seen = new boolean[entries.size()];
+    trackedDirs.add("");
+    for (int i = 0; i < entries.size(); i++) {
+      String path = entries.get(i).getPath();
+      if (positions.putIfAbsent(path, i) != null) {
+        continue;
+      }
+      int slash = path.lastIndexOf('/');
+      filesByDir.computeIfAbsent(path.substring(0, slash + 1), k -> new ArrayList<>()).add(i);
+      for (; slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+        String dir = path.substring(0, slash);
+        if (!trackedDirs.add(dir)) {
+          break;
+        }
+        int parent = dir.lastIndexOf('/');
+        dirsByDir
+            .computeIfAbsent(dir.substring(0, parent + 1), k -> new ArrayList<>())
+            .add(dir.substring(parent + 1));
+      }
+    }
+    setUpUntrackedCache();
+  }
+
+  // HEAD against the index, without touching the work tree
+  private void compareHead() {
+    Map<String, TreeFile> head = readHeadTree();
+    for (int i = 0; i < entries.size(); i++) {
+      GitIndexEntry entry = entries.get(i);
+      String path = entry.getPath();
+      if (entry.getStage() != 0) {
+        unmerged.merge(path, String.valueOf(entry.getStage()), String::concat);
+        head.remove(path);
+        continue;
+      }
+      TreeFile file = head.remove(path);
+      if (file == null) {
+        if (!entry.isIntentToAdd()) {
+          staged.put(path, 'A');
+        }
+      } else if (isSymLink(file.mode) != isSymLink(entry.getMode())) {
+        staged.put(path, 'T');
+      } else if (file.mode != entry.getMode() || !file.sha.equals(entry.getSha())) {
+        staged.put(path, 'M');
+      }
+    }
+    for (String path : head.keySet()) {
+      staged.put(path, 'D');
+    }
+  }
+
+  // every file in HEAD's tree by path, empty on an unborn branch
+  private Map<String, TreeFile> readHeadTree() {
+    Map<String, TreeFile> files = new HashMap<>();
+    ObjectId tree = GitObjectUtil.objectFind(repo, "HEAD", "tree");
+    if (tree == null) {
+      return files;
+    }
+    Deque<Map.Entry<String, ObjectId>> pending = new ArrayDeque<>();
+    pending.push(Map.entry("", tree));
+    while (!pending.isEmpty()) {
+      Map.Entry<String, ObjectId> next = pending.pop();
+      GitTree object = (GitTree) GitObjectUtil.objectRead(repo, next.getValue());
+      for (GitTreeEntry entry : object.getEntries()) {
+        String path = next.getKey() + entry.getPath();
+        if (entry.isTree()) {
+          pending.push(Map.entry(path + "/", entry.getSha()));
+        } else {
+          int mode = Integer.parseInt(new String(entry.getMode(), StandardCharsets.US_ASCII), 8);
+          files.put(path, new TreeFile(mode, entry.getSha()));
+        }
+      }
+    }
+    return files;
+  }
+
+  // the index against the work tree
+  private void scanWorkTree() throws IOException {
+    scanStartSeconds = (int) (System.currentTimeMillis() / 1000);
+    GitUntrackedCache.Directory top = untrackedCache == null ? null : untrackedCache.getRoot();
+    ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    try {
+      pool.invoke(new ScanDirectory(root, "", false, top));
+    } catch (UncheckedIOException e) {
+      throw new RuntimeException("Error scanning the work tree", e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+
+    for (int i = 0; i < entries.size(); i++) {
+      GitIndexEntry entry = entries.get(i);
+      if (!seen[i] && entry.getStage() == 0 && !entry.isSkipWorktree()) {
+        unstaged.put(entry.getPath(), 'D');
+      }
+    }
+  }
+
+  /**
+   * Picks the untracked cache to use, following core.untrackedCache: true keeps or creates one,
+   * false removes it, and unset keeps one that is already there.
+   */
+  private void setUpUntrackedCache() throws IOException {
+    String setting = repo.getConfig("core", "untrackedCache");
+    GitUntrackedCache cache = index.getUntrackedCache();
+    if ("false".equalsIgnoreCase(setting)) {
+      if (cache != null) {
+        index.setUntrackedCache(null);
+        untrackedChanged = true;
+      }
+      return;
+    }
+    if (cache == null && !"true".equalsIgnoreCase(setting)) {
+      return;
+    }
+    if (cache == null
+        || !cache.validate(repo, GitIgnore.infoExclude(repo), GitIgnore.excludesFile(repo))) {
+      cache = GitUntrackedCache.create(repo);
+      cache.validate(repo, GitIgnore.infoExclude(repo), GitIgnore.excludesFile(repo));
+      index.setUntrackedCache(cache);
+      untrackedChanged = true;
+    }
+    untrackedChanged |= cache.isChanged();
+    untrackedCache = cache;
+  }
+
+  /**
+   * One directory of the work tree; its subdirectories are scanned by tasks of their own. Only
+   * directories with tracked files below them are entered. Any other directory is either ignored,
+   * and pruned without being read, or shown as a whole if it holds a file that is not ignored.
+   *
+   * <p>With an untracked cache, a directory whose stat data and .gitignore are unchanged is not
+   * read at all: its untracked list comes from the cache and its tracked files from the index.
+   */
+  private class ScanDirectory extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Path dir;
+    // relative path with a trailing slash, "" for the top
+    private final String prefix;
+    // whether the directory itself is ignored, which ignores every untracked file below it
+    private final boolean ignored;
+    // the directory's untracked cache entry, null without a cache
+    private final GitUntrackedCache.Directory cached;
+    private final List<ScanDirectory> subdirs = new ArrayList<>();
+
+    ScanDirectory(Path dir, String prefix, boolean ignored, GitUntrackedCache.Directory cached) {
+      this.dir = dir;
+      this.prefix = prefix;
+      this.ignored = ignored;
+      this.cached = cached;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        if (cached != null && isCacheUsable(dir, cached, false)) {
+          scanCached();
+        } else {
+          scan();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      invokeAll(subdirs);
+    }
+
+    private void scan() throws IOException {
+      try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+        for (Path child : children) {
+          String name = child.getFileName().toString();
+          String path = prefix + name;
+          if (name.equals(".git")) {
+            continue;
+          }
+          if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+            Integer position = positions.get(path);
+            if (position != null && entries.get(position).getMode() == GitIndexEntry.MODE_GITLINK) {
+              // a submodule, whose content is not ours to compare
+              seen[position] = true;
+            } else if (trackedDirs.contains(path)) {
+              enterTracked(child, name);
+            } else if (!ignored && !ignore.isIgnored(path, true) && hasFiles(child, name)) {
+              // git shows a directory with nothing tracked in it as a whole
+              addUntracked(name + "/");
+            }
+            continue;
+          }
+          Integer position = positions.get(path);
+          if (position == null) {
+            if (!ignored && !ignore.isIgnored(path, false)) {
+              addUntracked(name);
+            }
+          } else {
+            compareFile(child, position);
+          }
+        }
+      }
+    }
+
+    // the directory is unchanged: only its tracked files and subdirectories need a look
+    private void scanCached() throws IOException {
+      for (String name : cached.getUntracked()) {
+        // an untracked directory is checked again below, something deep inside may have gone
+        String dirName = name.endsWith("/") ? name.substring(0, name.length() - 1) : null;
+        if (dirName == null || cached.getDirectory(dirName) == null) {
+          untracked.add(prefix + name);
+        }
+      }
+      for (int position : filesByDir.getOrDefault(prefix, List.of())) {
+        GitIndexEntry entry = entries.get(position);
+        Path file = root.resolve(entry.getPath());
+        if (entry.getMode() != GitIndexEntry.MODE_GITLINK) {
+          compareFile(file, position);
+        } else if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+          seen[position] = true;
+        }
+      }
+
+      Set<String> names = new TreeSet<>(dirsByDir.getOrDefault(prefix, List.of()));
+      for (GitUntrackedCache.Directory child : cached.getDirectories()) {
+        names.add(child.getName());
+      }
+      for (String name : names) {
+        String path = prefix + name;
+        Path child = dir.resolve(name);
+        if (!Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+          continue;
+        }
+        if (trackedDirs.contains(path)) {
+          enterTracked(child, name);
+        } else {
+          boolean found = hasFiles(child, name);
+          if (found) {
+            untracked.add(path + "/");
+          }
+          if (found != cached.getUntracked().contains(name + "/")) {
+            cached.setUntracked(name + "/", found);
+            untrackedChanged = true;
+          }
+        }
+      }
+    }
+
+    private void enterTracked(Path child, String name) {
+      String path = prefix + name;
+      boolean dirIgnored = ignored || ignore.isIgnored(path, true);
+      GitUntrackedCache.Directory entry = cached == null ? null : cached.enter(name);
+      subdirs.add(new ScanDirectory(child, path + "/", dirIgnored, entry));
+    }
+
+    private void addUntracked(String name) {
+      untracked.add(prefix + name);
+      if (cached != null) {
+        cached.addUntracked(name);
+      }
+    }
+
+    /**
+     * Whether a subdirectory holds a file that is not ignored anywhere below it. Like git, the
+     * search stops at the first one, and the cache remembers the way to it.
+     */
+    private boolean hasFiles(Path child, String name) throws IOException {
+      GitUntrackedCache.Directory entry = cached == null ? null : cached.enter(name);
+      return CommandStatus.this.hasFiles(child, prefix + name + "/", entry);
+    }
+  }
+
+  private void compareFile(Path file, int position) throws IOException {
+    GitIndexEntry entry = entries.get(position);
+    String path = entry.getPath();
+    for (int i = position; i < entries.size() && entries.get(i).getPath().equals(path); i++) {
+      seen[i] = true;
+    }
+    if (entry.getStage() != 0 || entry.isAssumeValid() || entry.isSkipWorktree()) {
+      return;
+    }
+    if (entry.isIntentToAdd()) {
+      unstaged.put(path, 'A');
+      return;
+    }
+
+    GitFileStat stat;
+    try {
+      stat = GitFileStat.of(file);
+    } catch (NoSuchFileException e) {
+      // removed since the directory was listed
+      unstaged.put(path, 'D');
+      return;
+    }
+    int mode = GitIndexEntry.modeFor(stat, trustFileMode, entry);
+    if (isSymLink(mode) != isSymLink(entry.getMode())) {
+      unstaged.put(path, 'T');
+      return;
+    }
+    if (mode != entry.getMode()) {
+      unstaged.put(path, 'M');
+      return;
+    }
+    if (stat.matches(entry.getStat()) && !index.isRacilyClean(entry)) {
+      return;
+    }
+    // a size of 0 says nothing, git zeroes it to mark racily clean entries
+    if (stat.getSize() != entry.getStat().getSize() && entry.getStat().getSize() != 0) {
+      unstaged.put(path, 'M');
+      return;
+    }
+
+    ObjectId current;
+    if (stat.isSymLink()) {
+      byte[] target = Files.readSymbolicLink(file).toString().getBytes(StandardCharsets.UTF_8);
+      current = GitObjectUtil.objectWrite(null, new GitBlob(target));
+    } else {
+      current = GitObjectUtil.objectWrite(null, "blob", file);
+    }
+    if (!current.equals(entry.getSha())) {
+      unstaged.put(path, 'M');
+    } else if (Integer.compareUnsigned(stat.getMtimeSeconds(), scanStartSeconds) < 0) {
+      // a file changed within the current second could still be racily clean in the new index
+      refreshes.add(new Refresh(position, stat));
+    }
+  }
+
+  private boolean hasFiles(Path dir, String prefix, GitUntrackedCache.Directory cached)
+      throws IOException {
+    if (cached != null && isCacheUsable(dir, cached, true)) {
+      // still true while the file it found is there, which it is as the directory is unchanged
+      for (String name : cached.getUntracked()) {
+        if (!name.endsWith("/")) {
+          return true;
+        }
+      }
+      // otherwise the answer depends on the subdirectories, checked again the same way
+      boolean found = false;
+      boolean stale = false;
+      for (GitUntrackedCache.Directory child : cached.getDirectories()) {
+        String name = child.getName();
+        boolean childFound = hasFiles(dir.resolve(name), prefix + name + "/", child);
+        found |= childFound;
+        stale |= childFound != cached.getUntracked().contains(name + "/");
+        if (found) {
+          break;
+        }
+      }
+      if (!stale) {
+        return found;
+      }
+      cached.reset(GitFileStat.of(dir), true, cached.getExcludeId());
+      untrackedChanged = true;
+    }
+
+    try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+      for (Path child : children) {
+        String name = child.getFileName().toString();
+        String path = prefix + name;
+        boolean isDir = Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+        if (ignore.isIgnored(path, isDir)) {
+          continue;
+        }
+        if (!isDir) {
+          if (cached != null) {
+            cached.addUntracked(name);
+          }
+          return true;
+        }
+        GitUntrackedCache.Directory entry = cached == null ? null : cached.enter(name);
+        if (hasFiles(child, path + "/", entry)) {
+          if (cached != null) {
+            cached.addUntracked(name + "/");
+          }
+          return true;
+        }
+      }
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+    return false;
+  }
+
+  /**
+   * Whether a directory's cache entry can stand in for reading it. A changed .gitignore throws
+   * away everything cached below the directory. An entry that cannot be used is reset to the
+   * directory's current stat data and rules, ready for the read that follows.
+   */
+  private boolean isCacheUsable(Path dir, GitUntrackedCache.Directory cached, boolean checkOnly)
+      throws IOException {
+    GitFileStat stat;
+    try {
+      stat = GitFileStat.of(dir);
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+    boolean usable = cached.isUsable(stat, checkOnly, index);
+    // a .gitignore cannot appear in a directory whose stat data did not change
+    ObjectId excludeId =
+        usable && cached.getExcludeId() == null
+            ? null
+            : GitIgnore.hashFile(dir.resolve(".gitignore"));
+    if (!Objects.equals(excludeId, cached.getExcludeId())) {
+      cached.invalidateAll();
+      usable = false;
+    }
+    if (!usable) {
+      cached.reset(stat, checkOnly, excludeId);
+      untrackedChanged = true;
+    }
+    return usable;
+  }
+
+  /**
+   * Writes back the stat data of files that were hashed and found unchanged, and the untracked
+   * cache if the scan changed it. This is only an optimization, so it gives up quietly if another
+   * process holds index.lock or has rewritten the index since it was read.
+   */
+  private void refreshIndex() throws IOException {
+    if (refreshes.isEmpty() && !untrackedChanged) {
+      return;
+    }
+    GitLockFile lock;
+    try {
+      lock = GitIndex.lock(repo);
+    } catch (IOException e) {
+      return;
+    }
+    try (lock) {
+      if (!index.isUnchangedOnDisk(repo)) {
+        return;
+      }
+      for (Refresh refresh : refreshes) {
+        index.refreshStat(refresh.position, refresh.stat);
+      }
+      index.write(lock);
+    }
+  }
+
+  private void printShort(PrintWriter out) {
+    Map<String, String> lines = new TreeMap<>(GitIndex::comparePaths);
+    for (Map.Entry<String, String> entry : unmerged.entrySet()) {
+      lines.put(entry.getKey(), unmergedCode(entry.getValue()));
+    }
+    for (Map.Entry<String, Character> entry : staged.entrySet()) {
+      lines.put(entry.getKey(), entry.getValue() + " ");
+    }
+    for (Map.Entry<String, Character> entry : unstaged.entrySet()) {
+      String code = lines.getOrDefault(entry.getKey(), "  ");
+      lines.put(entry.getKey(), code.charAt(0) + String.valueOf(entry.getValue()));
+    }
+    for (Map.Entry<String, String> entry : lines.entrySet()) {
+      out.println(entry.getValue() + " " + entry.getKey());
+    }
+    for (String path : sorted(untracked)) {
+      out.println("?? " + path);
+    }
+  }
+
+  private void printLong(PrintWriter out) throws IOException {
+    String head = GitRefUtil.refRead(repo, "HEAD");
+    if (head.startsWith("ref: refs/heads/")) {
+      out.println("On branch " + head.substring("ref: refs/heads/".length()));
+    } else {
+      ObjectId detached = ObjectId.fromString(head);
+      out.println("HEAD detached at " + GitObjectUtil.abbreviate(repo, detached, 7));
+    }
+    if (GitObjectUtil.objectFind(repo, "HEAD", "commit") == null) {
+      out.println();
+      out.println("No commits yet");
+      out.println();
+    }
+
+    if (!staged.isEmpty()) {
+      out.println("Changes to be committed:");
+      for (Map.Entry<String, Character> entry : staged.entrySet()) {
+        out.println("\t" + String.format("%-12s", label(entry.getValue())) + entry.getKey());
+      }
+      out.println();
+    }
+    if (!unmerged.isEmpty()) {
+      out.println("Unmerged paths:");
+      for (Map.Entry<String, String> entry : unmerged.entrySet()) {
+        String label = unmergedLabel(unmergedCode(entry.getValue()));
+        out.println("\t" + String.format("%-17s", label) + entry.getKey());
+      }
+      out.println();
+    }
+    if (!unstaged.isEmpty()) {
+      out.println("Changes not staged for commit:");
+      for (String path : sorted(unstaged.keySet())) {
+        out.println("\t" + String.format("%-12s", label(unstaged.get(path))) + path);
+      }
+      out.println();
+    }
+    if (!untracked.isEmpty()) {
+      out.println("Untracked files:");
+      for (String path : sorted(untracked)) {
+        out.println("\t" + path);
+      }
+      out.println();
+    }
+
+    if (!staged.isEmpty() || !unmerged.isEmpty()) {
+      return;
+    }
+    if (!unstaged.isEmpty()) {
+      out.println("no changes added to commit");
+    } else if (!untracked.isEmpty()) {
+      out.println("nothing added to commit but untracked files present");
+    } else {
+      out.println("nothing to commit, working tree clean");
+    }
+  }
+
+  private static List<String> sorted(Set<String> paths) {
+    List<String> list = new ArrayList<>(paths);
+    list.sort(GitIndex::comparePaths);
+    return list;
+  }
+
+  private static boolean isSymLink(int mode) {
+    return mode == GitIndexEntry.MODE_SYMLINK;
+  }
+
+  private static String label(char code) {
+    return switch (code) {
+      case 'A' -> "new file:";
+      case 'D' -> "deleted:";
+      case 'T' -> "typechange:";
+      default -> "modified:";
+    };
+  }
+
+  // the short format code for the stages a conflicted path has, e.g. "123" for both modified
+  private static String unmergedCode(String stages) {
+    return switch (stages) {
+      case "1" -> "DD";
+      case "2" -> "AU";
+      case "3" -> "UA";
+      case "12" -> "UD";
+      case "13" -> "DU";
+      case "23" -> "AA";
+      default -> "UU";
+    };
+  }
+
+  private static String unmergedLabel(String code) {
+    return switch (code) {
+      case "DD" -> "both deleted:";
+      case "AU" -> "added by us:";
+      case "UA" -> "added by them:";
+      case "UD" -> "deleted by them:";
+      case "DU" -> "deleted by us:";
+      case "AA" -> "both added:";
+      default -> "both modified:";
+    };
+  }
+}
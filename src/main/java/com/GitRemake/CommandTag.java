@@ -29,7 +29,7 @@ public class CommandTag {
   public static void createTag(
       GitRepository repo, String name, String targetObj, boolean createAnnotated, String message)
       throws IOException {
-    String sha = GitObjectUtil.objectFind(repo, name, null);
+    ObjectId sha = GitObjectUtil.objectFind(repo, name, null);
 
     if (sha == null) {
       throw new IOException("Object not found: " + name);
@@ -63,7 +63,7 @@ public class CommandTag {
       tag.setMessage(message);
 
       // write the tag object
-      String tagSha = GitObjectUtil.objectWrite(repo, tag);
+      ObjectId tagSha = GitObjectUtil.objectWrite(repo, tag);
 
       GitRefUtil.refCreate(repo, "tags/" + name, tagSha);
 
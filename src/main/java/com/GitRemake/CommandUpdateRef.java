@@ -0,0 +1,102 @@
+package com.GitRemake;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+public class CommandUpdateRef {
+  private CommandUpdateRef() {}
+
+  /**
+   * Sets one ref, or with a null newValue deletes it, checking its old value first if one is
+   * given. Values are any object names objectFind resolves; all zeros means "does not exist".
+   *
+   * @param message what the reflog entry says
+   */
+  public static void updateRef(
+      GitRepository repo, String name, String newValue, String oldValue, String message)
+      throws IOException {
+    GitRefTransaction transaction = new GitRefTransaction(repo).setMessage(message);
+    ObjectId newId = newValue == null ? ObjectId.zeroId() : resolve(repo, newValue);
+    ObjectId oldId = oldValue == null ? null : resolve(repo, oldValue);
+    queue(transaction, newId, name, oldId);
+    transaction.commit();
+  }
+
+  /**
+   * Reads commands from in, one per line, and applies them as one transaction: either every ref
+   * changes or none does.
+   *
+   * <pre>
+   *   update REF NEW [OLD]
+   *   create REF NEW
+   *   delete REF [OLD]
+   *   verify REF [OLD]
+   * </pre>
+   *
+   * @param packed write the new values into packed-refs in one rewrite instead of loose files
+   * @param message what the reflog entries say
+   * @return the number of commands applied
+   */
+  public static int updateRefs(
+      GitRepository repo, BufferedReader in, boolean packed, String message) throws IOException {
+    GitRefTransaction transaction =
+        new GitRefTransaction(repo).setPacked(packed).setMessage(message);
+    int count = 0;
+    String line;
+    while ((line = in.readLine()) != null) {
+      if (line.isBlank()) {
+        continue;
+      }
+      String[] words = line.trim().split(" +");
+      String command = words[0];
+      int arguments = words.length - 1;
+      boolean valid =
+          switch (command) {
+            case "update" -> arguments == 2 || arguments == 3;
+            case "create" -> arguments == 2;
+            case "delete", "verify" -> arguments == 1 || arguments == 2;
+            default -> false;
+          };
+      if (!valid) {
+        throw new IllegalArgumentException("Bad update-ref command: " + line);
+      }
+
+      String name = words[1];
+      switch (command) {
+        case "update" -> {
+          ObjectId oldId = arguments == 3 ? resolve(repo, words[3]) : null;
+          queue(transaction, resolve(repo, words[2]), name, oldId);
+        }
+        case "create" -> transaction.create(name, resolve(repo, words[2]));
+        case "delete" -> transaction.delete(name, arguments == 2 ? resolve(repo, words[2]) : null);
+        default ->
+            // a verify without a value checks that the ref does not exist
+            transaction.verify(name, arguments == 2 ? resolve(repo, words[2]) : ObjectId.zeroId());
+      }
+      count++;
+    }
+    transaction.commit();
+    return count;
+  }
+
+  // an update to the zero id deletes the ref
+  private static void queue(
+      GitRefTransaction transaction, ObjectId newId, String name, ObjectId oldId) {
+    if (newId.equals(ObjectId.zeroId())) {
+      transaction.delete(name, oldId);
+    } else {
+      transaction.update(name, newId, oldId);
+    }
+  }
+
+  private static ObjectId resolve(GitRepository repo, String value) {
+    if (ObjectId.isId(value)) {
+      return ObjectId.fromString(value);
+    }
+    ObjectId id = GitObjectUtil.objectFind(repo, value, null);
+    if (id == null) {
+      throw new IllegalArgumentException("Not a valid object name: " + value);
+    }
+    return id;
+  }
+}
@@ -0,0 +1,28 @@
+package com.GitRemake;
+
+import java.util.List;
+
+// the parts of a commit a history walk needs, without the author or message
+public class CommitInfo {
+  // generation of a commit the commit-graph does not cover, it could be anywhere in history
+  public static final int GENERATION_INFINITY = Integer.MAX_VALUE;
+
+  public final ObjectId id;
+  public final ObjectId tree;
+  public final List<ObjectId> parents;
+  public final long commitTime;
+  public final int generation;
+
+  public CommitInfo(ObjectId id, ObjectId tree, List<ObjectId> parents, long commitTime) {
+    this(id, tree, parents, commitTime, GENERATION_INFINITY);
+  }
+
+  public CommitInfo(
+      ObjectId id, ObjectId tree, List<ObjectId> parents, long commitTime, int generation) {
+    this.id = id;
+    this.tree = tree;
+    this.parents = parents;
+    this.commitTime = commitTime;
+    this.generation = generation;
+  }
+}
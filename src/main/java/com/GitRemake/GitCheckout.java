@@ -5,21 +5,73 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks a tree out into an empty directory. The tree is walked first and every directory is
+ * created on the way, then the files are written, either in this thread or, for big trees, by a
+ * fixed pool of workers. Each file is independent once its directory exists, so the workers never
+ * coordinate and the disk sees as many writes in flight as there are workers.
+ *
+ * <p>The pool size comes from checkout.workers (below 1 means one per core) and the pool is only
+ * used once the tree has checkout.thresholdForParallelism files, the same settings git reads.
+ */
 public class GitCheckout {
-  public static void checkout(GitRepository repo, String commitOrTreeSha, String path)
+  // below this many files starting threads costs more than it saves
+  private static final int DEFAULT_PARALLEL_THRESHOLD = 100;
+
+  private static class PendingTree {
+    final ObjectId sha;
+    final Path path;
+
+    PendingTree(ObjectId sha, Path path) {
+      this.sha = sha;
+      this.path = path;
+    }
+  }
+
+  private static class FileJob {
+    final GitTreeEntry entry;
+    final Path path;
+
+    FileJob(GitTreeEntry entry, Path path) {
+      this.entry = entry;
+      this.path = path;
+    }
+  }
+
+  public static void checkout(GitRepository repo, String commitOrTree, String path)
+      throws IOException {
+    checkout(repo, commitOrTree, path, repo.getConfigInt("checkout", "workers", 1));
+  }
+
+  /**
+   * @param workers how many threads write files, below 1 means one per core
+   * @throws IOException listing every path that could not be written
+   */
+  public static void checkout(GitRepository repo, String commitOrTree, String path, int workers)
       throws IOException {
-    GitObject obj = GitObjectUtil.objectRead(repo, commitOrTreeSha);
+    ObjectId sha = GitObjectUtil.objectFind(repo, commitOrTree, null);
+    if (sha == null) {
+      throw new IllegalArgumentException("Unknown commit or tree: " + commitOrTree);
+    }
+    GitObject obj = GitObjectUtil.objectRead(repo, sha);
 
     if (obj instanceof GitCommit) {
       GitCommit commit = (GitCommit) obj;
-      String treeSha = commit.getTree();
-      obj = GitObjectUtil.objectRead(repo, treeSha);
+      sha = commit.getTree();
+      obj = GitObjectUtil.objectRead(repo, sha);
     }
 
     if (!(obj instanceof GitTree)) {
-      throw new IllegalArgumentException("Not a tree object: " + commitOrTreeSha);
+      throw new IllegalArgumentException("Not a tree object: " + commitOrTree);
     }
 
     // Verify that the directory is empty
@@ -31,7 +83,7 @@ public class GitCheckout {
 
       // check the directory is empty
       String[] files = directory.list();
-      if (files.length > 0 && files != null) {
+      if (files != null && files.length > 0) {
         throw new IllegalArgumentException("Directory not empty: " + path);
       }
     } else {
@@ -40,57 +92,112 @@ public class GitCheckout {
         throw new IOException("Error creating directory: " + path);
       }
     }
-    treeCheckout(repo, (GitTree) obj, Paths.get(path).toAbsolutePath());
-  }
-
-  private static void treeCheckout(GitRepository repo, GitTree tree, Path absolutePath) {
-    List<GitTreeEntry> entries = tree.getEntries();
 
-    for (GitTreeEntry entry : entries) {
-      Path entryPath = absolutePath.resolve(entry.getPath());
+    List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    List<FileJob> jobs = createDirectories(repo, sha, Paths.get(path).toAbsolutePath(), errors);
 
-      try {
-        if (entry.isTree()) {
-          Files.createDirectories(entryPath);
+    if (workers < 1) {
+      workers = Runtime.getRuntime().availableProcessors();
+    }
+    int threshold =
+        repo.getConfigInt("checkout", "thresholdForParallelism", DEFAULT_PARALLEL_THRESHOLD);
+    if (workers == 1 || jobs.size() < threshold) {
+      for (FileJob job : jobs) {
+        writeEntry(repo, job, errors);
+      }
+    } else {
+      writeParallel(repo, jobs, workers, errors);
+    }
 
-          GitObject obj = GitObjectUtil.objectRead(repo, entry.getSha());
-          if (!(obj instanceof GitTree)) {
-            throw new IllegalArgumentException("Not a tree object: " + entry.getSha());
-          }
+    if (!errors.isEmpty()) {
+      Collections.sort(errors);
+      StringBuilder message = new StringBuilder();
+      message.append("Checkout failed for ").append(errors.size()).append(" paths:");
+      for (String error : errors) {
+        message.append("\n  ").append(error);
+      }
+      throw new IOException(message.toString());
+    }
+  }
 
-          treeCheckout(repo, (GitTree) obj, entryPath);
-          // blob then write the content
-        } else if (entry.isFile()) {
-          GitObject obj = GitObjectUtil.objectRead(repo, entry.getSha());
+  // walks every tree, creating its directory, and returns the files and symlinks to write
+  private static List<FileJob> createDirectories(
+      GitRepository repo, ObjectId rootTree, Path rootPath, List<String> errors) {
+    List<FileJob> jobs = new ArrayList<>();
+    Deque<PendingTree> pending = new ArrayDeque<>();
+    pending.push(new PendingTree(rootTree, rootPath));
+
+    while (!pending.isEmpty()) {
+      PendingTree next = pending.pop();
+      GitObject obj = GitObjectUtil.objectRead(repo, next.sha);
+      if (!(obj instanceof GitTree)) {
+        errors.add(next.path + ": not a tree object " + next.sha);
+        continue;
+      }
 
-          if (!(obj instanceof GitBlob)) {
-            throw new IllegalArgumentException("Not a blob object: " + entry.getSha());
+      for (GitTreeEntry entry : ((GitTree) obj).getEntries()) {
+        Path entryPath = next.path.resolve(entry.getPath());
+        if (entry.isTree()) {
+          try {
+            Files.createDirectories(entryPath);
+          } catch (IOException e) {
+            // nothing below a directory we could not create can be written either
+            errors.add(entryPath + ": cannot create directory: " + e);
+            continue;
           }
+          pending.push(new PendingTree(entry.getSha(), entryPath));
+        } else if (entry.isFile() || entry.isSymLink()) {
+          jobs.add(new FileJob(entry, entryPath));
+        }
+      }
+    }
+    return jobs;
+  }
 
-          GitBlob blob = (GitBlob) obj;
-          byte[] content = blob.getBlobData();
-
-          Files.createDirectories(entryPath.getParent());
-
-          Files.write(entryPath, content);
-        } else if (entry.isSymLink()) {
-          GitObject obj = GitObjectUtil.objectRead(repo, entry.getSha());
+  private static void writeParallel(
+      GitRepository repo, List<FileJob> jobs, int workers, List<String> errors)
+      throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    try {
+      for (FileJob job : jobs) {
+        pool.execute(() -> writeEntry(repo, job, errors));
+      }
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Checkout interrupted", e);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
 
-          if (!(obj instanceof GitBlob)) {
-            throw new IllegalArgumentException("Not a blob object for symlink: " + entry.getSha());
+  // writes one file or symlink, recording a failure against its path instead of throwing
+  private static void writeEntry(GitRepository repo, FileJob job, List<String> errors) {
+    GitTreeEntry entry = job.entry;
+    try {
+      if (entry.isFile()) {
+        // stream the blob straight into the file so large blobs never sit in memory
+        try (ObjectStream in = GitObjectUtil.objectOpen(repo, entry.getSha())) {
+          if (in == null) {
+            throw new IOException("Missing blob object " + entry.getSha());
           }
-
-          GitBlob blob = (GitBlob) obj;
-          String target = new String(blob.getBlobData());
-
-          Files.createDirectories(entryPath.getParent());
-
-          Files.createSymbolicLink(entryPath, Paths.get(target));
+          if (!in.getType().equals("blob")) {
+            throw new IllegalArgumentException("Not a blob object: " + entry.getSha());
+          }
+          Files.copy(in, job.path);
+        }
+      } else {
+        GitObject obj = GitObjectUtil.objectRead(repo, entry.getSha());
+        if (!(obj instanceof GitBlob)) {
+          throw new IllegalArgumentException("Not a blob object for symlink: " + entry.getSha());
         }
 
-      } catch (IOException e) {
-        System.err.println("Error creating directory: " + entryPath.toString());
+        String target = new String(((GitBlob) obj).getBlobData());
+        Files.createSymbolicLink(job.path, Paths.get(target));
       }
+    } catch (IOException | RuntimeException e) {
+      errors.add(job.path + ": " + e);
     }
   }
 }
@@ -4,12 +4,22 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * A commit parsed lazily over its raw bytes. Deserializing only keeps the buffer; the first header
+ * access records the offsets of each header line in one int array, and values are decoded only
+ * when asked for. A history walk that reads tree, parents and commit time never decodes the author
+ * or the message, and {@link #parseInfo} gets those three without even building the offsets.
+ */
 public class GitCommit extends GitObject {
-  private Map<String, Object> kvlm;
+  private byte[] raw;
+  // per header: start of the key, the space after it, the newline ending the value
+  private volatile int[] headerOffsets;
+  private int messageStart;
 
   public GitCommit(byte[] data) {
     super(data);
@@ -25,42 +35,47 @@ public class GitCommit extends GitObject {
    * @param message Commit message
    */
   public GitCommit(
-      String tree, List<String> parents, String author, String committer, String message) {
+      ObjectId tree, List<ObjectId> parents, String author, String committer, String message) {
     super(null);
 
-    kvlm.put("tree", tree.getBytes(StandardCharsets.UTF_8));
+    Map<String, Object> kvlm = new LinkedHashMap<>();
+    kvlm.put("tree", tree.name().getBytes(StandardCharsets.UTF_8));
 
     if (parents != null && !parents.isEmpty()) {
       if (parents.size() == 1) {
-        kvlm.put("parent", parents.get(0).getBytes(StandardCharsets.UTF_8));
+        kvlm.put("parent", parents.get(0).name().getBytes(StandardCharsets.UTF_8));
       } else {
         List<byte[]> parentByte = new ArrayList<>();
-        for (String parent : parents) {
-          parentByte.add(parent.getBytes(StandardCharsets.UTF_8));
+        for (ObjectId parent : parents) {
+          parentByte.add(parent.name().getBytes(StandardCharsets.UTF_8));
         }
         kvlm.put("parent", parentByte);
       }
     }
 
     kvlm.put("author", author.getBytes(StandardCharsets.UTF_8));
-    kvlm.put("commiter", committer.getBytes(StandardCharsets.UTF_8));
+    kvlm.put("committer", committer.getBytes(StandardCharsets.UTF_8));
 
     kvlm.put(null, message.getBytes(StandardCharsets.UTF_8));
+
+    raw = serializeKvlm(kvlm);
   }
 
+  // the stored bytes are returned as is, commits may be shared through the object cache
   @Override
   public byte[] serialize() {
-    return serializeKvlm(kvlm);
+    return raw;
   }
 
   @Override
   public void deserialize(byte[] data) {
-    kvlm = parseKvlm(data);
+    raw = data;
+    headerOffsets = null;
   }
 
   @Override
   public void init() {
-    kvlm = new LinkedHashMap<>();
+    raw = new byte[] {'\n'};
   }
 
   @Override
@@ -68,42 +83,176 @@ public class GitCommit extends GitObject {
     return "commit";
   }
 
-  public String getTree() {
-    byte[] treeValue = (byte[]) kvlm.get("tree");
-    if (treeValue == null) return null;
-    return new String(treeValue, StandardCharsets.UTF_8);
+  public ObjectId getTree() {
+    int[] offsets = headerOffsets();
+    int header = findHeader(offsets, "tree", 0);
+    if (header < 0) return null;
+    return ObjectId.fromHex(raw, offsets[header + 1] + 1);
   }
 
-  public List<String> getParent() {
-    Object parentValue = kvlm.get("parent");
-    List<String> result = new ArrayList<>();
-
-    if (parentValue instanceof List) {
-      @SuppressWarnings("unchecked")
-      List<byte[]> parentList = (List<byte[]>) parentValue;
-      for (byte[] parent : parentList) {
-        result.add(new String(parent, StandardCharsets.UTF_8));
-      }
-    } else {
-      result.add(new String((byte[]) parentValue, StandardCharsets.UTF_8));
+  public List<ObjectId> getParent() {
+    int[] offsets = headerOffsets();
+    List<ObjectId> result = new ArrayList<>(2);
+    // root commits have no parent at all
+    for (int header = findHeader(offsets, "parent", 0);
+        header >= 0;
+        header = findHeader(offsets, "parent", header + 3)) {
+      result.add(ObjectId.fromHex(raw, offsets[header + 1] + 1));
     }
     return result;
   }
 
   public String getAuthor() {
-    byte[] authorValue = (byte[]) kvlm.get("author");
-    if (authorValue == null) return null;
-    return new String(authorValue, StandardCharsets.UTF_8);
+    return getHeader("author");
+  }
+
+  public String getCommitter() {
+    return getHeader("committer");
+  }
+
+  // committer time in seconds since the epoch, 0 if the commit has no committer line
+  public long getCommitTime() {
+    int[] offsets = headerOffsets();
+    int header = findHeader(offsets, "committer", 0);
+    if (header < 0) return 0;
+    return parseIdentTime(raw, offsets[header + 1] + 1, offsets[header + 2]);
   }
 
   public String getMessage() {
-    byte[] message = (byte[]) kvlm.get(null);
-    if (message == null) return "";
-    return new String(message, StandardCharsets.UTF_8);
+    headerOffsets();
+    return new String(raw, messageStart, raw.length - messageStart, StandardCharsets.UTF_8);
+  }
+
+  // decodes the first value of a header, folding continuation lines, or null if it is missing
+  public String getHeader(String key) {
+    int[] offsets = headerOffsets();
+    int header = findHeader(offsets, key, 0);
+    if (header < 0) return null;
+    byte[] value = extractValue(raw, offsets[header + 1] + 1, offsets[header + 2]);
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  public CommitInfo getInfo(ObjectId id) {
+    return new CommitInfo(id, getTree(), getParent(), getCommitTime());
+  }
+
+  /**
+   * Fast path for history walks: pulls tree, parents and committer time straight out of the raw
+   * bytes, stopping at the committer line so the rest of the headers and the message are never
+   * looked at.
+   */
+  public static CommitInfo parseInfo(ObjectId id, byte[] raw) {
+    ObjectId tree = null;
+    List<ObjectId> parents = new ArrayList<>(2);
+    long commitTime = 0;
+
+    int position = 0;
+    while (position < raw.length && raw[position] != '\n') {
+      int lineEnd = findNextByte(raw, (byte) '\n', position);
+      if (lineEnd == -1) {
+        lineEnd = raw.length;
+      }
+      if (startsWith(raw, position, "tree ")) {
+        tree = ObjectId.fromHex(raw, position + 5);
+      } else if (startsWith(raw, position, "parent ")) {
+        parents.add(ObjectId.fromHex(raw, position + 7));
+      } else if (startsWith(raw, position, "committer ")) {
+        commitTime = parseIdentTime(raw, position + 10, lineEnd);
+        break;
+      }
+      position = lineEnd + 1;
+    }
+    return new CommitInfo(id, tree, parents, commitTime);
+  }
+
+  // the timestamp of an ident "Name <email> 1622541234 -0700" between start and end, 0 if the
+  // ident has no email to find it after, as git reads a malformed one
+  private static long parseIdentTime(byte[] raw, int start, int end) {
+    int pos = end - 1;
+    while (pos >= start && raw[pos] != '>') {
+      pos--;
+    }
+    if (pos < start) {
+      return 0;
+    }
+    pos += 2;
+    long time = 0;
+    while (pos < end && raw[pos] >= '0' && raw[pos] <= '9') {
+      time = time * 10 + (raw[pos++] - '0');
+    }
+    return time;
+  }
+
+  private static boolean startsWith(byte[] raw, int position, String prefix) {
+    if (position + prefix.length() > raw.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (raw[position + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // finds the next header with the given key starting from a position in the offsets array
+  private int findHeader(int[] offsets, String key, int from) {
+    for (int i = from; i < offsets.length; i += 3) {
+      int keyStart = offsets[i];
+      if (offsets[i + 1] - keyStart == key.length() && startsWith(raw, keyStart, key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // one scan over the header lines, done on first use; racing threads compute the same result
+  private int[] headerOffsets() {
+    int[] offsets = headerOffsets;
+    if (offsets != null) {
+      return offsets;
+    }
+
+    offsets = new int[3 * 6];
+    int count = 0;
+    int position = 0;
+
+    // headers end at the blank line before the message
+    while (position < raw.length && raw[position] != '\n') {
+      int spacePos = findNextByte(raw, (byte) ' ', position);
+      int endPos = findEndValue(raw, position);
+      if (spacePos == -1 || spacePos > endPos) {
+        break;
+      }
+
+      if (count == offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      offsets[count++] = position;
+      offsets[count++] = spacePos;
+      offsets[count++] = endPos;
+      position = endPos + 1;
+    }
+
+    messageStart = Math.min(position + 1, raw.length);
+    offsets = Arrays.copyOf(offsets, count);
+    headerOffsets = offsets;
+    return offsets;
+  }
+
+  // the newline that ends the value starting at position, skipping continuation lines
+  private static int findEndValue(byte[] raw, int position) {
+    int newLinePos = findNextByte(raw, (byte) '\n', position);
+    // check if theres a space behind the new line indicating that theres a continuation
+    while (newLinePos != -1 && newLinePos + 1 < raw.length && raw[newLinePos + 1] == (byte) ' ') {
+      newLinePos = findNextByte(raw, (byte) '\n', newLinePos + 1);
+    }
+    // if cant find any more \n then at the end of file
+    return newLinePos == -1 ? raw.length : newLinePos;
   }
 
   @SuppressWarnings("unchecked")
-  private byte[] serializeKvlm(Map<String, Object> kvlm) {
+  private static byte[] serializeKvlm(Map<String, Object> kvlm) {
     ByteArrayOutputStream output = new ByteArrayOutputStream();
     try {
       for (String key : kvlm.keySet()) {
@@ -155,43 +304,7 @@ public class GitCommit extends GitObject {
     }
   }
 
-  private Map<String, Object> parseKvlm(byte[] raw) {
-    Map<String, Object> result = new LinkedHashMap<>();
-    int position = 0;
-
-    while (position < raw.length) {
-      int spacePos = findNextByte(raw, (byte) ' ', position);
-
-      int newLinePos = findNextByte(raw, (byte) '\n', position);
-
-      // find out if we are at the end message because theres a blank line
-      if (spacePos > newLinePos || spacePos == -1) {
-        byte[] message = new byte[raw.length - (newLinePos + 1)];
-        System.arraycopy(raw, newLinePos + 1, message, 0, message.length);
-        result.put(null, message);
-        break;
-      }
-
-      // get the key (tree, parent, author, committer,...)
-      byte[] keyBytes = new byte[spacePos - position];
-      System.arraycopy(raw, position, keyBytes, 0, keyBytes.length);
-      String key = new String(keyBytes, StandardCharsets.UTF_8);
-
-      // Now we find the end position of the value part
-      int endPos = findEndValue(raw, newLinePos + 1);
-
-      // Extract and process the value(handling continuous lines)
-      byte[] valueBytes = extractValue(raw, spacePos + 1, endPos);
-
-      // add to map (multiple values per key)
-      addToMap(result, key, valueBytes);
-
-      position = endPos + 1;
-    }
-    return result;
-  }
-
-  private int findNextByte(byte[] raw, byte target, int position) {
+  private static int findNextByte(byte[] raw, byte target, int position) {
     for (int i = position; i < raw.length; i++) {
       if (raw[i] == target) {
         return i;
@@ -200,24 +313,7 @@ public class GitCommit extends GitObject {
     return -1;
   }
 
-  private int findEndValue(byte[] raw, int position) {
-    int newLinePos = findNextByte(raw, (byte) '\n', position);
-    // if cant find any more \n then at the end of file
-    if (newLinePos == -1) {
-      return raw.length;
-    }
-
-    // check if theres a space behind the new line indicating that theres a continuation
-    // also that the newlinePos isnt the last character
-    if (newLinePos + 1 < raw.length && raw[newLinePos + 1] == (byte) ' ') {
-      // keep looking for the end
-      return findEndValue(raw, newLinePos + 1);
-    } else {
-      return newLinePos;
-    }
-  }
-
-  private byte[] extractValue(byte[] raw, int start, int end) {
+  private static byte[] extractValue(byte[] raw, int start, int end) {
     if (end <= start) {
       return new byte[0];
     }
@@ -257,29 +353,4 @@ public class GitCommit extends GitObject {
 
     return output.toByteArray();
   }
-
-  private void addToMap(Map<String, Object> result, String key, byte[] valueBytes) {
-    // check if map already has that value
-    if (result.containsKey(key)) {
-      Object existingValues = result.get(key);
-
-      // check if value are a list or just byte[]
-      if (existingValues instanceof byte[]) {
-        // create a new list if dont
-        List<byte[]> values = new ArrayList<>();
-        values.add((byte[]) existingValues);
-        values.add(valueBytes);
-        result.put(key, values);
-      } else if (existingValues instanceof List) {
-        @SuppressWarnings("unchecked")
-        // just add to the list if yes
-        List<byte[]> values = (List<byte[]>) existingValues;
-        values.add(valueBytes);
-        result.put(key, values);
-      }
-    } else {
-      // doesnt contain the key
-      result.put(key, valueBytes);
-    }
-  }
 }
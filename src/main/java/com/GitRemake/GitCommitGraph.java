@@ -0,0 +1,388 @@
+package com.GitRemake;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The commit-graph file in objects/info/commit-graph, in the same format git writes. It holds the
+ * tree, parents, commit time and generation number of every commit it covers, so a history walk
+ * reads fixed-size records from a mapping instead of inflating and parsing commit objects.
+ *
+ * <p>Layout: "CGPH", version 1, hash version 1, chunk count, base graph count, then a table of
+ * (chunk id, offset) pairs ending in a zero id, the chunks and a SHA-1 of everything before it.
+ *
+ * <pre>
+ *   OIDF  256 fanout counts
+ *   OIDL  the sorted 20-byte commit ids
+ *   CDAT  per commit: tree id, first and second parent position, generation and commit time
+ *   EDGE  parent positions of octopus merges, the last one of each merge has its high bit set
+ * </pre>
+ *
+ * The generation of a commit is one more than the highest generation of its parents, so a commit
+ * can only reach commits with a lower generation than its own.
+ */
+public class GitCommitGraph {
+  private static final int SIGNATURE = 0x43475048; // "CGPH"
+  private static final int CHUNK_OID_FANOUT = 0x4f494446; // "OIDF"
+  private static final int CHUNK_OID_LOOKUP = 0x4f49444c; // "OIDL"
+  private static final int CHUNK_COMMIT_DATA = 0x43444154; // "CDAT"
+  private static final int CHUNK_EXTRA_EDGES = 0x45444745; // "EDGE"
+  private static final int HEADER_SIZE = 8;
+  private static final int COMMIT_DATA_SIZE = ObjectId.RAW_LENGTH + 16;
+
+  private static final int PARENT_NONE = 0x70000000;
+  // set on the second parent when it points into the EDGE chunk, and on the last edge of a merge
+  private static final int EDGE_FLAG = 0x80000000;
+  // generations are stored in the top 30 bits of a word
+  private static final int GENERATION_MAX = 0x3fffffff;
+
+  private final MappedByteBuffer data;
+  private final int commitCount;
+  private int fanoutOffset = -1;
+  private int lookupOffset = -1;
+  private int commitDataOffset = -1;
+  private int extraEdgesOffset = -1;
+
+  public GitCommitGraph(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("File too large to map: " + path);
+      }
+      data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (data.capacity() < HEADER_SIZE || data.getInt(0) != SIGNATURE) {
+      throw new IOException("Not a commit-graph file: " + path);
+    }
+    if (data.get(4) != 1 || data.get(5) != 1) {
+      throw new IOException("Unsupported commit-graph version: " + path);
+    }
+    // split graphs chain onto a base file, we only read a single self-contained file
+    if (data.get(7) != 0) {
+      throw new IOException("Split commit-graphs are not supported: " + path);
+    }
+
+    int chunkCount = data.get(6) & 0xff;
+    for (int i = 0; i < chunkCount; i++) {
+      int entry = HEADER_SIZE + i * 12;
+      int id = data.getInt(entry);
+      int offset = (int) data.getLong(entry + 4);
+      switch (id) {
+        case CHUNK_OID_FANOUT -> fanoutOffset = offset;
+        case CHUNK_OID_LOOKUP -> lookupOffset = offset;
+        case CHUNK_COMMIT_DATA -> commitDataOffset = offset;
+        case CHUNK_EXTRA_EDGES -> extraEdgesOffset = offset;
+        default -> {
+          // chunks written by newer versions of git, such as bloom filters, are skipped
+        }
+      }
+    }
+    if (fanoutOffset < 0 || lookupOffset < 0 || commitDataOffset < 0) {
+      throw new IOException("Commit-graph is missing a required chunk: " + path);
+    }
+    commitCount = data.getInt(fanoutOffset + 255 * 4);
+  }
+
+  public static Path graphPath(GitRepository repo) {
+    return Paths.get(repo.getGitDir(), "objects", "info", "commit-graph");
+  }
+
+  public int getCommitCount() {
+    return commitCount;
+  }
+
+  public ObjectId getId(int position) {
+    return ObjectId.fromRaw(data, lookupOffset + position * ObjectId.RAW_LENGTH);
+  }
+
+  // position of a commit in the graph, or -1 if the graph does not cover it
+  public int findPosition(ObjectId id) {
+    int first = id.getFirstByte();
+    int low = first == 0 ? 0 : data.getInt(fanoutOffset + (first - 1) * 4);
+    int high = data.getInt(fanoutOffset + first * 4) - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = id.compareTo(data, lookupOffset + mid * ObjectId.RAW_LENGTH);
+      if (cmp > 0) {
+        low = mid + 1;
+      } else if (cmp < 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  // the commit's record, or null if the graph does not cover it
+  public CommitInfo lookup(ObjectId id) {
+    int position = findPosition(id);
+    return position < 0 ? null : getInfo(position);
+  }
+
+  public CommitInfo getInfo(int position) {
+    int record = commitDataOffset + position * COMMIT_DATA_SIZE;
+    ObjectId tree = ObjectId.fromRaw(data, record);
+
+    List<ObjectId> parents = new ArrayList<>(2);
+    int firstParent = data.getInt(record + 20);
+    int secondParent = data.getInt(record + 24);
+    if (firstParent != PARENT_NONE) {
+      parents.add(getId(firstParent));
+    }
+    if (secondParent != PARENT_NONE) {
+      if ((secondParent & EDGE_FLAG) == 0) {
+        parents.add(getId(secondParent));
+      } else {
+        // an octopus merge lists every parent after the first in the EDGE chunk
+        int edge = extraEdgesOffset + (secondParent & ~EDGE_FLAG) * 4;
+        int parent;
+        do {
+          parent = data.getInt(edge);
+          parents.add(getId(parent & ~EDGE_FLAG));
+          edge += 4;
+        } while ((parent & EDGE_FLAG) == 0);
+      }
+    }
+
+    int high = data.getInt(record + 28);
+    long commitTime = ((long) (high & 3) << 32) | (data.getInt(record + 32) & 0xffffffffL);
+    int generation = high >>> 2;
+    // zero is what git writes when it did not compute generations
+    if (generation == 0) {
+      generation = CommitInfo.GENERATION_INFINITY;
+    }
+    return new CommitInfo(getId(position), tree, parents, commitTime, generation);
+  }
+
+  /**
+   * Writes a commit-graph covering every commit reachable from the refs and HEAD, replacing the
+   * existing file. Commits the old graph already covers are read from it rather than from their
+   * objects.
+   *
+   * <p>A commit the walk reaches but cannot read, such as the parents cut off in a shallow or
+   * partial clone, cannot be given a position, and leaving it out would turn its children into
+   * root commits for every reader. Like git, nothing is written then; the old graph, if any, stays
+   * and remains correct for the commits it covers.
+   *
+   * @return the number of commits written, or -1 if some reachable commit is missing
+   */
+  public static int write(GitRepository repo) throws IOException {
+    Map<ObjectId, CommitInfo> commits = new HashMap<>();
+    Deque<ObjectId> pending = new ArrayDeque<>(reachableTips(repo));
+    while (!pending.isEmpty()) {
+      ObjectId id = pending.pop();
+      if (commits.containsKey(id)) {
+        continue;
+      }
+      CommitInfo info = GitObjectUtil.commitInfo(repo, id);
+      if (info == null) {
+        System.err.println("Warning: not writing a commit-graph, commit " + id + " is missing");
+        return -1;
+      }
+      commits.put(id, info);
+      for (ObjectId parent : info.parents) {
+        pending.push(parent);
+      }
+    }
+
+    List<ObjectId> sorted = new ArrayList<>(commits.keySet());
+    Collections.sort(sorted);
+    Map<ObjectId, Integer> positions = new HashMap<>();
+    for (int i = 0; i < sorted.size(); i++) {
+      positions.put(sorted.get(i), i);
+    }
+    int[] generations = computeGenerations(sorted, commits, positions);
+
+    // octopus merges need their parents after the first in the EDGE chunk
+    int extraEdges = 0;
+    for (CommitInfo info : commits.values()) {
+      if (info.parents.size() > 2) {
+        extraEdges += info.parents.size() - 1;
+      }
+    }
+
+    int chunkCount = extraEdges > 0 ? 4 : 3;
+    long fanoutOffset = HEADER_SIZE + (chunkCount + 1) * 12L;
+    long lookupOffset = fanoutOffset + 256 * 4;
+    long commitDataOffset = lookupOffset + (long) sorted.size() * ObjectId.RAW_LENGTH;
+    long extraEdgesOffset = commitDataOffset + (long) sorted.size() * COMMIT_DATA_SIZE;
+    long endOffset = extraEdgesOffset + extraEdges * 4L;
+
+    Path path = graphPath(repo);
+    Files.createDirectories(path.getParent());
+    Path temp = Files.createTempFile(path.getParent(), "tmp_graph_", "");
+
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      try (DataOutputStream out =
+          new DataOutputStream(
+              new DigestOutputStream(
+                  new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16), digest))) {
+        out.writeInt(SIGNATURE);
+        out.writeByte(1);
+        out.writeByte(1);
+        out.writeByte(chunkCount);
+        out.writeByte(0);
+
+        out.writeInt(CHUNK_OID_FANOUT);
+        out.writeLong(fanoutOffset);
+        out.writeInt(CHUNK_OID_LOOKUP);
+        out.writeLong(lookupOffset);
+        out.writeInt(CHUNK_COMMIT_DATA);
+        out.writeLong(commitDataOffset);
+        if (extraEdges > 0) {
+          out.writeInt(CHUNK_EXTRA_EDGES);
+          out.writeLong(extraEdgesOffset);
+        }
+        out.writeInt(0);
+        out.writeLong(endOffset);
+
+        int[] fanout = new int[256];
+        for (ObjectId id : sorted) {
+          fanout[id.getFirstByte()]++;
+        }
+        int total = 0;
+        for (int i = 0; i < 256; i++) {
+          total += fanout[i];
+          out.writeInt(total);
+        }
+
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        for (ObjectId id : sorted) {
+          id.copyRawTo(raw, 0);
+          out.write(raw);
+        }
+
+        List<Integer> edges = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i++) {
+          CommitInfo info = commits.get(sorted.get(i));
+          info.tree.copyRawTo(raw, 0);
+          out.write(raw);
+
+          List<ObjectId> parents = info.parents;
+          out.writeInt(parents.isEmpty() ? PARENT_NONE : positions.get(parents.get(0)));
+          if (parents.size() < 2) {
+            out.writeInt(PARENT_NONE);
+          } else if (parents.size() == 2) {
+            out.writeInt(positions.get(parents.get(1)));
+          } else {
+            out.writeInt(EDGE_FLAG | edges.size());
+            for (int p = 1; p < parents.size(); p++) {
+              int position = positions.get(parents.get(p));
+              edges.add(p == parents.size() - 1 ? position | EDGE_FLAG : position);
+            }
+          }
+
+          // generation in the top 30 bits, then the 34-bit commit time
+          out.writeInt(generations[i] << 2 | (int) ((info.commitTime >>> 32) & 3));
+          out.writeInt((int) info.commitTime);
+        }
+
+        for (int edge : edges) {
+          out.writeInt(edge);
+        }
+
+        // the trailer is written through the digest stream too, but after we took the digest
+        out.write(digest.digest());
+      }
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-1 algorithm could not be access ", e);
+    }
+    // read-only for everyone, as git writes it, not the owner-only mode of a temp file
+    GitObjectUtil.makeReadOnly(temp);
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return sorted.size();
+  }
+
+  // every commit a ref or HEAD points at, with annotated tags peeled down to their target
+  private static Set<ObjectId> reachableTips(GitRepository repo) throws IOException {
+    Set<ObjectId> refs = new HashSet<>();
+    CommandGc.collectRefShas(GitRefUtil.refList(repo, null), refs);
+    ObjectId head = GitRefUtil.refResolve(repo, "HEAD");
+    if (head != null) {
+      refs.add(head);
+    }
+
+    Set<ObjectId> tips = new HashSet<>();
+    for (ObjectId id : refs) {
+      GitObject object = GitObjectUtil.objectRead(repo, id);
+      while (object instanceof GitTag) {
+        id = ((GitTag) object).getObject();
+        object = GitObjectUtil.objectRead(repo, id);
+      }
+      if (object instanceof GitCommit) {
+        tips.add(id);
+      }
+    }
+    return tips;
+  }
+
+  // topological levels, computed parents first with an explicit stack
+  private static int[] computeGenerations(
+      List<ObjectId> sorted, Map<ObjectId, CommitInfo> commits, Map<ObjectId, Integer> positions) {
+    int[] generations = new int[sorted.size()];
+    Deque<Integer> stack = new ArrayDeque<>();
+
+    for (int start = 0; start < sorted.size(); start++) {
+      if (generations[start] != 0) {
+        continue;
+      }
+      stack.push(start);
+      while (!stack.isEmpty()) {
+        int current = stack.peek();
+        if (generations[current] != 0) {
+          stack.pop();
+          continue;
+        }
+
+        int max = 0;
+        boolean ready = true;
+        for (ObjectId parent : commits.get(sorted.get(current)).parents) {
+          int position = positions.get(parent);
+          if (generations[position] == 0) {
+            stack.push(position);
+            ready = false;
+          } else {
+            max = Math.max(max, generations[position]);
+          }
+        }
+        if (ready) {
+          generations[current] = Math.min(max + 1, GENERATION_MAX);
+          stack.pop();
+        }
+      }
+    }
+    return generations;
+  }
+
+  // opens the graph if the repository has one
+  static GitCommitGraph open(Path path) throws IOException {
+    try {
+      return new GitCommitGraph(path);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+}
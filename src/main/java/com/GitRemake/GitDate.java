@@ -0,0 +1,113 @@
+package com.GitRemake;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the dates git accepts in options such as --since and --until into seconds since the epoch:
+ * raw timestamps ("1622541234", "@1622541234", "1622541234 -0700"), ISO 8601 with or without a time
+ * and offset, RFC 2822, "now", "yesterday" and relative dates like "2 weeks ago".
+ */
+public class GitDate {
+  private static final Pattern RAW = Pattern.compile("@?(\\d+)(?: [+-]\\d{4})?");
+  private static final Pattern RELATIVE =
+      Pattern.compile("(\\d+)[ .]+(second|minute|hour|day|week|month|year)s?[ .]+ago");
+
+  // "2024-01-02", "2024-01-02 10:00", "2024-01-02T10:00:00+02:00", "2024-01-02 10:00:00 +0200"
+  private static final DateTimeFormatter ISO =
+      new DateTimeFormatterBuilder()
+          .appendPattern("yyyy-MM-dd")
+          .optionalStart()
+          .optionalStart()
+          .appendLiteral('T')
+          .optionalEnd()
+          .optionalStart()
+          .appendLiteral(' ')
+          .optionalEnd()
+          .appendPattern("HH:mm")
+          .optionalStart()
+          .appendPattern(":ss")
+          .optionalEnd()
+          .optionalEnd()
+          .optionalStart()
+          .appendLiteral(' ')
+          .optionalEnd()
+          .optionalStart()
+          .appendOffset("+HH:MM", "Z")
+          .optionalEnd()
+          .optionalStart()
+          .appendOffset("+HHMM", "Z")
+          .optionalEnd()
+          .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+          .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
+          .parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0)
+          .toFormatter(Locale.ROOT);
+
+  public static long parse(String text) {
+    return parse(text, Instant.now().getEpochSecond(), ZoneId.systemDefault());
+  }
+
+  /**
+   * @param now the current time in seconds, relative dates count back from it
+   * @param zone the zone of dates that do not carry an offset
+   * @throws IllegalArgumentException if the text is not a date we understand
+   */
+  public static long parse(String text, long now, ZoneId zone) {
+    String date = text.trim().toLowerCase(Locale.ROOT);
+
+    Matcher raw = RAW.matcher(date);
+    if (raw.matches()) {
+      return Long.parseLong(raw.group(1));
+    }
+    if (date.equals("now")) {
+      return now;
+    }
+    if (date.equals("yesterday")) {
+      return now - 24 * 60 * 60;
+    }
+
+    Matcher relative = RELATIVE.matcher(date);
+    if (relative.matches()) {
+      long amount = Long.parseLong(relative.group(1));
+      ZonedDateTime base = Instant.ofEpochSecond(now).atZone(zone);
+      ZonedDateTime result =
+          switch (relative.group(2)) {
+            case "second" -> base.minusSeconds(amount);
+            case "minute" -> base.minusMinutes(amount);
+            case "hour" -> base.minusHours(amount);
+            case "day" -> base.minusDays(amount);
+            case "week" -> base.minusWeeks(amount);
+            case "month" -> base.minusMonths(amount);
+            default -> base.minusYears(amount);
+          };
+      return result.toEpochSecond();
+    }
+
+    try {
+      TemporalAccessor parsed =
+          ISO.parseBest(text.trim(), OffsetDateTime::from, LocalDateTime::from);
+      if (parsed instanceof OffsetDateTime) {
+        return ((OffsetDateTime) parsed).toEpochSecond();
+      }
+      return ((LocalDateTime) parsed).atZone(zone).toEpochSecond();
+    } catch (DateTimeParseException e) {
+      // not ISO, try the mail format next
+    }
+    try {
+      return ZonedDateTime.parse(text.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Unrecognized date: " + text);
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package com.GitRemake;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Creates and applies Git's binary delta format. A delta starts with the base size and the result
+ * size (both little-endian base-128 varints) followed by instructions that either copy a range out
+ * of the base object or insert literal bytes.
+ */
+public class GitDelta {
+  // blocks of the base that are indexed and the smallest match worth a copy instruction
+  private static final int BLOCK = 16;
+  // how many same-hash base blocks we try before settling on the best match
+  private static final int MAX_CHAIN = 64;
+  // the largest copy git itself emits, so packs stay readable by older versions
+  private static final int MAX_COPY = 0x10000;
+
+  /**
+   * Hash index over the fixed-size blocks of a delta base. Building it is the expensive part of
+   * delta creation, so a repack builds it once per window entry and reuses it for every target.
+   */
+  public static class DeltaIndex {
+    private final byte[] base;
+    private final int[] heads;
+    private final int[] next;
+
+    public DeltaIndex(byte[] base) {
+      this.base = base;
+      int blocks = base.length / BLOCK;
+      int tableSize = Integer.highestOneBit(Math.max(blocks, 1) * 2);
+      this.heads = new int[tableSize];
+      this.next = new int[blocks];
+      Arrays.fill(heads, -1);
+
+      // later blocks end up at the head of each chain so matches prefer them
+      for (int block = 0; block < blocks; block++) {
+        int slot = hash(base, block * BLOCK) & (tableSize - 1);
+        next[block] = heads[slot];
+        heads[slot] = block;
+      }
+    }
+
+    public byte[] getBase() {
+      return base;
+    }
+  }
+
+  /**
+   * Encodes target as a delta against the indexed base.
+   *
+   * @param maxSize give up once the delta would exceed this many bytes
+   * @return the delta, or null if it would not fit in maxSize
+   */
+  public static byte[] create(DeltaIndex index, byte[] target, int maxSize) {
+    byte[] base = index.base;
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxSize, 1 << 16));
+    writeSize(out, base.length);
+    writeSize(out, target.length);
+
+    int insertStart = 0;
+    int pos = 0;
+    int mask = index.heads.length - 1;
+
+    while (pos + BLOCK <= target.length) {
+      int bestOffset = -1;
+      int bestLength = 0;
+      int chain = 0;
+
+      for (int block = index.heads[hash(target, pos) & mask];
+          block >= 0 && chain < MAX_CHAIN;
+          block = index.next[block], chain++) {
+        int offset = block * BLOCK;
+        int length = 0;
+        while (offset + length < base.length
+            && pos + length < target.length
+            && base[offset + length] == target[pos + length]) {
+          length++;
+        }
+        if (length > bestLength) {
+          bestLength = length;
+          bestOffset = offset;
+        }
+      }
+
+      if (bestLength < BLOCK) {
+        pos++;
+        continue;
+      }
+
+      // grow the match backwards over bytes we were about to insert literally
+      while (bestOffset > 0 && pos > insertStart && base[bestOffset - 1] == target[pos - 1]) {
+        bestOffset--;
+        pos--;
+        bestLength++;
+      }
+
+      writeInsert(out, target, insertStart, pos);
+      writeCopy(out, bestOffset, bestLength);
+      pos += bestLength;
+      insertStart = pos;
+
+      if (out.size() > maxSize) {
+        return null;
+      }
+    }
+
+    writeInsert(out, target, insertStart, target.length);
+    return out.size() > maxSize ? null : out.toByteArray();
+  }
+
+  private static int hash(byte[] data, int offset) {
+    int h = 0;
+    for (int i = 0; i < BLOCK; i++) {
+      h = h * 31 + (data[offset + i] & 0xff);
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static void writeSize(ByteArrayOutputStream out, long size) {
+    do {
+      int b = (int) (size & 0x7f);
+      size >>>= 7;
+      out.write(size != 0 ? b | 0x80 : b);
+    } while (size != 0);
+  }
+
+  // literal bytes go out in runs of at most 127, the largest insert opcode
+  private static void writeInsert(ByteArrayOutputStream out, byte[] data, int start, int end) {
+    while (start < end) {
+      int count = Math.min(127, end - start);
+      out.write(count);
+      out.write(data, start, count);
+      start += count;
+    }
+  }
+
+  private static void writeCopy(ByteArrayOutputStream out, long offset, int length) {
+    while (length > 0) {
+      int size = Math.min(length, MAX_COPY);
+      int cmd = 0x80;
+      byte[] args = new byte[7];
+      int count = 0;
+
+      for (int i = 0; i < 4; i++) {
+        int b = (int) (offset >>> (8 * i)) & 0xff;
+        if (b != 0) {
+          cmd |= 1 << i;
+          args[count++] = (byte) b;
+        }
+      }
+      // a size of exactly 64 KB is encoded as no size bytes at all
+      if (size != MAX_COPY) {
+        for (int i = 0; i < 3; i++) {
+          int b = (size >>> (8 * i)) & 0xff;
+          if (b != 0) {
+            cmd |= 0x10 << i;
+            args[count++] = (byte) b;
+          }
+        }
+      }
+
+      out.write(cmd);
+      out.write(args, 0, count);
+      offset += size;
+      length -= size;
+    }
+  }
+
+  public static byte[] apply(byte[] base, byte[] delta) {
+    int[] position = {0};
+
+    long baseSize = readSize(delta, position);
+    if (baseSize != base.length) {
+      throw new IllegalStateException(
+          "Delta base size mismatch: Expected " + baseSize + " but got " + base.length);
+    }
+
+    long resultSize = readSize(delta, position);
+    if (resultSize > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("Delta result too large: " + resultSize);
+    }
+    byte[] result = new byte[(int) resultSize];
+    int out = 0;
+    int pos = position[0];
+
+    while (pos < delta.length) {
+      int cmd = delta[pos++] & 0xff;
+
+      if ((cmd & 0x80) != 0) {
+        // copy instruction: the low 4 bits say which offset bytes follow, the next 3 the size bytes
+        long offset = 0;
+        int size = 0;
+        for (int i = 0; i < 4; i++) {
+          if ((cmd & (1 << i)) != 0) {
+            offset |= (long) (delta[pos++] & 0xff) << (8 * i);
+          }
+        }
+        for (int i = 0; i < 3; i++) {
+          if ((cmd & (0x10 << i)) != 0) {
+            size |= (delta[pos++] & 0xff) << (8 * i);
+          }
+        }
+        // a size of zero means 64 KB
+        if (size == 0) {
+          size = 0x10000;
+        }
+        if (offset + size > base.length || out + size > result.length) {
+          throw new IllegalStateException("Delta copy out of bounds");
+        }
+        System.arraycopy(base, (int) offset, result, out, size);
+        out += size;
+      } else if (cmd != 0) {
+        // insert instruction: cmd is the number of literal bytes that follow
+        if (pos + cmd > delta.length || out + cmd > result.length) {
+          throw new IllegalStateException("Delta insert out of bounds");
+        }
+        System.arraycopy(delta, pos, result, out, cmd);
+        pos += cmd;
+        out += cmd;
+      } else {
+        throw new IllegalStateException("Invalid delta opcode 0");
+      }
+    }
+
+    if (out != result.length) {
+      throw new IllegalStateException(
+          "Delta result size mismatch: Expected " + result.length + " but got " + out);
+    }
+    return result;
+  }
+
+  // reads one of the size varints at the start of a delta
+  static long readSize(byte[] delta, int[] position) {
+    long size = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = delta[position[0]++] & 0xff;
+      size |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return size;
+  }
+}
@@ -0,0 +1,107 @@
+package com.GitRemake;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Reads and writes git's EWAH compressed bitmaps, as used by the untracked cache and
+ * reachability bitmaps.
+ *
+ * <pre>
+ *   bit count     32 bits
+ *   word count    32 bits
+ *   words         64 bits each
+ *   last marker   32 bit position of the last marker word
+ * </pre>
+ *
+ * The words are a series of marker words, each followed by literal words. A marker's lowest bit
+ * and the 32 bits above it give a run of words that are all zeros or all ones. The 31 bits above
+ * those count the literal words that follow it. Within a literal word, bit 0 comes first.
+ */
+public class GitEwahBitmap {
+  private static final int RUNNING_BITS = 32;
+  private static final long LARGEST_RUNNING_COUNT = (1L << RUNNING_BITS) - 1;
+  private static final long LARGEST_LITERAL_COUNT = (1L << (63 - RUNNING_BITS)) - 1;
+
+  private GitEwahBitmap() {}
+
+  /** Reads a bitmap from the buffer's position and leaves the position just past it. */
+  public static BitSet read(ByteBuffer in) {
+    in.getInt(); // the bit count, implied by the words
+    int wordCount = in.getInt();
+    if (wordCount < 0 || (long) wordCount * 8 + 4 > in.remaining()) {
+      throw new IllegalArgumentException("EWAH bitmap larger than its data");
+    }
+    BitSet bits = new BitSet();
+    long bit = 0;
+    int i = 0;
+    while (i < wordCount) {
+      long marker = in.getLong();
+      i++;
+      long running = (marker >>> 1) & LARGEST_RUNNING_COUNT;
+      long literals = marker >>> (1 + RUNNING_BITS);
+      if ((marker & 1) != 0) {
+        bits.set(toIndex(bit), toIndex(bit + running * 64));
+      }
+      bit += running * 64;
+      for (long k = 0; k < literals && i < wordCount; k++, i++) {
+        long word = in.getLong();
+        while (word != 0) {
+          bits.set(toIndex(bit + Long.numberOfTrailingZeros(word)));
+          word &= word - 1;
+        }
+        bit += 64;
+      }
+    }
+    in.getInt(); // the position of the last marker, only needed to append
+    return bits;
+  }
+
+  public static void write(DataOutputStream out, BitSet bits) throws IOException {
+    long[] words = bits.toLongArray();
+    List<Long> encoded = new ArrayList<>();
+    int lastMarker = 0;
+    int i = 0;
+    do {
+      // a run of clean words, then the literal words up to the next clean one
+      long running = 0;
+      boolean runBit = i < words.length && words[i] == -1L;
+      long clean = runBit ? -1L : 0L;
+      while (i < words.length && words[i] == clean && running < LARGEST_RUNNING_COUNT) {
+        running++;
+        i++;
+      }
+      int literalStart = i;
+      while (i < words.length
+          && words[i] != 0
+          && words[i] != -1L
+          && i - literalStart < LARGEST_LITERAL_COUNT) {
+        i++;
+      }
+      lastMarker = encoded.size();
+      long literals = i - literalStart;
+      encoded.add((literals << (1 + RUNNING_BITS)) | (running << 1) | (runBit ? 1 : 0));
+      for (int k = literalStart; k < i; k++) {
+        encoded.add(words[k]);
+      }
+    } while (i < words.length);
+
+    out.writeInt(bits.length());
+    out.writeInt(encoded.size());
+    for (long word : encoded) {
+      out.writeLong(word);
+    }
+    out.writeInt(lastMarker);
+  }
+
+  private static int toIndex(long bit) {
+    if (bit > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("EWAH bitmap too large");
+    }
+    return (int) bit;
+  }
+}
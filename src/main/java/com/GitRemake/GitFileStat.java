@@ -0,0 +1,171 @@
+package com.GitRemake;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * The stat data the index keeps for every file: change and modification times, device, inode,
+ * owner and size. When a file's current stat data still matches what the index recorded, the file
+ * is taken to be unchanged and is not read or hashed again.
+ *
+ * <p>Values are stored the way the index stores them, truncated to 32 bits, and times keep their
+ * nanoseconds. Platforms without the "unix" attribute view get zeros for dev, ino, uid and gid and
+ * the creation time as ctime.
+ */
+public class GitFileStat {
+  // unix st_mode bits
+  private static final int S_IFMT = 0170000;
+  private static final int S_IFLNK = 0120000;
+  private static final int S_IFREG = 0100000;
+  private static final int S_IXUSR = 0100;
+  private static final String UNIX_ATTRIBUTES =
+      "unix:dev,ino,mode,uid,gid,ctime,lastModifiedTime,size";
+
+  private final int ctimeSeconds;
+  private final int ctimeNanos;
+  private final int mtimeSeconds;
+  private final int mtimeNanos;
+  private final int dev;
+  private final int ino;
+  private final int mode;
+  private final int uid;
+  private final int gid;
+  private final int size;
+
+  public GitFileStat(
+      int ctimeSeconds,
+      int ctimeNanos,
+      int mtimeSeconds,
+      int mtimeNanos,
+      int dev,
+      int ino,
+      int mode,
+      int uid,
+      int gid,
+      int size) {
+    this.ctimeSeconds = ctimeSeconds;
+    this.ctimeNanos = ctimeNanos;
+    this.mtimeSeconds = mtimeSeconds;
+    this.mtimeNanos = mtimeNanos;
+    this.dev = dev;
+    this.ino = ino;
+    this.mode = mode;
+    this.uid = uid;
+    this.gid = gid;
+    this.size = size;
+  }
+
+  /** Stats a file without following a symlink, the way git's lstat does. */
+  public static GitFileStat of(Path file) throws IOException {
+    try {
+      Map<String, Object> unix =
+          Files.readAttributes(file, UNIX_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+      Instant ctime = ((FileTime) unix.get("ctime")).toInstant();
+      Instant mtime = ((FileTime) unix.get("lastModifiedTime")).toInstant();
+      return new GitFileStat(
+          (int) ctime.getEpochSecond(),
+          ctime.getNano(),
+          (int) mtime.getEpochSecond(),
+          mtime.getNano(),
+          (int) (long) (Long) unix.get("dev"),
+          (int) (long) (Long) unix.get("ino"),
+          (Integer) unix.get("mode"),
+          (Integer) unix.get("uid"),
+          (Integer) unix.get("gid"),
+          (int) (long) (Long) unix.get("size"));
+    } catch (UnsupportedOperationException e) {
+      BasicFileAttributes basic =
+          Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+      Instant ctime = basic.creationTime().toInstant();
+      Instant mtime = basic.lastModifiedTime().toInstant();
+      int type = basic.isSymbolicLink() ? S_IFLNK : S_IFREG;
+      return new GitFileStat(
+          (int) ctime.getEpochSecond(),
+          ctime.getNano(),
+          (int) mtime.getEpochSecond(),
+          mtime.getNano(),
+          0,
+          0,
+          type | 0644,
+          0,
+          0,
+          (int) basic.size());
+    }
+  }
+
+  public int getCtimeSeconds() {
+    return ctimeSeconds;
+  }
+
+  public int getCtimeNanos() {
+    return ctimeNanos;
+  }
+
+  public int getMtimeSeconds() {
+    return mtimeSeconds;
+  }
+
+  public int getMtimeNanos() {
+    return mtimeNanos;
+  }
+
+  public int getDev() {
+    return dev;
+  }
+
+  public int getIno() {
+    return ino;
+  }
+
+  // the st_mode the file system reported, not the index mode
+  public int getMode() {
+    return mode;
+  }
+
+  public int getUid() {
+    return uid;
+  }
+
+  public int getGid() {
+    return gid;
+  }
+
+  // the low 32 bits of the size
+  public int getSize() {
+    return size;
+  }
+
+  public boolean isSymLink() {
+    return (mode & S_IFMT) == S_IFLNK;
+  }
+
+  public boolean isFile() {
+    return (mode & S_IFMT) == S_IFREG;
+  }
+
+  public boolean isExecutable() {
+    return (mode & S_IXUSR) != 0;
+  }
+
+  /**
+   * Whether the file looks untouched since other was taken: same times, inode, device, owner and
+   * size. Like git, only the low 32 bits of each value are compared.
+   */
+  public boolean matches(GitFileStat other) {
+    return mtimeSeconds == other.mtimeSeconds
+        && mtimeNanos == other.mtimeNanos
+        && ctimeSeconds == other.ctimeSeconds
+        && ctimeNanos == other.ctimeNanos
+        && ino == other.ino
+        && dev == other.dev
+        && uid == other.uid
+        && gid == other.gid
+        && size == other.size;
+  }
+}
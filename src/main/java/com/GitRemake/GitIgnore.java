@@ -0,0 +1,486 @@
+package com.GitRemake;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The ignore rules of a work tree: every .gitignore, .git/info/exclude and core.excludesFile.
+ *
+ * <p>Each file is compiled once into a {@link PatternList}. Patterns without wildcards are looked
+ * up by name or path in a hash map, "*.ext" patterns by extension, and patterns anchored below a
+ * literal directory by that directory; only the rest are tried one by one, as compiled regular
+ * expressions.
+ * .gitignore files are loaded lazily, the first time a path in their directory is matched, so a
+ * scan that prunes an ignored directory never reads the files below it.
+ *
+ * <p>Precedence is git's: a deeper .gitignore wins over a shallower one, any .gitignore wins over
+ * info/exclude, which wins over core.excludesFile, and within one file the last matching line wins.
+ * Matching is safe from several threads.
+ */
+public class GitIgnore {
+  /** One line of an ignore file. */
+  public static class Rule {
+    private final String source;
+    private final int line;
+    private final String pattern;
+    private final boolean negated;
+    private final boolean dirOnly;
+    // for patterns with no index, the regular expression they compile to
+    private Pattern regex;
+
+    Rule(String source, int line, String pattern, boolean negated, boolean dirOnly) {
+      this.source = source;
+      this.line = line;
+      this.pattern = pattern;
+      this.negated = negated;
+      this.dirOnly = dirOnly;
+    }
+
+    // the file the rule came from, as check-ignore -v prints it
+    public String getSource() {
+      return source;
+    }
+
+    public int getLine() {
+      return line;
+    }
+
+    // the line as written, including any "!" and trailing "/"
+    public String getPattern() {
+      return pattern;
+    }
+
+    // whether the rule re-includes what an earlier rule ignored
+    public boolean isNegated() {
+      return negated;
+    }
+  }
+
+  /**
+   * The compiled rules of one ignore file. Rules are numbered in file order, so of several matching
+   * rules the one with the highest number wins, whichever index found it.
+   */
+  static class PatternList {
+    private final List<Rule> rules = new ArrayList<>();
+    private final Map<String, List<Integer>> byName = new HashMap<>();
+    private final Map<String, List<Integer>> byExtension = new HashMap<>();
+    // "*.ext" patterns keep their full suffix here, "*.tar.gz" is indexed under ".gz"
+    private final Map<Integer, String> suffixes = new HashMap<>();
+    // anchored patterns without wildcards, by the whole path
+    private final Map<String, List<Integer>> byPath = new HashMap<>();
+    private final Map<String, List<Integer>> byFirstDir = new HashMap<>();
+    // anchored patterns, matched against the path below the file's directory
+    private final List<Integer> pathGlobs = new ArrayList<>();
+    // unanchored patterns with wildcards, matched against the last path component
+    private final List<Integer> nameGlobs = new ArrayList<>();
+
+    static PatternList parse(String source, List<String> lines) {
+      PatternList list = new PatternList();
+      for (int i = 0; i < lines.size(); i++) {
+        list.addLine(source, i + 1, lines.get(i));
+      }
+      return list;
+    }
+
+    private void addLine(String source, int lineNumber, String line) {
+      String text = trimTrailingSpaces(line);
+      if (text.isEmpty() || text.startsWith("#")) {
+        return;
+      }
+      String pattern = text;
+      boolean negated = pattern.startsWith("!");
+      if (negated) {
+        pattern = pattern.substring(1);
+      }
+      boolean dirOnly = pattern.endsWith("/") && !pattern.endsWith("\\/");
+      if (dirOnly) {
+        pattern = pattern.substring(0, pattern.length() - 1);
+      }
+      if (pattern.isEmpty()) {
+        return;
+      }
+
+      Rule rule = new Rule(source, lineNumber, text, negated, dirOnly);
+      int number = rules.size();
+      rules.add(rule);
+
+      if (pattern.indexOf('/') >= 0) {
+        // a slash anywhere but the end anchors the pattern to the file's directory
+        if (pattern.startsWith("/")) {
+          pattern = pattern.substring(1);
+        }
+        if (!hasWildcards(pattern)) {
+          byPath.computeIfAbsent(unescape(pattern), k -> new ArrayList<>()).add(number);
+          return;
+        }
+        int slash = pattern.indexOf('/');
+        String first = slash < 0 ? pattern : pattern.substring(0, slash);
+        rule.regex = Pattern.compile(globToRegex(pattern));
+        if (slash > 0 && !hasWildcards(first)) {
+          byFirstDir.computeIfAbsent(unescape(first), k -> new ArrayList<>()).add(number);
+        } else {
+          pathGlobs.add(number);
+        }
+      } else if (!hasWildcards(pattern)) {
+        byName.computeIfAbsent(unescape(pattern), k -> new ArrayList<>()).add(number);
+      } else if (pattern.startsWith("*")
+          && pattern.lastIndexOf('.') > 0
+          && !hasWildcards(pattern.substring(1))) {
+        String suffix = pattern.substring(1);
+        suffixes.put(number, suffix);
+        byExtension
+            .computeIfAbsent(suffix.substring(suffix.lastIndexOf('.')), k -> new ArrayList<>())
+            .add(number);
+      } else {
+        rule.regex = Pattern.compile(globToRegex(pattern));
+        nameGlobs.add(number);
+      }
+    }
+
+    /**
+     * The last rule that matches a path, or null.
+     *
+     * @param path the path relative to the directory the file applies to
+     */
+    Rule match(String path, boolean isDir) {
+      int slash = path.lastIndexOf('/');
+      String name = path.substring(slash + 1);
+      int best = -1;
+
+      best = last(byName.get(name), best, isDir);
+      best = last(byPath.get(path), best, isDir);
+      int dot = name.lastIndexOf('.');
+      if (dot >= 0) {
+        for (int number : byExtension.getOrDefault(name.substring(dot), List.of())) {
+          if (number > best && applies(number, isDir) && name.endsWith(suffixes.get(number))) {
+            best = number;
+          }
+        }
+      }
+      best = lastMatching(nameGlobs, name, best, isDir);
+      if (slash >= 0) {
+        String first = path.substring(0, path.indexOf('/'));
+        best = lastMatching(byFirstDir.getOrDefault(first, List.of()), path, best, isDir);
+      }
+      best = lastMatching(pathGlobs, path, best, isDir);
+      return best < 0 ? null : rules.get(best);
+    }
+
+    private int last(List<Integer> numbers, int best, boolean isDir) {
+      if (numbers != null) {
+        for (int number : numbers) {
+          if (number > best && applies(number, isDir)) {
+            best = number;
+          }
+        }
+      }
+      return best;
+    }
+
+    // the lists are in file order, so the scan can stop at the first rule that cannot win
+    private int lastMatching(List<Integer> numbers, String text, int best, boolean isDir) {
+      for (int i = numbers.size() - 1; i >= 0 && numbers.get(i) > best; i--) {
+        int number = numbers.get(i);
+        if (applies(number, isDir) && rules.get(number).regex.matcher(text).matches()) {
+          return number;
+        }
+      }
+      return best;
+    }
+
+    private boolean applies(int number, boolean isDir) {
+      return isDir || !rules.get(number).dirOnly;
+    }
+  }
+
+  private static final PatternList EMPTY = new PatternList();
+
+  private final Path root;
+  // info/exclude first, then core.excludesFile
+  private final List<PatternList> global;
+  // one entry per directory matched so far, "" for the top
+  private final Map<String, PatternList> perDirectory = new ConcurrentHashMap<>();
+
+  private GitIgnore(Path root, List<PatternList> global) {
+    this.root = root;
+    this.global = global;
+  }
+
+  /** Loads the repository-wide rules; .gitignore files are read as they are needed. */
+  public static GitIgnore load(GitRepository repo) throws IOException {
+    Path root = Paths.get(repo.getWorkTree()).toAbsolutePath().normalize();
+    List<PatternList> global = new ArrayList<>();
+    Path exclude = infoExclude(repo);
+    global.add(readList(exclude, root.relativize(exclude).toString()));
+    Path excludesFile = excludesFile(repo);
+    if (excludesFile != null) {
+      global.add(readList(excludesFile, excludesFile.toString()));
+    }
+    return new GitIgnore(root, global);
+  }
+
+  public static Path infoExclude(GitRepository repo) {
+    // not repoFile, which gives null while .git/info does not exist
+    return Paths.get(repo.getGitDir(), "info", "exclude").toAbsolutePath().normalize();
+  }
+
+  // core.excludesFile, or git's default under the XDG config directory
+  public static Path excludesFile(GitRepository repo) {
+    String home = System.getProperty("user.home");
+    String configured = repo.getConfig("core", "excludesFile");
+    if (configured != null) {
+      configured = configured.trim();
+      if (configured.startsWith("~/")) {
+        return Paths.get(home, configured.substring(2));
+      }
+      return Paths.get(configured);
+    }
+    String xdg = System.getenv("XDG_CONFIG_HOME");
+    if (xdg != null && !xdg.isEmpty()) {
+      return Paths.get(xdg, "git", "ignore");
+    }
+    return home == null ? null : Paths.get(home, ".config", "git", "ignore");
+  }
+
+  /**
+   * The blob id of an ignore file's content, or null if there is no such file. The untracked cache
+   * records these to notice when the rules change.
+   */
+  public static ObjectId hashFile(Path file) throws IOException {
+    if (file == null || !Files.isRegularFile(file)) {
+      return null;
+    }
+    return GitObjectUtil.objectWrite(null, new GitBlob(Files.readAllBytes(file)));
+  }
+
+  private static PatternList readList(Path file, String source) throws IOException {
+    try {
+      return PatternList.parse(source, Files.readAllLines(file, StandardCharsets.UTF_8));
+    } catch (NoSuchFileException e) {
+      return EMPTY;
+    }
+  }
+
+  /**
+   * The rule that decides whether a path is ignored, assuming none of its parent directories is:
+   * the last match of the deepest ignore file with one, or null if nothing matches. Scans that stop
+   * at ignored directories can use this directly.
+   *
+   * @param path relative to the work tree, with forward slashes
+   * @param isDir whether the path is a directory, for patterns ending in "/"
+   */
+  public Rule match(String path, boolean isDir) {
+    int slash = path.lastIndexOf('/');
+    while (true) {
+      String dir = slash < 0 ? "" : path.substring(0, slash);
+      Rule rule = directoryList(dir).match(path.substring(slash + 1), isDir);
+      if (rule != null) {
+        return rule;
+      }
+      if (slash < 0) {
+        break;
+      }
+      slash = path.lastIndexOf('/', slash - 1);
+    }
+    for (PatternList list : global) {
+      Rule rule = list.match(path, isDir);
+      if (rule != null) {
+        return rule;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Like {@link #match} but also checks the parent directories, since nothing below an ignored
+   * directory can be re-included. Returns the rule that ignores the first ignored parent if there
+   * is one.
+   */
+  public Rule matchWithParents(String path, boolean isDir) {
+    for (int slash = path.indexOf('/'); slash > 0; slash = path.indexOf('/', slash + 1)) {
+      Rule rule = match(path.substring(0, slash), true);
+      if (rule != null && !rule.isNegated()) {
+        return rule;
+      }
+    }
+    return match(path, isDir);
+  }
+
+  // whether a path is ignored, assuming its parent directories are not
+  public boolean isIgnored(String path, boolean isDir) {
+    Rule rule = match(path, isDir);
+    return rule != null && !rule.isNegated();
+  }
+
+  private PatternList directoryList(String dir) {
+    PatternList list = perDirectory.get(dir);
+    if (list != null) {
+      return list;
+    }
+    return perDirectory.computeIfAbsent(
+        dir,
+        d -> {
+          String source = d.isEmpty() ? ".gitignore" : d + "/.gitignore";
+          try {
+            return readList(root.resolve(source), source);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  // everything after the last character that is not an unescaped space
+  private static String trimTrailingSpaces(String line) {
+    int end = line.length();
+    while (end > 0 && line.charAt(end - 1) == ' ') {
+      if (end >= 2 && line.charAt(end - 2) == '\\') {
+        break;
+      }
+      end--;
+    }
+    return line.substring(0, end);
+  }
+
+  private static boolean hasWildcards(String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == '*' || c == '?' || c == '[') {
+        return true;
+      }
+      if (c == '\\') {
+        i++;
+      }
+    }
+    return false;
+  }
+
+  private static String unescape(String pattern) {
+    StringBuilder out = new StringBuilder(pattern.length());
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c == '\\' && i + 1 < pattern.length()) {
+        c = pattern.charAt(++i);
+      }
+      out.append(c);
+    }
+    return out.toString();
+  }
+
+  /**
+   * Translates a glob to a regular expression with git's wildmatch rules: "*", "?" and brackets do
+   * not match "/", while "**" between slashes, or at either end, matches any number of
+   * directories.
+   */
+  static String globToRegex(String glob) {
+    StringBuilder regex = new StringBuilder();
+    int length = glob.length();
+    for (int i = 0; i < length; i++) {
+      char c = glob.charAt(i);
+      switch (c) {
+        case '*' -> {
+          if (i + 1 < length && glob.charAt(i + 1) == '*') {
+            int end = i + 2;
+            while (end < length && glob.charAt(end) == '*') {
+              end++;
+            }
+            boolean startOfComponent = i == 0 || glob.charAt(i - 1) == '/';
+            if (startOfComponent && end == length) {
+              regex.append(".*");
+              i = end - 1;
+              break;
+            }
+            if (startOfComponent && glob.charAt(end) == '/') {
+              regex.append("(?:.*/)?");
+              i = end;
+              break;
+            }
+            i = end - 1;
+          }
+          regex.append("[^/]*");
+        }
+        case '?' -> regex.append("[^/]");
+        case '[' -> {
+          int end = classEnd(glob, i);
+          if (end < 0) {
+            regex.append("\\[");
+          } else {
+            appendClass(regex, glob.substring(i + 1, end));
+            i = end;
+          }
+        }
+        case '\\' -> {
+          if (i + 1 < length) {
+            i++;
+          }
+          regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+        }
+        default -> {
+          if (Character.isLetterOrDigit(c) || c == '/' || c == '_' || c == '-') {
+            regex.append(c);
+          } else {
+            regex.append('\\').append(c);
+          }
+        }
+      }
+    }
+    return regex.toString();
+  }
+
+  // the position of the "]" closing the bracket expression at start, or -1
+  private static int classEnd(String glob, int start) {
+    int i = start + 1;
+    if (i < glob.length() && (glob.charAt(i) == '!' || glob.charAt(i) == '^')) {
+      i++;
+    }
+    // a "]" right after the opening bracket is a member, not the end
+    if (i < glob.length() && glob.charAt(i) == ']') {
+      i++;
+    }
+    for (; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == ']') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static void appendClass(StringBuilder regex, String members) {
+    // even a negated class never matches a slash
+    regex.append("(?!/)[");
+    int start = 0;
+    if (!members.isEmpty() && (members.charAt(0) == '!' || members.charAt(0) == '^')) {
+      regex.append('^');
+      start++;
+    }
+    for (int i = start; i < members.length(); i++) {
+      char c = members.charAt(i);
+      if (c == '\\' && i + 1 < members.length()) {
+        c = members.charAt(++i);
+      } else if (c == '-' && i > start && i + 1 < members.length()) {
+        // a range, unless it is the first or last member
+        regex.append('-');
+        continue;
+      }
+      if (Character.isLetterOrDigit(c)) {
+        regex.append(c);
+      } else {
+        regex.append('\\').append(c);
+      }
+    }
+    regex.append(']');
+  }
+}
@@ -0,0 +1,699 @@
+package com.GitRemake;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The index in .git/index, in versions 2, 3 and 4 of git's format.
+ *
+ * <pre>
+ *   header      "DIRC", version, entry count
+ *   entry       ctime, mtime (seconds and nanoseconds), dev, ino, mode, uid, gid, size, each 32
+ *               bits, the 20-byte id and 16 bits of flags; with the extended flag set (version 3
+ *               and up) another 16 bits of flags follow, then the path
+ *   path v2/v3  NUL terminated and padded with NULs to a multiple of 8 bytes
+ *   path v4     a varint count of bytes to drop from the end of the previous path, then the NUL
+ *               terminated bytes to append to what is left, without padding
+ *   extensions  4 byte signature, 32 bit size and data each
+ *   trailer     SHA-1 of everything before it
+ * </pre>
+ *
+ * Reading maps the file and only finds where each entry starts; an entry's stat data, id and, for
+ * versions 2 and 3, its path are decoded the first time it is asked for, so a lookup of a few paths
+ * in a huge index touches little more than the binary search. The first change copies every entry
+ * out of the mapping into a list.
+ *
+ * <p>Extensions are kept as they are while the entries are unchanged. Adding or removing an entry
+ * drops them, since the ones we do not maintain (cache-tree, ...) are caches that would go stale;
+ * refreshing stat data keeps them. The untracked cache is the exception: it is kept, with the
+ * directories leading to the changed path invalidated, as git does.
+ * An unknown required extension, one whose signature does not start with an upper case letter, is
+ * an error, as it is in git.
+ */
+public class GitIndex {
+  private static final int SIGNATURE = 0x44495243; // "DIRC"
+  private static final int HEADER_SIZE = 12;
+  // ten 32 bit stat words, the id and the flags
+  private static final int ENTRY_FIXED_SIZE = 40 + ObjectId.RAW_LENGTH + 2;
+  private static final int FLAG_ASSUME_VALID = 0x8000;
+  private static final int FLAG_EXTENDED = 0x4000;
+  private static final int FLAG_STAGE_SHIFT = 12;
+  private static final int NAME_MASK = 0x0fff;
+  private static final int EXTENDED_SKIP_WORKTREE = 0x4000;
+  private static final int EXTENDED_INTENT_TO_ADD = 0x2000;
+  private static final byte[] NO_PATH = new byte[0];
+  private static final ObjectId EMPTY_BLOB =
+      ObjectId.fromString("e69de29bb2d1d6434b8b29ae775ad8c2e48c5391");
+
+  private int version;
+  // the mapped file, until the first change copies the entries out
+  private ByteBuffer data;
+  private int[] offsets;
+  // decoded paths, all of them for version 4, otherwise filled in as they are used
+  private String[] paths;
+  private GitIndexEntry[] parsed;
+  // every entry in order, once the index has been changed
+  private List<GitIndexEntry> entries;
+  private final Map<String, ByteBuffer> extensions = new LinkedHashMap<>();
+  private boolean changed;
+  // the index file as it was when read, null for a new index
+  private GitFileStat snapshot;
+  // the parsed untracked cache; until it is asked for, it stays raw in extensions
+  private GitUntrackedCache untrackedCache;
+
+  // an empty index written as the given version
+  public GitIndex(int version) {
+    checkVersion(version);
+    this.version = version;
+    this.entries = new ArrayList<>();
+  }
+
+  private GitIndex(ByteBuffer data, Path path) throws IOException {
+    this.data = data;
+    int end = data.capacity() - ObjectId.RAW_LENGTH;
+    if (end < HEADER_SIZE || data.getInt(0) != SIGNATURE) {
+      throw new IOException("Not an index file: " + path);
+    }
+    version = data.getInt(4);
+    if (version < 2 || version > 4) {
+      throw new IOException("Unsupported index version " + version + ": " + path);
+    }
+    verifyChecksum(path, end);
+
+    int count = data.getInt(8);
+    offsets = new int[count];
+    paths = new String[count];
+    parsed = new GitIndexEntry[count];
+
+    int pos = HEADER_SIZE;
+    byte[] previous = NO_PATH;
+    int previousLength = 0;
+    for (int i = 0; i < count; i++) {
+      if (pos + ENTRY_FIXED_SIZE > end) {
+        throw new IOException("Index truncated at entry " + i + ": " + path);
+      }
+      offsets[i] = pos;
+      int flags = data.getShort(pos + 60) & 0xffff;
+      int nameStart = pos + ENTRY_FIXED_SIZE;
+      if ((flags & FLAG_EXTENDED) != 0) {
+        if (version < 3) {
+          throw new IOException("Extended flags in a version 2 index: " + path);
+        }
+        nameStart += 2;
+      }
+
+      if (version == 4) {
+        // each path is stored as the part that differs from the one before it
+        int[] cursor = {nameStart};
+        int strip = readVarint(cursor);
+        if (strip > previousLength) {
+          throw new IOException("Bad path compression at entry " + i + ": " + path);
+        }
+        int suffixEnd = findNul(cursor[0], end, path);
+        int suffixLength = suffixEnd - cursor[0];
+        int length = previousLength - strip + suffixLength;
+        if (length > previous.length) {
+          previous = Arrays.copyOf(previous, Math.max(length, previous.length * 2));
+        }
+        data.get(cursor[0], previous, previousLength - strip, suffixLength);
+        previousLength = length;
+        paths[i] = new String(previous, 0, length, StandardCharsets.UTF_8);
+        pos = suffixEnd + 1;
+      } else {
+        int nameLength = flags & NAME_MASK;
+        if (nameLength == NAME_MASK) {
+          nameLength = findNul(nameStart, end, path) - nameStart;
+        }
+        pos += (nameStart - pos + nameLength + 8) & ~7;
+      }
+    }
+
+    while (pos + 8 <= end) {
+      byte[] signature = new byte[4];
+      data.get(pos, signature);
+      int size = data.getInt(pos + 4);
+      if (size < 0 || pos + 8 + size > end) {
+        throw new IOException("Index extension overflows the file: " + path);
+      }
+      String name = new String(signature, StandardCharsets.US_ASCII);
+      if (signature[0] < 'A' || signature[0] > 'Z') {
+        throw new IOException("Unsupported index extension '" + name + "': " + path);
+      }
+      extensions.put(name, data.slice(pos + 8, size));
+      pos += 8 + size;
+    }
+    if (pos != end) {
+      throw new IOException("Trailing garbage in index: " + path);
+    }
+  }
+
+  public static Path indexPath(GitRepository repo) {
+    return Paths.get(repo.getGitDir(), "index");
+  }
+
+  /**
+   * Reads the repository's index. A repository without one gets an empty index of the version
+   * index.version asks for, 2 by default.
+   */
+  public static GitIndex read(GitRepository repo) throws IOException {
+    Path path = indexPath(repo);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Index too large to map: " + path);
+      }
+      // taken before the content, so a concurrent rewrite can only make entries look more racy
+      GitFileStat snapshot = GitFileStat.of(path);
+      GitIndex index =
+          new GitIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+      index.snapshot = snapshot;
+      return index;
+    } catch (NoSuchFileException e) {
+      return new GitIndex(repo.getConfigInt("index", "version", 2));
+    }
+  }
+
+  /**
+   * Takes index.lock. Read the index after taking the lock and write it through the lock, so no
+   * other writer can slip a change in between.
+   */
+  public static GitLockFile lock(GitRepository repo) throws IOException {
+    return new GitLockFile(indexPath(repo));
+  }
+
+  public int getVersion() {
+    return version;
+  }
+
+  // the version the next write uses; 2 is raised to 3 on its own if an entry needs extended flags
+  public void setVersion(int version) {
+    checkVersion(version);
+    this.version = version;
+  }
+
+  public int size() {
+    return entries != null ? entries.size() : offsets.length;
+  }
+
+  public GitIndexEntry get(int position) {
+    if (entries != null) {
+      return entries.get(position);
+    }
+    GitIndexEntry entry = parsed[position];
+    if (entry == null) {
+      entry = parseEntry(position);
+      parsed[position] = entry;
+    }
+    return entry;
+  }
+
+  // a view of every entry, decoded as it is used
+  public List<GitIndexEntry> getEntries() {
+    return new AbstractList<>() {
+      @Override
+      public GitIndexEntry get(int position) {
+        return GitIndex.this.get(position);
+      }
+
+      @Override
+      public int size() {
+        return GitIndex.this.size();
+      }
+    };
+  }
+
+  // the path of an entry, without decoding the rest of it
+  public String getPath(int position) {
+    if (entries != null) {
+      return entries.get(position).getPath();
+    }
+    String path = paths[position];
+    if (path == null) {
+      int pos = offsets[position];
+      int flags = data.getShort(pos + 60) & 0xffff;
+      int nameStart = pos + ENTRY_FIXED_SIZE + ((flags & FLAG_EXTENDED) != 0 ? 2 : 0);
+      int nameLength = flags & NAME_MASK;
+      if (nameLength == NAME_MASK) {
+        nameLength = 0;
+        while (data.get(nameStart + nameLength) != 0) {
+          nameLength++;
+        }
+      }
+      byte[] bytes = new byte[nameLength];
+      data.get(nameStart, bytes);
+      path = new String(bytes, StandardCharsets.UTF_8);
+      paths[position] = path;
+    }
+    return path;
+  }
+
+  private int getStage(int position) {
+    if (entries != null) {
+      return entries.get(position).getStage();
+    }
+    return (data.getShort(offsets[position] + 60) >> FLAG_STAGE_SHIFT) & 3;
+  }
+
+  /**
+   * Binary search for a path and stage.
+   *
+   * @return the entry's position, or -(insertion point) - 1 if there is none
+   */
+  public int findPosition(String path, int stage) {
+    int low = 0;
+    int high = size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = comparePaths(getPath(mid), path);
+      if (cmp == 0) {
+        cmp = getStage(mid) - stage;
+      }
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  // the stage 0 entry for a path, or null
+  public GitIndexEntry getEntry(String path) {
+    int position = findPosition(path, 0);
+    return position >= 0 ? get(position) : null;
+  }
+
+  /**
+   * Whether an entry's stat data cannot be trusted: the file was modified no earlier than the index
+   * was written, so it may have changed again within the same timestamp after it was hashed. Such
+   * entries have to be compared by content even when their stat data matches ("racy git"). So do
+   * entries {@link #write} smudged: a size of 0 for a blob that is not empty.
+   */
+  public boolean isRacilyClean(GitIndexEntry entry) {
+    return isRacy(entry.getStat()) || isSmudged(entry);
+  }
+
+  private static boolean isSmudged(GitIndexEntry entry) {
+    return entry.getStat().getSize() == 0
+        && entry.getMode() != GitIndexEntry.MODE_GITLINK
+        && !entry.getSha().equals(EMPTY_BLOB);
+  }
+
+  // whether stat data taken from a file or directory is not older than the index file
+  public boolean isRacy(GitFileStat stat) {
+    if (snapshot == null) {
+      return false;
+    }
+    int seconds = Integer.compareUnsigned(stat.getMtimeSeconds(), snapshot.getMtimeSeconds());
+    return seconds > 0 || (seconds == 0 && stat.getMtimeNanos() >= snapshot.getMtimeNanos());
+  }
+
+  // whether the index file is still the one this was read from
+  public boolean isUnchangedOnDisk(GitRepository repo) throws IOException {
+    Path path = indexPath(repo);
+    if (snapshot == null) {
+      return !Files.exists(path);
+    }
+    return Files.exists(path) && GitFileStat.of(path).matches(snapshot);
+  }
+
+  /**
+   * Records new stat data for a file whose content was found unchanged. Unlike {@link #add} this
+   * keeps the extensions, which do not depend on stat data.
+   */
+  public void refreshStat(int position, GitFileStat stat) {
+    materialize(false);
+    entries.set(position, entries.get(position).withStat(stat));
+  }
+
+  /** The untracked cache extension, or null if the index has none or one that cannot be read. */
+  public GitUntrackedCache getUntrackedCache() {
+    if (untrackedCache == null) {
+      ByteBuffer raw = extensions.remove(GitUntrackedCache.SIGNATURE);
+      if (raw != null) {
+        untrackedCache = GitUntrackedCache.parse(raw);
+      }
+    }
+    return untrackedCache;
+  }
+
+  // replaces the untracked cache, or with null removes it
+  public void setUntrackedCache(GitUntrackedCache cache) {
+    extensions.remove(GitUntrackedCache.SIGNATURE);
+    untrackedCache = cache;
+  }
+
+  /**
+   * Stages an entry. It replaces every entry of the same path, whatever its stage, and every entry
+   * that can no longer exist next to it: a file where one of its parent directories would be, and
+   * anything below it if it was a directory before.
+   */
+  public void add(GitIndexEntry entry) {
+    String path = entry.getPath();
+    invalidateUntracked(path);
+    materialize(true);
+    removeAll(path);
+
+    // a parent directory that is staged as a file
+    for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+      removeAll(path.substring(0, slash));
+    }
+    // the path used to be a directory
+    String prefix = path + "/";
+    int start = -findPosition(prefix, 0) - 1;
+    int stop = start;
+    while (stop < entries.size() && entries.get(stop).getPath().startsWith(prefix)) {
+      stop++;
+    }
+    entries.subList(start, stop).clear();
+
+    int position = findPosition(path, entry.getStage());
+    entries.add(-position - 1, entry);
+  }
+
+  /**
+   * Removes every stage of a path.
+   *
+   * @return whether the path was in the index
+   */
+  public boolean remove(String path) {
+    // stage 0 sorts first, so this lands on the path's first entry whatever stages it has
+    int position = findPosition(path, 0);
+    if (position < 0) {
+      position = -position - 1;
+    }
+    if (position >= size() || !getPath(position).equals(path)) {
+      return false;
+    }
+    invalidateUntracked(path);
+    materialize(true);
+    removeAll(path);
+    return true;
+  }
+
+  private void invalidateUntracked(String path) {
+    GitUntrackedCache cache = getUntrackedCache();
+    if (cache != null) {
+      cache.invalidate(path);
+    }
+  }
+
+  private void removeAll(String path) {
+    int start = findPosition(path, 0);
+    if (start < 0) {
+      start = -start - 1;
+    }
+    int stop = start;
+    while (stop < entries.size() && entries.get(stop).getPath().equals(path)) {
+      stop++;
+    }
+    entries.subList(start, stop).clear();
+  }
+
+  // whether entries were added or removed since the index was read or last written
+  public boolean isChanged() {
+    return changed;
+  }
+
+  /**
+   * Writes the index through a lock taken with {@link #lock} and commits the lock, which renames
+   * the new index into place.
+   *
+   * <p>Like git, an entry whose file was modified no earlier than the index it came from, or within
+   * the second this index is written in, is written with a size of 0. Its stat data would look
+   * trustworthy once this file is older than it, although nobody may have hashed the file since its
+   * last change; the zeroed size makes the next status compare it by content instead.
+   */
+  public void write(GitLockFile lock) throws IOException {
+    int writeVersion = version;
+    if (writeVersion == 2) {
+      for (GitIndexEntry entry : getEntries()) {
+        if (entry.hasExtendedFlags()) {
+          writeVersion = 3;
+          break;
+        }
+      }
+    }
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-1 algorithm could not be access ", e);
+    }
+    BufferedOutputStream buffered = new BufferedOutputStream(lock.getOutputStream(), 1 << 16);
+    DigestOutputStream hashed = new DigestOutputStream(buffered, digest);
+    DataOutputStream out = new DataOutputStream(hashed);
+    out.writeInt(SIGNATURE);
+    out.writeInt(writeVersion);
+    out.writeInt(size());
+
+    // the new file's mtime is this second at the earliest
+    int now = (int) (System.currentTimeMillis() / 1000);
+    byte[] previous = NO_PATH;
+    for (GitIndexEntry entry : getEntries()) {
+      GitFileStat stat = entry.getStat();
+      boolean smudge = isRacy(stat) || Integer.compareUnsigned(stat.getMtimeSeconds(), now) >= 0;
+      previous = writeEntry(out, entry, smudge, writeVersion, previous);
+    }
+    for (Map.Entry<String, ByteBuffer> extension : extensions.entrySet()) {
+      ByteBuffer content = extension.getValue().duplicate();
+      out.write(extension.getKey().getBytes(StandardCharsets.US_ASCII));
+      out.writeInt(content.remaining());
+      byte[] chunk = new byte[8192];
+      while (content.hasRemaining()) {
+        int n = Math.min(chunk.length, content.remaining());
+        content.get(chunk, 0, n);
+        out.write(chunk, 0, n);
+      }
+    }
+    if (untrackedCache != null) {
+      byte[] content = untrackedCache.serialize();
+      out.write(GitUntrackedCache.SIGNATURE.getBytes(StandardCharsets.US_ASCII));
+      out.writeInt(content.length);
+      out.write(content);
+    }
+
+    // the checksum covers everything before it
+    hashed.on(false);
+    out.write(digest.digest());
+    out.flush();
+    lock.commit();
+    changed = false;
+  }
+
+  // locks, writes and commits in one go, for callers that did not read under the lock
+  public void write(GitRepository repo) throws IOException {
+    try (GitLockFile lock = lock(repo)) {
+      write(lock);
+    }
+  }
+
+  private static byte[] writeEntry(
+      DataOutputStream out, GitIndexEntry entry, boolean smudge, int version, byte[] previous)
+      throws IOException {
+    GitFileStat stat = entry.getStat();
+    out.writeInt(stat.getCtimeSeconds());
+    out.writeInt(stat.getCtimeNanos());
+    out.writeInt(stat.getMtimeSeconds());
+    out.writeInt(stat.getMtimeNanos());
+    out.writeInt(stat.getDev());
+    out.writeInt(stat.getIno());
+    out.writeInt(entry.getMode());
+    out.writeInt(stat.getUid());
+    out.writeInt(stat.getGid());
+    out.writeInt(smudge ? 0 : stat.getSize());
+    out.write(entry.getSha().toRaw());
+
+    byte[] path = entry.getPath().getBytes(StandardCharsets.UTF_8);
+    int flags = Math.min(path.length, NAME_MASK) | (entry.getStage() << FLAG_STAGE_SHIFT);
+    if (entry.isAssumeValid()) {
+      flags |= FLAG_ASSUME_VALID;
+    }
+    boolean extended = entry.hasExtendedFlags();
+    if (extended) {
+      flags |= FLAG_EXTENDED;
+    }
+    out.writeShort(flags);
+    if (extended) {
+      int extendedFlags = 0;
+      if (entry.isSkipWorktree()) {
+        extendedFlags |= EXTENDED_SKIP_WORKTREE;
+      }
+      if (entry.isIntentToAdd()) {
+        extendedFlags |= EXTENDED_INTENT_TO_ADD;
+      }
+      out.writeShort(extendedFlags);
+    }
+
+    if (version == 4) {
+      int common = 0;
+      int max = Math.min(previous.length, path.length);
+      while (common < max && previous[common] == path[common]) {
+        common++;
+      }
+      writeVarint(out, previous.length - common);
+      out.write(path, common, path.length - common);
+      out.write(0);
+    } else {
+      out.write(path);
+      // NUL terminated and padded to a multiple of 8
+      int fixed = ENTRY_FIXED_SIZE + (extended ? 2 : 0);
+      int padding = ((fixed + path.length + 8) & ~7) - fixed - path.length;
+      for (int i = 0; i < padding; i++) {
+        out.write(0);
+      }
+    }
+    return path;
+  }
+
+  private GitIndexEntry parseEntry(int position) {
+    int pos = offsets[position];
+    int mode = data.getInt(pos + 24);
+    GitFileStat stat =
+        new GitFileStat(
+            data.getInt(pos),
+            data.getInt(pos + 4),
+            data.getInt(pos + 8),
+            data.getInt(pos + 12),
+            data.getInt(pos + 16),
+            data.getInt(pos + 20),
+            mode,
+            data.getInt(pos + 28),
+            data.getInt(pos + 32),
+            data.getInt(pos + 36));
+    ObjectId sha = ObjectId.fromRaw(data, pos + 40);
+    int flags = data.getShort(pos + 60) & 0xffff;
+    int extended = (flags & FLAG_EXTENDED) != 0 ? data.getShort(pos + 62) & 0xffff : 0;
+    return new GitIndexEntry(
+        getPath(position),
+        sha,
+        mode,
+        (flags >> FLAG_STAGE_SHIFT) & 3,
+        stat,
+        (flags & FLAG_ASSUME_VALID) != 0,
+        (extended & EXTENDED_SKIP_WORKTREE) != 0,
+        (extended & EXTENDED_INTENT_TO_ADD) != 0);
+  }
+
+  // copies every entry out of the mapping so they can be changed
+  private void materialize(boolean dropExtensions) {
+    if (entries == null) {
+      List<GitIndexEntry> all = new ArrayList<>(size());
+      for (int i = 0; i < size(); i++) {
+        all.add(get(i));
+      }
+      entries = all;
+      data = null;
+      offsets = null;
+      paths = null;
+      parsed = null;
+    }
+    if (dropExtensions) {
+      extensions.clear();
+    }
+    changed = true;
+  }
+
+  private void verifyChecksum(Path path, int end) throws IOException {
+    byte[] stored = new byte[ObjectId.RAW_LENGTH];
+    data.get(end, stored);
+    boolean skipped = true;
+    for (byte b : stored) {
+      skipped &= b == 0;
+    }
+    // index.skipHash writes a zero checksum
+    if (skipped) {
+      return;
+    }
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(data.slice(0, end));
+      if (!MessageDigest.isEqual(digest.digest(), stored)) {
+        throw new IOException("Index checksum mismatch: " + path);
+      }
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-1 algorithm could not be access ", e);
+    }
+  }
+
+  private int findNul(int start, int end, Path path) throws IOException {
+    for (int i = start; i < end; i++) {
+      if (data.get(i) == 0) {
+        return i;
+      }
+    }
+    throw new IOException("Unterminated path in index: " + path);
+  }
+
+  // git's varint, the same encoding as the offset of an OFS_DELTA
+  private int readVarint(int[] cursor) {
+    int c = data.get(cursor[0]++) & 0xff;
+    int value = c & 0x7f;
+    while ((c & 0x80) != 0) {
+      c = data.get(cursor[0]++) & 0xff;
+      value = ((value + 1) << 7) | (c & 0x7f);
+    }
+    return value;
+  }
+
+  static void writeVarint(DataOutputStream out, int value) throws IOException {
+    byte[] buffer = new byte[5];
+    int pos = buffer.length - 1;
+    buffer[pos] = (byte) (value & 0x7f);
+    while ((value >>>= 7) != 0) {
+      buffer[--pos] = (byte) (0x80 | (--value & 0x7f));
+    }
+    out.write(buffer, pos, buffer.length - pos);
+  }
+
+  private static void checkVersion(int version) {
+    if (version < 2 || version > 4) {
+      throw new IllegalArgumentException("Unsupported index version " + version);
+    }
+  }
+
+  /**
+   * Orders paths the way git sorts index entries, by their UTF-8 bytes. That is the order of the
+   * code points, which differs from String.compareTo only between supplementary characters and
+   * characters from U+E000 up.
+   */
+  static int comparePaths(String a, String b) {
+    int length = Math.min(a.length(), b.length());
+    for (int i = 0; i < length; i++) {
+      char x = a.charAt(i);
+      char y = b.charAt(i);
+      if (x != y) {
+        return compareChars(x, y);
+      }
+    }
+    return a.length() - b.length();
+  }
+
+  // two different chars in the order of their UTF-8 bytes
+  static int compareChars(char x, char y) {
+    if (Character.isSurrogate(x) != Character.isSurrogate(y)) {
+      return Character.isSurrogate(x) ? 1 : -1;
+    }
+    return x - y;
+  }
+}
@@ -0,0 +1,108 @@
+package com.GitRemake;
+
+/**
+ * One path in the index: the blob it is staged as, its mode, its merge stage and the stat data the
+ * file had when it was staged. Entries are immutable; changing a path means adding a new entry.
+ */
+public class GitIndexEntry {
+  public static final int MODE_FILE = 0100644;
+  public static final int MODE_EXECUTABLE = 0100755;
+  public static final int MODE_SYMLINK = 0120000;
+  public static final int MODE_GITLINK = 0160000;
+
+  private final String path;
+  private final ObjectId sha;
+  private final int mode;
+  private final int stage;
+  private final GitFileStat stat;
+  private final boolean assumeValid;
+  private final boolean skipWorktree;
+  private final boolean intentToAdd;
+
+  public GitIndexEntry(String path, ObjectId sha, int mode, GitFileStat stat) {
+    this(path, sha, mode, 0, stat, false, false, false);
+  }
+
+  public GitIndexEntry(
+      String path,
+      ObjectId sha,
+      int mode,
+      int stage,
+      GitFileStat stat,
+      boolean assumeValid,
+      boolean skipWorktree,
+      boolean intentToAdd) {
+    if (stage < 0 || stage > 3) {
+      throw new IllegalArgumentException("Bad index stage " + stage + " for " + path);
+    }
+    this.path = path;
+    this.sha = sha;
+    this.mode = mode;
+    this.stage = stage;
+    this.stat = stat;
+    this.assumeValid = assumeValid;
+    this.skipWorktree = skipWorktree;
+    this.intentToAdd = intentToAdd;
+  }
+
+  /**
+   * The mode to stage a file with. Without core.fileMode the executable bit on disk is not trusted
+   * and the mode the path already had is kept.
+   *
+   * @param previous the path's current entry, or null
+   */
+  public static int modeFor(GitFileStat stat, boolean trustFileMode, GitIndexEntry previous) {
+    if (stat.isSymLink()) {
+      return MODE_SYMLINK;
+    }
+    if (!trustFileMode) {
+      return previous != null && previous.mode == MODE_EXECUTABLE ? MODE_EXECUTABLE : MODE_FILE;
+    }
+    return stat.isExecutable() ? MODE_EXECUTABLE : MODE_FILE;
+  }
+
+  // the path relative to the work tree, with forward slashes
+  public String getPath() {
+    return path;
+  }
+
+  public ObjectId getSha() {
+    return sha;
+  }
+
+  public int getMode() {
+    return mode;
+  }
+
+  // 0 for a normal entry, 1 to 3 for the base, ours and theirs sides of a conflict
+  public int getStage() {
+    return stage;
+  }
+
+  public GitFileStat getStat() {
+    return stat;
+  }
+
+  public boolean isAssumeValid() {
+    return assumeValid;
+  }
+
+  public boolean isSkipWorktree() {
+    return skipWorktree;
+  }
+
+  public boolean isIntentToAdd() {
+    return intentToAdd;
+  }
+
+  // skip-worktree and intent-to-add only fit in the extended flags of a version 3 entry
+  public boolean hasExtendedFlags() {
+    return skipWorktree || intentToAdd;
+  }
+
+  /** The same entry with new stat data, for refreshing an unchanged file. */
+  public GitIndexEntry withStat(GitFileStat newStat) {
+    return new GitIndexEntry(
+        path, sha, mode, stage, newStat, assumeValid, skipWorktree, intentToAdd);
+  }
+}
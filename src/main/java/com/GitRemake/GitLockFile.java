@@ -0,0 +1,84 @@
+package com.GitRemake;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A "<file>.lock" next to a file that is about to be replaced, the same protocol git uses for the
+ * index and refs. Creating the lock fails if it already exists, which keeps a second writer out.
+ * The new content is written to the lock file and {@link #commit} syncs it and renames it over the
+ * target, so readers see either the old file or the new one. Closing without committing deletes the
+ * lock and leaves the target alone.
+ */
+public class GitLockFile implements Closeable {
+  private final Path target;
+  private final Path lock;
+  private final FileChannel channel;
+  private OutputStream out;
+  private boolean done;
+
+  /** @throws IOException if the lock is held by someone else */
+  public GitLockFile(Path target) throws IOException {
+    this.target = target;
+    this.lock = target.resolveSibling(target.getFileName() + ".lock");
+    try {
+      channel = FileChannel.open(lock, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    } catch (FileAlreadyExistsException e) {
+      throw new IOException(
+          "Unable to create '"
+              + lock
+              + "': File exists. Another process seems to be running in this repository,"
+              + " or one crashed and left the lock behind; remove the file if not.",
+          e);
+    }
+  }
+
+  public Path getTarget() {
+    return target;
+  }
+
+  public Path getLockPath() {
+    return lock;
+  }
+
+  // where the new content goes, unbuffered so wrap it for small writes
+  public OutputStream getOutputStream() {
+    if (out == null) {
+      out = Channels.newOutputStream(channel);
+    }
+    return out;
+  }
+
+  // syncs the new content and renames it over the target, releasing the lock
+  public void commit() throws IOException {
+    if (done) {
+      throw new IllegalStateException("Lock already released: " + lock);
+    }
+    channel.force(false);
+    channel.close();
+    Files.move(lock, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    done = true;
+  }
+
+  // drops the lock without touching the target, does nothing after commit
+  @Override
+  public void close() throws IOException {
+    if (done) {
+      return;
+    }
+    done = true;
+    try {
+      channel.close();
+    } finally {
+      Files.deleteIfExists(lock);
+    }
+  }
+}
@@ -0,0 +1,273 @@
+package com.GitRemake;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Repository-scoped cache of parsed objects keyed by SHA-1 and bounded by the bytes the objects
+ * hold rather than by how many there are, so a handful of big trees cannot push out thousands of
+ * commits. Objects are content addressed and never change, so cached instances are handed out as
+ * is and callers must treat them as read-only.
+ *
+ * <p>Reads go through a concurrent map and never block each other. Bookkeeping for the eviction
+ * policy happens under a lock that readers only try to take, so a contended hit skips the recency
+ * update instead of waiting.
+ */
+public class GitObjectCache {
+  // rough per-entry cost of the map node, key and object header
+  private static final long ENTRY_OVERHEAD = 96;
+
+  /** Decides which entry leaves when the cache is over its byte limit. */
+  public interface EvictionPolicy {
+    // called for every lookup, including those of keys that are not cached
+    void recordAccess(ObjectId key);
+
+    void recordInsert(ObjectId key);
+
+    void recordRemove(ObjectId key);
+
+    // the key that should be evicted next, or null if nothing is tracked
+    ObjectId victim();
+
+    // whether a newly inserted candidate is worth keeping over the victim it would displace
+    boolean admit(ObjectId candidate, ObjectId victim);
+  }
+
+  /** Classic least-recently-used order; every new object is admitted. */
+  public static class LruPolicy implements EvictionPolicy {
+    private final LinkedHashMap<ObjectId, Boolean> order = new LinkedHashMap<>(64, 0.75f, true);
+
+    @Override
+    public void recordAccess(ObjectId key) {
+      order.get(key);
+    }
+
+    @Override
+    public void recordInsert(ObjectId key) {
+      order.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void recordRemove(ObjectId key) {
+      order.remove(key);
+    }
+
+    @Override
+    public ObjectId victim() {
+      return order.isEmpty() ? null : order.keySet().iterator().next();
+    }
+
+    @Override
+    public boolean admit(ObjectId candidate, ObjectId victim) {
+      return true;
+    }
+  }
+
+  /**
+   * LRU order with a TinyLFU admission filter: a count-min sketch estimates how often each key was
+   * requested, and a new object only displaces the LRU victim if it has been asked for more often.
+   * One-off reads such as a big blob during checkout then stop flushing the hot trees and commits.
+   * Counters are halved periodically so old popularity fades.
+   */
+  public static class TinyLfuPolicy extends LruPolicy {
+    private final int[][] sketch;
+    private final int[] seeds;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    public TinyLfuPolicy(int expectedEntries) {
+      int width = Integer.highestOneBit(Math.max(expectedEntries, 64) * 2);
+      this.sketch = new int[4][width];
+      this.mask = width - 1;
+      this.sampleSize = width * 10;
+      this.seeds = new int[4];
+      for (int i = 0; i < seeds.length; i++) {
+        seeds[i] = ThreadLocalRandom.current().nextInt() | 1;
+      }
+    }
+
+    // every lookup, hit or miss, so an object is inserted right after the access that counted it
+    @Override
+    public void recordAccess(ObjectId key) {
+      super.recordAccess(key);
+      increment(key);
+    }
+
+    @Override
+    public boolean admit(ObjectId candidate, ObjectId victim) {
+      return frequency(candidate) > frequency(victim);
+    }
+
+    private void increment(ObjectId key) {
+      int hash = key.hashCode();
+      for (int i = 0; i < sketch.length; i++) {
+        int slot = index(hash, i);
+        if (sketch[i][slot] < Integer.MAX_VALUE) {
+          sketch[i][slot]++;
+        }
+      }
+      if (++additions >= sampleSize) {
+        // aging: halve every counter so the sketch tracks recent popularity
+        for (int[] row : sketch) {
+          for (int j = 0; j < row.length; j++) {
+            row[j] >>>= 1;
+          }
+        }
+        additions /= 2;
+      }
+    }
+
+    private int frequency(ObjectId key) {
+      int hash = key.hashCode();
+      int min = Integer.MAX_VALUE;
+      for (int i = 0; i < sketch.length; i++) {
+        min = Math.min(min, sketch[i][index(hash, i)]);
+      }
+      return min;
+    }
+
+    private int index(int hash, int row) {
+      int h = hash * seeds[row];
+      return (h ^ (h >>> 16)) & mask;
+    }
+  }
+
+  private static class Entry {
+    final GitObject object;
+    final long weight;
+
+    Entry(GitObject object, long weight) {
+      this.object = object;
+      this.weight = weight;
+    }
+  }
+
+  private final long maxBytes;
+  private final EvictionPolicy policy;
+  private final Map<ObjectId, Entry> entries = new ConcurrentHashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private long currentBytes;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public GitObjectCache(long maxBytes, EvictionPolicy policy) {
+    this.maxBytes = maxBytes;
+    this.policy = policy;
+  }
+
+  public GitObject get(ObjectId sha) {
+    Entry entry = entries.get(sha);
+    if (entry == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    // misses count too: an admission policy has to see how often an object is asked for before
+    // it ever gets in
+    if (lock.tryLock()) {
+      try {
+        policy.recordAccess(sha);
+      } finally {
+        lock.unlock();
+      }
+    }
+    return entry == null ? null : entry.object;
+  }
+
+  /**
+   * Adds an object, evicting others until the cache is back under its byte limit.
+   *
+   * @param size the size of the object's content, used to weigh it
+   */
+  public void put(ObjectId sha, GitObject object, long size) {
+    long weight = size + ENTRY_OVERHEAD;
+    // anything that would take a big slice of the cache on its own is not worth keeping
+    if (weight > maxBytes / 8) {
+      return;
+    }
+
+    lock.lock();
+    try {
+      if (entries.containsKey(sha)) {
+        return;
+      }
+      entries.put(sha, new Entry(object, weight));
+      policy.recordInsert(sha);
+      currentBytes += weight;
+
+      while (currentBytes > maxBytes) {
+        ObjectId victim = policy.victim();
+        if (victim == null) {
+          break;
+        }
+        // the newest entry is also the victim when it is the only one left
+        if (!victim.equals(sha) && !policy.admit(sha, victim)) {
+          victim = sha;
+        }
+        remove(victim);
+        evictions.increment();
+        if (victim.equals(sha)) {
+          break;
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void remove(ObjectId sha) {
+    Entry removed = entries.remove(sha);
+    policy.recordRemove(sha);
+    if (removed != null) {
+      currentBytes -= removed.weight;
+    }
+  }
+
+  public void clear() {
+    lock.lock();
+    try {
+      for (ObjectId sha : entries.keySet()) {
+        policy.recordRemove(sha);
+      }
+      entries.clear();
+      currentBytes = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public long getCurrentBytes() {
+    lock.lock();
+    try {
+      return currentBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "object cache: %d hits, %d misses, %d evictions, %d/%d bytes",
+        getHits(), getMisses(), getEvictions(), getCurrentBytes(), maxBytes);
+  }
+}
@@ -0,0 +1,384 @@
+package com.GitRemake;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sorted, memory-mapped list of every packed object id in the repository with the types known
+ * so far, plus the loose ids of the fan-out directories lookups have touched. Resolving an
+ * abbreviated id, listing the candidates of an ambiguous one and computing the shortest unique
+ * abbreviation are each a binary search instead of a scan of every pack index.
+ *
+ * <p>The packed ids live in objects/info/id-index:
+ *
+ * <pre>
+ *   "WIDX", version, object count, pack signature (8 bytes)
+ *   256 fanout counts, the sorted 20-byte ids, one type byte per id, SHA-1 of everything above
+ * </pre>
+ *
+ * The file only changes when the set of packs does, on repack or fetch. A rebuild only merges the
+ * ids of the pack indexes and reuses the types already recorded; a type of 0 is not known yet and
+ * is read from the object's header when asked for. Writing the file is best effort: where
+ * objects/info cannot be written, such as a read-only clone or someone else's shared repository,
+ * the rebuilt index is kept in memory instead.
+ *
+ * <p>Loose objects come and go with every write, so they stay out of it: a lookup stats the one
+ * fan-out directory its prefix falls in and lists it again only if its mtime moved, which costs
+ * the objects of that directory rather than the whole repository.
+ */
+public class GitObjectIndex {
+  private static final int MAGIC = 0x57494458; // "WIDX"
+  // version 1 also held the loose ids and the fan-out mtimes they were listed at
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 12;
+  private static final int FANOUT_OFFSET = HEADER_SIZE + 8;
+  private static final int ID_OFFSET = FANOUT_OFFSET + 256 * 4;
+
+  // the loose ids of one fan-out directory, sorted, as of the directory's mtime
+  private static class LooseBucket {
+    final long mtime;
+    final ObjectId[] ids;
+
+    LooseBucket(long mtime, ObjectId[] ids) {
+      this.mtime = mtime;
+      this.ids = ids;
+    }
+  }
+
+  private final GitRepository repo;
+  private final LooseBucket[] loose = new LooseBucket[256];
+  // the mapped file, or the rebuilt index in memory when it could not be written
+  private ByteBuffer data;
+  private int count;
+  private long packSignature;
+
+  public GitObjectIndex(GitRepository repo) {
+    this.repo = repo;
+  }
+
+  /**
+   * Finds every object whose name starts with the hex prefix.
+   *
+   * @param limit stop after this many matches
+   */
+  public synchronized List<ObjectId> findByPrefix(String prefix, int limit) throws IOException {
+    ObjectId lowest = ObjectId.fromString(prefix + "0".repeat(40 - prefix.length()));
+    ObjectId highest = ObjectId.fromString(prefix + "f".repeat(40 - prefix.length()));
+    ensurePacked();
+
+    TreeSet<ObjectId> matches = new TreeSet<>();
+    int index = lowerBound(lowest);
+    while (index < count && matches.size() < limit) {
+      ObjectId id = idAt(index);
+      if (!id.startsWith(prefix)) {
+        break;
+      }
+      matches.add(id);
+      index++;
+    }
+    // a prefix of one hex digit spans sixteen fan-out directories, any longer one a single one
+    for (int bucket = lowest.getFirstByte(); bucket <= highest.getFirstByte(); bucket++) {
+      ObjectId[] ids = looseIds(bucket);
+      for (int i = looseLowerBound(ids, lowest); i < ids.length; i++) {
+        if (!ids[i].startsWith(prefix)) {
+          break;
+        }
+        matches.add(ids[i]);
+      }
+    }
+    List<ObjectId> result = new ArrayList<>(matches);
+    return result.size() > limit ? result.subList(0, limit) : result;
+  }
+
+  // the recorded type of an object, or null if it is not in the repository
+  public synchronized String getType(ObjectId id) throws IOException {
+    ensurePacked();
+    int index = lowerBound(id);
+    if (index < count && idAt(index).equals(id)) {
+      int type = data.get(typeOffset(index));
+      if (type != 0) {
+        return GitPackFile.typeName(type);
+      }
+    }
+    if (index < count && idAt(index).equals(id)
+        || Arrays.binarySearch(looseIds(id.getFirstByte()), id) >= 0) {
+      ObjectInfo info = GitObjectUtil.objectInfo(repo, id);
+      return info == null ? null : info.type;
+    }
+    return null;
+  }
+
+  /**
+   * The shortest abbreviation of id, at least minLength digits, that no other object shares. The
+   * only objects that can share a prefix are the neighbours in sorted order, so it is enough to
+   * compare against those two.
+   */
+  public synchronized String abbreviate(ObjectId id, int minLength) throws IOException {
+    ensurePacked();
+    int index = lowerBound(id);
+    int length = minLength;
+
+    int before = index - 1;
+    int after = index < count && idAt(index).equals(id) ? index + 1 : index;
+    if (before >= 0) {
+      length = Math.max(length, commonPrefix(id, idAt(before)) + 1);
+    }
+    if (after < count) {
+      length = Math.max(length, commonPrefix(id, idAt(after)) + 1);
+    }
+
+    // and the same for the loose ids next to it
+    ObjectId[] ids = looseIds(id.getFirstByte());
+    int looseIndex = looseLowerBound(ids, id);
+    int looseAfter =
+        looseIndex < ids.length && ids[looseIndex].equals(id) ? looseIndex + 1 : looseIndex;
+    if (looseIndex > 0) {
+      length = Math.max(length, commonPrefix(id, ids[looseIndex - 1]) + 1);
+    }
+    if (looseAfter < ids.length) {
+      length = Math.max(length, commonPrefix(id, ids[looseAfter]) + 1);
+    }
+    return id.abbreviate(length);
+  }
+
+  private static int commonPrefix(ObjectId a, ObjectId b) {
+    int length = 0;
+    while (length < ObjectId.HEX_LENGTH && a.getNibble(length) == b.getNibble(length)) {
+      length++;
+    }
+    return length;
+  }
+
+  private ObjectId idAt(int index) {
+    return ObjectId.fromRaw(data, ID_OFFSET + index * ObjectId.RAW_LENGTH);
+  }
+
+  private int typeOffset(int index) {
+    return ID_OFFSET + count * ObjectId.RAW_LENGTH + index;
+  }
+
+  // first position whose id is >= the given id, searched inside its fanout bucket
+  private int lowerBound(ObjectId id) {
+    int first = id.getFirstByte();
+    int low = first == 0 ? 0 : data.getInt(FANOUT_OFFSET + (first - 1) * 4);
+    int high = data.getInt(FANOUT_OFFSET + first * 4);
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (id.compareTo(data, ID_OFFSET + mid * ObjectId.RAW_LENGTH) > 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  // maps the index, rebuilding it if the set of packs has changed
+  private void ensurePacked() throws IOException {
+    if (data == null) {
+      load();
+    }
+    long signature = packSignature(repo.getPacks());
+    if (data == null || signature != packSignature) {
+      rebuild(signature);
+    }
+  }
+
+  // the loose ids of one fan-out directory, listed again only when its mtime has moved
+  private ObjectId[] looseIds(int bucket) {
+    // read the mtime before listing so an object added during the listing makes the result stale
+    long mtime = looseMtime(bucket);
+    LooseBucket current = loose[bucket];
+    if (current != null && current.mtime == mtime) {
+      return current.ids;
+    }
+    String prefix = String.format("%02x", bucket);
+    String[] names = new File(new File(repo.getGitDir(), "objects"), prefix).list();
+    List<ObjectId> ids = new ArrayList<>();
+    if (names != null) {
+      for (String name : names) {
+        if (ObjectId.isId(prefix + name)) {
+          ids.add(ObjectId.fromString(prefix + name));
+        }
+      }
+    }
+    ObjectId[] sorted = ids.toArray(new ObjectId[0]);
+    Arrays.sort(sorted);
+    loose[bucket] = new LooseBucket(mtime, sorted);
+    return sorted;
+  }
+
+  // first position in a sorted array whose id is >= the given id
+  private static int looseLowerBound(ObjectId[] ids, ObjectId id) {
+    int position = Arrays.binarySearch(ids, id);
+    return position >= 0 ? position : -(position + 1);
+  }
+
+  private Path indexPath() {
+    return Paths.get(repo.getGitDir(), "objects", "info", "id-index");
+  }
+
+  private void load() {
+    try (FileChannel channel = FileChannel.open(indexPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (mapped.capacity() < ID_OFFSET
+          || mapped.getInt(0) != MAGIC
+          || mapped.getInt(4) != VERSION) {
+        return;
+      }
+      int entries = mapped.getInt(8);
+      if (mapped.capacity() != ID_OFFSET + (long) entries * 21 + 20) {
+        return;
+      }
+      data = mapped;
+      count = entries;
+      packSignature = mapped.getLong(HEADER_SIZE);
+    } catch (NoSuchFileException e) {
+      // no index yet, the first lookup builds it
+    } catch (IOException e) {
+      // unreadable, which a rebuild in memory gets around the same way
+    }
+  }
+
+  private void rebuild(long signature) throws IOException {
+    Map<ObjectId, Integer> types = new TreeMap<>();
+    for (GitPackFile pack : repo.getPacks()) {
+      for (int i = 0; i < pack.getObjectCount(); i++) {
+        ObjectId id = pack.getId(i);
+        if (!types.containsKey(id)) {
+          types.put(id, knownType(id));
+        }
+      }
+    }
+
+    byte[] bytes = serialize(types, signature);
+    data = ByteBuffer.wrap(bytes);
+    count = types.size();
+    packSignature = signature;
+    try {
+      write(bytes);
+    } catch (IOException e) {
+      // not ours to write; the index in memory answers just as well
+      return;
+    }
+    // map what was written rather than keep a second copy on the heap
+    ByteBuffer inMemory = data;
+    load();
+    if (data == inMemory || packSignature != signature) {
+      data = inMemory;
+      count = types.size();
+      packSignature = signature;
+    }
+  }
+
+  // the type the previous index recorded, or 0 if it did not know the object
+  private int knownType(ObjectId id) {
+    if (data != null) {
+      int index = lowerBound(id);
+      if (index < count && idAt(index).equals(id)) {
+        return data.get(typeOffset(index));
+      }
+    }
+    return 0;
+  }
+
+  // writes the index file through a temporary file and a rename
+  private void write(byte[] bytes) throws IOException {
+    Path path = indexPath();
+    Files.createDirectories(path.getParent());
+    Path temp = Files.createTempFile(path.getParent(), "tmp_id_index_", "");
+    try {
+      Files.write(temp, bytes);
+      // readable by every user of a shared repository, not just whoever rebuilt it
+      GitObjectUtil.makeReadOnly(temp);
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static byte[] serialize(Map<ObjectId, Integer> types, long signature)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(ID_OFFSET + types.size() * 21 + 20);
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(bytes, digest))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(types.size());
+        out.writeLong(signature);
+
+        int[] fanout = new int[256];
+        for (ObjectId id : types.keySet()) {
+          fanout[id.getFirstByte()]++;
+        }
+        int total = 0;
+        for (int i = 0; i < 256; i++) {
+          total += fanout[i];
+          out.writeInt(total);
+        }
+
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        for (ObjectId id : types.keySet()) {
+          id.copyRawTo(raw, 0);
+          out.write(raw);
+        }
+        for (int type : types.values()) {
+          out.writeByte(type);
+        }
+
+        // the trailer is written through the digest stream too, but after we took the digest
+        out.write(digest.digest());
+      }
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-1 algorithm could not be access ", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private long looseMtime(int bucket) {
+    Path dir = Paths.get(repo.getGitDir(), "objects", String.format("%02x", bucket));
+    try {
+      return Files.getLastModifiedTime(dir).to(TimeUnit.NANOSECONDS);
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  // identifies the current set of packs, which only changes on repack or fetch
+  private static long packSignature(List<GitPackFile> packs) {
+    List<String> names = new ArrayList<>();
+    for (GitPackFile pack : packs) {
+      names.add(pack.getPackPath().getFileName().toString());
+    }
+    names.sort(null);
+    long hash = 1125899906842597L;
+    for (String name : names) {
+      for (int i = 0; i < name.length(); i++) {
+        hash = 31 * hash + name.charAt(i);
+      }
+    }
+    return hash;
+  }
+}
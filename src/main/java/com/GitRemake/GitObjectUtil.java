@@ -1,186 +1,394 @@
 package com.GitRemake;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 public class GitObjectUtil {
+  // read and deflate buffer for objects streamed to disk
+  private static final int BUFFER_SIZE = 65536;
 
   // reads the object from inside the repository by its SHA-1 hash.
-  public static GitObject objectRead(GitRepository repo, String sha) {
+  // the result may be shared with other readers through the cache, so never modify it
+  public static GitObject objectRead(GitRepository repo, ObjectId sha) {
+    GitObjectCache cache = repo.getObjectCache();
+    GitObject cached = cache.get(sha);
+    if (cached != null) {
+      return cached;
+    }
+
+    try (ObjectStream in = objectOpen(repo, sha)) {
+      if (in == null) {
+        return null;
+      }
+      // the content array is sized from the header so it is filled exactly once
+      GitObject object = createObject(in.getType(), in.readContent());
+      cache.put(sha, object, in.getSize());
+      return object;
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading object " + sha, e);
+    }
+  }
+
+  /**
+   * Tree, parents and commit time of a commit. The commit-graph answers for every commit it covers;
+   * anything newer is parsed from its object without decoding the author or message.
+   *
+   * @return the commit's info, or null if the object does not exist
+   */
+  public static CommitInfo commitInfo(GitRepository repo, ObjectId sha) {
+    GitCommitGraph graph = repo.getCommitGraph();
+    if (graph != null) {
+      CommitInfo info = graph.lookup(sha);
+      if (info != null) {
+        return info;
+      }
+    }
+
+    GitObject cached = repo.getObjectCache().get(sha);
+    if (cached instanceof GitCommit) {
+      return ((GitCommit) cached).getInfo(sha);
+    }
+
+    try (ObjectStream in = objectOpen(repo, sha)) {
+      if (in == null) {
+        return null;
+      }
+      if (!in.getType().equals("commit")) {
+        throw new IllegalArgumentException("Error: " + sha + " is not a commit");
+      }
+      return GitCommit.parseInfo(sha, in.readContent());
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading commit " + sha, e);
+    }
+  }
+
+  /**
+   * Opens an object for streaming. The header is parsed up front so the returned stream already
+   * knows the type and size, and the body is inflated lazily as the caller reads it.
+   *
+   * @return the object body, or null if the object does not exist
+   */
+  public static ObjectStream objectOpen(GitRepository repo, ObjectId sha) throws IOException {
+    return objectOpen(repo, sha, null);
+  }
+
+  /**
+   * Opens an object, inflating it with the caller's Inflater instead of allocating one. The
+   * Inflater is reset first and belongs to the returned stream until that stream is closed, so a
+   * caller reading objects one after another can keep using the same one.
+   */
+  public static ObjectStream objectOpen(GitRepository repo, ObjectId sha, Inflater inflater)
+      throws IOException {
+    GitObjectWriter.PendingObject queued = getPending(repo, sha);
+    if (queued != null) {
+      return queued.open();
+    }
+    // packs are checked first since a lookup there is a binary search over a mapping
+    for (GitPackFile pack : repo.getPacks()) {
+      long offset = pack.findOffset(sha);
+      if (offset >= 0) {
+        return pack.open(repo, offset, inflater);
+      }
+    }
+
     // get the path to the object "file" inside the objects dir
-    String path = repo.repoFile("objects", sha.substring(0, 2), sha.substring(2));
+    String name = sha.name();
+    String path = repo.repoFile("objects", name.substring(0, 2), name.substring(2));
     // check if valid path
     if (path == null || !new File(path).isFile()) {
       return null;
     }
+
+    FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+    InputStream in;
+    if (inflater == null) {
+      // pooled, and returned to the pool when the caller closes the stream
+      in = GitZlib.inflate(Channels.newInputStream(channel), 8192);
+    } else {
+      inflater.reset();
+      in = new InflaterInputStream(Channels.newInputStream(channel), inflater, 8192);
+    }
     try {
-      byte[] rawData = readAndDecompress(path);
+      return readHeader(in);
+    } catch (IOException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+  }
 
-      ObjectInfo info = parseHeader(rawData);
+  /**
+   * Type and size of an object from its header alone. A loose object has only its first few dozen
+   * bytes read and inflated and a packed one is answered from its entry header, so asking about a
+   * large blob costs no more than asking about a small one.
+   *
+   * @return the header, or null if the object does not exist
+   */
+  public static ObjectInfo objectInfo(GitRepository repo, ObjectId sha) throws IOException {
+    GitObjectWriter.PendingObject queued = getPending(repo, sha);
+    if (queued != null) {
+      return new ObjectInfo(queued.type, queued.content.length);
+    }
+    for (GitPackFile pack : repo.getPacks()) {
+      long offset = pack.findOffset(sha);
+      if (offset >= 0) {
+        return pack.getInfo(repo, offset);
+      }
+    }
 
-      return createObject(info.type, info.content);
-    } catch (IOException e) {
-      throw new RuntimeException("Error reading object " + sha, e);
+    Path path = loosePath(repo, sha);
+    if (!Files.isRegularFile(path)) {
+      return null;
+    }
+    // a small read buffer, the header compresses to a handful of bytes
+    try (InputStream in = GitZlib.inflate(Files.newInputStream(path), 64)) {
+      ObjectStream header = readHeader(in);
+      return new ObjectInfo(header.getType(), header.getSize());
     }
   }
 
-  public static String objectWrite(GitRepository repo, GitObject object) {
+  public static ObjectId objectWrite(GitRepository repo, GitObject object) {
+    GitObjectWriter writer = repo == null ? null : repo.getObjectWriter();
+    if (writer != null) {
+      try {
+        return writer.write(object);
+      } catch (IOException e) {
+        throw new RuntimeException("Error writing object", e);
+      }
+    }
     byte[] data = object.serialize();
 
     // Format: <type> <size>/0<content>
-    String header = object.getType() + " " + data.length;
-    byte[] headerBytes = header.getBytes();
-
-    byte[] result = new byte[headerBytes.length + 1 + data.length];
-    // we now add the header part: <type> <size>
-    System.arraycopy(headerBytes, 0, result, 0, headerBytes.length);
-    result[headerBytes.length] = 0; // now we add the null "/0" byte
-    // and finally the content
-    System.arraycopy(data, 0, result, headerBytes.length + 1, data.length);
-
-    // compute the hash after we have the header + content
-    String sha = computeSha1(result);
-
-    if (repo != null) {
-      // Create the file path to the object
-      // Example the path to e673d1b7eaa0aa01b5bc2442d570a765bdaae751 is
-      // .git/objects/e6/73d1b7eaa0aa01b5bc2442d570a765bdaae751
-      String path = repo.repoFile(true, "objects", sha.substring(0, 2), sha.substring(2));
-
-      File objectFile = new File(path);
-      // only write if file does not exist aka the hash is new
-      // because there is no modify in Git
-      // when the content change the hash changes also resulting in a new file
-      if (!objectFile.exists()) {
+    byte[] headerBytes = header(object.getType(), data.length);
+
+    // compute the hash over header + content, fed in two parts so they are never copied together
+    MessageDigest md = newSha1();
+    md.update(headerBytes);
+    md.update(data);
+    ObjectId sha = ObjectId.fromRaw(md.digest());
+
+    // only write if the object is new, there is no modify in Git:
+    // when the content change the hash changes also resulting in a new file
+    if (repo != null && !objectExists(repo, sha)) {
+      try {
+        Path temp = createTempObject(repo);
+        Deflater deflater = GitZlib.getDeflater(repo.getLooseCompression());
         try {
-          byte[] compressed = compress(result);
-          Files.write(objectFile.toPath(), compressed);
-        } catch (IOException e) {
-          throw new RuntimeException("Error writing object " + sha, e);
+          // deflated straight into the file instead of into another buffer first
+          try (OutputStream out =
+              new DeflaterOutputStream(Files.newOutputStream(temp), deflater, BUFFER_SIZE)) {
+            out.write(headerBytes);
+            out.write(data);
+          }
+          moveIntoPlace(repo, temp, sha);
+        } finally {
+          GitZlib.release(deflater);
+          Files.deleteIfExists(temp);
         }
+      } catch (IOException e) {
+        throw new RuntimeException("Error writing object " + sha, e);
       }
     }
     return sha;
   }
 
-  // create the hashing for Git's objects
-  private static String computeSha1(byte[] data) {
-    try {
-      MessageDigest md = MessageDigest.getInstance("SHA-1");
-      byte[] hashedBytes = md.digest(data);
-
-      StringBuilder hexString = new StringBuilder();
-      for (byte b : hashedBytes) {
-        // converting the bytes into hexidecimal and shortening it with the AND 0xff
-        String hex = Integer.toHexString(0xff & b);
-        // if it was the first char in a string like "5" then we make it into "05" to get a valid
-        // hexidecimal string
-        if (hex.length() == 1) {
-          hexString.append("0");
-        }
-        hexString.append(hex);
-      }
-      return hexString.toString();
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException("SHA-1 algorithm could not be access ", e);
+  /**
+   * Hashes a file as an object of the given type and, if repo is not null, stores it as a loose
+   * object. The size comes from the file's metadata, so the header is known up front and the
+   * content is hashed and deflated as it streams through; memory use is the same for a 2 GB file
+   * as for a small one. Nothing checks that the content parses as its type.
+   */
+  public static ObjectId objectWrite(GitRepository repo, String type, Path file)
+      throws IOException {
+    long size = Files.size(file);
+    try (InputStream in = Files.newInputStream(file)) {
+      return objectWrite(repo, type, size, in);
     }
   }
 
-  private static byte[] compress(byte[] data) {
-    // deflater to compress the data
-    Deflater deflater = new Deflater();
-    deflater.setInput(data);
-    deflater.finish();
-
-    ByteArrayOutputStream output = new ByteArrayOutputStream(data.length);
-    // create a buffer to store
-    byte[] buffer = new byte[1024];
-    while (!deflater.finished()) {
-      // compress as many bytes as possible and the write it to the output
-      int count = deflater.deflate(buffer);
-      output.write(buffer, 0, count);
+  /**
+   * Hashes exactly size bytes from in as an object of the given type and, if repo is not null,
+   * stores it as a loose object, in one pass. The object is written through a DigestOutputStream
+   * and a DeflaterOutputStream into a temporary file under objects/, and renamed to its final
+   * path once the digest gives its id. An object the repository already has is discarded instead.
+   *
+   * @throws IOException if in does not hold exactly size bytes, for example because the file
+   *     changed while it was read
+   */
+  public static ObjectId objectWrite(GitRepository repo, String type, long size, InputStream in)
+      throws IOException {
+    MessageDigest md = newSha1();
+    if (repo == null) {
+      try (OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), md)) {
+        copyObject(type, size, in, out);
+      }
+      return ObjectId.fromRaw(md.digest());
     }
+
+    Path temp = createTempObject(repo);
+    Deflater deflater = GitZlib.getDeflater(repo.getLooseCompression());
     try {
-      output.close();
-    } catch (IOException e) {
-      throw new RuntimeException("Error closing output stream", e);
+      // the digest sees the bytes before they are deflated
+      try (OutputStream out =
+          new DigestOutputStream(
+              new DeflaterOutputStream(Files.newOutputStream(temp), deflater, BUFFER_SIZE), md)) {
+        copyObject(type, size, in, out);
+      }
+      ObjectId sha = ObjectId.fromRaw(md.digest());
+      if (!objectExists(repo, sha)) {
+        moveIntoPlace(repo, temp, sha);
+      }
+      return sha;
+    } finally {
+      GitZlib.release(deflater);
+      Files.deleteIfExists(temp);
     }
-    return output.toByteArray();
   }
 
-  private static byte[] readAndDecompress(String path) throws IOException {
-    // Verify the file exist and read
-    File objectFile = new File(path);
-    byte[] compressed = Files.readAllBytes(objectFile.toPath());
-
-    Inflater inflater = new Inflater();
-    inflater.setInput(compressed);
+  // writes the header and then copies exactly size bytes of content from in to out
+  private static void copyObject(String type, long size, InputStream in, OutputStream out)
+      throws IOException {
+    out.write(header(type, size));
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long remaining = size;
+    while (remaining > 0) {
+      int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+      if (n < 0) {
+        throw new IOException("Content ended " + remaining + " bytes short of " + size);
+      }
+      out.write(buffer, 0, n);
+      remaining -= n;
+    }
+    if (in.read() >= 0) {
+      throw new IOException("Content is longer than " + size + " bytes");
+    }
+  }
 
-    // Create a buffer to hold the decomp data
-    byte[] buffer = new byte[8192]; // Give 8KB
-    int dataLength = 0;
+  // the "<type> <size>\0" header that is hashed and stored in front of the content
+  static byte[] header(String type, long size) {
+    return (type + " " + size + "\0").getBytes(StandardCharsets.US_ASCII);
+  }
 
-    try {
-      // start decompressing the data
-      dataLength = inflater.inflate(buffer);
-    } catch (DataFormatException e) {
-      throw new IOException("Error decompressing object: " + e.getMessage());
+  // whether the repository already has the object, packed, loose or still queued for writing
+  public static boolean objectExists(GitRepository repo, ObjectId sha) {
+    if (getPending(repo, sha) != null) {
+      return true;
+    }
+    for (GitPackFile pack : repo.getPacks()) {
+      if (pack.contains(sha)) {
+        return true;
+      }
     }
-    // return only the part that has data instead of the whole buffer
-    return Arrays.copyOfRange(buffer, 0, dataLength);
+    return Files.isRegularFile(loosePath(repo, sha));
   }
 
-  private static ObjectInfo parseHeader(byte[] rawData) {
-    // find the white space between the type and size
-    int whiteSpacePos = findNextByte(rawData, (byte) ' ', 0);
-    // while (rawData[whiteSpacePos] != (byte) ' ' && whiteSpacePos < rawData.length) {
-    //   whiteSpacePos++;
-    // }
+  // an object the write-behind writer has accepted but not stored yet
+  private static GitObjectWriter.PendingObject getPending(GitRepository repo, ObjectId sha) {
+    GitObjectWriter writer = repo.getObjectWriter();
+    return writer == null ? null : writer.getPending(sha);
+  }
+
+  // Example the path to e673d1b7eaa0aa01b5bc2442d570a765bdaae751 is
+  // .git/objects/e6/73d1b7eaa0aa01b5bc2442d570a765bdaae751
+  private static Path loosePath(GitRepository repo, ObjectId sha) {
+    String name = sha.name();
+    return Paths.get(repo.getGitDir(), "objects", name.substring(0, 2), name.substring(2));
+  }
 
-    if (whiteSpacePos >= rawData.length) {
-      throw new RuntimeException("Malformed object: no separator found");
+  /**
+   * Stores an already compressed object as a loose file. The data goes to a temporary file first
+   * and is renamed into place, so a reader never sees a half written object.
+   */
+  static void writeLoose(GitRepository repo, ObjectId sha, byte[] compressed) throws IOException {
+    Path temp = createTempObject(repo);
+    try {
+      Files.write(temp, compressed);
+      moveIntoPlace(repo, temp, sha);
+    } finally {
+      Files.deleteIfExists(temp);
     }
+  }
 
-    // Extract the type
-    String type = new String(Arrays.copyOfRange(rawData, 0, whiteSpacePos));
+  // a temporary file under objects/, on the same file system as every loose object path
+  static Path createTempObject(GitRepository repo) throws IOException {
+    Path objects = Paths.get(repo.getGitDir(), "objects");
+    Files.createDirectories(objects);
+    return Files.createTempFile(objects, "tmp_obj_", "");
+  }
 
-    // Find the size between type and null char
-    // int nullPos = whiteSpacePos + 1;
-    // while (rawData[nullPos] != 0 && nullPos < rawData.length) {
-    //   nullPos++;
-    // }
-    int nullPos = findNextByte(rawData, (byte) 0, whiteSpacePos + 1);
+  private static void moveIntoPlace(GitRepository repo, Path temp, ObjectId sha)
+      throws IOException {
+    Path path = loosePath(repo, sha);
+    Files.createDirectories(path.getParent());
+    makeReadOnly(temp);
+    Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+  }
 
-    if (nullPos >= rawData.length) {
-      throw new IllegalArgumentException("Malformed object: no null terminator found");
+  /**
+   * Gives a finished file under objects/ the mode git gives it, 0444, before it is renamed into
+   * place. Temporary files start out readable by their owner only, which would lock the other
+   * users of a shared repository out; 0444 is readable for everyone whatever core.sharedRepository
+   * says. File systems without POSIX permissions are left alone.
+   */
+  static void makeReadOnly(Path file) throws IOException {
+    try {
+      Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("r--r--r--"));
+    } catch (UnsupportedOperationException e) {
+      // nothing to set
     }
+  }
 
-    // Extract the size
-    String sizeStr = new String(Arrays.copyOfRange(rawData, whiteSpacePos + 1, nullPos));
-    int size = Integer.parseInt(sizeStr);
+  private static MessageDigest newSha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-1 algorithm could not be access ", e);
+    }
+  }
 
-    // Extract the content (everything behind the size)
-    byte[] content = Arrays.copyOfRange(rawData, nullPos + 1, rawData.length);
+  // parses the "<type> <size>\0" header and leaves the stream positioned at the content
+  private static ObjectStream readHeader(InputStream in) throws IOException {
+    // the header is tiny so we read it a byte at a time instead of inflating the whole object
+    StringBuilder type = new StringBuilder();
+    int b;
+    while ((b = in.read()) != ' ') {
+      if (b == -1 || type.length() > 16) {
+        throw new IOException("Malformed object: no separator found");
+      }
+      type.append((char) b);
+    }
 
-    // Validate that content size matches the specify size
-    if (content.length != size) {
-      throw new IllegalStateException(
-          "Object size mismatch: Expected " + content.length + " but got " + size);
+    long size = 0;
+    int digits = 0;
+    while ((b = in.read()) != 0) {
+      if (b < '0' || b > '9' || digits > 19) {
+        throw new IOException("Malformed object: no null terminator found");
+      }
+      size = size * 10 + (b - '0');
+      digits++;
     }
-    return new ObjectInfo(type, content);
+    if (digits == 0) {
+      throw new IOException("Malformed object: missing size");
+    }
+    return new ObjectStream(type.toString(), size, in);
   }
 
   public static GitObject createObject(String type, byte[] data) {
@@ -198,8 +406,68 @@ public class GitObjectUtil {
     }
   }
 
+  /**
+   * The shortest prefix of id, at least minLength hex digits, that names no other object in the
+   * repository. Used to print ids in log output.
+   */
+  public static String abbreviate(GitRepository repo, ObjectId id, int minLength) {
+    try {
+      return repo.getObjectIndex().abbreviate(id, minLength);
+    } catch (IOException e) {
+      return id.abbreviate(minLength);
+    }
+  }
+
+  /**
+   * Resolves a name (HEAD, a full or abbreviated id, a tag or branch) to an object id. With a type,
+   * annotated tags are followed to their target and commits to their tree until an object of that
+   * type turns up; the header is enough to tell the type, so nothing is inflated unless it has to
+   * be followed.
+   *
+   * @param type the wanted object type, or null to take whatever the name points at
+   * @return the id, or null if the name does not resolve to an object of that type
+   */
+  public static ObjectId objectFind(GitRepository repo, String name, String type) {
+    ObjectId sha = resolveName(repo, name);
+    if (sha == null || type == null) {
+      return sha;
+    }
+
+    try {
+      while (true) {
+        ObjectInfo info = objectInfo(repo, sha);
+        if (info == null) {
+          return null;
+        }
+        if (info.type.equals(type)) {
+          return sha;
+        }
+        if (info.type.equals("tag")) {
+          sha = ((GitTag) objectRead(repo, sha)).getObject();
+        } else if (info.type.equals("commit") && type.equals("tree")) {
+          sha = commitInfo(repo, sha).tree;
+        } else {
+          return null;
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading object " + sha, e);
+    }
+  }
+
   // TODO: implement the rest of the method
-  public static String objectFind(GitRepository repo, String name, String type) {
+  private static ObjectId resolveName(GitRepository repo, String name) {
+    // ref@{n} and ref@{date} are answered from the ref's log
+    int at = name.indexOf("@{");
+    if (at >= 0 && name.endsWith("}")) {
+      try {
+        String spec = name.substring(at + 2, name.length() - 1);
+        return resolveReflog(repo, name.substring(0, at), spec);
+      } catch (IOException e) {
+        return null;
+      }
+    }
+
     if (name.equals("HEAD")) {
       try {
         return GitRefUtil.refResolve(repo, "HEAD");
@@ -210,64 +478,43 @@ public class GitObjectUtil {
 
     // check if name is a full hash
     // if so just return name
-    if (name.matches("[0-9a-f]{40}")) return name;
+    if (ObjectId.isId(name)) return ObjectId.fromString(name);
 
     // check if abbrerviated hash (atleast 4 hex char)
     if (name.matches("[0-9a-f]{4,39}")) {
-      // try to find the object with the prefix
-      String prefix = name.substring(0, 2);
-      String subfix = name.substring(2);
-
+      // one binary search in the id index covers loose and packed objects
+      List<ObjectId> matches;
       try {
-        String dirPath = repo.repoDir(false, "objects/" + prefix);
-        Path objectDir = Paths.get(dirPath);
-        if (Files.exists(objectDir)) {
-          try (Stream<Path> path = Files.list(objectDir)) {
-            List<String> matches =
-                path.map(p -> p.getFileName().toString())
-                    .filter(f -> f.startsWith(subfix))
-                    .map(f -> prefix + f)
-                    .collect(Collectors.toList());
-
-            if (matches.size() == 1) {
-              return matches.get(0);
-            } else if (matches.size() > 1) {
-              throw new IOException("Ambiguous has prefix: " + name);
-            }
-          }
-        }
-
+        matches = repo.getObjectIndex().findByPrefix(name, 16);
       } catch (IOException e) {
         return null;
       }
-    }
-    // THIS IS FOR WHEN USE ENTER A STRING (reach when not a hash)
-    // Ex: git show main
-    // Check if it's a tag
-    try {
-      String tagRef = GitRefUtil.refResolve(repo, "refs/tags/" + name);
-      if (tagRef != null) {
-        return tagRef;
-      }
-    } catch (IOException e) {
-      // Ignore and continue
-    }
 
-    // Check if it's a branch
-    try {
-      String branchRef = GitRefUtil.refResolve(repo, "refs/heads/" + name);
-      if (branchRef != null) {
-        return branchRef;
+      if (matches.size() == 1) {
+        return matches.get(0);
+      } else if (matches.size() > 1) {
+        StringBuilder message = new StringBuilder("Ambiguous hash prefix: " + name);
+        message.append("\nThe candidates are:");
+        for (ObjectId candidate : matches) {
+          String candidateType;
+          try {
+            candidateType = repo.getObjectIndex().getType(candidate);
+          } catch (IOException e) {
+            candidateType = "unknown";
+          }
+          message.append("\n  ").append(candidate.abbreviate(name.length() + 3)).append(' ');
+          message.append(candidateType);
+        }
+        throw new AmbiguousObjectException(message.toString());
       }
-    } catch (IOException e) {
-      // Ignore and continue
     }
-
-    // Check if it's a remote branch
+    // THIS IS FOR WHEN USE ENTER A STRING (reach when not a hash)
+    // Ex: git show main
+    // a tag, a branch or a remote branch, in that order
     try {
-      String remoteRef = GitRefUtil.refResolve(repo, "refs/remotes/" + name);
-      if (remoteRef != null) {
-        return remoteRef;
+      ObjectId ref = GitRefUtil.refResolveShort(repo, name);
+      if (ref != null) {
+        return ref;
       }
     } catch (IOException e) {
       // Ignore and continue
@@ -277,12 +524,41 @@ public class GitObjectUtil {
     return null;
   }
 
-  private static int findNextByte(byte[] raw, byte target, int position) {
-    for (int i = position; i < raw.length; i++) {
-      if (raw[i] == target) {
-        return i;
+  /**
+   * The value a ref had n updates ago, or at a date, from its reflog. Without a ref name that is
+   * the branch HEAD points at, or HEAD itself when it is detached.
+   */
+  private static ObjectId resolveReflog(GitRepository repo, String ref, String spec)
+      throws IOException {
+    String name;
+    if (ref.isEmpty()) {
+      String head = GitRefUtil.refRead(repo, "HEAD");
+      name = head != null && head.startsWith("ref: ") ? head.substring(5) : "HEAD";
+    } else {
+      name = GitRefUtil.refFullName(repo, ref);
+      if (name == null) {
+        return null;
+      }
+    }
+    if (spec.startsWith("-")) {
+      throw new IllegalArgumentException("Checkout history is not supported: @{" + spec + "}");
+    }
+
+    // like git, a number this large is a timestamp rather than a count
+    if (spec.matches("\\d{1,8}")) {
+      int n = Integer.parseInt(spec);
+      GitReflog.Entry entry = GitReflog.nth(repo, name, n);
+      if (entry == null) {
+        int count = GitReflog.read(repo, name).size();
+        throw new IllegalArgumentException(
+            "Log for '" + name + "' only has " + count + " entries");
       }
+      return entry.getNewId();
+    }
+    ObjectId id = GitReflog.at(repo, name, GitDate.parse(spec));
+    if (id == null) {
+      throw new IllegalArgumentException("Log for '" + name + "' is empty");
     }
-    return -1;
+    return id;
   }
 }
@@ -0,0 +1,297 @@
+package com.GitRemake;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Write-behind store for loose objects. {@link #write} hashes the object in the caller's thread and
+ * returns its id straight away; a background thread deflates queued objects and writes them in
+ * batches. Objects still waiting are served to readers from memory (see {@link #getPending}), so
+ * the repository looks the same as if every write had completed.
+ *
+ * <p>Every batch is made durable the way git's batched fsync mode does it: each object goes to a
+ * temporary file first, all of the batch's files are fsynced back to back, then renamed to their
+ * final paths, and each touched directory is fsynced once for the whole batch. A crash therefore
+ * leaves either a complete object or none, never a torn one.
+ *
+ * <p>Nothing here is durable until {@link #flush} returns, so a ref must never be pointed at an
+ * object before its writer was flushed. {@link GitRefUtil#refCreate} does that through {@link
+ * GitRepository#flushObjects}. The worker is a daemon thread, so a process that exits without
+ * calling {@link #close} loses whatever was still queued.
+ *
+ * <p>A batch that fails to write fails every later write and flush too, until {@link #reset}: the
+ * objects it held are gone, and a flush that succeeded afterwards would let a ref point at them.
+ */
+public class GitObjectWriter implements Closeable {
+  /** An object accepted by {@link #write} whose loose file does not exist yet. */
+  public static class PendingObject {
+    final ObjectId id;
+    final String type;
+    final byte[] content;
+
+    PendingObject(ObjectId id, String type, byte[] content) {
+      this.id = id;
+      this.type = type;
+      this.content = content;
+    }
+
+    public ObjectStream open() {
+      return new ObjectStream(type, content.length, new ByteArrayInputStream(content));
+    }
+  }
+
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  // queued after the last object by close
+  private static final PendingObject END = new PendingObject(null, null, null);
+
+  private final GitRepository repo;
+  private final int batchSize;
+  private final BlockingQueue<PendingObject> queue;
+  private final Map<ObjectId, PendingObject> pending = new ConcurrentHashMap<>();
+  private final Thread worker;
+
+  // guarded by this
+  private long submitted;
+  private long completed;
+  private IOException failure;
+  private boolean closed;
+
+  /**
+   * @param batchSize most objects written per batch, and so per round of fsyncs; up to four batches
+   *     can be queued before {@link #write} blocks
+   */
+  public GitObjectWriter(GitRepository repo, int batchSize) {
+    this.repo = repo;
+    this.batchSize = batchSize;
+    this.queue = new ArrayBlockingQueue<>(batchSize * 4);
+    this.worker = new Thread(this::run, "object-writer");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * Hashes the object and queues it for writing. Objects the repository or the queue already has
+   * are not queued again.
+   *
+   * @throws IOException if an earlier batch failed and the writer was not reset since
+   */
+  public ObjectId write(GitObject object) throws IOException {
+    String type = object.getType();
+    byte[] content = object.serialize();
+
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-1 algorithm could not be access ", e);
+    }
+    md.update(GitObjectUtil.header(type, content.length));
+    md.update(content);
+    ObjectId id = ObjectId.fromRaw(md.digest());
+
+    if (pending.containsKey(id) || GitObjectUtil.objectExists(repo, id)) {
+      return id;
+    }
+    PendingObject queued = new PendingObject(id, type, content);
+    synchronized (this) {
+      throwFailure();
+      if (closed) {
+        throw new IllegalStateException("Object writer is closed");
+      }
+      if (pending.putIfAbsent(id, queued) != null) {
+        return id;
+      }
+      submitted++;
+    }
+    try {
+      queue.put(queued);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while queueing object " + id, e);
+    }
+    return id;
+  }
+
+  // the queued object with this id, or null if it was written already or never queued
+  public PendingObject getPending(ObjectId id) {
+    return pending.get(id);
+  }
+
+  /**
+   * Waits until every object queued so far is written and synced to disk.
+   *
+   * @throws IOException if any of them, or any object of an earlier batch since the last {@link
+   *     #reset}, could not be written
+   */
+  public void flush() throws IOException {
+    synchronized (this) {
+      long target = submitted;
+      try {
+        while (completed < target && failure == null) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while flushing objects", e);
+      }
+      throwFailure();
+    }
+  }
+
+  /**
+   * Forgets a failed batch so writes and flushes go through again, for a caller that has dealt
+   * with the objects that were lost, for example by writing them again.
+   */
+  public synchronized void reset() {
+    failure = null;
+  }
+
+  // flushes, then stops the worker; later writes are rejected, a failure is reported one last time
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    try {
+      flush();
+    } finally {
+      try {
+        queue.put(END);
+        worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      reset();
+    }
+  }
+
+  // the failure stays until reset, so no later flush can claim the lost objects are on disk
+  private void throwFailure() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void run() {
+    List<PendingObject> batch = new ArrayList<>(batchSize);
+    try {
+      while (true) {
+        PendingObject first = queue.take();
+        if (first == END) {
+          return;
+        }
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        boolean stop = batch.remove(END);
+
+        IOException error = null;
+        try {
+          writeBatch(batch);
+        } catch (IOException | RuntimeException e) {
+          error = e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        synchronized (this) {
+          for (PendingObject object : batch) {
+            pending.remove(object.id);
+          }
+          if (error != null && failure == null) {
+            failure = error;
+          }
+          completed += batch.size();
+          notifyAll();
+        }
+        batch.clear();
+        if (stop) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      // nothing left to wait for
+    }
+  }
+
+  private void writeBatch(List<PendingObject> batch) throws IOException {
+    Path objects = Paths.get(repo.getGitDir(), "objects");
+    Files.createDirectories(objects);
+    List<Path> temps = new ArrayList<>(batch.size());
+    Deflater deflater = GitZlib.getDeflater(repo.getLooseCompression());
+    try {
+      // every file is written before any is synced, so the disk sees the whole batch at once
+      for (PendingObject object : batch) {
+        Path temp = GitObjectUtil.createTempObject(repo);
+        temps.add(temp);
+        deflater.reset();
+        try (OutputStream out =
+            new DeflaterOutputStream(Files.newOutputStream(temp), deflater, 8192)) {
+          out.write(GitObjectUtil.header(object.type, object.content.length));
+          out.write(object.content);
+        }
+      }
+      for (Path temp : temps) {
+        sync(temp);
+        GitObjectUtil.makeReadOnly(temp);
+      }
+
+      Set<Path> directories = new LinkedHashSet<>();
+      for (int i = 0; i < batch.size(); i++) {
+        String name = batch.get(i).id.name();
+        Path directory = objects.resolve(name.substring(0, 2));
+        if (directories.add(directory)) {
+          Files.createDirectories(directory);
+        }
+        Files.move(
+            temps.get(i), directory.resolve(name.substring(2)), StandardCopyOption.ATOMIC_MOVE);
+      }
+      // the renames and any new fan-out directories are only durable once their parents are
+      directories.add(objects);
+      for (Path directory : directories) {
+        sync(directory);
+      }
+    } finally {
+      GitZlib.release(deflater);
+      for (Path temp : temps) {
+        Files.deleteIfExists(temp);
+      }
+    }
+  }
+
+  // fsyncs a file or directory, so what it holds or names survives a crash
+  static void sync(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // Windows cannot open a directory to sync it, and does not need to
+      if (!Files.isDirectory(path) || !isWindows()) {
+        throw e;
+      }
+    }
+  }
+
+  private static boolean isWindows() {
+    return System.getProperty("os.name", "").startsWith("Windows");
+  }
+}
@@ -0,0 +1,524 @@
+package com.GitRemake;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A packfile and its version 2 index, both memory-mapped. Lookups binary search the sorted SHA
+ * table inside the fanout bucket of the first byte, so finding an object costs O(log n) comparisons
+ * against the mapping and no file opens.
+ *
+ * <p>Index layout: magic, version, 256 fanout counts, the sorted SHA-1s, one CRC32 per object, one
+ * 32-bit offset per object and a table of 64-bit offsets for packs larger than 2 GB.
+ *
+ * <p>A single mapping stops at 2 GB, so the pack is mapped in windows of {@link #WINDOW_SIZE}
+ * bytes. Each window runs a few bytes into the next one, enough for any entry header, so headers
+ * are always read from one window; entry data is streamed across window ends.
+ */
+public class GitPackFile {
+  private static final int IDX_MAGIC = 0xff744f63; // "\377tOc"
+  private static final int PACK_MAGIC = 0x5041434b; // "PACK"
+  private static final int FANOUT_OFFSET = 8;
+  private static final int SHA_OFFSET = FANOUT_OFFSET + 256 * 4;
+  private static final long WINDOW_SIZE = 1L << 30;
+  // the longest entry header: two 10-byte varints, or a size varint and a 20-byte base id
+  private static final int WINDOW_OVERLAP = 32;
+
+  static final int OBJ_COMMIT = 1;
+  static final int OBJ_TREE = 2;
+  static final int OBJ_BLOB = 3;
+  static final int OBJ_TAG = 4;
+  static final int OBJ_OFS_DELTA = 6;
+  static final int OBJ_REF_DELTA = 7;
+
+  private final Path packPath;
+  private final MappedByteBuffer idx;
+  private final MappedByteBuffer[] pack;
+  private final int objectCount;
+  private final int crcOffset;
+  private final int offsetOffset;
+  private final int largeOffsetOffset;
+
+  public GitPackFile(Path idxPath, Path packPath) throws IOException {
+    this.packPath = packPath;
+    this.idx = map(idxPath);
+    this.pack = mapWindows(packPath);
+
+    if (idx.capacity() < SHA_OFFSET || idx.getInt(0) != IDX_MAGIC || idx.getInt(4) != 2) {
+      throw new IOException("Unsupported pack index (only version 2 is supported): " + idxPath);
+    }
+    if (pack.length == 0 || pack[0].capacity() < 12 || pack[0].getInt(0) != PACK_MAGIC) {
+      throw new IOException("Not a packfile: " + packPath);
+    }
+
+    objectCount = idx.getInt(FANOUT_OFFSET + 255 * 4);
+    if (pack[0].getInt(8) != objectCount) {
+      throw new IOException("Pack and index disagree on object count: " + packPath);
+    }
+    crcOffset = SHA_OFFSET + objectCount * 20;
+    offsetOffset = crcOffset + objectCount * 4;
+    largeOffsetOffset = offsetOffset + objectCount * 4;
+  }
+
+  private static MappedByteBuffer map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("File too large to map: " + path);
+      }
+      // the mapping stays valid after the channel is closed
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  // maps a file of any size as consecutive windows, each overlapping the next
+  private static MappedByteBuffer[] mapWindows(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      int count = (int) ((size + WINDOW_SIZE - 1) / WINDOW_SIZE);
+      MappedByteBuffer[] windows = new MappedByteBuffer[count];
+      for (int i = 0; i < windows.length; i++) {
+        long start = i * WINDOW_SIZE;
+        long length = Math.min(WINDOW_SIZE + WINDOW_OVERLAP, size - start);
+        windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+      }
+      return windows;
+    }
+  }
+
+  /**
+   * Opens every pack in objects/pack that has a matching index. A pack that cannot be opened is
+   * skipped with a warning, so one broken pack does not make the objects of the others unreadable.
+   */
+  public static List<GitPackFile> openAll(Path packDir) {
+    List<GitPackFile> packs = new ArrayList<>();
+    if (!packDir.toFile().isDirectory()) {
+      return packs;
+    }
+    String[] names = packDir.toFile().list();
+    if (names == null) {
+      return packs;
+    }
+    for (String name : names) {
+      if (!name.endsWith(".idx")) {
+        continue;
+      }
+      Path idxPath = packDir.resolve(name);
+      Path packPath = packDir.resolve(name.substring(0, name.length() - 4) + ".pack");
+      if (!packPath.toFile().isFile()) {
+        continue;
+      }
+      try {
+        packs.add(new GitPackFile(idxPath, packPath));
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Warning: ignoring pack " + packPath + ": " + e.getMessage());
+      }
+    }
+    return packs;
+  }
+
+  public Path getPackPath() {
+    return packPath;
+  }
+
+  public int getObjectCount() {
+    return objectCount;
+  }
+
+  // the id stored at the given position of the sorted index
+  public ObjectId getId(int index) {
+    return ObjectId.fromRaw(idx, SHA_OFFSET + index * 20);
+  }
+
+  public boolean contains(ObjectId id) {
+    return findIndex(id) >= 0;
+  }
+
+  /**
+   * Finds where an object starts inside the pack.
+   *
+   * @return the pack offset, or -1 if this pack does not hold the object
+   */
+  public long findOffset(ObjectId id) {
+    int index = findIndex(id);
+    return index < 0 ? -1 : getOffset(index);
+  }
+
+  // binary search inside the fanout bucket; returns -(insertion point + 1) when absent
+  private int findIndex(ObjectId id) {
+    int first = id.getFirstByte();
+    int low = first == 0 ? 0 : idx.getInt(FANOUT_OFFSET + (first - 1) * 4);
+    int high = idx.getInt(FANOUT_OFFSET + first * 4) - 1;
+
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      // compares int words straight against the mapping, nothing is copied out
+      int cmp = id.compareTo(idx, SHA_OFFSET + mid * 20);
+      if (cmp > 0) {
+        low = mid + 1;
+      } else if (cmp < 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  // adds every object whose hex name starts with the prefix to matches
+  public void findByPrefix(String prefix, Set<ObjectId> matches) {
+    // pad with zeros so the binary search lands on the first candidate
+    ObjectId lowest = ObjectId.fromString(prefix + "0".repeat(40 - prefix.length()));
+    int index = findIndex(lowest);
+    if (index < 0) {
+      index = -(index + 1);
+    }
+    while (index < objectCount) {
+      ObjectId id = getId(index);
+      if (!id.startsWith(prefix)) {
+        break;
+      }
+      matches.add(id);
+      index++;
+    }
+  }
+
+  private long getOffset(int index) {
+    long offset = idx.getInt(offsetOffset + index * 4) & 0xffffffffL;
+    // the high bit points into the 64-bit offset table instead
+    if ((offset & 0x80000000L) != 0) {
+      offset = idx.getLong(largeOffsetOffset + (int) (offset & 0x7fffffffL) * 8);
+    }
+    return offset;
+  }
+
+  /**
+   * Works out an object's type from entry headers alone, following delta entries down to their
+   * base without inflating anything.
+   */
+  public String getType(GitRepository repo, long offset) throws IOException {
+    EntryHeader header = readEntryHeader(offset);
+    while (header.type == OBJ_OFS_DELTA || header.type == OBJ_REF_DELTA) {
+      if (header.type == OBJ_OFS_DELTA) {
+        header = readEntryHeader(header.baseOffset);
+        continue;
+      }
+      long baseOffset = findOffset(header.baseId);
+      if (baseOffset < 0) {
+        // a thin pack's base lives elsewhere; its header tells the type without inflating it
+        ObjectInfo base = GitObjectUtil.objectInfo(repo, header.baseId);
+        if (base == null) {
+          throw new IOException("Missing delta base " + header.baseId);
+        }
+        return base.type;
+      }
+      header = readEntryHeader(baseOffset);
+    }
+    return typeName(header.type);
+  }
+
+  // the pack offset of the object at a position of the sorted index
+  public long getOffsetAt(int index) {
+    return getOffset(index);
+  }
+
+  /**
+   * Type and size of the object at the given offset. Whole objects are answered from the entry
+   * header; a delta stores the size of its result in its first few bytes, so only those are
+   * inflated and the chain is followed for the type without inflating anything else.
+   */
+  public ObjectInfo getInfo(GitRepository repo, long offset) throws IOException {
+    EntryHeader header = readEntryHeader(offset);
+    if (header.type != OBJ_OFS_DELTA && header.type != OBJ_REF_DELTA) {
+      return new ObjectInfo(typeName(header.type), header.size);
+    }
+
+    // two varints, the base size then the result size, at most 10 bytes each
+    byte[] start = new byte[(int) Math.min(20, header.size)];
+    inflatePrefix(header.dataOffset, start);
+    int[] position = {0};
+    GitDelta.readSize(start, position);
+    long size = GitDelta.readSize(start, position);
+    return new ObjectInfo(getType(repo, offset), size);
+  }
+
+  /**
+   * Opens the object at the given offset. Whole objects are inflated straight out of the mapping
+   * as they are read; deltified objects have their chain resolved into memory first.
+   */
+  public ObjectStream open(GitRepository repo, long offset) throws IOException {
+    return open(repo, offset, null);
+  }
+
+  /**
+   * Like {@link #open(GitRepository, long)} but inflates with the caller's Inflater, which is reset
+   * before each use. A null Inflater means one is allocated for this object.
+   */
+  public ObjectStream open(GitRepository repo, long offset, Inflater inflater) throws IOException {
+    EntryHeader header = readEntryHeader(offset);
+
+    if (header.type != OBJ_OFS_DELTA && header.type != OBJ_REF_DELTA) {
+      InputStream in;
+      if (inflater == null) {
+        in = GitZlib.inflate(new MappedInputStream(header.dataOffset), 512);
+      } else {
+        inflater.reset();
+        in = new InflaterInputStream(new MappedInputStream(header.dataOffset), inflater);
+      }
+      return new ObjectStream(typeName(header.type), header.size, in);
+    }
+
+    LoadedObject object = load(repo, offset, inflater);
+    return new ObjectStream(
+        object.type, object.content.length, new ByteArrayInputStream(object.content));
+  }
+
+  // resolves the delta chain starting at offset into the final object
+  private LoadedObject load(GitRepository repo, long offset, Inflater inflater)
+      throws IOException {
+    List<byte[]> deltas = new ArrayList<>();
+    LoadedObject base = null;
+    long current = offset;
+
+    // walk down the chain iteratively collecting deltas until we reach a whole object
+    while (base == null) {
+      EntryHeader header = readEntryHeader(current);
+      switch (header.type) {
+        case OBJ_OFS_DELTA -> {
+          deltas.add(inflate(header.dataOffset, header.size, inflater));
+          current = header.baseOffset;
+        }
+        case OBJ_REF_DELTA -> {
+          deltas.add(inflate(header.dataOffset, header.size, inflater));
+          long baseOffset = findOffset(header.baseId);
+          if (baseOffset >= 0) {
+            current = baseOffset;
+          } else {
+            // the base lives in another pack or as a loose object
+            try (ObjectStream in = GitObjectUtil.objectOpen(repo, header.baseId, inflater)) {
+              if (in == null) {
+                throw new IOException("Missing delta base " + header.baseId);
+              }
+              base = new LoadedObject(in.getType(), in.readContent());
+            }
+          }
+        }
+        default ->
+            base =
+                new LoadedObject(
+                    typeName(header.type), inflate(header.dataOffset, header.size, inflater));
+      }
+    }
+
+    byte[] content = base.content;
+    for (int i = deltas.size() - 1; i >= 0; i--) {
+      content = GitDelta.apply(content, deltas.get(i));
+    }
+    return new LoadedObject(base.type, content);
+  }
+
+  // inflates a whole entry into memory, with the given Inflater or a pooled one if null
+  private byte[] inflate(long dataOffset, long size, Inflater shared) throws IOException {
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IOException("Packed object too large to load in memory: " + size);
+    }
+    byte[] out = new byte[(int) size];
+    Inflater inflater = shared == null ? GitZlib.getInflater() : shared;
+    inflater.reset();
+    try {
+      long next = setInput(inflater, dataOffset);
+      int count = 0;
+      while (count < out.length) {
+        int n = inflater.inflate(out, count, out.length - count);
+        if (n == 0 && inflater.needsInput() && next < packSize()) {
+          next = setInput(inflater, next);
+          continue;
+        }
+        if (n == 0
+            && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        count += n;
+      }
+      if (count != out.length) {
+        throw new IOException("Packed object truncated at offset " + dataOffset);
+      }
+      return out;
+    } catch (DataFormatException e) {
+      throw new IOException("Error decompressing packed object: " + e.getMessage());
+    } finally {
+      if (shared == null) {
+        GitZlib.release(inflater);
+      }
+    }
+  }
+
+  // inflates just enough of an entry to fill out
+  private void inflatePrefix(long dataOffset, byte[] out) throws IOException {
+    Inflater inflater = GitZlib.getInflater();
+    try {
+      long next = setInput(inflater, dataOffset);
+      int count = 0;
+      while (count < out.length && !inflater.finished()) {
+        int n = inflater.inflate(out, count, out.length - count);
+        if (n == 0 && inflater.needsInput() && next < packSize()) {
+          next = setInput(inflater, next);
+          continue;
+        }
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Packed object truncated at offset " + dataOffset);
+        }
+        count += n;
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Error decompressing packed object: " + e.getMessage());
+    } finally {
+      GitZlib.release(inflater);
+    }
+  }
+
+  // hands the inflater the rest of the window holding position, returning where that ends
+  private long setInput(Inflater inflater, long position) {
+    ByteBuffer input = window(position);
+    long end = position + input.remaining();
+    inflater.setInput(input);
+    return end;
+  }
+
+  private long packSize() {
+    MappedByteBuffer last = pack[pack.length - 1];
+    return (pack.length - 1) * WINDOW_SIZE + last.capacity();
+  }
+
+  // the window holding position, positioned there and running to the window's end
+  private ByteBuffer window(long position) {
+    int index = (int) (position / WINDOW_SIZE);
+    if (index == pack.length && position == packSize()) {
+      // the very end, which is also the end of the last window
+      index--;
+    }
+    return pack[index].duplicate().position((int) (position - index * WINDOW_SIZE));
+  }
+
+  private EntryHeader readEntryHeader(long offset) {
+    // the overlap guarantees the whole header is inside this one window
+    ByteBuffer window = window(offset);
+    int base = window.position();
+    int pos = base;
+    int c = window.get(pos++) & 0xff;
+
+    // first byte: 1 continuation bit, 3 type bits and the low 4 bits of the size
+    int type = (c >>> 4) & 7;
+    long size = c & 0x0f;
+    int shift = 4;
+    while ((c & 0x80) != 0) {
+      c = window.get(pos++) & 0xff;
+      size |= (long) (c & 0x7f) << shift;
+      shift += 7;
+    }
+
+    EntryHeader header = new EntryHeader(type, size);
+    if (type == OBJ_OFS_DELTA) {
+      // big-endian varint where each continuation adds one, so encodings never overlap
+      c = window.get(pos++) & 0xff;
+      long distance = c & 0x7f;
+      while ((c & 0x80) != 0) {
+        c = window.get(pos++) & 0xff;
+        distance = ((distance + 1) << 7) | (c & 0x7f);
+      }
+      header.baseOffset = offset - distance;
+    } else if (type == OBJ_REF_DELTA) {
+      header.baseId = ObjectId.fromRaw(window, pos);
+      pos += 20;
+    }
+    header.dataOffset = offset + (pos - base);
+    return header;
+  }
+
+  static String typeName(int type) {
+    switch (type) {
+      case OBJ_COMMIT:
+        return "commit";
+      case OBJ_TREE:
+        return "tree";
+      case OBJ_BLOB:
+        return "blob";
+      case OBJ_TAG:
+        return "tag";
+      default:
+        throw new IllegalArgumentException("Unknown packed object type: " + type);
+    }
+  }
+
+  private static class EntryHeader {
+    final int type;
+    final long size;
+    long dataOffset;
+    long baseOffset;
+    ObjectId baseId;
+
+    EntryHeader(int type, long size) {
+      this.type = type;
+      this.size = size;
+    }
+  }
+
+  private static class LoadedObject {
+    final String type;
+    final byte[] content;
+
+    LoadedObject(String type, byte[] content) {
+      this.type = type;
+      this.content = content;
+    }
+  }
+
+  // reads the pack from a position on, moving to the next window at the end of each one
+  private class MappedInputStream extends InputStream {
+    private long position;
+    private ByteBuffer buffer;
+
+    MappedInputStream(long position) {
+      this.position = position;
+      this.buffer = window(position);
+    }
+
+    @Override
+    public int read() {
+      if (!fill()) {
+        return -1;
+      }
+      position++;
+      return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (!fill()) {
+        return -1;
+      }
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(b, off, count);
+      position += count;
+      return count;
+    }
+
+    private boolean fill() {
+      if (!buffer.hasRemaining() && position < packSize()) {
+        buffer = window(position);
+      }
+      return buffer.hasRemaining();
+    }
+  }
+}
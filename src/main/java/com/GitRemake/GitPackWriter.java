@@ -0,0 +1,269 @@
+package com.GitRemake;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a version 2 packfile and its version 2 index. Objects are appended one at a time, either
+ * whole or as an OFS_DELTA against an object already written to the same pack, and {@link #finish}
+ * names both files after the pack checksum.
+ */
+public class GitPackWriter implements Closeable {
+  private final Path tempPack;
+  private final OutputStream out;
+  private final MessageDigest packDigest;
+  private final int objectCount;
+  private final List<Entry> entries = new ArrayList<>();
+  private final Map<ObjectId, Entry> bySha = new HashMap<>();
+  private final Deflater deflater;
+  private final CRC32 crc = new CRC32();
+  private long offset;
+  private long entryStart;
+
+  private static class Entry {
+    final ObjectId sha;
+    final long offset;
+    final long crc;
+
+    Entry(ObjectId sha, long offset, long crc) {
+      this.sha = sha;
+      this.offset = offset;
+      this.crc = crc;
+    }
+  }
+
+  public GitPackWriter(Path packDir, int objectCount) throws IOException {
+    this(packDir, objectCount, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /** @param level the zlib level for every entry, -1 for zlib's default */
+  public GitPackWriter(Path packDir, int objectCount, int level) throws IOException {
+    Files.createDirectories(packDir);
+    this.tempPack = Files.createTempFile(packDir, "tmp_pack_", ".pack");
+    this.out = new BufferedOutputStream(Files.newOutputStream(tempPack), 1 << 16);
+    this.packDigest = sha1();
+    this.objectCount = objectCount;
+    this.deflater = GitZlib.getDeflater(level);
+
+    // "PACK", version 2, number of objects
+    byte[] header = new byte[12];
+    writeInt(header, 0, 0x5041434b);
+    writeInt(header, 4, 2);
+    writeInt(header, 8, objectCount);
+    write(header, 0, header.length);
+  }
+
+  public void writeWhole(ObjectId sha, int type, byte[] content) throws IOException {
+    startEntry(sha);
+    writeEntryHeader(type, content.length);
+    writeDeflated(content);
+    endEntry(sha);
+  }
+
+  // the base has to be written first since OFS_DELTA can only point backwards
+  public void writeDelta(ObjectId sha, ObjectId baseSha, byte[] delta) throws IOException {
+    Entry base = bySha.get(baseSha);
+    if (base == null) {
+      throw new IllegalStateException("Delta base " + baseSha + " not written before " + sha);
+    }
+
+    startEntry(sha);
+    writeEntryHeader(GitPackFile.OBJ_OFS_DELTA, delta.length);
+
+    // big-endian varint where each continuation byte implicitly adds one
+    long distance = entryStart - base.offset;
+    byte[] buffer = new byte[10];
+    int pos = buffer.length - 1;
+    buffer[pos] = (byte) (distance & 0x7f);
+    while ((distance >>>= 7) != 0) {
+      distance--;
+      buffer[--pos] = (byte) (0x80 | (distance & 0x7f));
+    }
+    write(buffer, pos, buffer.length - pos);
+
+    writeDeflated(delta);
+    endEntry(sha);
+  }
+
+  private void startEntry(ObjectId sha) {
+    if (bySha.containsKey(sha)) {
+      throw new IllegalStateException("Object written twice: " + sha);
+    }
+    entryStart = offset;
+    crc.reset();
+  }
+
+  private void endEntry(ObjectId sha) {
+    Entry entry = new Entry(sha, entryStart, crc.getValue());
+    entries.add(entry);
+    bySha.put(sha, entry);
+  }
+
+  // 3 type bits and the size as a little-endian varint, 4 bits in the first byte then 7 per byte
+  private void writeEntryHeader(int type, long size) throws IOException {
+    byte[] header = new byte[10];
+    int pos = 0;
+    int c = (type << 4) | (int) (size & 0x0f);
+    size >>>= 4;
+    while (size != 0) {
+      header[pos++] = (byte) (c | 0x80);
+      c = (int) (size & 0x7f);
+      size >>>= 7;
+    }
+    header[pos++] = (byte) c;
+    write(header, 0, pos);
+  }
+
+  private void writeDeflated(byte[] data) throws IOException {
+    deflater.reset();
+    deflater.setInput(data);
+    deflater.finish();
+    byte[] buffer = new byte[8192];
+    while (!deflater.finished()) {
+      int count = deflater.deflate(buffer);
+      write(buffer, 0, count);
+    }
+  }
+
+  private void write(byte[] data, int start, int length) throws IOException {
+    out.write(data, start, length);
+    packDigest.update(data, start, length);
+    crc.update(data, start, length);
+    offset += length;
+  }
+
+  /**
+   * Writes the pack trailer and the index, syncs both and moves them into place. Once this returns
+   * the pack is durable, so the objects it holds can be deleted elsewhere.
+   *
+   * @return the final path of the .pack file
+   */
+  public Path finish() throws IOException {
+    if (entries.size() != objectCount) {
+      throw new IllegalStateException(
+          "Pack header promised " + objectCount + " objects but " + entries.size() + " written");
+    }
+    byte[] packChecksum = packDigest.digest();
+    out.write(packChecksum);
+    out.close();
+
+    String name = "pack-" + HexFormat.of().formatHex(packChecksum);
+    Path packDir = tempPack.getParent();
+    Path tempIdx = Files.createTempFile(packDir, "tmp_idx_", ".idx");
+    writeIndex(tempIdx, packChecksum);
+
+    // read-only for everyone like git's, not the owner-only mode temp files start with
+    GitObjectUtil.makeReadOnly(tempPack);
+    GitObjectUtil.makeReadOnly(tempIdx);
+    // on disk before they get their names, the same rule as loose objects
+    GitObjectWriter.sync(tempPack);
+    GitObjectWriter.sync(tempIdx);
+
+    // the index goes in last so readers never see an index without its pack
+    Path packPath = packDir.resolve(name + ".pack");
+    Files.move(tempPack, packPath, StandardCopyOption.ATOMIC_MOVE);
+    Files.move(tempIdx, packDir.resolve(name + ".idx"), StandardCopyOption.ATOMIC_MOVE);
+    // and the names themselves, before a repack deletes the objects the pack replaces
+    GitObjectWriter.sync(packDir);
+    return packPath;
+  }
+
+  private void writeIndex(Path idxPath, byte[] packChecksum) throws IOException {
+    List<Entry> sorted = new ArrayList<>(entries);
+    sorted.sort(Comparator.comparing(e -> e.sha));
+
+    MessageDigest digest = sha1();
+    try (OutputStream idx = new BufferedOutputStream(Files.newOutputStream(idxPath), 1 << 16)) {
+      byte[] word = new byte[8];
+
+      writeInt(word, 0, 0xff744f63);
+      writeInt(word, 4, 2);
+      idxWrite(idx, digest, word, 8);
+
+      // fanout[i] counts the objects whose first byte is <= i
+      int[] fanout = new int[256];
+      for (Entry entry : sorted) {
+        fanout[entry.sha.getFirstByte()]++;
+      }
+      int total = 0;
+      for (int i = 0; i < 256; i++) {
+        total += fanout[i];
+        writeInt(word, 0, total);
+        idxWrite(idx, digest, word, 4);
+      }
+
+      byte[] raw = new byte[ObjectId.RAW_LENGTH];
+      for (Entry entry : sorted) {
+        entry.sha.copyRawTo(raw, 0);
+        idxWrite(idx, digest, raw, raw.length);
+      }
+      for (Entry entry : sorted) {
+        writeInt(word, 0, (int) entry.crc);
+        idxWrite(idx, digest, word, 4);
+      }
+
+      // offsets past 2 GB go to a trailing 64-bit table and are referenced by position
+      List<Long> largeOffsets = new ArrayList<>();
+      for (Entry entry : sorted) {
+        if (entry.offset < 0x80000000L) {
+          writeInt(word, 0, (int) entry.offset);
+        } else {
+          writeInt(word, 0, 0x80000000 | largeOffsets.size());
+          largeOffsets.add(entry.offset);
+        }
+        idxWrite(idx, digest, word, 4);
+      }
+      for (long large : largeOffsets) {
+        writeInt(word, 0, (int) (large >>> 32));
+        writeInt(word, 4, (int) large);
+        idxWrite(idx, digest, word, 8);
+      }
+
+      idxWrite(idx, digest, packChecksum, 20);
+      idx.write(digest.digest());
+    }
+  }
+
+  private static void idxWrite(OutputStream idx, MessageDigest digest, byte[] data, int length)
+      throws IOException {
+    idx.write(data, 0, length);
+    digest.update(data, 0, length);
+  }
+
+  private static void writeInt(byte[] buffer, int pos, int value) {
+    buffer[pos] = (byte) (value >>> 24);
+    buffer[pos + 1] = (byte) (value >>> 16);
+    buffer[pos + 2] = (byte) (value >>> 8);
+    buffer[pos + 3] = (byte) value;
+  }
+
+  private static MessageDigest sha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-1 algorithm could not be access ", e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    GitZlib.release(deflater);
+    out.close();
+    Files.deleteIfExists(tempPack);
+  }
+}
@@ -0,0 +1,195 @@
+package com.GitRemake;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * The packed-refs file: refs that are not worth a file each, one per line in name order.
+ *
+ * <pre>
+ *   # pack-refs with: peeled fully-peeled sorted
+ *   &lt;id&gt; refs/heads/main
+ *   &lt;id&gt; refs/tags/v1.0
+ *   ^&lt;id&gt;
+ * </pre>
+ *
+ * A "^" line follows an annotated tag and holds the object the tag finally points at, so listing
+ * tags with their targets needs no object reads. With "fully-peeled" every ref that can be peeled
+ * has such a line, with just "peeled" only the ones under refs/tags/ do. A loose ref of the same
+ * name overrides the packed one.
+ *
+ * <p>A snapshot is immutable and keeps the names in sorted arrays, so a lookup is one binary
+ * search however many refs are packed. {@link GitRepository#getPackedRefs} rereads the file when
+ * its modification time or size changes.
+ */
+public class GitPackedRefs {
+  static final String HEADER = "# pack-refs with: peeled fully-peeled sorted \n";
+
+  private static final GitPackedRefs EMPTY =
+      new GitPackedRefs(new String[0], new ObjectId[0], new ObjectId[0], "");
+
+  private final String[] names;
+  private final ObjectId[] ids;
+  // the peeled target of each ref, null where there is no "^" line
+  private final ObjectId[] peeled;
+  // the refs whose peeled target the file records, by prefix; null for none
+  private final String peelPrefix;
+
+  private GitPackedRefs(String[] names, ObjectId[] ids, ObjectId[] peeled, String peelPrefix) {
+    this.names = names;
+    this.ids = ids;
+    this.peeled = peeled;
+    this.peelPrefix = peelPrefix;
+  }
+
+  // an empty snapshot, for a repository without packed-refs
+  public static GitPackedRefs empty() {
+    return EMPTY;
+  }
+
+  public static Path path(GitRepository repo) {
+    return Paths.get(repo.getGitDir(), "packed-refs");
+  }
+
+  /** Reads the file, or returns an empty snapshot when there is none. */
+  public static GitPackedRefs read(Path file) throws IOException {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    } catch (NoSuchFileException e) {
+      return EMPTY;
+    }
+
+    boolean sorted = false;
+    String peelPrefix = null;
+    List<String> names = new ArrayList<>(lines.size());
+    List<ObjectId> ids = new ArrayList<>(lines.size());
+    List<ObjectId> peeled = new ArrayList<>(lines.size());
+    for (String line : lines) {
+      if (line.startsWith("# pack-refs with:")) {
+        List<String> traits = Arrays.asList(line.substring(17).trim().split(" "));
+        sorted = traits.contains("sorted");
+        if (traits.contains("fully-peeled")) {
+          peelPrefix = "";
+        } else if (traits.contains("peeled")) {
+          peelPrefix = "refs/tags/";
+        }
+      } else if (line.startsWith("^")) {
+        if (names.isEmpty()) {
+          throw new IOException("Peeled line before any ref in " + file);
+        }
+        peeled.set(peeled.size() - 1, ObjectId.fromString(line.substring(1).trim()));
+      } else if (!line.isEmpty() && !line.startsWith("#")) {
+        int space = line.indexOf(' ');
+        if (space != ObjectId.HEX_LENGTH) {
+          throw new IOException("Malformed line in " + file + ": " + line);
+        }
+        ids.add(ObjectId.fromString(line.substring(0, space)));
+        names.add(line.substring(space + 1));
+        peeled.add(null);
+      }
+    }
+
+    Integer[] order = new Integer[names.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    if (!sorted) {
+      // older writers did not promise an order
+      Arrays.sort(order, Comparator.comparing(names::get));
+    }
+    String[] sortedNames = new String[order.length];
+    ObjectId[] sortedIds = new ObjectId[order.length];
+    ObjectId[] sortedPeeled = new ObjectId[order.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedNames[i] = names.get(order[i]);
+      sortedIds[i] = ids.get(order[i]);
+      sortedPeeled[i] = peeled.get(order[i]);
+    }
+    return new GitPackedRefs(sortedNames, sortedIds, sortedPeeled, peelPrefix);
+  }
+
+  /**
+   * Writes refs in the format git reads, with a "^" line for each ref that has a peeled target.
+   * Nothing replaces the file until the lock is committed.
+   *
+   * @param refs full ref names with their ids
+   * @param peeled the peeled target of each annotated tag among them
+   */
+  public static void write(
+      GitLockFile lock, SortedMap<String, ObjectId> refs, Map<String, ObjectId> peeled)
+      throws IOException {
+    Writer out =
+        new BufferedWriter(new OutputStreamWriter(lock.getOutputStream(), StandardCharsets.UTF_8));
+    out.write(HEADER);
+    for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+      out.write(ref.getValue().name());
+      out.write(' ');
+      out.write(ref.getKey());
+      out.write('\n');
+      ObjectId target = peeled.get(ref.getKey());
+      if (target != null) {
+        out.write('^');
+        out.write(target.name());
+        out.write('\n');
+      }
+    }
+    out.flush();
+  }
+
+  public int size() {
+    return names.length;
+  }
+
+  // the id of a packed ref, or null
+  public ObjectId find(String name) {
+    int position = Arrays.binarySearch(names, name);
+    return position < 0 ? null : ids[position];
+  }
+
+  /**
+   * What a packed ref peels to, if the file says: the object an annotated tag finally points at,
+   * or null when the ref is not packed or the file does not record its peeled target.
+   */
+  public ObjectId findPeeled(String name) {
+    int position = Arrays.binarySearch(names, name);
+    return position < 0 ? null : peeled[position];
+  }
+
+  /**
+   * Whether the file settles what a ref peels to: every ref that can be peeled has a "^" line, so
+   * one without is not an annotated tag.
+   */
+  public boolean isPeelKnown(String name) {
+    return peelPrefix != null
+        && name.startsWith(peelPrefix)
+        && Arrays.binarySearch(names, name) >= 0;
+  }
+
+  // the names of the packed refs starting with prefix, in order
+  public List<String> names(String prefix) {
+    int start = Arrays.binarySearch(names, prefix);
+    if (start < 0) {
+      start = -start - 1;
+    }
+    int end = start;
+    while (end < names.length && names[end].startsWith(prefix)) {
+      end++;
+    }
+    return Collections.unmodifiableList(Arrays.asList(names).subList(start, end));
+  }
+}
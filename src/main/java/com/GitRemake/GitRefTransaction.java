@@ -0,0 +1,425 @@
+package com.GitRemake;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A set of ref updates that happen together or not at all. Nothing is written until {@link
+ * #commit}, which locks every ref with a "&lt;name&gt;.lock" file, checks each expected old value
+ * under the locks, and only then renames the new values into place. A ref another process holds
+ * or changed in the meantime fails the whole transaction and leaves every ref as it was.
+ *
+ * <p>Updates go to loose files by default, one rename each. With {@link #setPacked} they are
+ * written into packed-refs instead, one rewrite for the whole batch, which suits creating
+ * hundreds of tags at once; the loose files of those refs are removed since they would hide the
+ * packed values. Deleting a packed ref also rewrites packed-refs.
+ *
+ * <p>In a reftable repository the whole transaction is one new table, added under the stack's
+ * lock, and setPacked makes no difference. The reflog entries go in the same table.
+ *
+ * <p>Once the refs are in place, and before their locks are released, each change is appended to
+ * the ref's {@link GitReflog}, and to HEAD's when it moves the branch HEAD points at, with the
+ * message from {@link #setMessage}.
+ *
+ * <pre>
+ *   GitRefTransaction transaction = new GitRefTransaction(repo);
+ *   transaction.update("refs/heads/main", newId, oldId);
+ *   transaction.create("refs/tags/v1.0", tagId);
+ *   transaction.commit();
+ * </pre>
+ */
+public class GitRefTransaction {
+  // one queued change; without a newId it only deletes or verifies, a null oldId skips the check
+  private static class Update {
+    final String name;
+    final ObjectId newId;
+    final ObjectId oldId;
+    final boolean delete;
+
+    Update(String name, ObjectId newId, ObjectId oldId, boolean delete) {
+      this.name = name;
+      this.newId = newId;
+      this.oldId = oldId;
+      this.delete = delete;
+    }
+  }
+
+  private final GitRepository repo;
+  private final SortedMap<String, Update> updates = new TreeMap<>();
+  private final Map<String, ObjectId> oldValues = new HashMap<>();
+  private boolean packed;
+  private String message = "";
+  private boolean committed;
+
+  public GitRefTransaction(GitRepository repo) {
+    this.repo = repo;
+  }
+
+  // write the updates into packed-refs in one rewrite instead of a loose file each
+  public GitRefTransaction setPacked(boolean packed) {
+    this.packed = packed;
+    return this;
+  }
+
+  // what the reflog entries of this transaction say
+  public GitRefTransaction setMessage(String message) {
+    this.message = message;
+    return this;
+  }
+
+  /**
+   * Sets a ref to newId.
+   *
+   * @param oldId the value the ref must have when the transaction commits, {@link
+   *     ObjectId#zeroId} if it must not exist, or null to take whatever it is
+   */
+  public GitRefTransaction update(String name, ObjectId newId, ObjectId oldId) {
+    return add(new Update(name, Objects.requireNonNull(newId), oldId, false));
+  }
+
+  // creates a ref that must not exist yet
+  public GitRefTransaction create(String name, ObjectId newId) {
+    return update(name, newId, ObjectId.zeroId());
+  }
+
+  // removes a ref, which must have oldId unless that is null
+  public GitRefTransaction delete(String name, ObjectId oldId) {
+    return add(new Update(name, null, oldId, true));
+  }
+
+  // only checks that a ref has oldId, or does not exist for the zero id
+  public GitRefTransaction verify(String name, ObjectId oldId) {
+    return add(new Update(name, null, Objects.requireNonNull(oldId), false));
+  }
+
+  public boolean isEmpty() {
+    return updates.isEmpty();
+  }
+
+  private GitRefTransaction add(Update update) {
+    if (committed) {
+      throw new IllegalStateException("Transaction already committed");
+    }
+    checkName(update.name);
+    if (updates.putIfAbsent(update.name, update) != null) {
+      throw new IllegalArgumentException("Multiple updates for ref '" + update.name + "'");
+    }
+    return this;
+  }
+
+  /**
+   * Applies every update, or none of them.
+   *
+   * @throws IOException if a lock is held, an old value does not match or a write fails; no ref
+   *     has changed in that case
+   */
+  public void commit() throws IOException {
+    if (committed) {
+      throw new IllegalStateException("Transaction already committed");
+    }
+    committed = true;
+    // the objects the refs are about to point at must be on disk first
+    repo.flushObjects();
+    String head = GitRefUtil.refRead(repo, "HEAD");
+    if (repo.usesReftable()) {
+      commitReftable(head);
+      return;
+    }
+
+    List<GitLockFile> locks = new ArrayList<>();
+    Map<String, GitLockFile> refLocks = new HashMap<>();
+    List<Path> deleted = new ArrayList<>();
+    List<Path> createdDirs = new ArrayList<>();
+    boolean done = false;
+    try {
+      // sorted names keep two transactions from taking each other's locks in opposite order
+      for (Update update : updates.values()) {
+        GitLockFile lock = lockRef(update.name, createdDirs);
+        locks.add(lock);
+        refLocks.put(update.name, lock);
+      }
+
+      GitPackedRefs current = repo.getPackedRefs();
+      boolean rewritePacked = false;
+      for (Update update : updates.values()) {
+        ObjectId found = readRef(update.name, current);
+        check(update, found);
+        boolean touchesPacked = current.find(update.name) != null;
+        rewritePacked |= (update.delete && touchesPacked) || (packed && update.newId != null);
+      }
+
+      GitLockFile packedLock = null;
+      if (rewritePacked) {
+        packedLock = new GitLockFile(GitPackedRefs.path(repo));
+        locks.add(packedLock);
+        // whatever packed-refs held when we checked is what we rewrite
+        current = GitPackedRefs.read(GitPackedRefs.path(repo));
+        writePacked(packedLock, current);
+      }
+
+      for (Update update : updates.values()) {
+        if (update.newId != null && !packed) {
+          // like git, an empty directory left where the ref goes is no conflict
+          Path file = Paths.get(repo.getGitDir(), update.name);
+          if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+            removeEmptyDirectory(update.name, file);
+          }
+          GitLockFile lock = refLocks.get(update.name);
+          byte[] content = (update.newId.name() + "\n").getBytes(StandardCharsets.UTF_8);
+          lock.getOutputStream().write(content);
+        }
+      }
+
+      // everything is checked and written; from here on only renames and deletions happen
+      if (packedLock != null) {
+        packedLock.commit();
+        repo.invalidatePackedRefs();
+      }
+      for (Update update : updates.values()) {
+        if (update.newId != null && !packed) {
+          refLocks.get(update.name).commit();
+        } else if (update.delete || update.newId != null) {
+          Path file = Paths.get(repo.getGitDir(), update.name);
+          if (Files.deleteIfExists(file)) {
+            deleted.add(file);
+          }
+        }
+      }
+      done = true;
+      // still under the locks, so the next update of a ref cannot log its line ahead of this one
+      writeLogs(head);
+    } finally {
+      IOException failure = null;
+      for (GitLockFile lock : locks) {
+        try {
+          lock.close();
+        } catch (IOException e) {
+          failure = e;
+        }
+      }
+      // a failed transaction takes back the directories it made for its locks, deepest first
+      if (!done) {
+        for (Path dir : createdDirs) {
+          try {
+            Files.delete(dir);
+          } catch (DirectoryNotEmptyException | NoSuchFileException e) {
+            // someone else's ref lives there now, or it was never made
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    }
+    // once the locks are gone too
+    for (Path file : deleted) {
+      removeEmptyParents(repo, file);
+    }
+  }
+
+  /**
+   * The reftable version of commit: under the stack's one lock, check every ref against the
+   * newest tables and add one table with all the changes and their log entries. Deleting a ref
+   * adds a deletion for each entry of its log.
+   */
+  private void commitReftable(String head) throws IOException {
+    GitReftableStack stack = repo.getReftableStack();
+    try (GitLockFile lock = stack.lock()) {
+      long updateIndex = stack.getMaxUpdateIndex() + 1;
+      List<GitReftable.Ref> records = new ArrayList<>();
+      List<GitReftable.Log> logs = new ArrayList<>();
+      for (Update update : updates.values()) {
+        GitReftable.Ref current = stack.read(update.name);
+        if (current != null && current.getTarget() != null) {
+          throw new IOException(
+              "Cannot update symbolic ref '" + update.name + "' in a transaction");
+        }
+        check(update, current == null ? null : current.getId());
+        if (update.newId != null) {
+          ObjectId peeled = GitRefUtil.refPeel(repo, update.name, update.newId);
+          records.add(GitReftable.Ref.of(update.name, updateIndex, update.newId, peeled));
+          ObjectId oldId = oldValues.get(update.name);
+          for (String name : new String[] {update.name, "HEAD"}) {
+            boolean moves = name.equals(update.name) || ("ref: " + update.name).equals(head);
+            if (moves && GitReflog.shouldLog(repo, name)) {
+              GitReflog.Entry entry = GitReflog.entry(repo, oldId, update.newId, message);
+              logs.add(GitReftable.Log.of(name, updateIndex, entry));
+            }
+          }
+        } else if (update.delete) {
+          records.add(GitReftable.Ref.deletion(update.name, updateIndex));
+          for (long logIndex : stack.logUpdateIndexes(update.name)) {
+            logs.add(GitReftable.Log.deletion(update.name, logIndex));
+          }
+        }
+      }
+      if (!records.isEmpty()) {
+        stack.add(lock, records, logs);
+      }
+    }
+  }
+
+  // whether an update can go ahead given the ref's current value, found (null if missing)
+  private void check(Update update, ObjectId found) throws IOException {
+    oldValues.put(update.name, found == null ? ObjectId.zeroId() : found);
+    ObjectId actual = found == null ? ObjectId.zeroId() : found;
+    if (update.oldId != null && !update.oldId.equals(actual)) {
+      throw new IOException(
+          "Cannot update ref '"
+              + update.name
+              + "': expected "
+              + update.oldId.name()
+              + " but it is "
+              + (found == null ? "missing" : found.name()));
+    }
+    if (update.delete && found == null && update.oldId == null) {
+      throw new IOException("Cannot delete ref '" + update.name + "': it does not exist");
+    }
+    if (update.newId != null && found == null) {
+      checkConflicts(update.name);
+    }
+  }
+
+  // head is what HEAD held before the commit, "ref: <branch>" unless it is detached
+  private void writeLogs(String head) throws IOException {
+    for (Update update : updates.values()) {
+      ObjectId oldId = oldValues.get(update.name);
+      if (update.delete) {
+        GitReflog.delete(repo, update.name);
+      } else if (update.newId != null) {
+        GitReflog.append(repo, update.name, oldId, update.newId, message);
+        if (("ref: " + update.name).equals(head)) {
+          GitReflog.append(repo, "HEAD", oldId, update.newId, message);
+        }
+      }
+    }
+  }
+
+  // packed-refs with the deletions, and with setPacked the new values, applied
+  private void writePacked(GitLockFile lock, GitPackedRefs current) throws IOException {
+    SortedMap<String, ObjectId> refs = new TreeMap<>();
+    Map<String, ObjectId> peeled = new HashMap<>();
+    for (String name : current.names("")) {
+      refs.put(name, current.find(name));
+      ObjectId target = current.findPeeled(name);
+      if (target != null) {
+        peeled.put(name, target);
+      }
+    }
+    for (Update update : updates.values()) {
+      if (update.delete) {
+        refs.remove(update.name);
+        peeled.remove(update.name);
+      } else if (packed && update.newId != null) {
+        refs.put(update.name, update.newId);
+        peeled.remove(update.name);
+        ObjectId target = GitRefUtil.refPeel(repo, update.name, update.newId);
+        if (target != null) {
+          peeled.put(update.name, target);
+        }
+      }
+    }
+    GitPackedRefs.write(lock, refs, peeled);
+  }
+
+  // locks a loose ref, adding the parent directories it had to create to createdDirs
+  private GitLockFile lockRef(String name, List<Path> createdDirs) throws IOException {
+    Path file = Paths.get(repo.getGitDir(), name);
+    for (Path dir = file.getParent(); !Files.exists(dir); dir = dir.getParent()) {
+      createdDirs.add(dir);
+    }
+    try {
+      Files.createDirectories(file.getParent());
+    } catch (IOException e) {
+      throw new IOException("Cannot lock ref '" + name + "': a ref is in the way", e);
+    }
+    return new GitLockFile(file);
+  }
+
+  // deletes a directory that holds nothing but empty directories
+  private static void removeEmptyDirectory(String name, Path dir) throws IOException {
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+      for (Path entry : entries) {
+        if (!Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+          throw new IOException("Cannot update ref '" + name + "': a directory is in the way");
+        }
+        removeEmptyDirectory(name, entry);
+      }
+    }
+    Files.delete(dir);
+  }
+
+  // the ref's own value, loose or packed; a symbolic ref is not followed
+  private ObjectId readRef(String name, GitPackedRefs current) throws IOException {
+    String data = GitRefUtil.readLoose(repo, name);
+    if (data == null) {
+      return current.find(name);
+    }
+    if (data.startsWith("ref: ")) {
+      throw new IOException("Cannot update symbolic ref '" + name + "' in a transaction");
+    }
+    return ObjectId.fromString(data);
+  }
+
+  /**
+   * A new ref cannot sit where an existing one is a directory, or below an existing one, whether
+   * that one is already there or created in the same transaction.
+   */
+  private void checkConflicts(String name) throws IOException {
+    for (int slash = name.indexOf('/'); slash >= 0; slash = name.indexOf('/', slash + 1)) {
+      String parent = name.substring(0, slash);
+      Update other = updates.get(parent);
+      boolean created = other != null && other.newId != null;
+      if (created || (!parent.equals("refs") && GitRefUtil.refResolve(repo, parent) != null)) {
+        throw new IOException("Cannot create ref '" + name + "': '" + parent + "' exists");
+      }
+    }
+    if (!GitRefUtil.listRefs(repo, name + "/").isEmpty()
+        || !updates.subMap(name + "/", name + "0").isEmpty()) {
+      throw new IOException("Cannot create ref '" + name + "': refs exist below it");
+    }
+  }
+
+  /**
+   * Removes the directories a deleted loose ref leaves empty, keeping refs/heads, refs/tags and the
+   * other top-level ones.
+   */
+  static void removeEmptyParents(GitRepository repo, Path file) throws IOException {
+    removeEmptyParents(Paths.get(repo.getGitDir(), "refs"), file);
+  }
+
+  // the same below another directory laid out like refs, such as logs/refs
+  static void removeEmptyParents(Path top, Path file) throws IOException {
+    for (Path dir = file.getParent(); !dir.getParent().equals(top); dir = dir.getParent()) {
+      try {
+        Files.delete(dir);
+      } catch (DirectoryNotEmptyException | NoSuchFileException e) {
+        return;
+      }
+    }
+  }
+
+  private static void checkName(String name) {
+    if (!name.startsWith("refs/")
+        || name.endsWith("/")
+        || name.endsWith(".lock")
+        || name.contains("..")
+        || name.contains("//")) {
+      throw new IllegalArgumentException("Invalid ref name: " + name);
+    }
+  }
+}
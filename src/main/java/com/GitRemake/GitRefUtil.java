@@ -2,31 +2,171 @@ package com.GitRemake;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
+/**
+ * Refs live either in a file of their own under .git (loose) or in packed-refs. A loose ref wins
+ * over a packed one of the same name, so lookups try the loose file first and fall back to the
+ * packed-refs snapshot the repository keeps, which answers with a binary search. Repositories
+ * with extensions.refStorage = reftable keep their refs in a {@link GitReftableStack} instead.
+ */
 public class GitRefUtil {
+  // git gives up on symbolic refs nested deeper than this
+  private static final int MAX_SYMREF_DEPTH = 5;
+
+  // where a short name like "main" or "v1.0" is looked for, in this order
+  private static final String[] SHORT_NAME_PREFIXES = {
+    "refs/tags/", "refs/heads/", "refs/remotes/"
+  };
+
   // Resolves the reference to its actuall SHA-1 hash value
-  public static String refResolve(GitRepository repo, String reference) throws IOException {
-    String pathStr = repo.repoFile(reference);
-    Path path = Paths.get(pathStr);
+  public static ObjectId refResolve(GitRepository repo, String reference) throws IOException {
+    String name = reference;
+    for (int depth = 0; depth <= MAX_SYMREF_DEPTH; depth++) {
+      String data = refRead(repo, name);
+      if (data == null) {
+        return null;
+      }
+      // ex: ref: refs/heads/main
+      if (!data.startsWith("ref: ")) {
+        // direct reference (SHA-1)
+        return ObjectId.fromString(data);
+      }
+      name = data.substring(5);
+    }
+    throw new IOException("Symbolic ref nested too deep: " + reference);
+  }
 
-    if (!Files.exists(path)) {
-      return null;
+  /**
+   * A ref's own value without following it: "ref: &lt;target&gt;" for a symbolic ref, the hex id
+   * otherwise, or null if there is no such ref. With reftable, HEAD and everything under refs/
+   * come from the tables; other names like FETCH_HEAD are always files.
+   */
+  public static String refRead(GitRepository repo, String name) throws IOException {
+    if (repo.usesReftable() && isReftableName(name)) {
+      GitReftable.Ref ref = repo.getReftableStack().read(name);
+      if (ref == null) {
+        return null;
+      }
+      return ref.getTarget() != null ? "ref: " + ref.getTarget() : ref.getId().name();
     }
+    String data = readLoose(repo, name);
+    if (data != null) {
+      return data;
+    }
+    ObjectId packed = repo.getPackedRefs().find(name);
+    return packed == null ? null : packed.name();
+  }
 
-    String data = Files.readString(path, StandardCharsets.UTF_8).trim();
+  /**
+   * Resolves a short name the way git does for command line arguments: as a tag, then a branch,
+   * then a remote-tracking branch.
+   *
+   * @return the id, or null if no ref has that name
+   */
+  public static ObjectId refResolveShort(GitRepository repo, String name) throws IOException {
+    for (String prefix : SHORT_NAME_PREFIXES) {
+      ObjectId id = refResolve(repo, prefix + name);
+      if (id != null) {
+        return id;
+      }
+    }
+    return null;
+  }
 
-    // ex: ref: refs/heads/main
-    if (data.startsWith("ref: ")) {
-      return refResolve(repo, data.substring(5));
+  /**
+   * The full name a short ref name stands for, looked up in the same order as {@link
+   * #refResolveShort}; HEAD and names under refs/ stand for themselves.
+   *
+   * @return the full name, or null if no ref has that name
+   */
+  public static String refFullName(GitRepository repo, String name) throws IOException {
+    if (name.equals("HEAD") || name.startsWith("refs/")) {
+      return refRead(repo, name) != null ? name : null;
+    }
+    for (String prefix : SHORT_NAME_PREFIXES) {
+      if (refRead(repo, prefix + name) != null) {
+        return prefix + name;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * What a ref peels to: for an annotated tag, the object at the end of its chain of tags. Packed
+   * refs usually record this, so reading the tag is only needed for loose refs.
+   *
+   * @return the peeled id, or null if the ref does not point at an annotated tag
+   */
+  public static ObjectId refPeel(GitRepository repo, String name, ObjectId id) throws IOException {
+    if (repo.usesReftable()) {
+      // tables record the peeled target of every tag they hold
+      GitReftable.Ref ref = repo.getReftableStack().read(name);
+      if (ref != null && id.equals(ref.getId())) {
+        return ref.getPeeled();
+      }
     } else {
-      // direct reference (SHA-1)
-      return data;
+      GitPackedRefs packed = repo.getPackedRefs();
+      if (id.equals(packed.find(name)) && packed.isPeelKnown(name)) {
+        return packed.findPeeled(name);
+      }
+    }
+    ObjectId target = id;
+    ObjectInfo info = GitObjectUtil.objectInfo(repo, target);
+    while (info != null && info.type.equals("tag")) {
+      target = ((GitTag) GitObjectUtil.objectRead(repo, target)).getObject();
+      info = GitObjectUtil.objectInfo(repo, target);
+    }
+    return target.equals(id) ? null : target;
+  }
+
+  /**
+   * Every ref whose full name starts with prefix, loose and packed, by name. Symbolic refs are
+   * listed with the id they resolve to, and ones that resolve to nothing are left out.
+   */
+  public static SortedMap<String, ObjectId> listRefs(GitRepository repo, String prefix)
+      throws IOException {
+    SortedMap<String, ObjectId> refs = new TreeMap<>();
+    if (repo.usesReftable()) {
+      // one seek to the prefix in each table
+      for (GitReftable.Ref ref : repo.getReftableStack().scan(prefix).values()) {
+        ObjectId id = ref.getId() != null ? ref.getId() : refResolve(repo, ref.getName());
+        if (id != null) {
+          refs.put(ref.getName(), id);
+        }
+      }
+      return refs;
+    }
+    GitPackedRefs packed = repo.getPackedRefs();
+    for (String name : packed.names(prefix)) {
+      refs.put(name, packed.find(name));
     }
+    // the loose refs of the directory holding the prefix, which override packed ones
+    String dir = prefix.substring(0, prefix.lastIndexOf('/') + 1);
+    listLoose(repo, Paths.get(repo.getGitDir(), dir), dir, prefix, true, refs);
+    return refs;
+  }
+
+  /**
+   * The loose refs whose full name starts with prefix that hold an id, leaving out symbolic refs
+   * such as refs/remotes/origin/HEAD. These are the refs pack-refs can move into packed-refs.
+   */
+  public static SortedMap<String, ObjectId> listLooseRefs(GitRepository repo, String prefix)
+      throws IOException {
+    SortedMap<String, ObjectId> refs = new TreeMap<>();
+    if (repo.usesReftable()) {
+      return refs;
+    }
+    String dir = prefix.substring(0, prefix.lastIndexOf('/') + 1);
+    listLoose(repo, Paths.get(repo.getGitDir(), dir), dir, prefix, false, refs);
+    return refs;
   }
 
   /* The main form
@@ -40,52 +180,84 @@ public class GitRefUtil {
     }
   }
       */
+  @SuppressWarnings("unchecked")
   public static Map<String, Object> refList(GitRepository repo, String path) throws IOException {
-    String refString;
-    if (path == null) {
-      refString = repo.repoDir(false, "refs");
-    } else {
-      refString = repo.repoFile(path);
-    }
-
-    Path refsPath = Paths.get(refString);
-
+    String prefix = path == null ? "refs/" : path + "/";
     Map<String, Object> refs = new TreeMap<>();
-
-    // ensure we dont call it on file
-    if (!Files.exists(refsPath) || !Files.isDirectory(refsPath)) {
-      return refs;
+    for (Map.Entry<String, ObjectId> ref : listRefs(repo, prefix).entrySet()) {
+      // nest the name's directories, refs/tags/v1.0 becomes tags -> v1.0
+      String[] parts = ref.getKey().substring(prefix.length()).split("/");
+      Map<String, Object> dir = refs;
+      for (int i = 0; i < parts.length - 1; i++) {
+        dir = (Map<String, Object>) dir.computeIfAbsent(parts[i], k -> new TreeMap<>());
+      }
+      dir.put(parts[parts.length - 1], ref.getValue());
     }
-    // iterate through all the files
-    Files.list(refsPath)
-        .forEach(
-            p -> {
-              String name = p.getFileName().toString();
-
-              try {
-                if (Files.isDirectory(p)) {
-                  String subPath = path == null ? "ref/" + name : path + "/" + name;
-                  refs.put(name, refList(repo, subPath));
-                } else {
-                  String refPath = path == null ? "ref/" + name : path + "/" + name;
-                  refs.put(name, refResolve(repo, refPath));
-                }
-
-              } catch (IOException e) {
-                System.err.println("Error processing reference: " + p + " - " + e.getMessage());
-              }
-            });
     return refs;
   }
 
-  public static void refCreate(GitRepository repo, String refName, String sha) throws IOException {
-    String pathString = repo.repoFile("refs/" + refName);
-    Path refFile = Paths.get(pathString);
+  // points refs/<refName> at sha under its lock, see GitRefTransaction
+  public static void refCreate(GitRepository repo, String refName, ObjectId sha)
+      throws IOException {
+    new GitRefTransaction(repo).update("refs/" + refName, sha, null).commit();
+  }
+
+  // the names a reftable holds, the rest stay files
+  static boolean isReftableName(String name) {
+    return name.equals("HEAD") || name.startsWith("refs/");
+  }
 
-    // make sure all the parent directory is created
-    Files.createDirectories(refFile.getParent());
+  // the trimmed content of a loose ref, or null if there is no file by that name
+  static String readLoose(GitRepository repo, String name) throws IOException {
+    Path path = Paths.get(repo.getGitDir(), name);
+    try {
+      return Files.readString(path, StandardCharsets.UTF_8).trim();
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      // a directory of refs, like refs/heads/feature when refs/heads/feature/x exists
+      if (Files.isDirectory(path)) {
+        return null;
+      }
+      throw e;
+    }
+  }
 
-    // write the hash reference inside the file
-    Files.writeString(refFile, sha + "\n", StandardCharsets.UTF_8);
+  private static void listLoose(
+      GitRepository repo,
+      Path dir,
+      String dirName,
+      String prefix,
+      boolean followSymbolic,
+      SortedMap<String, ObjectId> refs)
+      throws IOException {
+    try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+      for (Path child : children) {
+        String name = dirName + child.getFileName();
+        if (Files.isDirectory(child)) {
+          // only directories that can hold names with the prefix
+          String subdir = name + "/";
+          if (subdir.startsWith(prefix) || prefix.startsWith(subdir)) {
+            listLoose(repo, child, subdir, prefix, followSymbolic, refs);
+          }
+        } else if (name.startsWith(prefix) && !name.endsWith(".lock")) {
+          String data = readLoose(repo, name);
+          if (data == null) {
+            continue;
+          }
+          ObjectId id;
+          if (!data.startsWith("ref: ")) {
+            id = ObjectId.fromString(data);
+          } else {
+            id = followSymbolic ? refResolve(repo, name) : null;
+          }
+          if (id != null) {
+            refs.put(name, id);
+          }
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // no loose refs there
+    }
   }
 }
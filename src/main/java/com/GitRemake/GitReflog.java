@@ -0,0 +1,348 @@
+package com.GitRemake;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * The history of a ref in .git/logs/&lt;name&gt;, one line per update, oldest first:
+ *
+ * <pre>
+ *   &lt;old id&gt; &lt;new id&gt; Name &lt;email&gt; &lt;time&gt; &lt;zone&gt;\t&lt;message&gt;
+ * </pre>
+ *
+ * <p>An update costs one write to a channel opened with O_APPEND, so appends from different
+ * processes never interleave within a line and nothing is read first. Lookups map the file and
+ * work from the end: {@code @{n}} walks back n lines, and {@code @{date}} walks back to the first
+ * line at or before the date. Like git, that does not assume the timestamps only grow; a clock
+ * that was set back leaves them out of order.
+ *
+ * <p>A reftable repository keeps the log in the tables instead, as log records written by the
+ * same {@link GitRefTransaction} that moves the ref; the lookups here read them from the stack.
+ */
+public class GitReflog {
+  // one line of the log
+  public static class Entry {
+    private final ObjectId oldId;
+    private final ObjectId newId;
+    private final String identity;
+    private final long time;
+    private final String message;
+
+    Entry(ObjectId oldId, ObjectId newId, String identity, long time, String message) {
+      this.oldId = oldId;
+      this.newId = newId;
+      this.identity = identity;
+      this.time = time;
+      this.message = message;
+    }
+
+    public ObjectId getOldId() {
+      return oldId;
+    }
+
+    public ObjectId getNewId() {
+      return newId;
+    }
+
+    // "Name <email> time zone"
+    public String getIdentity() {
+      return identity;
+    }
+
+    public long getTime() {
+      return time;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+  }
+
+  private GitReflog() {}
+
+  public static Path path(GitRepository repo, String name) {
+    return Paths.get(repo.getGitDir(), "logs", name);
+  }
+
+  /**
+   * Whether updates to a ref are logged. As in git, that is every ref with a log already, and
+   * with core.logAllRefUpdates (on unless the repository is bare) also HEAD and the branches,
+   * remote-tracking branches and notes; "always" logs every ref.
+   */
+  public static boolean shouldLog(GitRepository repo, String name) throws IOException {
+    String mode = repo.getConfig("core", "logAllRefUpdates");
+    if ("always".equalsIgnoreCase(mode)) {
+      return true;
+    }
+    boolean exists =
+        repo.usesReftable()
+            ? !repo.getReftableStack().readLog(name).isEmpty()
+            : Files.exists(path(repo, name));
+    if (exists) {
+      return true;
+    }
+    boolean enabled =
+        mode == null
+            ? !"true".equalsIgnoreCase(repo.getConfig("core", "bare"))
+            : mode.equalsIgnoreCase("true");
+    return enabled
+        && (name.equals("HEAD")
+            || name.startsWith("refs/heads/")
+            || name.startsWith("refs/remotes/")
+            || name.startsWith("refs/notes/"));
+  }
+
+  /**
+   * Appends one entry to the ref's log if {@link #shouldLog} says it is kept, stamped with the
+   * user.name and user.email of the config and the current time. Only for the files backend; a
+   * reftable transaction writes its entries into its table.
+   */
+  public static void append(
+      GitRepository repo, String name, ObjectId oldId, ObjectId newId, String message)
+      throws IOException {
+    if (!shouldLog(repo, name)) {
+      return;
+    }
+    Entry entry = entry(repo, oldId, newId, message);
+    StringBuilder line = new StringBuilder();
+    line.append(oldId.name()).append(' ').append(newId.name()).append(' ');
+    line.append(entry.getIdentity());
+    if (!entry.getMessage().isEmpty()) {
+      line.append('\t').append(entry.getMessage());
+    }
+    line.append('\n');
+
+    Path file = path(repo, name);
+    Files.createDirectories(file.getParent());
+    ByteBuffer bytes = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8));
+    try (FileChannel channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND)) {
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+    }
+  }
+
+  // a new entry stamped with the committer and the current time
+  static Entry entry(GitRepository repo, ObjectId oldId, ObjectId newId, String message) {
+    String identity = identity(repo);
+    String[] stamp = identity.substring(identity.lastIndexOf('>') + 1).trim().split(" ");
+    // a message is one line, whatever it was given as
+    String line = message == null ? "" : message.trim().replaceAll("\\s*\n\\s*", " ");
+    return new Entry(oldId, newId, identity, Long.parseLong(stamp[0]), line);
+  }
+
+  // a deleted ref takes its history with it
+  public static void delete(GitRepository repo, String name) throws IOException {
+    Path file = path(repo, name);
+    if (Files.deleteIfExists(file)) {
+      GitRefTransaction.removeEmptyParents(Paths.get(repo.getGitDir(), "logs", "refs"), file);
+    }
+  }
+
+  // the names of every ref that has a log, sorted
+  public static SortedSet<String> names(GitRepository repo) throws IOException {
+    SortedSet<String> names = new TreeSet<>();
+    if (repo.usesReftable()) {
+      for (GitReftable table : repo.getReftableStack().getTables()) {
+        for (GitReftable.Log log : table.allLogs()) {
+          names.add(log.getName());
+        }
+      }
+      return names;
+    }
+    Path logs = Paths.get(repo.getGitDir(), "logs");
+    if (!Files.isDirectory(logs)) {
+      return names;
+    }
+    try (Stream<Path> files = Files.walk(logs)) {
+      files
+          .filter(Files::isRegularFile)
+          .forEach(file -> names.add(logs.relativize(file).toString().replace('\\', '/')));
+    }
+    return names;
+  }
+
+  // every entry, oldest first
+  public static List<Entry> read(GitRepository repo, String name) throws IOException {
+    if (repo.usesReftable()) {
+      List<Entry> entries = new ArrayList<>(repo.getReftableStack().readLog(name));
+      Collections.reverse(entries);
+      return entries;
+    }
+    List<Entry> entries = new ArrayList<>();
+    ByteBuffer log = map(repo, name);
+    for (int start = 0; start < log.limit(); ) {
+      int end = lineEnd(log, start);
+      if (end > start) {
+        entries.add(parse(log, start, end));
+      }
+      start = end + 1;
+    }
+    return entries;
+  }
+
+  /**
+   * The n-th newest entry, 0 being the last update, found by walking back from the end of the
+   * file so only the lines asked about are read.
+   *
+   * @return the entry, or null if the log has no more than n entries
+   */
+  public static Entry nth(GitRepository repo, String name, int n) throws IOException {
+    if (repo.usesReftable()) {
+      List<Entry> entries = repo.getReftableStack().readLog(name);
+      return n < entries.size() ? entries.get(n) : null;
+    }
+    ByteBuffer log = map(repo, name);
+    int end = log.limit();
+    int count = 0;
+    while (end > 0) {
+      // end is one past the line's newline, if it has one
+      int lineEnd = log.get(end - 1) == '\n' ? end - 1 : end;
+      int start = lineStart(log, lineEnd);
+      if (lineEnd > start) {
+        if (count == n) {
+          return parse(log, start, lineEnd);
+        }
+        count++;
+      }
+      end = start;
+    }
+    return null;
+  }
+
+  /**
+   * The value the ref had at a time: the new id of the newest entry at or before it, found by
+   * walking back from the end as git does. Before the first entry that is the value the first
+   * update replaced, or its new one if the ref was created then, as git answers.
+   *
+   * @return the id, or null if the log is empty
+   */
+  public static ObjectId at(GitRepository repo, String name, long time) throws IOException {
+    if (repo.usesReftable()) {
+      List<Entry> entries = repo.getReftableStack().readLog(name);
+      if (entries.isEmpty()) {
+        return null;
+      }
+      for (Entry entry : entries) {
+        if (entry.getTime() <= time) {
+          return entry.getNewId();
+        }
+      }
+      Entry first = entries.get(entries.size() - 1);
+      return first.getOldId().equals(ObjectId.zeroId()) ? first.getNewId() : first.getOldId();
+    }
+    ByteBuffer log = map(repo, name);
+    Entry first = null;
+    int end = log.limit();
+    while (end > 0) {
+      int lineEnd = log.get(end - 1) == '\n' ? end - 1 : end;
+      int start = lineStart(log, lineEnd);
+      if (lineEnd > start) {
+        first = parse(log, start, lineEnd);
+        if (first.getTime() <= time) {
+          return first.getNewId();
+        }
+      }
+      end = start;
+    }
+    if (first == null) {
+      return null;
+    }
+    return first.getOldId().equals(ObjectId.zeroId()) ? first.getNewId() : first.getOldId();
+  }
+
+  // the whole log, mapped; empty if there is none
+  private static ByteBuffer map(GitRepository repo, String name) throws IOException {
+    try (FileChannel channel = FileChannel.open(path(repo, name), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Reflog too large: " + name);
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } catch (NoSuchFileException e) {
+      return ByteBuffer.allocate(0);
+    }
+  }
+
+  // the start of the line holding position
+  private static int lineStart(ByteBuffer log, int position) {
+    int start = position;
+    while (start > 0 && log.get(start - 1) != '\n') {
+      start--;
+    }
+    return start;
+  }
+
+  // the newline ending the line that starts at start, or the end of the file
+  private static int lineEnd(ByteBuffer log, int start) {
+    int end = start;
+    while (end < log.limit() && log.get(end) != '\n') {
+      end++;
+    }
+    return end;
+  }
+
+  private static Entry parse(ByteBuffer log, int start, int end) throws IOException {
+    byte[] bytes = new byte[end - start];
+    log.get(start, bytes);
+    String line = new String(bytes, StandardCharsets.UTF_8);
+    int tab = line.indexOf('\t');
+    String head = tab < 0 ? line : line.substring(0, tab);
+    String message = tab < 0 ? "" : line.substring(tab + 1);
+    int close = head.lastIndexOf('>');
+    if (head.length() < 83 || head.charAt(40) != ' ' || head.charAt(81) != ' ' || close < 0) {
+      throw new IOException("Bad reflog line: " + line);
+    }
+    String[] stamp = head.substring(close + 1).trim().split(" ");
+    try {
+      return new Entry(
+          ObjectId.fromString(head.substring(0, 40)),
+          ObjectId.fromString(head.substring(41, 81)),
+          head.substring(82),
+          Long.parseLong(stamp[0]),
+          message);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Bad reflog line: " + line, e);
+    }
+  }
+
+  // the committer for log lines, with the same fallback as tags when the config names no one
+  private static String identity(GitRepository repo) {
+    String userName = repo.getConfig("user", "name");
+    if (userName == null) {
+      userName = System.getProperty("user.name", "Unknown");
+    }
+    String userEmail = repo.getConfig("user", "email");
+    if (userEmail == null) {
+      userEmail = userName.toLowerCase() + "@example.com";
+    }
+
+    long timestamp = Instant.now().getEpochSecond();
+    int offsetMinutes = ZonedDateTime.now().getOffset().getTotalSeconds() / 60;
+    int hours = Math.abs(offsetMinutes) / 60;
+    int minutes = Math.abs(offsetMinutes) % 60;
+    String tzSign = offsetMinutes >= 0 ? "+" : "-";
+    return String.format(
+        "%s <%s> %d %s%02d%02d", userName, userEmail, timestamp, tzSign, hours, minutes);
+  }
+}
@@ -0,0 +1,870 @@
+package com.GitRemake;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One reftable file: refs in name order, in blocks of prefix-compressed records with an index over
+ * the blocks, then the reflog entries, the format git uses with extensions.refStorage = reftable.
+ * Tables never change once written; {@link GitReftableStack} layers them, the newest record for a
+ * name winning.
+ *
+ * <pre>
+ *   header      "REFT", version 1, 24 bit block size, min and max update index
+ *   ref blocks  'r', 24 bit length, records, 24 bit restart offsets, 16 bit restart count
+ *   ref index   'i' blocks of (last name in block, block offset), only with several blocks
+ *   log blocks  'g', 24 bit inflated length, then the rest of the block deflated
+ *   footer      the header again, the section offsets and a CRC-32 of the footer
+ * </pre>
+ *
+ * A record stores how many leading bytes its name shares with the previous one, the rest of the
+ * name, its update index less the table's minimum, and a value: nothing for a deletion, an id, an
+ * id and its peeled target, or a symbolic ref's target. Every 16th record is a restart point that
+ * stores its whole name, so a lookup binary searches the restart points and decodes at most 16
+ * records. The first block also holds the file header, which its length and offsets count.
+ *
+ * <p>A log record is keyed by the ref name, a NUL and the update index subtracted from 2^64 - 1,
+ * so a ref's entries sort newest first, and holds the old and new id, the committer, the time and
+ * zone and the message. Log blocks are not padded and are read front to back; a table with no refs
+ * starts with its first log block. The object section is not written; git reads tables without it.
+ */
+public class GitReftable {
+  static final int DEFAULT_BLOCK_SIZE = 4096;
+
+  private static final byte[] MAGIC = {'R', 'E', 'F', 'T'};
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 24;
+  private static final int FOOTER_SIZE = 68;
+  private static final int RESTART_INTERVAL = 16;
+  private static final byte BLOCK_REF = 'r';
+  private static final byte BLOCK_INDEX = 'i';
+  private static final byte BLOCK_LOG = 'g';
+
+  private static final int VALUE_DELETION = 0;
+  private static final int VALUE_ID = 1;
+  private static final int VALUE_PEELED = 2;
+  private static final int VALUE_SYMREF = 3;
+
+  private static final int LOG_DELETION = 0;
+  private static final int LOG_UPDATE = 1;
+
+  /** A ref record: an id with its peeled target, a symbolic ref, or the deletion of a name. */
+  public static class Ref {
+    private final String name;
+    private final long updateIndex;
+    private final ObjectId id;
+    private final ObjectId peeled;
+    private final String target;
+
+    private Ref(String name, long updateIndex, ObjectId id, ObjectId peeled, String target) {
+      this.name = name;
+      this.updateIndex = updateIndex;
+      this.id = id;
+      this.peeled = peeled;
+      this.target = target;
+    }
+
+    // peeled is what an annotated tag points at in the end, null for anything else
+    public static Ref of(String name, long updateIndex, ObjectId id, ObjectId peeled) {
+      return new Ref(name, updateIndex, id, peeled, null);
+    }
+
+    public static Ref symbolic(String name, long updateIndex, String target) {
+      return new Ref(name, updateIndex, null, null, target);
+    }
+
+    // hides the name in the tables below
+    public static Ref deletion(String name, long updateIndex) {
+      return new Ref(name, updateIndex, null, null, null);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getUpdateIndex() {
+      return updateIndex;
+    }
+
+    // null for symbolic refs and deletions
+    public ObjectId getId() {
+      return id;
+    }
+
+    public ObjectId getPeeled() {
+      return peeled;
+    }
+
+    // the ref a symbolic ref points at, null otherwise
+    public String getTarget() {
+      return target;
+    }
+
+    public boolean isDeletion() {
+      return id == null && target == null;
+    }
+  }
+
+  /** A log record: one entry of a ref's reflog, or the deletion of one. */
+  public static class Log {
+    private final String name;
+    private final long updateIndex;
+    private final GitReflog.Entry entry;
+
+    private Log(String name, long updateIndex, GitReflog.Entry entry) {
+      this.name = name;
+      this.updateIndex = updateIndex;
+      this.entry = entry;
+    }
+
+    public static Log of(String name, long updateIndex, GitReflog.Entry entry) {
+      return new Log(name, updateIndex, entry);
+    }
+
+    // hides the entry with this update index in the tables below
+    public static Log deletion(String name, long updateIndex) {
+      return new Log(name, updateIndex, null);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getUpdateIndex() {
+      return updateIndex;
+    }
+
+    // null for a deletion
+    public GitReflog.Entry getEntry() {
+      return entry;
+    }
+
+    public boolean isDeletion() {
+      return entry == null;
+    }
+
+    // name, NUL, then the update index reversed so that newer entries sort first
+    byte[] key() {
+      byte[] name = this.name.getBytes(StandardCharsets.UTF_8);
+      return ByteBuffer.allocate(name.length + 9)
+          .put(name)
+          .put((byte) 0)
+          .putLong(-1L - updateIndex)
+          .array();
+    }
+  }
+
+  private final Path path;
+  private final ByteBuffer data;
+  private final int blockSize;
+  private final long minUpdateIndex;
+  private final long maxUpdateIndex;
+  private final long refIndexPosition;
+  // where the ref blocks end
+  private final long refEnd;
+  // the log blocks, from logStart up to logEnd; logStart is -1 without any
+  private final long logStart;
+  private final long logEnd;
+
+  private GitReftable(Path path, ByteBuffer data) throws IOException {
+    this.path = path;
+    this.data = data;
+    int size = data.limit();
+    if (size < HEADER_SIZE + FOOTER_SIZE) {
+      throw new IOException("Reftable too short: " + path);
+    }
+    int footer = size - FOOTER_SIZE;
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (data.get(i) != MAGIC[i] || data.get(footer + i) != MAGIC[i]) {
+        throw new IOException("Not a reftable: " + path);
+      }
+    }
+    if (data.get(footer + 4) != VERSION) {
+      throw new IOException("Unsupported reftable version " + data.get(footer + 4) + ": " + path);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(data.duplicate().position(footer).limit(size - 4));
+    if ((int) crc.getValue() != data.getInt(size - 4)) {
+      throw new IOException("Reftable footer checksum mismatch: " + path);
+    }
+
+    blockSize = getInt24(footer + 5);
+    minUpdateIndex = data.getLong(footer + 8);
+    maxUpdateIndex = data.getLong(footer + 16);
+    refIndexPosition = data.getLong(footer + 24);
+    long objPosition = data.getLong(footer + 32) >>> 5;
+    long logPosition = data.getLong(footer + 48);
+    long logIndexPosition = data.getLong(footer + 56);
+    // the ref section runs up to whichever section comes next
+    long end = footer;
+    for (long position : new long[] {refIndexPosition, objPosition, logPosition}) {
+      if (position > 0 && position < end) {
+        end = position;
+      }
+    }
+    // without refs the first block is a log block, at position 0 like any first block
+    boolean logsFirst = footer > HEADER_SIZE && data.get(HEADER_SIZE) == BLOCK_LOG;
+    refEnd = logsFirst ? HEADER_SIZE : end;
+    logStart = logPosition > 0 || logsFirst ? logPosition : -1;
+    logEnd = logIndexPosition > 0 ? logIndexPosition : footer;
+  }
+
+  /** Maps a table file; it is never written again, so the mapping stays valid. */
+  public static GitReftable open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return new GitReftable(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public long getMinUpdateIndex() {
+    return minUpdateIndex;
+  }
+
+  public long getMaxUpdateIndex() {
+    return maxUpdateIndex;
+  }
+
+  // the record for exactly this name, which may be a deletion, or null
+  public Ref find(String name) {
+    Cursor cursor = seek(name.getBytes(StandardCharsets.UTF_8));
+    Ref ref = cursor == null ? null : cursor.next();
+    return ref != null && ref.name.equals(name) ? ref : null;
+  }
+
+  // every record whose name starts with prefix, deletions included, in name order
+  public List<Ref> scan(String prefix) {
+    List<Ref> refs = new ArrayList<>();
+    Cursor cursor = seek(prefix.getBytes(StandardCharsets.UTF_8));
+    if (cursor == null) {
+      return refs;
+    }
+    for (Ref ref = cursor.next(); ref != null && ref.name.startsWith(prefix); ref = cursor.next()) {
+      refs.add(ref);
+    }
+    return refs;
+  }
+
+  /**
+   * Every log record of a ref, deletions included, newest first. The log blocks are read in order
+   * until the records pass the name.
+   */
+  public List<Log> logs(String name) throws IOException {
+    // the name and its NUL, which every key of the ref starts with
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    return scanLogs(Arrays.copyOf(nameBytes, nameBytes.length + 1));
+  }
+
+  // every log record in the table, deletions included, by ref name and then newest first
+  public List<Log> allLogs() throws IOException {
+    return scanLogs(new byte[0]);
+  }
+
+  // the log records whose keys start with prefix
+  private List<Log> scanLogs(byte[] prefix) throws IOException {
+    List<Log> logs = new ArrayList<>();
+    long position = logStart;
+    while (position >= 0 && position < logEnd) {
+      int header = position == 0 ? HEADER_SIZE : 0;
+      if (data.get((int) position + header) != BLOCK_LOG) {
+        break;
+      }
+      Inflater inflater = GitZlib.getInflater();
+      byte[] block;
+      try {
+        block = new byte[getInt24((int) position + header + 1)];
+        inflater.setInput(data.duplicate().position((int) position + header + 4));
+        int start = header + 4;
+        while (start < block.length) {
+          int n = inflater.inflate(block, start, block.length - start);
+          if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+            throw new IOException("Truncated log block at " + position + " in " + path);
+          }
+          start += n;
+        }
+        position += header + 4 + inflater.getBytesRead();
+      } catch (DataFormatException e) {
+        throw new IOException("Bad log block at " + position + " in " + path, e);
+      } finally {
+        GitZlib.release(inflater);
+      }
+
+      ByteBuffer in = ByteBuffer.wrap(block);
+      int restartCount = in.getShort(block.length - 2) & 0xffff;
+      int recordsEnd = block.length - 2 - 3 * restartCount;
+      in.position(header + 4);
+      byte[] key = new byte[0];
+      while (in.position() < recordsEnd) {
+        int shared = (int) readVarint(in);
+        long lengthAndType = readVarint(in);
+        int suffix = (int) (lengthAndType >>> 3);
+        key = Arrays.copyOf(key, shared + suffix);
+        in.get(key, shared, suffix);
+        int type = (int) (lengthAndType & 7);
+        GitReflog.Entry entry = type == LOG_UPDATE ? readLogValue(in) : null;
+        if (type != LOG_UPDATE && type != LOG_DELETION) {
+          throw new IOException("Bad log value type " + type + " in " + path);
+        }
+        int order = compare(Arrays.copyOf(key, Math.min(key.length, prefix.length)), prefix);
+        if (order > 0) {
+          return logs;
+        }
+        if (order == 0 && key.length >= 9) {
+          String name = new String(key, 0, key.length - 9, StandardCharsets.UTF_8);
+          long updateIndex = -1L - ByteBuffer.wrap(key, key.length - 8, 8).getLong();
+          logs.add(new Log(name, updateIndex, entry));
+        }
+      }
+    }
+    return logs;
+  }
+
+  /**
+   * Lays out refs, sorted by name, as a table covering the given update indexes. Ref blocks are
+   * padded to the block size; when there is more than one, index blocks follow, in as many levels
+   * as it takes for the top one to fit in a block. The logs, in any order, go in log blocks after
+   * them.
+   */
+  public static byte[] serialize(
+      List<Ref> refs, List<Log> logs, long minUpdateIndex, long maxUpdateIndex, int blockSize)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] header = header(blockSize, minUpdateIndex, maxUpdateIndex);
+    out.write(header);
+
+    // the last name of each ref block and where the block starts
+    List<byte[]> lastNames = new ArrayList<>();
+    List<Long> positions = new ArrayList<>();
+    BlockWriter block = new BlockWriter(BLOCK_REF, HEADER_SIZE, blockSize);
+    for (Ref ref : refs) {
+      byte[] name = ref.name.getBytes(StandardCharsets.UTF_8);
+      if (!block.add(name, encodeValue(ref, minUpdateIndex))) {
+        if (block.count == 0) {
+          throw new IOException("Ref too large for a " + blockSize + " byte block: " + ref.name);
+        }
+        lastNames.add(block.lastName);
+        positions.add((long) out.size() - block.headerOffset);
+        block.finish(out, true);
+        block = new BlockWriter(BLOCK_REF, 0, blockSize);
+        if (!block.add(name, encodeValue(ref, minUpdateIndex))) {
+          throw new IOException("Ref too large for a " + blockSize + " byte block: " + ref.name);
+        }
+      }
+    }
+    if (block.count > 0) {
+      lastNames.add(block.lastName);
+      positions.add((long) out.size() - block.headerOffset);
+      block.finish(out, true);
+    }
+
+    long refIndexPosition = 0;
+    while (lastNames.size() > 1) {
+      // one level of index blocks over the level below
+      List<byte[]> levelNames = new ArrayList<>();
+      List<Long> levelPositions = new ArrayList<>();
+      BlockWriter index = new BlockWriter(BLOCK_INDEX, 0, blockSize);
+      for (int i = 0; i < lastNames.size(); i++) {
+        byte[] value = varint(positions.get(i));
+        if (!index.add(lastNames.get(i), value)) {
+          levelNames.add(index.lastName);
+          levelPositions.add((long) out.size());
+          index.finish(out, false);
+          index = new BlockWriter(BLOCK_INDEX, 0, blockSize);
+          index.add(lastNames.get(i), value);
+        }
+      }
+      levelNames.add(index.lastName);
+      levelPositions.add((long) out.size());
+      index.finish(out, false);
+      refIndexPosition = levelPositions.get(levelPositions.size() - 1);
+      lastNames = levelNames;
+      positions = levelPositions;
+    }
+
+    long logPosition = writeLogs(out, logs, blockSize);
+
+    ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+    footer.put(header);
+    footer.putLong(refIndexPosition);
+    footer.putLong(0); // no object blocks, and so no object id length
+    footer.putLong(0);
+    footer.putLong(logPosition);
+    footer.putLong(0); // no log index, readers go through the blocks in order
+    CRC32 crc = new CRC32();
+    crc.update(footer.array(), 0, FOOTER_SIZE - 4);
+    footer.putInt((int) crc.getValue());
+    out.write(footer.array());
+    return out.toByteArray();
+  }
+
+  // the log blocks, returning where they start; 0 means none unless the table has no refs
+  private static long writeLogs(ByteArrayOutputStream out, List<Log> logs, int blockSize)
+      throws IOException {
+    if (logs.isEmpty()) {
+      return 0;
+    }
+    List<Log> sorted = new ArrayList<>(logs);
+    List<byte[]> keys = new ArrayList<>();
+    sorted.sort((a, b) -> compare(a.key(), b.key()));
+    for (Log log : sorted) {
+      keys.add(log.key());
+    }
+
+    // with no ref blocks the first log block is the file's first block and holds its header
+    long start = out.size() == HEADER_SIZE ? 0 : out.size();
+    BlockWriter block = new BlockWriter(BLOCK_LOG, start == 0 ? HEADER_SIZE : 0, blockSize);
+    for (int i = 0; i < sorted.size(); i++) {
+      byte[] value = encodeLogValue(sorted.get(i));
+      if (!block.add(keys.get(i), value)) {
+        block.finishDeflated(out);
+        block = new BlockWriter(BLOCK_LOG, 0, blockSize);
+        block.add(keys.get(i), value);
+      }
+    }
+    block.finishDeflated(out);
+    return start;
+  }
+
+  // the value type, then for an update the old and new id, committer, time, zone and message
+  private static byte[] encodeLogValue(Log log) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (log.entry == null) {
+      out.write(LOG_DELETION);
+      return out.toByteArray();
+    }
+    GitReflog.Entry entry = log.entry;
+    out.write(LOG_UPDATE);
+    out.write(entry.getOldId().toRaw());
+    out.write(entry.getNewId().toRaw());
+
+    // "Name <email> time zone", split back into its parts
+    String identity = entry.getIdentity();
+    int open = identity.lastIndexOf('<');
+    int close = identity.lastIndexOf('>');
+    if (open < 0 || close < open) {
+      throw new IOException("Bad reflog identity: " + identity);
+    }
+    String[] stamp = identity.substring(close + 1).trim().split(" ");
+    String zone = stamp.length > 1 ? stamp[1] : "+0000";
+    int hours = Integer.parseInt(zone.substring(1, 3));
+    int minutes = Integer.parseInt(zone.substring(3, 5));
+    int offset = (zone.charAt(0) == '-' ? -1 : 1) * (hours * 60 + minutes);
+
+    writeString(out, identity.substring(0, open).trim());
+    writeString(out, identity.substring(open + 1, close));
+    out.write(varint(entry.getTime()));
+    out.write(offset >>> 8);
+    out.write(offset);
+    // git keeps messages with their newline
+    String message = entry.getMessage();
+    writeString(out, message.isEmpty() ? "" : message + "\n");
+    return out.toByteArray();
+  }
+
+  private static GitReflog.Entry readLogValue(ByteBuffer in) {
+    ObjectId oldId = readId(in);
+    ObjectId newId = readId(in);
+    String name = readString(in);
+    String email = readString(in);
+    long time = readVarint(in);
+    int offset = in.getShort();
+    String message = readString(in);
+    if (message.endsWith("\n")) {
+      message = message.substring(0, message.length() - 1);
+    }
+    String zone =
+        String.format(
+            "%s%02d%02d", offset < 0 ? "-" : "+", Math.abs(offset) / 60, Math.abs(offset) % 60);
+    String identity = name + " <" + email + "> " + time + " " + zone;
+    return new GitReflog.Entry(oldId, newId, identity, time, message);
+  }
+
+  private static void writeString(ByteArrayOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.write(varint(bytes.length));
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer in) {
+    byte[] bytes = new byte[(int) readVarint(in)];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static byte[] header(int blockSize, long minUpdateIndex, long maxUpdateIndex) {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.put(MAGIC);
+    header.putInt((VERSION << 24) | blockSize);
+    header.putLong(minUpdateIndex);
+    header.putLong(maxUpdateIndex);
+    return header.array();
+  }
+
+  // the value type, and what follows the name in a ref record
+  private static byte[] encodeValue(Ref ref, long minUpdateIndex) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int type;
+    if (ref.target != null) {
+      type = VALUE_SYMREF;
+    } else if (ref.id == null) {
+      type = VALUE_DELETION;
+    } else {
+      type = ref.peeled != null ? VALUE_PEELED : VALUE_ID;
+    }
+    out.write(type);
+    out.write(varint(ref.updateIndex - minUpdateIndex));
+    if (ref.id != null) {
+      out.write(ref.id.toRaw());
+      if (ref.peeled != null) {
+        out.write(ref.peeled.toRaw());
+      }
+    } else if (ref.target != null) {
+      byte[] target = ref.target.getBytes(StandardCharsets.UTF_8);
+      out.write(varint(target.length));
+      out.write(target);
+    }
+    return out.toByteArray();
+  }
+
+  /** Collects the records of one block and lays it out once it is full. */
+  private static class BlockWriter {
+    private final byte type;
+    // where the block header sits in the block, past the file header in the first block
+    final int headerOffset;
+    private final int blockSize;
+    private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+    private final List<Integer> restarts = new ArrayList<>();
+    int count;
+    byte[] lastName;
+
+    BlockWriter(byte type, int headerOffset, int blockSize) {
+      this.type = type;
+      this.headerOffset = headerOffset;
+      this.blockSize = blockSize;
+    }
+
+    /**
+     * Adds a record, for an index block a name and a block position, for a ref or log block a name
+     * or key and the encoded value whose first byte is the value type.
+     *
+     * @return false if the record does not fit, the block is then unchanged
+     */
+    boolean add(byte[] name, byte[] value) throws IOException {
+      boolean restart = count % RESTART_INTERVAL == 0;
+      int prefix = restart ? 0 : commonPrefix(lastName, name);
+      boolean typed = type == BLOCK_REF || type == BLOCK_LOG;
+      int valueType = typed ? value[0] : 0;
+      int valueStart = typed ? 1 : 0;
+
+      ByteArrayOutputStream record = new ByteArrayOutputStream();
+      record.write(varint(prefix));
+      record.write(varint(((long) (name.length - prefix) << 3) | valueType));
+      record.write(name, prefix, name.length - prefix);
+      record.write(value, valueStart, value.length - valueStart);
+
+      int restartCount = restarts.size() + (restart ? 1 : 0);
+      int length = headerOffset + 4 + records.size() + record.size() + 3 * restartCount + 2;
+      // index and log blocks take one record of any size, a ref block has to fit the block size
+      if (length > blockSize && (count > 0 || type == BLOCK_REF)) {
+        return false;
+      }
+      if (restart) {
+        restarts.add(headerOffset + 4 + records.size());
+      }
+      record.writeTo(records);
+      lastName = name;
+      count++;
+      return true;
+    }
+
+    // writes the block, the first one's file header is already in out
+    void finish(ByteArrayOutputStream out, boolean pad) throws IOException {
+      int length = headerOffset + 4 + records.size() + 3 * restarts.size() + 2;
+      out.write(type);
+      writeInt24(out, length);
+      records.writeTo(out);
+      for (int restart : restarts) {
+        writeInt24(out, restart);
+      }
+      out.write(restarts.size() >>> 8);
+      out.write(restarts.size());
+      if (pad) {
+        out.write(new byte[blockSize - length]);
+      }
+    }
+
+    // writes a log block: the type and inflated length as they are, everything after deflated
+    void finishDeflated(ByteArrayOutputStream out) throws IOException {
+      int length = headerOffset + 4 + records.size() + 3 * restarts.size() + 2;
+      out.write(type);
+      writeInt24(out, length);
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      records.writeTo(body);
+      for (int restart : restarts) {
+        writeInt24(body, restart);
+      }
+      body.write(restarts.size() >>> 8);
+      body.write(restarts.size());
+      Deflater deflater = GitZlib.getDeflater(Deflater.DEFAULT_COMPRESSION);
+      try {
+        deflater.setInput(body.toByteArray());
+        deflater.finish();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+          out.write(buffer, 0, deflater.deflate(buffer));
+        }
+      } finally {
+        GitZlib.release(deflater);
+      }
+    }
+  }
+
+  /** Reads records in order from some point in the ref section to its end. */
+  private class Cursor {
+    private int blockStart;
+    private int position;
+    // where the block's records end and its restart offsets begin
+    private int recordsEnd;
+    private byte[] name = new byte[0];
+
+    private Cursor(int blockStart, int position) {
+      enterBlock(blockStart);
+      this.position = position;
+    }
+
+    Ref next() {
+      while (position >= recordsEnd) {
+        int next = nextBlock(blockStart);
+        if (next < 0) {
+          return null;
+        }
+        enterBlock(next);
+      }
+      ByteBuffer in = data.duplicate().position(position);
+      int prefix = (int) readVarint(in);
+      long lengthAndType = readVarint(in);
+      int suffix = (int) (lengthAndType >>> 3);
+      byte[] full = Arrays.copyOf(name, prefix + suffix);
+      in.get(full, prefix, suffix);
+      name = full;
+
+      int type = (int) (lengthAndType & 7);
+      long updateIndex = minUpdateIndex + readVarint(in);
+      String refName = new String(full, StandardCharsets.UTF_8);
+      Ref ref;
+      switch (type) {
+        case VALUE_DELETION -> ref = Ref.deletion(refName, updateIndex);
+        case VALUE_ID -> ref = Ref.of(refName, updateIndex, readId(in), null);
+        case VALUE_PEELED -> ref = Ref.of(refName, updateIndex, readId(in), readId(in));
+        case VALUE_SYMREF -> {
+          byte[] target = new byte[(int) readVarint(in)];
+          in.get(target);
+          ref = Ref.symbolic(refName, updateIndex, new String(target, StandardCharsets.UTF_8));
+        }
+        default -> throw new IllegalStateException("Bad ref value type " + type + " in " + path);
+      }
+      position = in.position();
+      return ref;
+    }
+
+    private void enterBlock(int start) {
+      blockStart = start;
+      int header = start == 0 ? HEADER_SIZE : 0;
+      int length = getInt24(start + header + 1);
+      int restartCount = data.getShort(start + length - 2) & 0xffff;
+      recordsEnd = start + length - 2 - 3 * restartCount;
+      position = start + header + 4;
+      name = new byte[0];
+    }
+  }
+
+  // a cursor on the first record whose name is not before key, or null when there is none
+  private Cursor seek(byte[] key) {
+    if (refEnd <= HEADER_SIZE) {
+      return null;
+    }
+    int block = 0;
+    if (refIndexPosition > 0) {
+      // descend the index levels to the ref block that would hold the key
+      int index = (int) refIndexPosition;
+      while (true) {
+        long target = findInIndex(index, key);
+        if (target < 0) {
+          // after every name in the table
+          return null;
+        }
+        if (data.get((int) target + (target == 0 ? HEADER_SIZE : 0)) != BLOCK_INDEX) {
+          block = (int) target;
+          break;
+        }
+        index = (int) target;
+      }
+    } else {
+      // no index: the last block whose first name is not after the key
+      for (int next = 0; next >= 0; next = nextBlock(next)) {
+        if (compare(nameAt(next, firstRecord(next)), key) > 0) {
+          break;
+        }
+        block = next;
+      }
+    }
+
+    // the last restart point not after the key, then record by record
+    int restart = findRestart(block, key);
+    Cursor cursor = new Cursor(block, restart);
+    int mark;
+    byte[] markName;
+    int markBlock;
+    while (true) {
+      mark = cursor.position;
+      markName = cursor.name;
+      markBlock = cursor.blockStart;
+      Ref ref = cursor.next();
+      if (ref == null || compare(ref.name.getBytes(StandardCharsets.UTF_8), key) >= 0) {
+        break;
+      }
+    }
+    // step back to the record that stopped the search
+    Cursor found = new Cursor(markBlock, mark);
+    found.name = markName;
+    return found;
+  }
+
+  // the block position of the first index record whose name is not before key, or -1
+  private long findInIndex(int start, byte[] key) {
+    int length = getInt24(start + 1);
+    int restartCount = data.getShort(start + length - 2) & 0xffff;
+    int end = start + length - 2 - 3 * restartCount;
+    ByteBuffer in = data.duplicate().position(start + 4);
+    byte[] name = new byte[0];
+    while (in.position() < end) {
+      int prefix = (int) readVarint(in);
+      int suffix = (int) (readVarint(in) >>> 3);
+      byte[] full = Arrays.copyOf(name, prefix + suffix);
+      in.get(full, prefix, suffix);
+      name = full;
+      long position = readVarint(in);
+      if (compare(name, key) >= 0) {
+        return position;
+      }
+    }
+    return -1;
+  }
+
+  // the position of the last restart point in a ref block whose name is not after key
+  private int findRestart(int block, byte[] key) {
+    int header = block == 0 ? HEADER_SIZE : 0;
+    int length = getInt24(block + header + 1);
+    int restartCount = data.getShort(block + length - 2) & 0xffff;
+    int table = block + length - 2 - 3 * restartCount;
+    int low = 0;
+    int high = restartCount - 1;
+    int best = block + header + 4;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int offset = block + getInt24(table + 3 * mid);
+      if (compare(nameAt(block, offset), key) <= 0) {
+        best = offset;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return best;
+  }
+
+  private int firstRecord(int block) {
+    return block + (block == 0 ? HEADER_SIZE : 0) + 4;
+  }
+
+  // the full name of a record that starts a restart, which shares nothing with the one before
+  private byte[] nameAt(int block, int offset) {
+    ByteBuffer in = data.duplicate().position(offset);
+    readVarint(in);
+    int suffix = (int) (readVarint(in) >>> 3);
+    byte[] name = new byte[suffix];
+    in.get(name);
+    return name;
+  }
+
+  /**
+   * The ref block after this one, or -1 at the end of the section. Blocks are padded to the block
+   * size unless the writer chose not to, which shows as a non-zero byte right after the block.
+   */
+  private int nextBlock(int start) {
+    int header = start == 0 ? HEADER_SIZE : 0;
+    int length = getInt24(start + header + 1);
+    int next = start + length;
+    if (blockSize > 0 && length < blockSize && next < refEnd && data.get(next) == 0) {
+      next = start + blockSize;
+    }
+    if (next >= refEnd || data.get(next + (next == 0 ? HEADER_SIZE : 0)) != BLOCK_REF) {
+      return -1;
+    }
+    return next;
+  }
+
+  private int getInt24(int offset) {
+    return ((data.get(offset) & 0xff) << 16)
+        | ((data.get(offset + 1) & 0xff) << 8)
+        | (data.get(offset + 2) & 0xff);
+  }
+
+  private static void writeInt24(ByteArrayOutputStream out, int value) {
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+  }
+
+  private static ObjectId readId(ByteBuffer in) {
+    byte[] raw = new byte[ObjectId.RAW_LENGTH];
+    in.get(raw);
+    return ObjectId.fromRaw(raw);
+  }
+
+  // names compare by their bytes, the order git sorts refs in
+  private static int compare(byte[] a, byte[] b) {
+    return Arrays.compareUnsigned(a, b);
+  }
+
+  private static int commonPrefix(byte[] a, byte[] b) {
+    int mismatch = Arrays.mismatch(a, b);
+    return mismatch < 0 ? a.length : mismatch;
+  }
+
+  // git's varint, as in pack offsets and the index's version 4 paths, for 64-bit values
+  private static long readVarint(ByteBuffer in) {
+    int c = in.get() & 0xff;
+    long value = c & 0x7f;
+    while ((c & 0x80) != 0) {
+      c = in.get() & 0xff;
+      value = ((value + 1) << 7) | (c & 0x7f);
+    }
+    return value;
+  }
+
+  private static byte[] varint(long value) {
+    byte[] buffer = new byte[10];
+    int pos = buffer.length - 1;
+    buffer[pos] = (byte) (value & 0x7f);
+    while ((value >>>= 7) != 0) {
+      buffer[--pos] = (byte) (0x80 | (--value & 0x7f));
+    }
+    return Arrays.copyOfRange(buffer, pos, buffer.length);
+  }
+}
@@ -0,0 +1,318 @@
+package com.GitRemake;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The refs of a repository with extensions.refStorage = reftable: the tables named in
+ * .git/reftable/tables.list, oldest first. Every update appends one small table with the changed
+ * refs and deletion records, so a write costs the size of the change rather than of all refs. A
+ * lookup asks the tables newest first and stops at the first record for the name.
+ *
+ * <p>After each update the newest tables are merged while a table is less than twice the size of
+ * everything above it, which keeps the stack logarithmic in the number of updates. A merge keeps
+ * every reflog entry of the tables it merges; one that reaches the oldest table drops deletion
+ * records, of refs and of log entries, which have nothing left to hide.
+ *
+ * <p>The tables are mapped once and kept until tables.list is replaced. Every change goes through
+ * tables.list.lock, the one lock the whole stack has.
+ */
+public class GitReftableStack {
+  // the opened tables as of one version of tables.list
+  private static class Snapshot {
+    final List<GitReftable> tables;
+    final Object fileKey;
+    final long modified;
+    final long size;
+
+    Snapshot(List<GitReftable> tables, BasicFileAttributes attributes) {
+      this.tables = tables;
+      this.fileKey = attributes == null ? null : attributes.fileKey();
+      this.modified = attributes == null ? -1 : attributes.lastModifiedTime().toMillis();
+      this.size = attributes == null ? -1 : attributes.size();
+    }
+
+    boolean matches(BasicFileAttributes attributes) {
+      return attributes != null
+          && Objects.equals(fileKey, attributes.fileKey())
+          && modified == attributes.lastModifiedTime().toMillis()
+          && size == attributes.size();
+    }
+  }
+
+  // a table may be merged away between reading tables.list and opening it
+  private static final int MAX_RELOADS = 5;
+
+  private final Path dir;
+  private final Path list;
+  private final int blockSize;
+  private volatile Snapshot snapshot;
+
+  public GitReftableStack(GitRepository repo) {
+    this.dir = directory(repo);
+    this.list = dir.resolve("tables.list");
+    this.blockSize =
+        repo.getConfigInt("reftable", "blockSize", GitReftable.DEFAULT_BLOCK_SIZE);
+  }
+
+  public static Path directory(GitRepository repo) {
+    return Paths.get(repo.getGitDir(), "reftable");
+  }
+
+  /** Sets up an empty stack holding only HEAD, as a symbolic ref to the initial branch. */
+  public static void create(GitRepository repo, String initialBranch) throws IOException {
+    Files.createDirectories(directory(repo));
+    GitReftableStack stack = new GitReftableStack(repo);
+    try (GitLockFile lock = stack.lock()) {
+      stack.add(lock, List.of(GitReftable.Ref.symbolic("HEAD", 1, initialBranch)), List.of());
+    }
+  }
+
+  // the tables, oldest first
+  public List<GitReftable> getTables() throws IOException {
+    BasicFileAttributes attributes = attributesOrNull(list);
+    Snapshot current = snapshot;
+    if (current != null && current.matches(attributes)) {
+      return current.tables;
+    }
+    synchronized (this) {
+      return reload().tables;
+    }
+  }
+
+  /** The newest record for a name, or null if it does not exist or was deleted. */
+  public GitReftable.Ref read(String name) throws IOException {
+    List<GitReftable> tables = getTables();
+    for (int i = tables.size() - 1; i >= 0; i--) {
+      GitReftable.Ref ref = tables.get(i).find(name);
+      if (ref != null) {
+        return ref.isDeletion() ? null : ref;
+      }
+    }
+    return null;
+  }
+
+  // every ref whose name starts with prefix, in name order
+  public SortedMap<String, GitReftable.Ref> scan(String prefix) throws IOException {
+    return merge(getTables(), prefix, true);
+  }
+
+  /** The reflog of a ref, newest first, from the log records of every table. */
+  public List<GitReflog.Entry> readLog(String name) throws IOException {
+    SortedMap<Long, GitReftable.Log> logs = new TreeMap<>(Comparator.reverseOrder());
+    for (GitReftable table : getTables()) {
+      for (GitReftable.Log log : table.logs(name)) {
+        logs.put(log.getUpdateIndex(), log);
+      }
+    }
+    List<GitReflog.Entry> entries = new ArrayList<>();
+    for (GitReftable.Log log : logs.values()) {
+      if (!log.isDeletion()) {
+        entries.add(log.getEntry());
+      }
+    }
+    return entries;
+  }
+
+  // the update indexes of a ref's live log entries, for deleting them
+  public List<Long> logUpdateIndexes(String name) throws IOException {
+    SortedMap<Long, GitReftable.Log> logs = new TreeMap<>();
+    for (GitReftable table : getTables()) {
+      for (GitReftable.Log log : table.logs(name)) {
+        logs.put(log.getUpdateIndex(), log);
+      }
+    }
+    logs.values().removeIf(GitReftable.Log::isDeletion);
+    return new ArrayList<>(logs.keySet());
+  }
+
+  public long getMaxUpdateIndex() throws IOException {
+    List<GitReftable> tables = getTables();
+    return tables.isEmpty() ? 0 : tables.get(tables.size() - 1).getMaxUpdateIndex();
+  }
+
+  /**
+   * Takes tables.list.lock. Read the stack again once it is held; only what it holds then is
+   * safe to check an update against.
+   */
+  public GitLockFile lock() throws IOException {
+    return new GitLockFile(list);
+  }
+
+  /**
+   * Adds a table with these ref and log records on top of the stack, merging tables where that
+   * keeps the stack in shape, and commits the lock. The ref records need update indexes above
+   * every table's; log deletions name the entries they hide by theirs.
+   */
+  public void add(GitLockFile lock, List<GitReftable.Ref> refs, List<GitReftable.Log> logs)
+      throws IOException {
+    List<GitReftable> tables = new ArrayList<>(reload().tables);
+    List<GitReftable.Ref> sorted = new ArrayList<>(refs);
+    sorted.sort(Comparator.comparing(GitReftable.Ref::getName, GitIndex::comparePaths));
+    long updateIndex = sorted.stream().mapToLong(GitReftable.Ref::getUpdateIndex).max().orElse(1);
+    for (GitReftable.Log log : logs) {
+      updateIndex = Math.max(updateIndex, log.getUpdateIndex());
+    }
+    tables.add(writeTable(sorted, logs, updateIndex, updateIndex));
+
+    List<GitReftable> merged = new ArrayList<>();
+    int start = compactionStart(tables);
+    if (start < tables.size() - 1) {
+      merged.addAll(tables.subList(start, tables.size()));
+      GitReftable table = writeMerged(merged, start == 0);
+      tables.subList(start, tables.size()).clear();
+      tables.add(table);
+    }
+    commitList(lock, tables, merged);
+  }
+
+  /** Merges every table into one, for pack-refs. */
+  public void compact() throws IOException {
+    try (GitLockFile lock = lock()) {
+      List<GitReftable> tables = new ArrayList<>(reload().tables);
+      if (tables.size() < 2) {
+        return;
+      }
+      GitReftable table = writeMerged(tables, true);
+      commitList(lock, List.of(table), tables);
+    }
+  }
+
+  // writes tables.list, then deletes the tables it no longer names
+  private void commitList(GitLockFile lock, List<GitReftable> tables, List<GitReftable> dropped)
+      throws IOException {
+    StringBuilder names = new StringBuilder();
+    for (GitReftable table : tables) {
+      names.append(table.getPath().getFileName()).append('\n');
+    }
+    lock.getOutputStream().write(names.toString().getBytes(StandardCharsets.UTF_8));
+    lock.commit();
+    synchronized (this) {
+      snapshot = null;
+    }
+    for (GitReftable table : dropped) {
+      Files.deleteIfExists(table.getPath());
+    }
+  }
+
+  /**
+   * Where merging starts so that, reading from the top, each table is at least twice the size of
+   * all the tables above it. The newest table alone needs no merge.
+   */
+  private static int compactionStart(List<GitReftable> tables) throws IOException {
+    int start = tables.size() - 1;
+    long above = Files.size(tables.get(start).getPath());
+    while (start > 0) {
+      long size = Files.size(tables.get(start - 1).getPath());
+      if (size >= 2 * above) {
+        break;
+      }
+      above += size;
+      start--;
+    }
+    return start;
+  }
+
+  private GitReftable writeMerged(List<GitReftable> tables, boolean dropDeletions)
+      throws IOException {
+    SortedMap<String, GitReftable.Ref> refs = merge(tables, "", dropDeletions);
+    // log records are keyed by name and update index, a newer table's replacing an older one's
+    Map<String, GitReftable.Log> logs = new HashMap<>();
+    for (GitReftable table : tables) {
+      for (GitReftable.Log log : table.allLogs()) {
+        logs.put(log.getName() + '\0' + log.getUpdateIndex(), log);
+      }
+    }
+    if (dropDeletions) {
+      logs.values().removeIf(GitReftable.Log::isDeletion);
+    }
+    long min = tables.get(0).getMinUpdateIndex();
+    long max = tables.get(tables.size() - 1).getMaxUpdateIndex();
+    return writeTable(new ArrayList<>(refs.values()), new ArrayList<>(logs.values()), min, max);
+  }
+
+  private GitReftable writeTable(
+      List<GitReftable.Ref> refs, List<GitReftable.Log> logs, long min, long max)
+      throws IOException {
+    String name =
+        String.format(
+            "0x%012x-0x%012x-%08x.ref", min, max, ThreadLocalRandom.current().nextInt());
+    Path file = dir.resolve(name);
+    try (GitLockFile lock = new GitLockFile(file)) {
+      lock.getOutputStream().write(GitReftable.serialize(refs, logs, min, max, blockSize));
+      lock.commit();
+    }
+    return GitReftable.open(file);
+  }
+
+  // the records of tables, newer ones replacing older ones, with or without deletions
+  private static SortedMap<String, GitReftable.Ref> merge(
+      List<GitReftable> tables, String prefix, boolean dropDeletions) {
+    SortedMap<String, GitReftable.Ref> refs = new TreeMap<>(GitIndex::comparePaths);
+    for (GitReftable table : tables) {
+      for (GitReftable.Ref ref : table.scan(prefix)) {
+        refs.put(ref.getName(), ref);
+      }
+    }
+    if (dropDeletions) {
+      refs.values().removeIf(GitReftable.Ref::isDeletion);
+    }
+    return refs;
+  }
+
+  // reads tables.list and opens its tables, reusing the ones already open
+  private synchronized Snapshot reload() throws IOException {
+    Map<String, GitReftable> open = new HashMap<>();
+    if (snapshot != null) {
+      for (GitReftable table : snapshot.tables) {
+        open.put(table.getPath().getFileName().toString(), table);
+      }
+    }
+    for (int attempt = 0; ; attempt++) {
+      BasicFileAttributes attributes = attributesOrNull(list);
+      if (snapshot != null && snapshot.matches(attributes)) {
+        return snapshot;
+      }
+      try {
+        List<GitReftable> tables = new ArrayList<>();
+        List<String> names =
+            attributes == null ? List.of() : Files.readAllLines(list, StandardCharsets.UTF_8);
+        for (String name : names) {
+          if (name.isEmpty()) {
+            continue;
+          }
+          GitReftable table = open.get(name);
+          tables.add(table != null ? table : GitReftable.open(dir.resolve(name)));
+        }
+        snapshot = new Snapshot(tables, attributes);
+        return snapshot;
+      } catch (NoSuchFileException e) {
+        if (attempt == MAX_RELOADS) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private static BasicFileAttributes attributesOrNull(Path file) throws IOException {
+    try {
+      return Files.readAttributes(file, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+}
@@ -7,12 +7,60 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.Deflater;
 import org.ini4j.Ini;
 
 public class GitRepository {
+  private static final long OBJECT_CACHE_BYTES = 32L * 1024 * 1024;
+  // what the TinyLFU sketch is sized for, at a few kilobytes per cached commit or tree
+  private static final int OBJECT_CACHE_ENTRIES = 8192;
+
+  // the open packs together with the pack directory mtime they were listed at
+  private static class PackList {
+    final List<GitPackFile> packs;
+    final long modified;
+
+    PackList(List<GitPackFile> packs, long modified) {
+      this.packs = packs;
+      this.modified = modified;
+    }
+  }
+
+  // packed-refs as read at a given modification time and size
+  private static class PackedRefsSnapshot {
+    final GitPackedRefs refs;
+    final long modified;
+    final long size;
+
+    PackedRefsSnapshot(GitPackedRefs refs, long modified, long size) {
+      this.refs = refs;
+      this.modified = modified;
+      this.size = size;
+    }
+  }
+
   private String worktree;
   private String gitdir;
   private Ini conf;
+  // whether refs live in reftables instead of loose files and packed-refs
+  private boolean reftable;
+  // packfiles are mapped once and reused until objects/pack changes
+  private volatile PackList packs;
+  // commit-graph, reloaded when the file is replaced
+  private GitCommitGraph commitGraph;
+  private long commitGraphModified = -1;
+  private long commitGraphSize = -1;
+  // packed-refs, reread when the file's modification time or size changes
+  private volatile PackedRefsSnapshot packedRefs;
+  // the reftable stack, for repositories with extensions.refStorage = reftable
+  private GitReftableStack reftableStack;
+  // sorted id index for resolving abbreviated names
+  private final GitObjectIndex objectIndex = new GitObjectIndex(this);
+  // set while objects are written behind, see startWriteBehind
+  private volatile GitObjectWriter objectWriter;
+  // parsed objects shared by everything reading from this repository
+  private GitObjectCache objectCache;
 
   public GitRepository(String worktree, boolean force) {
     this.worktree = worktree;
@@ -42,13 +90,22 @@ public class GitRepository {
     if (!force) {
       try {
         int version = Integer.parseInt(conf.get("core", "repositoryformatversion"));
-        if (version != 0) {
+        // version 1 adds extensions, and refStorage is the one we know
+        if (version != 0 && version != 1) {
           throw new IllegalStateException("Unsuported repositoryformatverison: " + version);
         }
+        String refStorage = getConfig("extensions", "refStorage");
+        if (version == 1 && refStorage != null && !refStorage.equals("files")) {
+          if (!refStorage.equals("reftable")) {
+            throw new IllegalStateException("Unsupported ref storage: " + refStorage);
+          }
+          reftable = true;
+        }
       } catch (Exception e) {
         throw new IllegalStateException("Invalid configuration", e);
       }
     }
+    objectCache = new GitObjectCache(OBJECT_CACHE_BYTES, objectCachePolicy());
   }
 
   public String getWorkTree() {
@@ -59,6 +116,256 @@ public class GitRepository {
     return gitdir;
   }
 
+  /**
+   * Returns the packfiles of this repository. The packs stay mapped between calls and the
+   * directory is only rescanned when its modification time changes (a repack or fetch).
+   */
+  public List<GitPackFile> getPacks() {
+    File packDir = new File(repoPath("objects", "pack"));
+    long modified = packDir.lastModified();
+    // every object lookup comes through here, so the common case takes no lock
+    PackList current = packs;
+    if (current != null && current.modified == modified) {
+      return current.packs;
+    }
+    synchronized (this) {
+      current = packs;
+      if (current == null || current.modified != modified) {
+        current = new PackList(GitPackFile.openAll(packDir.toPath()), modified);
+        packs = current;
+      }
+      return current.packs;
+    }
+  }
+
+  /**
+   * A value from the repository config, or null when it is not set. Section and option names are
+   * matched ignoring case, as git does.
+   */
+  public String getConfig(String section, String option) {
+    for (String sectionName : conf.keySet()) {
+      if (!sectionName.equalsIgnoreCase(section)) {
+        continue;
+      }
+      for (String optionName : conf.get(sectionName).keySet()) {
+        if (optionName.equalsIgnoreCase(option)) {
+          return conf.get(sectionName, optionName);
+        }
+      }
+    }
+    return null;
+  }
+
+  // an integer config value, with git's k, m and g suffixes
+  public long getConfigLong(String section, String option, long defaultValue) {
+    String value = getConfig(section, option);
+    if (value == null) {
+      return defaultValue;
+    }
+    value = value.trim().toLowerCase();
+    long unit = 1;
+    if (value.endsWith("k")) {
+      unit = 1024;
+    } else if (value.endsWith("m")) {
+      unit = 1024 * 1024;
+    } else if (value.endsWith("g")) {
+      unit = 1024 * 1024 * 1024;
+    }
+    if (unit != 1) {
+      value = value.substring(0, value.length() - 1);
+    }
+    try {
+      return Long.parseLong(value) * unit;
+    } catch (NumberFormatException e) {
+      throw new IllegalStateException("Bad numeric config value for " + section + "." + option);
+    }
+  }
+
+  public int getConfigInt(String section, String option, int defaultValue) {
+    return (int) getConfigLong(section, option, defaultValue);
+  }
+
+  /**
+   * The zlib level for new loose objects: core.looseCompression, else core.compression, else 1
+   * (best speed), the same fallbacks git uses. 0 stores objects uncompressed, which suits
+   * write-heavy imports that are repacked afterwards.
+   */
+  public int getLooseCompression() {
+    return compressionLevel("core", "looseCompression", compressionLevel("core", "compression", 1));
+  }
+
+  // the zlib level for packs: pack.compression, else core.compression, else zlib's default
+  public int getPackCompression() {
+    int core = compressionLevel("core", "compression", Deflater.DEFAULT_COMPRESSION);
+    return compressionLevel("pack", "compression", core);
+  }
+
+  private int compressionLevel(String section, String option, int defaultLevel) {
+    int level = getConfigInt(section, option, defaultLevel);
+    if (level < -1 || level > 9) {
+      throw new IllegalStateException(
+          "Bad zlib compression level " + level + " for " + section + "." + option);
+    }
+    return level;
+  }
+
+  /**
+   * The object cache's eviction policy from core.objectCachePolicy: "lru", the default, or
+   * "tinylfu", which keeps one-off reads such as big blobs from pushing out the trees and commits
+   * that are read over and over.
+   */
+  private GitObjectCache.EvictionPolicy objectCachePolicy() {
+    String policy = getConfig("core", "objectCachePolicy");
+    if (policy == null || policy.trim().equalsIgnoreCase("lru")) {
+      return new GitObjectCache.LruPolicy();
+    }
+    if (policy.trim().equalsIgnoreCase("tinylfu")) {
+      return new GitObjectCache.TinyLfuPolicy(OBJECT_CACHE_ENTRIES);
+    }
+    throw new IllegalStateException("Unknown core.objectCachePolicy: " + policy);
+  }
+
+  /**
+   * Returns the commit-graph, or null if the repository has none. Like the packs it stays mapped
+   * and is only reopened when the file's modification time or size changes.
+   */
+  public synchronized GitCommitGraph getCommitGraph() {
+    File file = GitCommitGraph.graphPath(this).toFile();
+    long modified = file.lastModified();
+    long size = file.length();
+    if (modified != commitGraphModified || size != commitGraphSize) {
+      try {
+        commitGraph = GitCommitGraph.open(file.toPath());
+      } catch (IOException e) {
+        // a graph we cannot read only costs speed, the commits are still in the object store
+        System.err.println("Warning: ignoring commit-graph: " + e.getMessage());
+        commitGraph = null;
+      }
+      commitGraphModified = modified;
+      commitGraphSize = size;
+    }
+    return commitGraph;
+  }
+
+  /**
+   * Returns the packed refs. The file is parsed once and the snapshot reused for as long as its
+   * modification time and size stay the same, so resolving a name costs one stat of packed-refs
+   * and a binary search.
+   */
+  public GitPackedRefs getPackedRefs() {
+    File file = GitPackedRefs.path(this).toFile();
+    long modified = file.lastModified();
+    long size = file.length();
+    PackedRefsSnapshot current = packedRefs;
+    if (current != null && current.modified == modified && current.size == size) {
+      return current.refs;
+    }
+    synchronized (this) {
+      current = packedRefs;
+      if (current == null || current.modified != modified || current.size != size) {
+        try {
+          current = new PackedRefsSnapshot(GitPackedRefs.read(file.toPath()), modified, size);
+        } catch (IOException e) {
+          throw new RuntimeException("Error reading packed-refs", e);
+        }
+        packedRefs = current;
+      }
+      return current.refs;
+    }
+  }
+
+  public boolean usesReftable() {
+    return reftable;
+  }
+
+  // the reftable stack, only for repositories that use one
+  public synchronized GitReftableStack getReftableStack() {
+    if (!reftable) {
+      throw new IllegalStateException("Repository does not use reftable: " + gitdir);
+    }
+    if (reftableStack == null) {
+      reftableStack = new GitReftableStack(this);
+    }
+    return reftableStack;
+  }
+
+  // forces the next getPackedRefs call to reread the file, for when we rewrote it ourselves
+  public synchronized void invalidatePackedRefs() {
+    packedRefs = null;
+  }
+
+  public GitObjectIndex getObjectIndex() {
+    return objectIndex;
+  }
+
+  public GitObjectCache getObjectCache() {
+    return objectCache;
+  }
+
+  // swap in a cache with another size or eviction policy
+  public void setObjectCache(GitObjectCache objectCache) {
+    this.objectCache = objectCache;
+  }
+
+  /**
+   * Switches {@link GitObjectUtil#objectWrite(GitRepository, GitObject)} to write-behind mode: ids
+   * come back as soon as the object is hashed and a {@link GitObjectWriter} stores the objects in
+   * batches. Call {@link #stopWriteBehind} (or at least {@link #flushObjects}) before exiting.
+   */
+  public GitObjectWriter startWriteBehind() {
+    return startWriteBehind(GitObjectWriter.DEFAULT_BATCH_SIZE);
+  }
+
+  public synchronized GitObjectWriter startWriteBehind(int batchSize) {
+    if (objectWriter == null) {
+      objectWriter = new GitObjectWriter(this, batchSize);
+    }
+    return objectWriter;
+  }
+
+  // flushes the write-behind queue and goes back to writing objects synchronously
+  public synchronized void stopWriteBehind() throws IOException {
+    if (objectWriter != null) {
+      try {
+        objectWriter.close();
+      } finally {
+        objectWriter = null;
+      }
+    }
+  }
+
+  // the active write-behind writer, or null when objects are written synchronously
+  public GitObjectWriter getObjectWriter() {
+    return objectWriter;
+  }
+
+  // makes every object written so far durable, called before anything refers to them
+  public void flushObjects() throws IOException {
+    GitObjectWriter writer = objectWriter;
+    if (writer != null) {
+      writer.flush();
+    }
+  }
+
+  // forces the next getPacks call to rescan, for when we changed objects/pack ourselves
+  public synchronized void invalidatePacks() {
+    packs = null;
+  }
+
+  /**
+   * Turns a file name from the command line, relative to the current directory, into the form the
+   * index uses: relative to the work tree, with forward slashes. The work tree itself is "".
+   */
+  public String worktreePath(String file) {
+    Path root = Paths.get(worktree).toAbsolutePath().normalize();
+    Path target = Paths.get(file).toAbsolutePath().normalize();
+    if (!target.startsWith(root)) {
+      throw new IllegalArgumentException("'" + file + "' is outside repository at " + root);
+    }
+    String relative = root.relativize(target).toString();
+    return File.separatorChar == '/' ? relative : relative.replace(File.separatorChar, '/');
+  }
+
   // Make a path to the repository's .git directory
   private String repoPath(String... paths) {
     // String resultPath = this.gitdir;
@@ -118,11 +425,16 @@ public class GitRepository {
    * Creates a new Git repository at the specified path
    *
    * @param path The directory where the repository will be created
+   * @param reftable Whether refs are stored in reftables instead of files
    * @return The newly created repository
    * @throws IllegalArgumentException If the path is invalid or not empty
    * @throws RuntimeException If repository files cannot be created
    */
   public static GitRepository repoCreate(String path) {
+    return repoCreate(path, false);
+  }
+
+  public static GitRepository repoCreate(String path, boolean reftable) {
     GitRepository repo = new GitRepository(path, true);
 
     // Make sure the path actually exists or is an empty dir
@@ -140,8 +452,12 @@ public class GitRepository {
     }
     repo.repoDir(true, "branches");
     repo.repoDir(true, "objects");
-    repo.repoDir(true, "refs", "tags");
-    repo.repoDir(true, "refs", "heads");
+    if (reftable) {
+      repo.repoDir(true, "refs");
+    } else {
+      repo.repoDir(true, "refs", "tags");
+      repo.repoDir(true, "refs", "heads");
+    }
 
     try (FileWriter writer = new FileWriter(repo.repoFile(true, "description"))) {
       writer.write("Unnamed repository; edit this file 'description' to name the repository.\n");
@@ -151,19 +467,41 @@ public class GitRepository {
       throw new RuntimeException("Failed to create description file", e);
     }
 
+    // with reftable, HEAD lives in the table and these files only keep older git from using the
+    // repository as if its refs were files
     try (FileWriter writer = new FileWriter(repo.repoFile(true, "HEAD"))) {
-      writer.write("ref: refs/heads/master\n");
+      writer.write(reftable ? "ref: refs/heads/.invalid\n" : "ref: refs/heads/master\n");
     } catch (IOException e) {
       throw new RuntimeException("Failed to create HEAD file", e);
     }
+    if (reftable) {
+      try (FileWriter writer = new FileWriter(repo.repoFile(true, "refs", "heads"))) {
+        writer.write("this repository uses the reftable format\n");
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to create refs/heads", e);
+      }
+    }
 
     try (FileWriter writer = new FileWriter(repo.repoFile(true, "config"))) {
       Ini config = repoDefaultConfig();
+      if (reftable) {
+        config.put("core", "repositoryformatversion", "1");
+        config.put("extensions", "refStorage", "reftable");
+      }
       config.store(writer);
     } catch (IOException e) {
       throw new RuntimeException("Failed to create config file", e);
     }
 
+    if (reftable) {
+      repo.reftable = true;
+      try {
+        GitReftableStack.create(repo, "refs/heads/master");
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to create the reftable stack", e);
+      }
+    }
+
     return repo;
   }
 
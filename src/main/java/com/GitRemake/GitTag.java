@@ -21,7 +21,7 @@ public class GitTag extends GitObject{
 
   @Override
   public void deserialize(byte[] data) {
-    parseKvlm(data);
+    kvlm = parseKvlm(data);
   }
 
   @Override
@@ -34,10 +34,10 @@ public class GitTag extends GitObject{
     return "tag";
   }
 
-  public String getObject(){
+  public ObjectId getObject(){
     Object value = kvlm.get("object");
     if(value instanceof byte[]){
-      return new String((byte[]) value, StandardCharsets.UTF_8);
+      return ObjectId.fromHex((byte[]) value, 0);
     }
     return null;
   }
@@ -75,8 +75,8 @@ public class GitTag extends GitObject{
   }
   
 // Set tag fields
-public void setObject(String sha) {
-  kvlm.put("object", sha.getBytes(StandardCharsets.UTF_8));
+public void setObject(ObjectId sha) {
+  kvlm.put("object", sha.name().getBytes(StandardCharsets.UTF_8));
 }
 
 public void setObjectType(String type) {
@@ -240,7 +240,7 @@ public void setMessage(String message) {
       String key = new String(keyBytes, StandardCharsets.UTF_8);
 
       // Now we find the end position of the value part
-      int endPos = findEndValue(raw, newLinePos + 1);
+      int endPos = findEndValue(raw, spacePos + 1);
 
       // Extract and process the value(handling continuous lines)
       byte[] valueBytes = extractValue(raw, spacePos + 1, endPos);
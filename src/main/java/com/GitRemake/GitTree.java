@@ -4,7 +4,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HexFormat;
+import java.util.Collections;
 import java.util.List;
 
 public class GitTree extends GitObject {
@@ -27,6 +27,7 @@ public class GitTree extends GitObject {
     ByteArrayOutputStream output = new ByteArrayOutputStream();
 
     try {
+      byte[] rawSha = new byte[ObjectId.RAW_LENGTH];
       for (GitTreeEntry entry : sortedEntries) {
         output.write(entry.getMode());
 
@@ -36,7 +37,8 @@ public class GitTree extends GitObject {
 
         output.write((byte) 0);
 
-        output.write(hexToByte(entry.getSha()));
+        entry.getSha().copyRawTo(rawSha, 0);
+        output.write(rawSha);
       }
       return output.toByteArray();
     } catch (IOException e) {
@@ -83,9 +85,8 @@ public class GitTree extends GitObject {
         throw new RuntimeException("Invalid tree format: truncated SHA-1");
       }
 
-      byte[] rawSha = new byte[20];
-      System.arraycopy(data, nullPos + 1, rawSha, 0, 20);
-      String sha = bytesToHex(rawSha);
+      // the id is read straight from the raw bytes, no hex round trip
+      ObjectId sha = ObjectId.fromRaw(data, nullPos + 1);
 
       entries.add(new GitTreeEntry(mode, path, sha));
 
@@ -103,16 +104,9 @@ public class GitTree extends GitObject {
     return "tree";
   }
 
+  // read-only view, trees can be shared through the object cache
   public List<GitTreeEntry> getEntries() {
-    return new ArrayList<GitTreeEntry>(entries);
-  }
-
-  private byte[] hexToByte(String sha) {
-    return HexFormat.of().parseHex(sha);
-  }
-
-  private String bytesToHex(byte[] rawSha) {
-    return HexFormat.of().formatHex(rawSha);
+    return Collections.unmodifiableList(entries);
   }
 
   private int findNextByte(byte[] raw, byte target, int position) {
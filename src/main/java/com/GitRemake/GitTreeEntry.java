@@ -1,12 +1,13 @@
 package com.GitRemake;
 
+import java.nio.charset.StandardCharsets;
 
 public class GitTreeEntry {
   private final byte[] mode; // file mode and permission
   private final String path; // File/directory name
-  private final String sha; // Hash reference
+  private final ObjectId sha; // Hash reference
 
-  public GitTreeEntry(byte[] mode, String path, String sha) {
+  public GitTreeEntry(byte[] mode, String path, ObjectId sha) {
     this.mode = mode;
     this.path = path;
     this.sha = sha;
@@ -20,19 +21,23 @@ public class GitTreeEntry {
     return path;
   }
 
-  public String getSha() {
+  public ObjectId getSha() {
     return sha;
   }
 
   public boolean isTree() {
-    return mode.toString().startsWith("04");
+    return modeString().startsWith("04");
   }
 
   public boolean isFile() {
-    return mode.toString().startsWith("10");
+    return modeString().startsWith("10");
   }
 
   public boolean isSymLink() {
-    return mode.toString().startsWith("12");
+    return modeString().startsWith("12");
+  }
+
+  private String modeString() {
+    return new String(mode, StandardCharsets.US_ASCII);
   }
 }
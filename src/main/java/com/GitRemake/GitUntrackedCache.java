@@ -0,0 +1,527 @@
+package com.GitRemake;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * The index's untracked cache extension, "UNTR": for every directory a status scan read, the
+ * directory's stat data, the hash of its .gitignore and the untracked files and directories found
+ * in it. While a directory's stat data and ignore rules are unchanged nothing can have been added
+ * to or removed from it, so its untracked list is reused without reading the directory again.
+ *
+ * <pre>
+ *   ident           varint length, then NUL terminated strings naming the work tree and system
+ *   stat data       of .git/info/exclude and core.excludesFile, 36 bytes each
+ *   dir flags       32 bits, the scan options the cache was built with
+ *   hashes          of .git/info/exclude and core.excludesFile, zeros when missing
+ *   exclude name    NUL terminated, ".gitignore"
+ *   directories     varint count, then depth first: varint untracked count, varint subdirectory
+ *                   count, NUL terminated name, NUL terminated untracked names
+ *   bitmaps         EWAH: valid directories, check-only directories, directories with a hash
+ *   stat data       of each valid directory
+ *   hashes          of each directory's .gitignore, for the directories with one
+ *   NUL
+ * </pre>
+ *
+ * The format and its meaning follow git's, so either can use a cache the other wrote.
+ */
+public class GitUntrackedCache {
+  public static final String SIGNATURE = "UNTR";
+  // git's DIR_SHOW_OTHER_DIRECTORIES | DIR_HIDE_EMPTY_DIRECTORIES, the flags a plain status uses
+  static final int STATUS_DIR_FLAGS = (1 << 1) | (1 << 2);
+  private static final String EXCLUDE_PER_DIR = ".gitignore";
+
+  /** What the cache knows about one directory. */
+  public static class Directory {
+    private final String name;
+    private boolean valid;
+    private boolean checkOnly;
+    private GitFileStat stat;
+    // the blob id of the directory's .gitignore, null when it has none
+    private ObjectId excludeId;
+    private final List<String> untracked = new ArrayList<>();
+    private Map<String, Directory> dirs = new TreeMap<>(GitIndex::comparePaths);
+    // subdirectories from before the last reset, kept until the scan says which still exist
+    private Map<String, Directory> previousDirs;
+
+    Directory(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Whether the cached untracked list can be used instead of reading the directory: the cache
+     * entry is valid and was made by the same kind of scan, and the directory's stat data still
+     * matches. A stat that is not older than the index is not trusted ("racy git").
+     */
+    public boolean isUsable(GitFileStat current, boolean checkOnlyScan, GitIndex index) {
+      return valid
+          && checkOnly == checkOnlyScan
+          && stat != null
+          && stat.matches(current)
+          && !index.isRacy(current);
+    }
+
+    public boolean isValid() {
+      return valid;
+    }
+
+    // whether the directory was only read to find out if it has anything untracked in it
+    public boolean isCheckOnly() {
+      return checkOnly;
+    }
+
+    public ObjectId getExcludeId() {
+      return excludeId;
+    }
+
+    // untracked files, and untracked directories with a trailing "/", relative to this directory
+    public List<String> getUntracked() {
+      return untracked;
+    }
+
+    // the subdirectories the last scan entered
+    public Collection<Directory> getDirectories() {
+      return dirs.values();
+    }
+
+    // the entry for a subdirectory the last scan entered, or null
+    public Directory getDirectory(String child) {
+      return dirs.get(child);
+    }
+
+    /**
+     * Starts reading the directory again: forgets its untracked list and which subdirectories it
+     * has, keeping the subdirectories' own cache entries in case the scan enters them again.
+     */
+    public void reset(GitFileStat current, boolean checkOnlyScan, ObjectId currentExcludeId) {
+      valid = true;
+      checkOnly = checkOnlyScan;
+      stat = current;
+      excludeId = currentExcludeId;
+      untracked.clear();
+      if (previousDirs == null) {
+        previousDirs = dirs;
+      } else {
+        previousDirs.putAll(dirs);
+      }
+      dirs = new TreeMap<>(GitIndex::comparePaths);
+    }
+
+    // the cache entry for a subdirectory the scan enters
+    public Directory enter(String child) {
+      Directory dir = dirs.get(child);
+      if (dir == null && previousDirs != null) {
+        dir = previousDirs.remove(child);
+      }
+      if (dir == null) {
+        dir = new Directory(child);
+      }
+      dirs.put(child, dir);
+      return dir;
+    }
+
+    public void addUntracked(String entry) {
+      untracked.add(entry);
+    }
+
+    // adds or removes one untracked name, for a subdirectory that filled up or emptied
+    public void setUntracked(String entry, boolean listed) {
+      if (!listed) {
+        untracked.remove(entry);
+      } else if (!untracked.contains(entry)) {
+        untracked.add(entry);
+      }
+    }
+
+    // forgets everything below, for when the ignore rules that apply here change
+    void invalidateAll() {
+      invalidate();
+      for (Directory dir : dirs.values()) {
+        dir.invalidateAll();
+      }
+    }
+
+    void invalidate() {
+      valid = false;
+      untracked.clear();
+    }
+  }
+
+  private final byte[] ident;
+  private GitFileStat infoExcludeStat;
+  private ObjectId infoExcludeId;
+  private GitFileStat excludesFileStat;
+  private ObjectId excludesFileId;
+  private final int dirFlags;
+  private final String excludePerDir;
+  private Directory root;
+  // whether validate had to update the ignore files' stat data
+  private boolean changed;
+
+  private GitUntrackedCache(byte[] ident, int dirFlags, String excludePerDir) {
+    this.ident = ident;
+    this.dirFlags = dirFlags;
+    this.excludePerDir = excludePerDir;
+  }
+
+  /** An empty cache for a status scan of this work tree. */
+  public static GitUntrackedCache create(GitRepository repo) throws IOException {
+    byte[] ident = (identString(repo) + "\0").getBytes(StandardCharsets.UTF_8);
+    GitUntrackedCache cache =
+        new GitUntrackedCache(ident, STATUS_DIR_FLAGS, EXCLUDE_PER_DIR);
+    cache.root = new Directory("");
+    return cache;
+  }
+
+  /**
+   * Parses the extension.
+   *
+   * @return the cache, or null if it is malformed, in which case git would drop it as well
+   */
+  public static GitUntrackedCache parse(ByteBuffer data) {
+    ByteBuffer in = data.duplicate();
+    try {
+      byte[] ident = new byte[readVarint(in)];
+      in.get(ident);
+      GitFileStat infoExcludeStat = readStat(in);
+      GitFileStat excludesFileStat = readStat(in);
+      int dirFlags = in.getInt();
+      ObjectId infoExcludeId = readId(in);
+      ObjectId excludesFileId = readId(in);
+      String excludePerDir = readString(in);
+
+      GitUntrackedCache cache = new GitUntrackedCache(ident, dirFlags, excludePerDir);
+      cache.infoExcludeStat = infoExcludeStat;
+      cache.infoExcludeId = infoExcludeId;
+      cache.excludesFileStat = excludesFileStat;
+      cache.excludesFileId = excludesFileId;
+
+      int count = readVarint(in);
+      if (count == 0) {
+        return cache;
+      }
+      List<Directory> order = new ArrayList<>(count);
+      cache.root = readDirectory(in, order);
+      if (order.size() != count) {
+        return null;
+      }
+      BitSet valid = GitEwahBitmap.read(in);
+      BitSet checkOnly = GitEwahBitmap.read(in);
+      BitSet hashed = GitEwahBitmap.read(in);
+      for (int i = checkOnly.nextSetBit(0); i >= 0; i = checkOnly.nextSetBit(i + 1)) {
+        order.get(i).checkOnly = true;
+      }
+      for (int i = valid.nextSetBit(0); i >= 0; i = valid.nextSetBit(i + 1)) {
+        order.get(i).stat = readStat(in);
+        order.get(i).valid = true;
+      }
+      for (int i = hashed.nextSetBit(0); i >= 0; i = hashed.nextSetBit(i + 1)) {
+        order.get(i).excludeId = readId(in);
+      }
+      // untracked names of a directory that is not valid mean nothing
+      for (Directory dir : order) {
+        if (!dir.valid) {
+          dir.untracked.clear();
+        }
+      }
+      return cache;
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static Directory readDirectory(ByteBuffer in, List<Directory> order) {
+    int untrackedCount = readVarint(in);
+    int dirCount = readVarint(in);
+    Directory dir = new Directory(readString(in));
+    order.add(dir);
+    for (int i = 0; i < untrackedCount; i++) {
+      dir.untracked.add(readString(in));
+    }
+    for (int i = 0; i < dirCount; i++) {
+      Directory child = readDirectory(in, order);
+      dir.dirs.put(child.name, child);
+    }
+    return dir;
+  }
+
+  public byte[] serialize() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      GitIndex.writeVarint(out, ident.length);
+      out.write(ident);
+      writeStat(out, infoExcludeStat);
+      writeStat(out, excludesFileStat);
+      out.writeInt(dirFlags);
+      writeId(out, infoExcludeId);
+      writeId(out, excludesFileId);
+      writeString(out, excludePerDir);
+      if (root == null) {
+        GitIndex.writeVarint(out, 0);
+        return bytes.toByteArray();
+      }
+
+      List<Directory> order = new ArrayList<>();
+      ByteArrayOutputStream tree = new ByteArrayOutputStream();
+      writeDirectory(new DataOutputStream(tree), root, order);
+      GitIndex.writeVarint(out, order.size());
+      tree.writeTo(out);
+
+      BitSet valid = new BitSet();
+      BitSet checkOnly = new BitSet();
+      BitSet hashed = new BitSet();
+      for (int i = 0; i < order.size(); i++) {
+        Directory dir = order.get(i);
+        valid.set(i, dir.valid);
+        checkOnly.set(i, dir.valid && dir.checkOnly);
+        hashed.set(i, dir.excludeId != null);
+      }
+      GitEwahBitmap.write(out, valid);
+      GitEwahBitmap.write(out, checkOnly);
+      GitEwahBitmap.write(out, hashed);
+      for (Directory dir : order) {
+        if (dir.valid) {
+          writeStat(out, dir.stat);
+        }
+      }
+      for (Directory dir : order) {
+        if (dir.excludeId != null) {
+          writeId(out, dir.excludeId);
+        }
+      }
+      out.write(0);
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new RuntimeException("Error serializing the untracked cache", e);
+    }
+  }
+
+  private static void writeDirectory(DataOutputStream out, Directory dir, List<Directory> order)
+      throws IOException {
+    order.add(dir);
+    List<String> untracked = dir.valid ? dir.untracked : List.of();
+    GitIndex.writeVarint(out, untracked.size());
+    GitIndex.writeVarint(out, dir.dirs.size());
+    writeString(out, dir.name);
+    for (String entry : untracked) {
+      writeString(out, entry);
+    }
+    for (Directory child : dir.dirs.values()) {
+      writeDirectory(out, child, order);
+    }
+  }
+
+  /**
+   * Checks that the cache was made for this work tree by the same kind of scan, and drops
+   * everything in it if the repository-wide ignore files changed. The stat data of those files
+   * decides whether they are read and hashed again.
+   *
+   * @return false if the cache cannot be used at all and should be replaced
+   */
+  public boolean validate(GitRepository repo, Path infoExclude, Path excludesFile)
+      throws IOException {
+    if (dirFlags != STATUS_DIR_FLAGS || !EXCLUDE_PER_DIR.equals(excludePerDir)) {
+      return false;
+    }
+    if (!containsIdent(identString(repo))) {
+      return false;
+    }
+    if (root == null) {
+      root = new Directory("");
+    }
+
+    GitFileStat stat = statOrNull(infoExclude);
+    if (!sameStat(stat, infoExcludeStat)) {
+      ObjectId id = GitIgnore.hashFile(infoExclude);
+      if (!Objects.equals(id, infoExcludeId)) {
+        root.invalidateAll();
+      }
+      infoExcludeId = id;
+      infoExcludeStat = stat;
+      changed = true;
+    }
+    stat = statOrNull(excludesFile);
+    if (!sameStat(stat, excludesFileStat)) {
+      ObjectId id = GitIgnore.hashFile(excludesFile);
+      if (!Objects.equals(id, excludesFileId)) {
+        root.invalidateAll();
+      }
+      excludesFileId = id;
+      excludesFileStat = stat;
+      changed = true;
+    }
+    return true;
+  }
+
+  // whether the last validate changed anything that needs writing back
+  public boolean isChanged() {
+    return changed;
+  }
+
+  public Directory getRoot() {
+    return root;
+  }
+
+  /**
+   * Forgets what the cache knows about the directories leading to a path whose index entry was
+   * added or removed. A file that becomes tracked does not change its directory's stat data, and
+   * every parent may list the path's top directory as untracked.
+   */
+  public void invalidate(String path) {
+    if (root == null) {
+      return;
+    }
+    Directory dir = root;
+    int start = 0;
+    while (dir != null) {
+      dir.invalidate();
+      int slash = path.indexOf('/', start);
+      if (slash < 0) {
+        return;
+      }
+      dir = dir.dirs.get(path.substring(start, slash));
+      start = slash + 1;
+    }
+  }
+
+  // whether one of the NUL separated strings the cache was made for is this work tree's
+  private boolean containsIdent(String wanted) {
+    int start = 0;
+    for (int i = 0; i < ident.length; i++) {
+      if (ident[i] == 0) {
+        if (new String(ident, start, i - start, StandardCharsets.UTF_8).equals(wanted)) {
+          return true;
+        }
+        start = i + 1;
+      }
+    }
+    return false;
+  }
+
+  // the string git identifies a work tree by, with the system name uname would give
+  private static String identString(GitRepository repo) throws IOException {
+    String worktree = Paths.get(repo.getWorkTree()).toRealPath().toString();
+    String os = System.getProperty("os.name");
+    String system;
+    if (os.startsWith("Mac")) {
+      system = "Darwin";
+    } else if (os.startsWith("Windows")) {
+      system = "Windows";
+    } else {
+      system = os;
+    }
+    return "Location " + worktree + ", system " + system;
+  }
+
+  private static boolean sameStat(GitFileStat current, GitFileStat recorded) {
+    return current == null ? recorded == null : recorded != null && current.matches(recorded);
+  }
+
+  private static GitFileStat statOrNull(Path file) throws IOException {
+    if (file == null || !Files.exists(file)) {
+      return null;
+    }
+    return GitFileStat.of(file);
+  }
+
+  // git's varint, the same encoding as the index's version 4 paths
+  private static int readVarint(ByteBuffer in) {
+    int c = in.get() & 0xff;
+    int value = c & 0x7f;
+    while ((c & 0x80) != 0) {
+      c = in.get() & 0xff;
+      value = ((value + 1) << 7) | (c & 0x7f);
+    }
+    if (value < 0) {
+      throw new IllegalArgumentException("varint overflow");
+    }
+    return value;
+  }
+
+  private static String readString(ByteBuffer in) {
+    int start = in.position();
+    while (in.get() != 0) {
+      // scan to the NUL
+    }
+    byte[] bytes = new byte[in.position() - start - 1];
+    in.get(start, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    out.write(value.getBytes(StandardCharsets.UTF_8));
+    out.write(0);
+  }
+
+  private static ObjectId readId(ByteBuffer in) {
+    byte[] raw = new byte[ObjectId.RAW_LENGTH];
+    in.get(raw);
+    for (byte b : raw) {
+      if (b != 0) {
+        return ObjectId.fromRaw(raw, 0);
+      }
+    }
+    return null;
+  }
+
+  private static void writeId(DataOutputStream out, ObjectId id) throws IOException {
+    byte[] raw = new byte[ObjectId.RAW_LENGTH];
+    if (id != null) {
+      id.copyRawTo(raw, 0);
+    }
+    out.write(raw);
+  }
+
+  // stat data as the index stores it, less the mode; all zeros for a missing file reads as null
+  private static GitFileStat readStat(ByteBuffer in) {
+    int ctimeSeconds = in.getInt();
+    int ctimeNanos = in.getInt();
+    int mtimeSeconds = in.getInt();
+    int mtimeNanos = in.getInt();
+    int dev = in.getInt();
+    int ino = in.getInt();
+    int uid = in.getInt();
+    int gid = in.getInt();
+    int size = in.getInt();
+    if ((ctimeSeconds | ctimeNanos | mtimeSeconds | mtimeNanos | dev | ino | size) == 0) {
+      return null;
+    }
+    return new GitFileStat(
+        ctimeSeconds, ctimeNanos, mtimeSeconds, mtimeNanos, dev, ino, 0, uid, gid, size);
+  }
+
+  private static void writeStat(DataOutputStream out, GitFileStat stat) throws IOException {
+    if (stat == null) {
+      out.write(new byte[36]);
+      return;
+    }
+    out.writeInt(stat.getCtimeSeconds());
+    out.writeInt(stat.getCtimeNanos());
+    out.writeInt(stat.getMtimeSeconds());
+    out.writeInt(stat.getMtimeNanos());
+    out.writeInt(stat.getDev());
+    out.writeInt(stat.getIno());
+    out.writeInt(stat.getUid());
+    out.writeInt(stat.getGid());
+    out.writeInt(stat.getSize());
+  }
+}
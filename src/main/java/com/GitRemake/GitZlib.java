@@ -0,0 +1,122 @@
+package com.GitRemake;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Shared pools of zlib Inflaters and Deflaters. Each one holds native zlib state that the JVM only
+ * frees when {@code end()} is called or the garbage collector eventually gets to it, so allocating
+ * one per object lets a long running process grow its RSS well past what the heap suggests.
+ *
+ * <p>Callers borrow with {@link #getInflater} or {@link #getDeflater} and hand the codec back with
+ * {@link #release}. Every pool keeps at most a few idle codecs per core; anything released beyond
+ * that is ended on the spot, so native memory stays bounded by the peak number of codecs in use.
+ */
+public final class GitZlib {
+  private static final int MAX_IDLE = Runtime.getRuntime().availableProcessors() * 2;
+
+  // idle codecs, each already reset, guarded by the deque itself
+  private static final Deque<Inflater> inflaters = new ArrayDeque<>();
+  private static final Deque<Deflater> deflaters = new ArrayDeque<>();
+
+  private GitZlib() {}
+
+  // a reset Inflater, to be passed back to release once its stream is done
+  public static Inflater getInflater() {
+    synchronized (inflaters) {
+      Inflater inflater = inflaters.poll();
+      if (inflater != null) {
+        return inflater;
+      }
+    }
+    return new Inflater();
+  }
+
+  public static void release(Inflater inflater) {
+    inflater.reset();
+    synchronized (inflaters) {
+      if (inflaters.size() < MAX_IDLE) {
+        inflaters.push(inflater);
+        return;
+      }
+    }
+    inflater.end();
+  }
+
+  /**
+   * A reset Deflater compressing at the given level, 0 (store) to 9 (best), or -1 for zlib's
+   * default.
+   */
+  public static Deflater getDeflater(int level) {
+    Deflater deflater;
+    synchronized (deflaters) {
+      deflater = deflaters.poll();
+    }
+    if (deflater == null) {
+      return new Deflater(level);
+    }
+    // takes effect from the first deflate call, which a reset Deflater has not made yet
+    deflater.setLevel(level);
+    return deflater;
+  }
+
+  public static void release(Deflater deflater) {
+    deflater.reset();
+    synchronized (deflaters) {
+      if (deflaters.size() < MAX_IDLE) {
+        deflaters.push(deflater);
+        return;
+      }
+    }
+    deflater.end();
+  }
+
+  /**
+   * Inflates in through a pooled Inflater that goes back to the pool when the stream is closed.
+   */
+  public static InputStream inflate(InputStream in, int bufferSize) {
+    return new PooledInflaterInputStream(in, getInflater(), bufferSize);
+  }
+
+  // ends every idle codec, for callers that want all native memory back now
+  public static void clear() {
+    synchronized (inflaters) {
+      for (Inflater inflater : inflaters) {
+        inflater.end();
+      }
+      inflaters.clear();
+    }
+    synchronized (deflaters) {
+      for (Deflater deflater : deflaters) {
+        deflater.end();
+      }
+      deflaters.clear();
+    }
+  }
+
+  private static class PooledInflaterInputStream extends InflaterInputStream {
+    private boolean released;
+
+    PooledInflaterInputStream(InputStream in, Inflater inflater, int bufferSize) {
+      super(in, inflater, bufferSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        // a second close must not release an Inflater someone else borrowed since
+        if (!released) {
+          released = true;
+          release(inf);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,318 @@
+package com.GitRemake;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Hashes files into objects and, given a repository, stores them as loose objects. Each file goes
+ * through four stages: read, SHA-1, deflate, write. Every stage has its own worker threads, and
+ * bounded queues connect the stages. While one file is being read another is hashed and a third
+ * deflated, so an import keeps the disk and every core busy. The bounded queues cap how many file
+ * contents are held in memory at once, and {@link #add} blocks when the pipeline is full. Blobs of
+ * core.bigFileThreshold bytes or more (16 MiB unless configured) never enter memory at all: the
+ * read stage streams them through {@link GitObjectUtil#objectWrite(GitRepository, String, Path)}.
+ *
+ * <p>Results reach the listener in the order the paths were added, whatever order the workers
+ * finish in. Files that fail are collected and reported together by {@link #finish}.
+ */
+public class HashObjectPipeline implements Closeable {
+  /** Receives each object id once its file has been hashed and, if requested, written. */
+  public interface Listener {
+    void hashed(Path path, ObjectId id);
+  }
+
+  private interface Stage {
+    void process(Item item) throws IOException;
+  }
+
+  private static class Item {
+    final long sequence;
+    final Path path;
+    byte[] content;
+    byte[] header;
+    ObjectId id;
+    byte[] compressed;
+    // the repository already has this object, or the read stage streamed it there,
+    // nothing to deflate or write
+    boolean exists;
+    Exception error;
+
+    Item(long sequence, Path path) {
+      this.sequence = sequence;
+      this.path = path;
+    }
+  }
+
+  // handed down the queues after the last path, once every worker of a stage has seen it
+  private static final Item END = new Item(-1, null);
+  // blobs from this size on are streamed to disk by the read stage instead of being held in memory
+  private static final long DEFAULT_STREAM_THRESHOLD = 16L * 1024 * 1024;
+
+  private final GitRepository repo;
+  private final String type;
+  private final long streamThreshold;
+  private final Listener listener;
+  private final BlockingQueue<Item> toRead;
+  private final List<Thread> threads = new ArrayList<>();
+  private final CountDownLatch finished = new CountDownLatch(1);
+  private long nextSequence;
+
+  // completed items waiting for the ones added before them, guarded by this
+  private final Map<Long, Item> completed = new HashMap<>();
+  private long nextToReport;
+  private final List<String> errors = new ArrayList<>();
+
+  /**
+   * @param repo where to write the objects, or null to only compute their ids
+   * @param type the object type of every file
+   * @param workers threads per stage
+   */
+  public HashObjectPipeline(GitRepository repo, String type, int workers, Listener listener) {
+    this.repo = repo;
+    this.type = type;
+    this.listener = listener;
+    this.streamThreshold =
+        repo == null
+            ? DEFAULT_STREAM_THRESHOLD
+            : repo.getConfigLong("core", "bigFileThreshold", DEFAULT_STREAM_THRESHOLD);
+
+    int capacity = workers * 4;
+    toRead = new ArrayBlockingQueue<>(capacity);
+    BlockingQueue<Item> toHash = new ArrayBlockingQueue<>(capacity);
+    startStage("read", workers, toRead, toHash, this::read);
+
+    if (repo == null) {
+      startStage("hash", workers, toHash, null, this::hash);
+      return;
+    }
+    BlockingQueue<Item> toDeflate = new ArrayBlockingQueue<>(capacity);
+    BlockingQueue<Item> toWrite = new ArrayBlockingQueue<>(capacity);
+    startStage("hash", workers, toHash, toDeflate, this::hash);
+    AtomicInteger running = new AtomicInteger(workers);
+    int level = repo.getLooseCompression();
+    for (int i = 0; i < workers; i++) {
+      // each deflate worker keeps one Deflater for all of its files
+      Deflater deflater = GitZlib.getDeflater(level);
+      Stage stage = item -> deflate(item, deflater);
+      startWorker("deflate", toDeflate, toWrite, running, stage, deflater);
+    }
+    startStage("write", workers, toWrite, null, this::write);
+  }
+
+  /** Hashes (and writes) the files with one thread per core in each stage. */
+  public static List<ObjectId> hashFiles(GitRepository repo, List<Path> paths, String type)
+      throws IOException {
+    List<ObjectId> ids = new ArrayList<>(paths.size());
+    int workers = Runtime.getRuntime().availableProcessors();
+    try (HashObjectPipeline pipeline =
+        new HashObjectPipeline(repo, type, workers, (path, id) -> ids.add(id))) {
+      for (Path path : paths) {
+        pipeline.add(path);
+      }
+      pipeline.finish();
+    }
+    return ids;
+  }
+
+  // queues a file, blocking while the pipeline is full
+  public void add(Path path) throws IOException {
+    try {
+      toRead.put(new Item(nextSequence++, path));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while queueing " + path, e);
+    }
+  }
+
+  /**
+   * Waits until every added file has been reported to the listener.
+   *
+   * @throws IOException listing every file that could not be hashed or written
+   */
+  public void finish() throws IOException {
+    try {
+      toRead.put(END);
+      finished.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for objects to be written", e);
+    }
+
+    synchronized (this) {
+      if (!errors.isEmpty()) {
+        Collections.sort(errors);
+        StringBuilder message = new StringBuilder();
+        message.append("Could not hash ").append(errors.size()).append(" files:");
+        for (String error : errors) {
+          message.append("\n  ").append(error);
+        }
+        throw new IOException(message.toString());
+      }
+    }
+  }
+
+  // stops the workers, only needed when finish was not reached
+  @Override
+  public void close() {
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+  }
+
+  private void read(Item item) throws IOException {
+    // a big blob would pin that much memory in every queue it waits in, so it is hashed,
+    // deflated and written in one streaming pass here and the later stages pass it along
+    if (type.equals("blob") && Files.size(item.path) >= streamThreshold) {
+      item.id = GitObjectUtil.objectWrite(repo, type, item.path);
+      item.exists = true;
+      return;
+    }
+    item.content = Files.readAllBytes(item.path);
+  }
+
+  private void hash(Item item) {
+    if (item.id != null) {
+      return;
+    }
+    // anything but a blob has to parse as its type, the bytes are hashed as they are though
+    if (!type.equals("blob")) {
+      GitObjectUtil.createObject(type, item.content);
+    }
+    item.header = GitObjectUtil.header(type, item.content.length);
+
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-1 algorithm could not be access ", e);
+    }
+    digest.update(item.header);
+    digest.update(item.content);
+    item.id = ObjectId.fromRaw(digest.digest());
+
+    if (repo == null) {
+      item.content = null;
+    } else if (GitObjectUtil.objectExists(repo, item.id)) {
+      item.exists = true;
+    }
+  }
+
+  private void deflate(Item item, Deflater deflater) {
+    if (item.exists) {
+      return;
+    }
+    deflater.reset();
+    ByteArrayOutputStream output = new ByteArrayOutputStream(item.content.length / 2 + 64);
+    byte[] buffer = new byte[8192];
+
+    deflater.setInput(item.header);
+    while (!deflater.needsInput()) {
+      output.write(buffer, 0, deflater.deflate(buffer));
+    }
+    deflater.setInput(item.content);
+    deflater.finish();
+    while (!deflater.finished()) {
+      output.write(buffer, 0, deflater.deflate(buffer));
+    }
+    item.compressed = output.toByteArray();
+    item.content = null;
+  }
+
+  private void write(Item item) throws IOException {
+    if (!item.exists) {
+      GitObjectUtil.writeLoose(repo, item.id, item.compressed);
+    }
+    item.compressed = null;
+  }
+
+  private void startStage(
+      String name, int workers, BlockingQueue<Item> in, BlockingQueue<Item> out, Stage stage) {
+    AtomicInteger running = new AtomicInteger(workers);
+    for (int i = 0; i < workers; i++) {
+      startWorker(name, in, out, running, stage, null);
+    }
+  }
+
+  private void startWorker(
+      String name,
+      BlockingQueue<Item> in,
+      BlockingQueue<Item> out,
+      AtomicInteger running,
+      Stage stage,
+      Deflater deflater) {
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                while (true) {
+                  Item item = in.take();
+                  if (item == END) {
+                    // leave the marker for the other workers of this stage
+                    in.put(END);
+                    if (running.decrementAndGet() == 0) {
+                      forward(END, out);
+                    }
+                    return;
+                  }
+                  if (item.error == null) {
+                    try {
+                      stage.process(item);
+                    } catch (IOException | RuntimeException e) {
+                      item.error = e;
+                    }
+                  }
+                  forward(item, out);
+                }
+              } catch (InterruptedException e) {
+                // closed before finishing
+              } finally {
+                if (deflater != null) {
+                  GitZlib.release(deflater);
+                }
+              }
+            },
+            "hash-object-" + name);
+    thread.setDaemon(true);
+    threads.add(thread);
+    thread.start();
+  }
+
+  private void forward(Item item, BlockingQueue<Item> out) throws InterruptedException {
+    if (out != null) {
+      out.put(item);
+    } else if (item == END) {
+      finished.countDown();
+    } else {
+      complete(item);
+    }
+  }
+
+  // reports finished items in the order they were added
+  private synchronized void complete(Item item) {
+    completed.put(item.sequence, item);
+    Item next;
+    while ((next = completed.remove(nextToReport)) != null) {
+      if (next.error != null) {
+        errors.add(next.path + ": " + next.error);
+      } else {
+        listener.hashed(next.path, next.id);
+      }
+      nextToReport++;
+    }
+  }
+}
@@ -1,12 +1,19 @@
 package com.GitRemake;
 
-import java.io.IOException;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import org.apache.commons.cli.*;
 import org.apache.commons.cli.Options;
 import org.ini4j.*;
@@ -41,16 +48,24 @@ public class LibWyag {
         case "check-ignore" -> cmdCheckIgnore(commandArgs);
         case "checkout" -> cmdCheckout(commandArgs);
         case "commit" -> cmdInit(commandArgs);
+        case "commit-graph" -> cmdCommitGraph(commandArgs);
+        case "diff-tree" -> cmdDiffTree(commandArgs);
+        case "gc" -> cmdGc(commandArgs);
         case "hash-object" -> cmdHashObject(commandArgs);
         case "init" -> cmdInit(commandArgs);
         case "log" -> cmdLog(commandArgs);
         case "ls-files" -> cmdLsFiles(commandArgs);
         case "ls-tree" -> cmdLsTree(commandArgs);
+        case "merge-base" -> cmdMergeBase(commandArgs);
+        case "pack-refs" -> cmdPackRefs(commandArgs);
+        case "reflog" -> cmdReflog(commandArgs);
+        case "repack" -> cmdGc(commandArgs);
         case "rev-parse" -> cmdRevParse(commandArgs);
-        case "rm" -> cmdAdd(commandArgs);
+        case "rm" -> cmdRm(commandArgs);
         case "show-ref" -> cmdShowRef(commandArgs);
         case "status" -> cmdStatus(commandArgs);
         case "tag" -> cmdLog(commandArgs);
+        case "update-ref" -> cmdUpdateRef(commandArgs);
         default -> System.out.println("Bad command.");
       }
     } catch (ParseException e) {
@@ -61,6 +76,12 @@ public class LibWyag {
 
   private static void cmdInit(String[] commandArgs) {
     Options options = new Options();
+    options.addOption(
+        Option.builder()
+            .longOpt("ref-format")
+            .hasArg()
+            .desc("How refs are stored: files (default) or reftable")
+            .build());
 
     CommandLineParser parser = new DefaultParser();
     HelpFormatter helper = new HelpFormatter();
@@ -73,11 +94,16 @@ public class LibWyag {
         path = cmd.getArgs()[0];
       }
 
-      GitRepository repo = GitRepository.repoCreate(path);
+      String refFormat = cmd.getOptionValue("ref-format", "files");
+      if (!refFormat.equals("files") && !refFormat.equals("reftable")) {
+        throw new IllegalArgumentException("unknown ref storage format '" + refFormat + "'");
+      }
+
+      GitRepository repo = GitRepository.repoCreate(path, refFormat.equals("reftable"));
       System.out.println("Initialized empty repository in " + repo.getGitDir());
 
     } catch (ParseException e) {
-      helper.printHelp("wyag init [directory]", options);
+      helper.printHelp("wyag init [--ref-format=FORMAT] [directory]", options);
       System.exit(1);
     } catch (Exception e) {
       System.err.println("Error :" + e.getMessage());
@@ -85,14 +111,433 @@ public class LibWyag {
     }
   }
 
+  private static void cmdGc(String[] commandArgs) {
+    Options options = new Options();
+    options.addOption(
+        Option.builder()
+            .longOpt("window")
+            .hasArg()
+            .desc("Number of objects considered as delta bases (default 10)")
+            .build());
+    options.addOption(
+        Option.builder()
+            .longOpt("depth")
+            .hasArg()
+            .desc("Maximum delta chain length (default 50)")
+            .build());
+
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      int window = Integer.parseInt(cmd.getOptionValue("window", "10"));
+      int depth = Integer.parseInt(cmd.getOptionValue("depth", "50"));
+
+      GitRepository repo = GitRepository.repoFind();
+
+      CommandGc.repack(repo, window, depth);
+    } catch (ParseException | NumberFormatException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp("wyag gc [--window N] [--depth N]", options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void cmdCommitGraph(String[] commandArgs) {
+    Options options = new Options();
+
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      String[] remainingArgs = cmd.getArgs();
+      if (remainingArgs.length != 1 || !remainingArgs[0].equals("write")) {
+        helper.printHelp("wyag commit-graph write", options);
+        System.exit(1);
+      }
+
+      GitRepository repo = GitRepository.repoFind();
+
+      int commits = GitCommitGraph.write(repo);
+      if (commits >= 0) {
+        System.out.println("Wrote commit-graph with " + commits + " commits");
+      }
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp("wyag commit-graph write", options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void cmdDiffTree(String[] commandArgs) {
+    Options options = new Options();
+    options.addOption(Option.builder("r").desc("Recurse into subtrees").build());
+    options.addOption(
+        Option.builder().longOpt("name-only").desc("Only show the changed paths").build());
+    options.addOption(
+        Option.builder()
+            .longOpt("name-status")
+            .desc("Show the paths and how they changed")
+            .build());
+    options.addOption(
+        Option.builder().longOpt("root").desc("Show a root commit as adding every file").build());
+
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+    String usage = "wyag diff-tree [-r] [--name-only | --name-status] [--root] TREE-ISH [TREE-ISH]";
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      String[] args = cmd.getArgs();
+      if (args.length < 1 || args.length > 2) {
+        helper.printHelp(usage, options);
+        System.exit(1);
+      }
+      GitRepository repo = GitRepository.repoFind();
+
+      PrintWriter out =
+          new PrintWriter(
+              new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      ObjectId oldTree;
+      ObjectId newTree;
+      if (args.length == 2) {
+        oldTree = findTree(repo, args[0]);
+        newTree = findTree(repo, args[1]);
+      } else {
+        // one commit is compared with its parent, and like git a merge shows nothing
+        ObjectId commit = GitObjectUtil.objectFind(repo, args[0], "commit");
+        if (commit == null) {
+          System.err.println("Error: not a valid commit name: " + args[0]);
+          System.exit(128);
+        }
+        CommitInfo info = GitObjectUtil.commitInfo(repo, commit);
+        if (info.parents.size() > 1 || (info.parents.isEmpty() && !cmd.hasOption("root"))) {
+          System.exit(0);
+        }
+        CommitInfo parent =
+            info.parents.isEmpty() ? null : GitObjectUtil.commitInfo(repo, info.parents.get(0));
+        oldTree = parent == null ? null : parent.tree;
+        newTree = info.tree;
+        out.println(commit.name());
+      }
+
+      TreeDiff diff = new TreeDiff(repo, oldTree, newTree).setRecursive(cmd.hasOption("r"));
+      try {
+        while (diff.hasNext()) {
+          TreeDiff.Change change = diff.next();
+          if (cmd.hasOption("name-only")) {
+            out.println(change.getPath());
+          } else if (cmd.hasOption("name-status")) {
+            out.println(change.getType().getCode() + "\t" + change.getPath());
+          } else {
+            // built by hand, a format string per line is most of the cost of a large diff
+            out.println(
+                ":"
+                    + rawMode(change.getOldMode())
+                    + " "
+                    + rawMode(change.getNewMode())
+                    + " "
+                    + change.getOldId().name()
+                    + " "
+                    + change.getNewId().name()
+                    + " "
+                    + change.getType().getCode()
+                    + "\t"
+                    + change.getPath());
+          }
+        }
+      } finally {
+        out.flush();
+      }
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp(usage, options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(128);
+    }
+  }
+
+  // six octal digits, as diff-tree prints modes
+  private static String rawMode(int mode) {
+    String octal = Integer.toOctalString(mode);
+    return "000000".substring(octal.length()) + octal;
+  }
+
+  // a tree, or the tree of a commit or tag, by name
+  private static ObjectId findTree(GitRepository repo, String name) {
+    ObjectId tree = GitObjectUtil.objectFind(repo, name, "tree");
+    if (tree == null) {
+      throw new IllegalArgumentException("not a tree object: " + name);
+    }
+    return tree;
+  }
+
+  private static void cmdMergeBase(String[] commandArgs) {
+    Options options = new Options();
+    options.addOption(
+        Option.builder()
+            .longOpt("is-ancestor")
+            .desc("Exit with 0 if the first commit is an ancestor of the second, 1 if not")
+            .build());
+
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      String[] remainingArgs = cmd.getArgs();
+      if (!cmd.hasOption("is-ancestor") || remainingArgs.length != 2) {
+        helper.printHelp("wyag merge-base --is-ancestor COMMIT COMMIT", options);
+        System.exit(1);
+      }
+
+      GitRepository repo = GitRepository.repoFind();
+
+      ObjectId ancestor = GitObjectUtil.objectFind(repo, remainingArgs[0], "commit");
+      ObjectId descendant = GitObjectUtil.objectFind(repo, remainingArgs[1], "commit");
+      if (ancestor == null || descendant == null) {
+        System.err.println("Error: not a valid commit name");
+        System.exit(128);
+      }
+
+      System.exit(CommandMergeBase.isAncestor(repo, ancestor, descendant) ? 0 : 1);
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp("wyag merge-base --is-ancestor COMMIT COMMIT", options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      e.printStackTrace();
+      System.exit(128);
+    }
+  }
+
   private static void cmdStatus(String[] commandArgs) {
-    // TODO Auto-generated method stub
-    throw new UnsupportedOperationException("Unimplemented method 'cmdStatus'");
+    Options options = new Options();
+    options.addOption(
+        Option.builder("s").longOpt("short").desc("Give the output in the short format").build());
+
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+
+      GitRepository repo = GitRepository.repoFind();
+      PrintWriter out =
+          new PrintWriter(
+              new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      try {
+        CommandStatus.status(repo, cmd.hasOption("s"), out);
+      } finally {
+        out.flush();
+      }
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp("wyag status [-s]", options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
   }
 
   private static void cmdShowRef(String[] commandArgs) {
-    // TODO Auto-generated method stub
-    throw new UnsupportedOperationException("Unimplemented method 'cmdShowRef'");
+    Options options = new Options();
+    options.addOption(Option.builder().longOpt("head").desc("Show HEAD as well").build());
+    options.addOption(Option.builder().longOpt("heads").desc("Only show branches").build());
+    options.addOption(Option.builder().longOpt("tags").desc("Only show tags").build());
+    options.addOption(
+        Option.builder("d")
+            .longOpt("dereference")
+            .desc("Also show what annotated tags point at, as NAME^{}")
+            .build());
+
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      GitRepository repo = GitRepository.repoFind();
+
+      Map<String, ObjectId> refs = new LinkedHashMap<>();
+      if (cmd.hasOption("head")) {
+        ObjectId head = GitRefUtil.refResolve(repo, "HEAD");
+        if (head != null) {
+          refs.put("HEAD", head);
+        }
+      }
+      if (cmd.hasOption("heads") || cmd.hasOption("tags")) {
+        if (cmd.hasOption("heads")) {
+          refs.putAll(GitRefUtil.listRefs(repo, "refs/heads/"));
+        }
+        if (cmd.hasOption("tags")) {
+          refs.putAll(GitRefUtil.listRefs(repo, "refs/tags/"));
+        }
+      } else {
+        refs.putAll(GitRefUtil.listRefs(repo, "refs/"));
+      }
+
+      PrintWriter out =
+          new PrintWriter(
+              new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      try {
+        for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+          out.println(ref.getValue().name() + " " + ref.getKey());
+          if (cmd.hasOption("d")) {
+            ObjectId peeled = GitRefUtil.refPeel(repo, ref.getKey(), ref.getValue());
+            if (peeled != null) {
+              out.println(peeled.name() + " " + ref.getKey() + "^{}");
+            }
+          }
+        }
+      } finally {
+        out.flush();
+      }
+      System.exit(refs.isEmpty() ? 1 : 0);
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp("wyag show-ref [--head] [--heads] [--tags] [-d]", options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  private static void cmdReflog(String[] commandArgs) {
+    Options options = new Options();
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+    String usage = "wyag reflog [REF]";
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      String[] args = cmd.getArgs();
+      if (args.length > 1) {
+        helper.printHelp(usage, options);
+        System.exit(1);
+      }
+      GitRepository repo = GitRepository.repoFind();
+      String ref = args.length == 1 ? args[0] : "HEAD";
+      String name = GitRefUtil.refFullName(repo, ref);
+      if (name == null) {
+        System.err.println("Error: not a ref: " + ref);
+        System.exit(1);
+      }
+
+      // newest first, numbered the way ref@{n} counts
+      List<GitReflog.Entry> entries = GitReflog.read(repo, name);
+      PrintWriter out =
+          new PrintWriter(
+              new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      try {
+        for (int i = entries.size() - 1, n = 0; i >= 0; i--, n++) {
+          GitReflog.Entry entry = entries.get(i);
+          String id = GitObjectUtil.abbreviate(repo, entry.getNewId(), 7);
+          out.println(id + " " + ref + "@{" + n + "}: " + entry.getMessage());
+        }
+      } finally {
+        out.flush();
+      }
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp(usage, options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  private static void cmdUpdateRef(String[] commandArgs) {
+    Options options = new Options();
+    options.addOption(Option.builder("d").desc("Delete the ref").build());
+    options.addOption(
+        Option.builder("m").hasArg().argName("reason").desc("The reflog message").build());
+    options.addOption(
+        Option.builder()
+            .longOpt("stdin")
+            .desc("Read update, create, delete and verify commands, applied all or none")
+            .build());
+    options.addOption(
+        Option.builder()
+            .longOpt("packed")
+            .desc("With --stdin, write the refs into packed-refs in one rewrite")
+            .build());
+
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+    String usage =
+        "wyag update-ref [-m REASON] (REF NEW [OLD] | -d REF [OLD] | --stdin [--packed])";
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      String[] args = cmd.getArgs();
+      String message = cmd.getOptionValue("m", "");
+      GitRepository repo = GitRepository.repoFind();
+      if (cmd.hasOption("stdin")) {
+        if (args.length > 0 || cmd.hasOption("d")) {
+          helper.printHelp(usage, options);
+          System.exit(1);
+        }
+        BufferedReader in =
+            new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        CommandUpdateRef.updateRefs(repo, in, cmd.hasOption("packed"), message);
+      } else if (cmd.hasOption("d") && (args.length == 1 || args.length == 2)) {
+        String oldValue = args.length == 2 ? args[1] : null;
+        CommandUpdateRef.updateRef(repo, args[0], null, oldValue, message);
+      } else if (!cmd.hasOption("d") && (args.length == 2 || args.length == 3)) {
+        String oldValue = args.length == 3 ? args[2] : null;
+        CommandUpdateRef.updateRef(repo, args[0], args[1], oldValue, message);
+      } else {
+        helper.printHelp(usage, options);
+        System.exit(1);
+      }
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp(usage, options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  private static void cmdPackRefs(String[] commandArgs) {
+    Options options = new Options();
+    options.addOption(
+        Option.builder().longOpt("all").desc("Pack every ref, not only tags").build());
+    options.addOption(
+        Option.builder().longOpt("no-prune").desc("Keep the loose files of packed refs").build());
+
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      GitRepository repo = GitRepository.repoFind();
+      CommandPackRefs.packRefs(repo, cmd.hasOption("all"), !cmd.hasOption("no-prune"));
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp("wyag pack-refs [--all] [--no-prune]", options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
   }
 
   private static void cmdRevParse(String[] commandArgs) {
@@ -133,25 +578,154 @@ public class LibWyag {
   }
 
   private static void cmdLsFiles(String[] commandArgs) {
-    // TODO Auto-generated method stub
-    throw new UnsupportedOperationException("Unimplemented method 'cmdLsFiles'");
+    Options options = new Options();
+    options.addOption(
+        Option.builder("s")
+            .longOpt("stage")
+            .desc("Show the mode, object name and stage of each entry")
+            .build());
+    options.addOption(
+        Option.builder().longOpt("debug").desc("Show the stat data of each entry").build());
+
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      boolean stage = cmd.hasOption("s");
+      boolean debug = cmd.hasOption("debug");
+
+      GitRepository repo = GitRepository.repoFind();
+      GitIndex index = GitIndex.read(repo);
+
+      PrintWriter out =
+          new PrintWriter(
+              new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      for (int i = 0; i < index.size(); i++) {
+        if (!stage && !debug) {
+          // only the paths, the rest of each entry is never decoded
+          out.println(index.getPath(i));
+          continue;
+        }
+        GitIndexEntry entry = index.get(i);
+        if (stage) {
+          out.printf(
+              "%06o %s %d\t%s%n",
+              entry.getMode(), entry.getSha(), entry.getStage(), entry.getPath());
+        } else {
+          out.println(entry.getPath());
+        }
+        if (debug) {
+          GitFileStat stat = entry.getStat();
+          out.println(
+              "  ctime: "
+                  + Integer.toUnsignedString(stat.getCtimeSeconds())
+                  + ":"
+                  + Integer.toUnsignedString(stat.getCtimeNanos()));
+          out.println(
+              "  mtime: "
+                  + Integer.toUnsignedString(stat.getMtimeSeconds())
+                  + ":"
+                  + Integer.toUnsignedString(stat.getMtimeNanos()));
+          out.println(
+              "  dev: "
+                  + Integer.toUnsignedString(stat.getDev())
+                  + "\tino: "
+                  + Integer.toUnsignedString(stat.getIno()));
+          out.println(
+              "  uid: "
+                  + Integer.toUnsignedString(stat.getUid())
+                  + "\tgid: "
+                  + Integer.toUnsignedString(stat.getGid()));
+          out.println(
+              "  size: "
+                  + Integer.toUnsignedString(stat.getSize())
+                  + "\tflags: "
+                  + Integer.toHexString(entry.getStage() << 12));
+        }
+      }
+      out.flush();
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp("wyag ls-files [-s] [--debug]", options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
   }
 
   private static void cmdLog(String[] commandArgs) {
-    String startCommit = commandArgs.length > 0 ? commandArgs[0] : "HEAD";
-
-    GitRepository repo = GitRepository.repoFind();
+    Options options = new Options();
+    options.addOption(
+        Option.builder("n")
+            .longOpt("max-count")
+            .hasArg()
+            .desc("Limit the number of commits to output")
+            .build());
+    options.addOption(
+        Option.builder()
+            .longOpt("since")
+            .hasArg()
+            .desc("Show commits more recent than a date")
+            .build());
+    options.addOption(
+        Option.builder()
+            .longOpt("until")
+            .hasArg()
+            .desc("Show commits older than a date")
+            .build());
+    options.addOption(
+        Option.builder()
+            .longOpt("topo-order")
+            .desc("Show no parents before all of their children")
+            .build());
 
-    // Start the Graphviz output
-    System.out.println("digraph wyaglog{");
-    System.out.println(" node[shape=rect]");
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+    String usage = "wyag log [-n N] [--since DATE] [--until DATE] [--topo-order] [COMMIT...]";
 
-    // Track which commit we've seen
-    Set<String> seen = new HashSet<>();
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      String[] startCommits = cmd.getArgs().length > 0 ? cmd.getArgs() : new String[] {"HEAD"};
 
-    logGraphviz(repo, GitObjectUtil.objectFind(repo, startCommit, "commit"), seen);
+      GitRepository repo = GitRepository.repoFind();
 
-    System.out.println("}");
+      RevWalk walk = new RevWalk(repo);
+      for (String name : startCommits) {
+        ObjectId start = GitObjectUtil.objectFind(repo, name, "commit");
+        if (start == null) {
+          System.err.println("Error: unknown revision: " + name);
+          System.exit(1);
+        }
+        walk.markStart(start);
+      }
+      if (cmd.hasOption("n")) {
+        walk.setLimit(Integer.parseInt(cmd.getOptionValue("n")));
+      }
+      if (cmd.hasOption("since")) {
+        walk.setSince(GitDate.parse(cmd.getOptionValue("since")));
+      }
+      if (cmd.hasOption("until")) {
+        walk.setUntil(GitDate.parse(cmd.getOptionValue("until")));
+      }
+      walk.setTopoOrder(cmd.hasOption("topo-order"));
+
+      // one flush at the end instead of a write per line
+      PrintWriter out =
+          new PrintWriter(
+              new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      logGraphviz(repo, walk, out);
+      out.flush();
+    } catch (ParseException | IllegalArgumentException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp(usage, options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      e.printStackTrace();
+      System.exit(1);
+    }
   }
 
   private static void cmdHashObject(String[] commandArgs) {
@@ -159,76 +733,85 @@ public class LibWyag {
     options.addOption(
         Option.builder("t")
             .longOpt("type")
-            .hasArgs()
+            .hasArg()
             .desc("Specify the object type (blob, commit, tag, tree)")
-            .required(true)
             .build());
 
     options.addOption(
         Option.builder("w")
             .longOpt("write")
             .desc("Actually write the object into the repository")
-            .required(true)
+            .build());
+
+    options.addOption(
+        Option.builder()
+            .longOpt("stdin-paths")
+            .desc("Read file paths from standard input, one per line")
             .build());
 
     CommandLineParser parser = new DefaultParser();
     HelpFormatter helper = new HelpFormatter();
+    String usage = "wyag hash-object [-w] [-t TYPE] (--stdin-paths | FILE...)";
 
     try {
       CommandLine cmd = parser.parse(options, commandArgs);
-      // Get the file name behind the options
+      // Get the file names behind the options
       String[] remainingArgs = cmd.getArgs();
+      boolean stdinPaths = cmd.hasOption("stdin-paths");
       // make sure that user enter a file name
-      if (remainingArgs.length == 0) {
+      if (remainingArgs.length == 0 && !stdinPaths) {
         System.err.println("Error: No file name specified");
-        helper.printHelp("wyag hash-object [-w] [-t TYPE] FILE", options);
+        helper.printHelp(usage, options);
         System.exit(1);
       }
-      // get the path and type
-      String filePath = remainingArgs[0];
       String type = cmd.getOptionValue("t", "blob");
-
-      // read file
-      byte[] fileContents;
-      try {
-        fileContents = Files.readAllBytes(Paths.get(filePath));
-      } catch (IOException e) {
-        System.err.println("Error reading file: " + filePath);
-        System.exit(1);
-        return;
-      }
-
-      GitObject gitObject;
-      try {
-        gitObject = GitObjectUtil.createObject(type, fileContents);
-      } catch (IllegalArgumentException e) {
-        System.err.println("Error: " + e.getMessage());
-        System.exit(1);
-        return;
-      }
+      // fail on a bad type before any worker starts
+      GitObjectUtil.createObject(type, new byte[0]);
 
       GitRepository repo = null;
       if (cmd.hasOption("w")) {
         repo = GitRepository.repoFind();
       }
 
-      String hash = GitObjectUtil.objectWrite(repo, gitObject);
-
-      System.out.println(hash);
-
+      PrintWriter out =
+          new PrintWriter(
+              new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      int workers = Runtime.getRuntime().availableProcessors();
+      try (HashObjectPipeline pipeline =
+          new HashObjectPipeline(repo, type, workers, (path, id) -> out.println(id))) {
+        for (String path : remainingArgs) {
+          pipeline.add(Paths.get(path));
+        }
+        if (stdinPaths) {
+          BufferedReader in =
+              new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+          String line;
+          while ((line = in.readLine()) != null) {
+            pipeline.add(Paths.get(line));
+          }
+        }
+        pipeline.finish();
+      } finally {
+        out.flush();
+      }
     } catch (ParseException e) {
       System.err.println("Error parsing arguments: " + e.getMessage());
-      helper.printHelp("wyag hash-object [-w] [-t TYPE] FILE", options);
+      helper.printHelp(usage, options);
       System.exit(1);
     } catch (Exception e) {
       System.err.println("Error: " + e.getMessage());
-      e.printStackTrace();
       System.exit(1);
     }
   }
 
   private static void cmdCheckout(String[] commandArgs) {
     Options options = new Options();
+    options.addOption(
+        Option.builder("j")
+            .longOpt("jobs")
+            .hasArg()
+            .desc("Number of threads writing files, 0 for one per core")
+            .build());
 
     CommandLineParser parser = new DefaultParser();
     HelpFormatter helper = new HelpFormatter();
@@ -239,7 +822,7 @@ public class LibWyag {
 
       if (remainingArgs.length < 2) {
         System.err.println("Error: missing required arguments");
-        helper.printHelp("wyag checkout <commit-or-tree> <path>", options);
+        helper.printHelp("wyag checkout [-j N] <commit-or-tree> <path>", options);
         System.exit(1);
       }
 
@@ -248,10 +831,15 @@ public class LibWyag {
 
       GitRepository repo = GitRepository.repoFind();
 
-      GitCheckout.checkout(repo, commitOrTree, path);
-    } catch (ParseException e) {
+      if (cmd.hasOption("j")) {
+        int workers = Integer.parseInt(cmd.getOptionValue("j"));
+        GitCheckout.checkout(repo, commitOrTree, path, workers);
+      } else {
+        GitCheckout.checkout(repo, commitOrTree, path);
+      }
+    } catch (ParseException | NumberFormatException e) {
       System.err.println("Error parsing arguments: " + e.getMessage());
-      helper.printHelp("wyag checkout <commit-or-tree> <path>", options);
+      helper.printHelp("wyag checkout [-j N] <commit-or-tree> <path>", options);
       System.exit(1);
     } catch (Exception e) {
       System.err.println("Error: " + e.getMessage());
@@ -261,60 +849,140 @@ public class LibWyag {
   }
 
   private static void cmdCheckIgnore(String[] commandArgs) {
-    // TODO Auto-generated method stub
-    throw new UnsupportedOperationException("Unimplemented method 'cmdCheckIgnore'");
+    Options options = new Options();
+    options.addOption(
+        Option.builder("v").longOpt("verbose").desc("Show the matching pattern").build());
+    options.addOption(
+        Option.builder("n")
+            .longOpt("non-matching")
+            .desc("With -v, also show paths that match no pattern")
+            .build());
+    options.addOption(
+        Option.builder().longOpt("stdin").desc("Read the paths from standard input").build());
+    options.addOption(
+        Option.builder().longOpt("no-index").desc("Check tracked paths as well").build());
+
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+    String usage = "wyag check-ignore [-v] [-n] [--no-index] (--stdin | PATH...)";
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      boolean stdin = cmd.hasOption("stdin");
+      if (stdin == (cmd.getArgs().length > 0)) {
+        helper.printHelp(usage, options);
+        System.exit(128);
+      }
+      if (cmd.hasOption("n") && !cmd.hasOption("v")) {
+        System.err.println("Error: --non-matching is only valid with --verbose");
+        System.exit(128);
+      }
+
+      GitRepository repo = GitRepository.repoFind();
+      PrintWriter out =
+          new PrintWriter(
+              new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      boolean matched;
+      try {
+        if (stdin) {
+          BufferedReader in =
+              new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+          matched =
+              CommandCheckIgnore.checkIgnore(
+                  repo, in, cmd.hasOption("v"), cmd.hasOption("n"), cmd.hasOption("no-index"), out);
+        } else {
+          matched =
+              CommandCheckIgnore.checkIgnore(
+                  repo,
+                  List.of(cmd.getArgs()),
+                  cmd.hasOption("v"),
+                  cmd.hasOption("n"),
+                  cmd.hasOption("no-index"),
+                  out);
+        }
+      } finally {
+        out.flush();
+      }
+      System.exit(matched ? 0 : 1);
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp(usage, options);
+      System.exit(128);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(128);
+    }
   }
 
   private static void cmdCatFile(String[] commandArgs) {
     Options options = new Options();
-    // add the type option
+    options.addOption(Option.builder("t").desc("Show the object type").build());
+    options.addOption(Option.builder("s").desc("Show the object size").build());
     options.addOption(
-        Option.builder("t")
-            .longOpt("type")
-            .hasArgs()
-            .desc("Specify the object type (blob, commit, tag, tree)")
-            .required(true)
+        Option.builder()
+            .longOpt("batch")
+            .desc("Print type, size and contents of each object named on standard input")
+            .build());
+    options.addOption(
+        Option.builder()
+            .longOpt("batch-check")
+            .desc("Print type and size of each object named on standard input")
             .build());
 
     CommandLineParser parser = new DefaultParser();
     HelpFormatter helper = new HelpFormatter();
+    String usage = "wyag cat-file (TYPE | -t | -s) OBJECT | --batch | --batch-check";
 
     try {
       CommandLine cmd = parser.parse(options, commandArgs);
-      // Get the input behind the -type option
+
+      if (cmd.hasOption("batch") || cmd.hasOption("batch-check")) {
+        GitRepository repo = GitRepository.repoFind();
+        // a plain buffered stream on stdout, skipping PrintStream's per-write locking
+        OutputStream out =
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 65536);
+        CommandCatFile.batch(repo, System.in, out, cmd.hasOption("batch"));
+        return;
+      }
+
       String[] remainingArgs = cmd.getArgs();
-      // check if user enter any thing
-      if (remainingArgs.length == 0) {
-        System.err.println("Error: no object type specified");
-        helper.printHelp("wyag cat-file -t TYPE OBJECT", options);
+      boolean headerOnly = cmd.hasOption("t") || cmd.hasOption("s");
+      // either a flag and the object, or the expected type and the object
+      if (remainingArgs.length != (headerOnly ? 1 : 2)) {
+        System.err.println("Error: expected an object name and either -t, -s or a type");
+        helper.printHelp(usage, options);
         System.exit(1);
       }
-      // get the value of the option
-      String type = cmd.getOptionValue("t");
-      // get the objectId which is also the hashed value
-      String objectId = remainingArgs[0];
+      String objectId = remainingArgs[remainingArgs.length - 1];
 
       GitRepository repo = GitRepository.repoFind();
 
-      GitObject object = GitObjectUtil.objectRead(repo, objectId);
-      if (object == null) {
-        System.err.println("Error object not found: " + objectId);
-        System.exit(1);
-      }
-
-      if (!object.getType().equals(type)) {
-        System.err.println("Error: object " + objectId + " is not of the same type " + type);
-        System.exit(1);
+      if (headerOnly) {
+        ObjectId sha = GitObjectUtil.objectFind(repo, objectId, null);
+        ObjectInfo info = sha == null ? null : GitObjectUtil.objectInfo(repo, sha);
+        if (info == null) {
+          System.err.println("Error object not found: " + objectId);
+          System.exit(1);
+        }
+        System.out.println(cmd.hasOption("t") ? info.type : String.valueOf(info.size));
+        return;
       }
 
-      if (object instanceof GitBlob) {
-        System.out.write(((GitBlob) object).getBlobData());
-      } else {
-        System.out.write(object.serialize());
+      // tags and commits are followed until an object of the type asked for turns up
+      String type = remainingArgs[0];
+      ObjectId sha = GitObjectUtil.objectFind(repo, objectId, type);
+      try (ObjectStream object = sha == null ? null : GitObjectUtil.objectOpen(repo, sha)) {
+        if (object == null) {
+          System.err.println("Error: object " + objectId + " is not of the same type " + type);
+          System.exit(1);
+        }
+
+        object.transferTo(System.out);
+        System.out.flush();
       }
     } catch (ParseException e) {
       System.err.println("Error parsing arguments: " + e.getMessage());
-      helper.printHelp("wyag cat-file -t TYPE OBJECT", options);
+      helper.printHelp(usage, options);
       System.exit(1);
     } catch (Exception e) {
       System.err.println("Error: " + e.getMessage());
@@ -324,60 +992,126 @@ public class LibWyag {
   }
 
   private static void cmdAdd(String[] commandArgs) {
-    // TODO Auto-generated method stub
-    throw new UnsupportedOperationException("Unimplemented method 'cmdAdd'");
-  }
+    Options options = new Options();
+    options.addOption(
+        Option.builder("f").longOpt("force").desc("Allow adding ignored files").build());
 
-  private static void logGraphviz(GitRepository repo, String sha, Set<String> seen) {
-    if (seen.contains(sha)) {
-      return;
-    }
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
 
-    seen.add(sha);
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      if (cmd.getArgs().length == 0) {
+        System.err.println("Nothing specified, nothing added.");
+        helper.printHelp("wyag add [-f] PATH...", options);
+        System.exit(1);
+      }
 
-    GitObject object = GitObjectUtil.objectRead(repo, sha);
-    if (!(object instanceof GitCommit)) {
-      throw new RuntimeException("Error: " + sha + " is not a commit!!");
+      GitRepository repo = GitRepository.repoFind();
+      CommandAdd.add(repo, List.of(cmd.getArgs()), cmd.hasOption("f"));
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp("wyag add [-f] PATH...", options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
     }
+  }
+
+  private static void cmdRm(String[] commandArgs) {
+    Options options = new Options();
+    options.addOption(
+        Option.builder()
+            .longOpt("cached")
+            .desc("Only remove from the index, keep the files")
+            .build());
+    options.addOption(
+        Option.builder("r").desc("Allow recursive removal when a directory is given").build());
+    options.addOption(
+        Option.builder("f")
+            .longOpt("force")
+            .desc("Remove files even if they have local modifications")
+            .build());
 
-    GitCommit commit = (GitCommit) object;
-    String message = commit.getMessage().trim();
+    CommandLineParser parser = new DefaultParser();
+    HelpFormatter helper = new HelpFormatter();
+    String usage = "wyag rm [--cached] [-r] [-f] PATH...";
+
+    try {
+      CommandLine cmd = parser.parse(options, commandArgs);
+      if (cmd.getArgs().length == 0) {
+        helper.printHelp(usage, options);
+        System.exit(1);
+      }
 
-    if (message.contains("\n")) {
-      message = message.substring(0, message.indexOf("\n"));
+      GitRepository repo = GitRepository.repoFind();
+      PrintWriter out =
+          new PrintWriter(
+              new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      try {
+        CommandRm.rm(
+            repo,
+            List.of(cmd.getArgs()),
+            cmd.hasOption("cached"),
+            cmd.hasOption("r"),
+            cmd.hasOption("f"),
+            out);
+      } finally {
+        out.flush();
+      }
+    } catch (ParseException e) {
+      System.err.println("Error parsing arguments: " + e.getMessage());
+      helper.printHelp(usage, options);
+      System.exit(1);
+    } catch (Exception e) {
+      System.err.println("Error: " + e.getMessage());
+      System.exit(1);
     }
+  }
+
+  private static void logGraphviz(GitRepository repo, RevWalk walk, PrintWriter out) {
+    // Start the Graphviz output
+    out.println("digraph wyaglog{");
+    out.println(" node[shape=rect]");
 
-    message = message.replace("\\", "\\\\").replace("\"", "\\\"");
+    while (walk.hasNext()) {
+      CommitInfo commit = walk.next();
 
-    System.out.println(" c_" + sha + "[label=\"" + sha.substring(0, 7) + ": " + message + "\"]");
+      // only the label needs the full commit, the walk itself ran on commit info
+      GitObject object = GitObjectUtil.objectRead(repo, commit.id);
+      String message = ((GitCommit) object).getMessage().trim();
 
-    if (!commit.getType().equals("commit")) {
-      throw new RuntimeException("Error expected commit, got " + commit.getType());
-    }
+      if (message.contains("\n")) {
+        message = message.substring(0, message.indexOf("\n"));
+      }
 
-    List<String> parents = commit.getParent();
+      message = message.replace("\\", "\\\\").replace("\"", "\\\"");
 
-    if (parents.isEmpty()) {
-      return;
-    }
+      String abbrev = GitObjectUtil.abbreviate(repo, commit.id, 7);
+      out.println(" c_" + commit.id + "[label=\"" + abbrev + ": " + message + "\"]");
 
-    for (String parent : parents) {
-      System.out.println(" c_" + sha + " -> c_" + parent + ";");
-      logGraphviz(repo, parent, seen);
+      for (ObjectId parent : commit.parents) {
+        out.println(" c_" + commit.id + " -> c_" + parent + ";");
+      }
     }
-  }
 
-  private static void lsTree(GitRepository repo, String treeish, boolean recursive) {
-    lsTree(repo, treeish, recursive, "");
+    out.println("}");
   }
 
-  private static void lsTree(GitRepository repo, String treeish, boolean recursive, String prefix) {
+  private static void lsTree(GitRepository repo, String treeish, boolean recursive) {
     // Find the tree object
-    String sha = GitObjectUtil.objectFind(repo, treeish, "tree");
+    ObjectId sha = GitObjectUtil.objectFind(repo, treeish, "tree");
+    if (sha == null) {
+      throw new RuntimeException("Error not a tree object: " + treeish);
+    }
+    lsTree(repo, sha, recursive, "");
+  }
 
+  private static void lsTree(GitRepository repo, ObjectId sha, boolean recursive, String prefix) {
     GitObject obj = GitObjectUtil.objectRead(repo, sha);
     if (!(obj instanceof GitTree)) {
-      throw new RuntimeException("Error not a tree object: " + treeish);
+      throw new RuntimeException("Error not a tree object: " + sha);
     }
     GitTree treeObject = (GitTree) obj;
 
@@ -0,0 +1,234 @@
+package com.GitRemake;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An immutable 20-byte SHA-1 object name held as five ints. Compared to passing 40-character hex
+ * Strings around this is a fifth of the heap, equals is five int compares, and hashing is free
+ * because the bytes of a SHA-1 are already uniformly distributed. Hex is only produced when an id
+ * is printed.
+ */
+public final class ObjectId implements Comparable<ObjectId> {
+  public static final int RAW_LENGTH = 20;
+  public static final int HEX_LENGTH = 40;
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final ObjectId ZERO = new ObjectId(0, 0, 0, 0, 0);
+
+  private final int w1;
+  private final int w2;
+  private final int w3;
+  private final int w4;
+  private final int w5;
+
+  private ObjectId(int w1, int w2, int w3, int w4, int w5) {
+    this.w1 = w1;
+    this.w2 = w2;
+    this.w3 = w3;
+    this.w4 = w4;
+    this.w5 = w5;
+  }
+
+  // the all-zero id git uses for "no object", e.g. the old value of a new ref
+  public static ObjectId zeroId() {
+    return ZERO;
+  }
+
+  public static ObjectId fromRaw(byte[] raw) {
+    return fromRaw(raw, 0);
+  }
+
+  public static ObjectId fromRaw(byte[] raw, int offset) {
+    return new ObjectId(
+        readInt(raw, offset),
+        readInt(raw, offset + 4),
+        readInt(raw, offset + 8),
+        readInt(raw, offset + 12),
+        readInt(raw, offset + 16));
+  }
+
+  // reads with absolute gets so a shared mapping's position is never touched
+  public static ObjectId fromRaw(ByteBuffer buffer, int offset) {
+    return new ObjectId(
+        buffer.getInt(offset),
+        buffer.getInt(offset + 4),
+        buffer.getInt(offset + 8),
+        buffer.getInt(offset + 12),
+        buffer.getInt(offset + 16));
+  }
+
+  public static ObjectId fromString(String hex) {
+    if (hex.length() != HEX_LENGTH) {
+      throw new IllegalArgumentException("Invalid object id: " + hex);
+    }
+    int[] words = new int[5];
+    for (int i = 0; i < HEX_LENGTH; i++) {
+      words[i / 8] = (words[i / 8] << 4) | nibble(hex.charAt(i), hex);
+    }
+    return new ObjectId(words[0], words[1], words[2], words[3], words[4]);
+  }
+
+  // parses 40 ASCII hex digits straight out of an object body, e.g. a commit's tree line
+  public static ObjectId fromHex(byte[] ascii, int offset) {
+    if (offset + HEX_LENGTH > ascii.length) {
+      throw new IllegalArgumentException("Truncated object id at offset " + offset);
+    }
+    int[] words = new int[5];
+    for (int i = 0; i < HEX_LENGTH; i++) {
+      words[i / 8] = (words[i / 8] << 4) | nibble((char) ascii[offset + i], null);
+    }
+    return new ObjectId(words[0], words[1], words[2], words[3], words[4]);
+  }
+
+  public static boolean isId(String name) {
+    if (name.length() != HEX_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < HEX_LENGTH; i++) {
+      char c = name.charAt(i);
+      if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int nibble(char c, String source) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    } else if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    } else if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    throw new IllegalArgumentException(
+        "Invalid object id" + (source != null ? ": " + source : ", bad hex digit " + c));
+  }
+
+  private static int readInt(byte[] raw, int offset) {
+    return ((raw[offset] & 0xff) << 24)
+        | ((raw[offset + 1] & 0xff) << 16)
+        | ((raw[offset + 2] & 0xff) << 8)
+        | (raw[offset + 3] & 0xff);
+  }
+
+  private static void writeInt(byte[] raw, int offset, int value) {
+    raw[offset] = (byte) (value >>> 24);
+    raw[offset + 1] = (byte) (value >>> 16);
+    raw[offset + 2] = (byte) (value >>> 8);
+    raw[offset + 3] = (byte) value;
+  }
+
+  private int word(int index) {
+    switch (index) {
+      case 0:
+        return w1;
+      case 1:
+        return w2;
+      case 2:
+        return w3;
+      case 3:
+        return w4;
+      default:
+        return w5;
+    }
+  }
+
+  public int getFirstByte() {
+    return w1 >>> 24;
+  }
+
+  // the value of the hex digit at the given position, 0 to 15
+  public int getNibble(int index) {
+    return (word(index / 8) >>> (28 - 4 * (index % 8))) & 0xf;
+  }
+
+  public void copyRawTo(byte[] out, int offset) {
+    writeInt(out, offset, w1);
+    writeInt(out, offset + 4, w2);
+    writeInt(out, offset + 8, w3);
+    writeInt(out, offset + 12, w4);
+    writeInt(out, offset + 16, w5);
+  }
+
+  public byte[] toRaw() {
+    byte[] raw = new byte[RAW_LENGTH];
+    copyRawTo(raw, 0);
+    return raw;
+  }
+
+  // compares against the raw id stored at an absolute position of a buffer, e.g. a pack index
+  public int compareTo(ByteBuffer buffer, int offset) {
+    for (int i = 0; i < 5; i++) {
+      int cmp = Integer.compareUnsigned(word(i), buffer.getInt(offset + i * 4));
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return 0;
+  }
+
+  // true if the hex name of this id starts with the given (lowercase) hex prefix
+  public boolean startsWith(String prefix) {
+    for (int i = 0; i < prefix.length(); i++) {
+      if (HEX[getNibble(i)] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // writes the 40 hex digits into a caller supplied buffer
+  public void copyTo(char[] out, int offset) {
+    for (int i = 0; i < 5; i++) {
+      int w = word(i);
+      for (int j = 0; j < 8; j++) {
+        out[offset + i * 8 + j] = HEX[(w >>> (28 - 4 * j)) & 0xf];
+      }
+    }
+  }
+
+  public String name() {
+    char[] hex = new char[HEX_LENGTH];
+    copyTo(hex, 0);
+    return new String(hex);
+  }
+
+  public String abbreviate(int length) {
+    return name().substring(0, Math.min(length, HEX_LENGTH));
+  }
+
+  @Override
+  public int compareTo(ObjectId other) {
+    for (int i = 0; i < 5; i++) {
+      int cmp = Integer.compareUnsigned(word(i), other.word(i));
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ObjectId)) {
+      return false;
+    }
+    ObjectId other = (ObjectId) o;
+    return w1 == other.w1 && w2 == other.w2 && w3 == other.w3 && w4 == other.w4 && w5 == other.w5;
+  }
+
+  @Override
+  public int hashCode() {
+    // SHA-1 output is already uniformly distributed so any word is a good hash
+    return w2;
+  }
+
+  @Override
+  public String toString() {
+    return name();
+  }
+}
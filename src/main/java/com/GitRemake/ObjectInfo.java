@@ -1,11 +1,12 @@
 package com.GitRemake;
 
+// the type and size of an object, read from its header without inflating the content
 public class ObjectInfo {
   public final String type;
-  public final byte[] content;
+  public final long size;
 
-  public ObjectInfo(String type, byte[] content) {
+  public ObjectInfo(String type, long size) {
     this.type = type;
-    this.content = content;
+    this.size = size;
   }
 }
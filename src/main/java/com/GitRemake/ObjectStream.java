@@ -0,0 +1,81 @@
+package com.GitRemake;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The body of a Git object exposed as a stream. The "<type> <size>\0" header has already been
+ * consumed, so callers know the type and exact size before reading a single content byte and can
+ * either stream the content somewhere (checkout, cat-file) or read it into a buffer sized from the
+ * header.
+ */
+public class ObjectStream extends InputStream {
+  private final String type;
+  private final long size;
+  private final InputStream in;
+  private long remaining;
+
+  public ObjectStream(String type, long size, InputStream in) {
+    this.type = type;
+    this.size = size;
+    this.in = in;
+    this.remaining = size;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Reads the whole body into an array allocated once from the header size and checks that the
+   * stored data matches the size it claims.
+   */
+  public byte[] readContent() throws IOException {
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IOException("Object too large to load in memory: " + size + " bytes");
+    }
+    byte[] content = new byte[(int) size];
+    int read = in.readNBytes(content, 0, content.length);
+    remaining -= read;
+
+    if (read != size || in.read() != -1) {
+      throw new IllegalStateException("Object size mismatch: Expected " + size + " bytes");
+    }
+    return content;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (remaining <= 0) {
+      return -1;
+    }
+    int b = in.read();
+    if (b == -1) {
+      throw new IOException("Object truncated: " + remaining + " bytes missing");
+    }
+    remaining--;
+    return b;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (remaining <= 0) {
+      return -1;
+    }
+    int count = in.read(buffer, offset, (int) Math.min(length, remaining));
+    if (count == -1) {
+      throw new IOException("Object truncated: " + remaining + " bytes missing");
+    }
+    remaining -= count;
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
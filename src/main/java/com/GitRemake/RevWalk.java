@@ -0,0 +1,176 @@
+package com.GitRemake;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Walks history from one or more start commits, newest first. Pending commits sit in a priority
+ * queue keyed on commit time, so each step pops the newest one and queues its parents; nothing
+ * recurses, and a walk with a limit only loads the commits it returns plus their parents.
+ *
+ * <p>Commit data comes from {@link GitObjectUtil#commitInfo}, which uses the commit-graph when
+ * there is one. Topological order needs the whole range first, so that mode walks everything up
+ * front and then hands commits out so that no parent comes before any of its children.
+ */
+public class RevWalk implements Iterator<CommitInfo> {
+  private final GitRepository repo;
+  private final PriorityQueue<CommitInfo> queue =
+      new PriorityQueue<>(Comparator.comparingLong((CommitInfo c) -> c.commitTime).reversed());
+  private final Set<ObjectId> seen = new HashSet<>();
+
+  private int limit = -1;
+  private long since = Long.MIN_VALUE;
+  private long until = Long.MAX_VALUE;
+  private boolean topoOrder;
+
+  private Deque<CommitInfo> sorted;
+  private CommitInfo next;
+  private int returned;
+
+  public RevWalk(GitRepository repo) {
+    this.repo = repo;
+  }
+
+  public void markStart(ObjectId id) {
+    if (seen.add(id)) {
+      queue.add(load(id));
+    }
+  }
+
+  // stop after this many commits, a negative limit means no limit
+  public void setLimit(int limit) {
+    this.limit = limit;
+  }
+
+  // only commits made at or after this time, in seconds since the epoch
+  public void setSince(long since) {
+    this.since = since;
+  }
+
+  // only commits made at or before this time, in seconds since the epoch
+  public void setUntil(long until) {
+    this.until = until;
+  }
+
+  public void setTopoOrder(boolean topoOrder) {
+    this.topoOrder = topoOrder;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null && (limit < 0 || returned < limit)) {
+      next = topoOrder ? nextByTopo() : nextByDate();
+    }
+    return next != null;
+  }
+
+  @Override
+  public CommitInfo next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    CommitInfo result = next;
+    next = null;
+    returned++;
+    return result;
+  }
+
+  private CommitInfo nextByDate() {
+    while (!queue.isEmpty()) {
+      CommitInfo commit = queue.poll();
+      // the queue hands out the newest commit first, so once one is too old the rest are as well
+      if (commit.commitTime < since) {
+        queue.clear();
+        return null;
+      }
+      for (ObjectId parent : commit.parents) {
+        if (seen.add(parent)) {
+          queue.add(load(parent));
+        }
+      }
+      if (commit.commitTime <= until) {
+        return commit;
+      }
+    }
+    return null;
+  }
+
+  private CommitInfo nextByTopo() {
+    if (sorted == null) {
+      sorted = topoSort();
+    }
+    return sorted.poll();
+  }
+
+  /**
+   * Orders the whole range so that every commit comes before its parents. Children are counted
+   * first; a commit is ready once all of its children were emitted. Ready commits go on a stack so
+   * a line of history is followed to its end before switching to another, like git's topo order.
+   */
+  private Deque<CommitInfo> topoSort() {
+    List<CommitInfo> commits = new ArrayList<>();
+    for (CommitInfo commit = nextByDate(); commit != null; commit = nextByDate()) {
+      commits.add(commit);
+    }
+
+    Map<ObjectId, CommitInfo> byId = new HashMap<>();
+    for (CommitInfo commit : commits) {
+      byId.put(commit.id, commit);
+    }
+    Map<ObjectId, Integer> children = new HashMap<>();
+    for (CommitInfo commit : commits) {
+      for (ObjectId parent : commit.parents) {
+        if (byId.containsKey(parent)) {
+          children.merge(parent, 1, Integer::sum);
+        }
+      }
+    }
+
+    // tips newest first, pushed in reverse so the newest is on top
+    Deque<CommitInfo> ready = new ArrayDeque<>();
+    for (int i = commits.size() - 1; i >= 0; i--) {
+      if (!children.containsKey(commits.get(i).id)) {
+        ready.push(commits.get(i));
+      }
+    }
+
+    Deque<CommitInfo> result = new ArrayDeque<>(commits.size());
+    while (!ready.isEmpty()) {
+      CommitInfo commit = ready.pop();
+      result.add(commit);
+      // the first parent ends up on top so its line continues next
+      for (int i = commit.parents.size() - 1; i >= 0; i--) {
+        ObjectId parent = commit.parents.get(i);
+        Integer remaining = children.get(parent);
+        if (remaining == null) {
+          continue;
+        }
+        if (remaining == 1) {
+          children.remove(parent);
+          ready.push(byId.get(parent));
+        } else {
+          children.put(parent, remaining - 1);
+        }
+      }
+    }
+    return result;
+  }
+
+  private CommitInfo load(ObjectId id) {
+    CommitInfo info = GitObjectUtil.commitInfo(repo, id);
+    if (info == null) {
+      throw new IllegalArgumentException("Error: commit not found: " + id);
+    }
+    return info;
+  }
+}
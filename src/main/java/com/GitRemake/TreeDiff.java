@@ -0,0 +1,274 @@
+package com.GitRemake;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The differences between two trees, in path order. Both trees keep their entries sorted, so each
+ * level is a merge-join of the two entry lists: an entry on one side only is an add or a delete,
+ * and a name on both sides with the same id and mode is skipped without reading anything below
+ * it. Only subtrees whose ids differ are read and joined in turn, so a commit that touches three
+ * files costs the trees on their paths, however large the rest of the tree is.
+ *
+ * <p>Changes are handed out one at a time as the walk finds them, from a stack of the trees being
+ * joined rather than by recursion. By default the walk goes into subtrees and reports files only,
+ * like git diff-tree -r; {@link #setRecursive} with false reports changed subtrees as one entry.
+ *
+ * <pre>
+ *   TreeDiff diff = new TreeDiff(repo, oldTree, newTree);
+ *   while (diff.hasNext()) {
+ *     TreeDiff.Change change = diff.next();
+ *   }
+ * </pre>
+ */
+public class TreeDiff implements Iterator<TreeDiff.Change> {
+  public enum ChangeType {
+    ADD('A'),
+    DELETE('D'),
+    MODIFY('M'),
+    // same path, different kind of entry, such as a file that became a symbolic link
+    TYPE_CHANGE('T');
+
+    private final char code;
+
+    ChangeType(char code) {
+      this.code = code;
+    }
+
+    // the letter git uses for it in --name-status and raw output
+    public char getCode() {
+      return code;
+    }
+  }
+
+  // one changed path; the missing side of an add or delete has mode 0 and the zero id
+  public static class Change {
+    private final ChangeType type;
+    private final String path;
+    private final int oldMode;
+    private final int newMode;
+    private final ObjectId oldId;
+    private final ObjectId newId;
+
+    Change(ChangeType type, String path, int oldMode, int newMode, ObjectId oldId, ObjectId newId) {
+      this.type = type;
+      this.path = path;
+      this.oldMode = oldMode;
+      this.newMode = newMode;
+      this.oldId = oldId;
+      this.newId = newId;
+    }
+
+    public ChangeType getType() {
+      return type;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public int getOldMode() {
+      return oldMode;
+    }
+
+    public int getNewMode() {
+      return newMode;
+    }
+
+    public ObjectId getOldId() {
+      return oldId;
+    }
+
+    public ObjectId getNewId() {
+      return newId;
+    }
+  }
+
+  // the file type bits of a mode, and the type of a tree
+  private static final int TYPE_MASK = 0170000;
+  private static final int TREE = 0040000;
+
+  // two trees being joined at one path, and how far the join has got in each
+  private static class Frame {
+    final String prefix;
+    final List<GitTreeEntry> oldEntries;
+    final List<GitTreeEntry> newEntries;
+    int oldPosition;
+    int newPosition;
+
+    Frame(String prefix, List<GitTreeEntry> oldEntries, List<GitTreeEntry> newEntries) {
+      this.prefix = prefix;
+      this.oldEntries = oldEntries;
+      this.newEntries = newEntries;
+    }
+  }
+
+  private final GitRepository repo;
+  private final Deque<Frame> stack = new ArrayDeque<>();
+  private boolean recursive = true;
+  private Change next;
+
+  /**
+   * @param oldTree the tree before, or null for an empty tree
+   * @param newTree the tree after, or null for an empty tree
+   */
+  public TreeDiff(GitRepository repo, ObjectId oldTree, ObjectId newTree) {
+    this.repo = repo;
+    if (oldTree == null || !oldTree.equals(newTree)) {
+      stack.push(new Frame("", entries(oldTree), entries(newTree)));
+    }
+  }
+
+  // whether to go into changed subtrees, or report them as they are
+  public TreeDiff setRecursive(boolean recursive) {
+    this.recursive = recursive;
+    return this;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      next = findNext();
+    }
+    return next != null;
+  }
+
+  @Override
+  public Change next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Change change = next;
+    next = null;
+    return change;
+  }
+
+  // advances the join on top of the stack until it has a change to report
+  private Change findNext() {
+    while (!stack.isEmpty()) {
+      Frame frame = stack.peek();
+      boolean oldLeft = frame.oldPosition < frame.oldEntries.size();
+      boolean newLeft = frame.newPosition < frame.newEntries.size();
+      if (!oldLeft && !newLeft) {
+        stack.pop();
+        continue;
+      }
+      GitTreeEntry oldEntry = oldLeft ? frame.oldEntries.get(frame.oldPosition) : null;
+      GitTreeEntry newEntry = newLeft ? frame.newEntries.get(frame.newPosition) : null;
+
+      int cmp;
+      if (oldEntry == null) {
+        cmp = 1;
+      } else if (newEntry == null) {
+        cmp = -1;
+      } else {
+        cmp = compareEntries(oldEntry, newEntry);
+      }
+
+      if (cmp < 0) {
+        frame.oldPosition++;
+        Change change = oneSided(frame.prefix, oldEntry, true);
+        if (change != null) {
+          return change;
+        }
+      } else if (cmp > 0) {
+        frame.newPosition++;
+        Change change = oneSided(frame.prefix, newEntry, false);
+        if (change != null) {
+          return change;
+        }
+      } else {
+        frame.oldPosition++;
+        frame.newPosition++;
+        // an unchanged subtree is never read
+        if (oldEntry.getSha().equals(newEntry.getSha())
+            && Arrays.equals(oldEntry.getMode(), newEntry.getMode())) {
+          continue;
+        }
+        Change change = bothSides(frame.prefix, oldEntry, newEntry);
+        if (change != null) {
+          return change;
+        }
+      }
+    }
+    return null;
+  }
+
+  // an entry only one tree has; a subtree is either reported or walked for its files
+  private Change oneSided(String prefix, GitTreeEntry entry, boolean deleted) {
+    String path = prefix + entry.getPath();
+    int mode = mode(entry);
+    if (recursive && (mode & TYPE_MASK) == TREE) {
+      List<GitTreeEntry> entries = entries(entry.getSha());
+      List<GitTreeEntry> none = List.of();
+      stack.push(new Frame(path + "/", deleted ? entries : none, deleted ? none : entries));
+      return null;
+    }
+    ObjectId zero = ObjectId.zeroId();
+    return deleted
+        ? new Change(ChangeType.DELETE, path, mode, 0, entry.getSha(), zero)
+        : new Change(ChangeType.ADD, path, 0, mode, zero, entry.getSha());
+  }
+
+  // a name both trees have, with a different id or mode
+  private Change bothSides(String prefix, GitTreeEntry oldEntry, GitTreeEntry newEntry) {
+    String path = prefix + oldEntry.getPath();
+    int oldMode = mode(oldEntry);
+    int newMode = mode(newEntry);
+    // names sort with a tree's as if it ended in '/', so a match is two trees or two non-trees
+    if (recursive && (oldMode & TYPE_MASK) == TREE) {
+      stack.push(
+          new Frame(path + "/", entries(oldEntry.getSha()), entries(newEntry.getSha())));
+      return null;
+    }
+    ChangeType type =
+        (oldMode & TYPE_MASK) == (newMode & TYPE_MASK)
+            ? ChangeType.MODIFY
+            : ChangeType.TYPE_CHANGE;
+    return new Change(type, path, oldMode, newMode, oldEntry.getSha(), newEntry.getSha());
+  }
+
+  private List<GitTreeEntry> entries(ObjectId tree) {
+    if (tree == null) {
+      return List.of();
+    }
+    GitObject object = GitObjectUtil.objectRead(repo, tree);
+    if (!(object instanceof GitTree)) {
+      throw new IllegalArgumentException("Not a tree: " + tree.name());
+    }
+    return ((GitTree) object).getEntries();
+  }
+
+  /**
+   * The order of entries within a tree: by name, with the name of a tree compared as if it ended
+   * in '/', so "a.txt" comes before the tree "a" and that before "a0".
+   */
+  static int compareEntries(GitTreeEntry a, GitTreeEntry b) {
+    String x = a.getPath();
+    String y = b.getPath();
+    int length = Math.min(x.length(), y.length());
+    for (int i = 0; i < length; i++) {
+      char cx = x.charAt(i);
+      char cy = y.charAt(i);
+      if (cx != cy) {
+        return GitIndex.compareChars(cx, cy);
+      }
+    }
+    int endX = x.length() > length ? x.charAt(length) : a.isTree() ? '/' : 0;
+    int endY = y.length() > length ? y.charAt(length) : b.isTree() ? '/' : 0;
+    return endX - endY;
+  }
+
+  // the octal mode of an entry as a number
+  private static int mode(GitTreeEntry entry) {
+    int mode = 0;
+    for (byte digit : entry.getMode()) {
+      mode = mode * 8 + (digit - '0');
+    }
+    return mode;
+  }
+}
@@ -0,0 +1,108 @@
+package com.GitRemake;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitCommitGraphTest {
+  @TempDir Path dir;
+  private GitRepository repo;
+  private ObjectId tree;
+
+  @BeforeEach
+  void setUp() {
+    GitRepository.repoCreate(dir.toString());
+    repo = new GitRepository(dir.toString(), false);
+    tree = GitObjectUtil.objectWrite(repo, TestObjects.tree());
+  }
+
+  @Test
+  void parentsGenerationsAndTimesReadBack() throws IOException {
+    // root - a - merge - octopus
+    //      \ b /        /
+    //       \ c -------/
+    ObjectId root = commit(List.of(), 100);
+    ObjectId a = commit(List.of(root), 200);
+    ObjectId b = commit(List.of(root), 300);
+    ObjectId c = commit(List.of(root), 400);
+    ObjectId merge = commit(List.of(a, b), 500);
+    // past 2^32 seconds, which needs the two high bits of the time
+    long late = (1L << 32) + 600;
+    ObjectId octopus = commit(List.of(merge, c, b, a), late);
+    GitRefUtil.refCreate(repo, "heads/master", octopus);
+
+    assertEquals(6, GitCommitGraph.write(repo));
+
+    GitCommitGraph graph = new GitCommitGraph(GitCommitGraph.graphPath(repo));
+    assertEquals(6, graph.getCommitCount());
+    for (int i = 1; i < graph.getCommitCount(); i++) {
+      assertTrue(graph.getId(i - 1).compareTo(graph.getId(i)) < 0);
+    }
+
+    assertInfo(graph.lookup(root), tree, List.of(), 100, 1);
+    assertInfo(graph.lookup(a), tree, List.of(root), 200, 2);
+    assertInfo(graph.lookup(merge), tree, List.of(a, b), 500, 3);
+    assertInfo(graph.lookup(octopus), tree, List.of(merge, c, b, a), late, 4);
+    assertNull(graph.lookup(ObjectId.zeroId()));
+
+    // with the graph in place, commitInfo answers from it
+    CommitInfo info = GitObjectUtil.commitInfo(repo, octopus);
+    assertEquals(4, info.generation);
+  }
+
+  @Test
+  void rewriteCoversNewCommits() throws IOException {
+    ObjectId first = commit(List.of(), 100);
+    GitRefUtil.refCreate(repo, "heads/master", first);
+    assertEquals(1, GitCommitGraph.write(repo));
+
+    ObjectId second = commit(List.of(first), 200);
+    GitRefUtil.refCreate(repo, "heads/master", second);
+    assertEquals(2, GitCommitGraph.write(repo));
+
+    GitCommitGraph graph = new GitCommitGraph(GitCommitGraph.graphPath(repo));
+    assertInfo(graph.lookup(second), tree, List.of(first), 200, 2);
+  }
+
+  @Test
+  void missingParentSkipsTheWriteAndKeepsTheOldGraph() throws IOException {
+    ObjectId first = commit(List.of(), 100);
+    GitRefUtil.refCreate(repo, "heads/master", first);
+    assertEquals(1, GitCommitGraph.write(repo));
+    byte[] before = Files.readAllBytes(GitCommitGraph.graphPath(repo));
+
+    // the parent of a shallow clone's oldest commit is not in the repository
+    ObjectId cutOff = ObjectId.fromString("1234567890123456789012345678901234567890");
+    ObjectId shallow = commit(List.of(cutOff), 200);
+    GitRefUtil.refCreate(repo, "heads/shallow", shallow);
+
+    assertEquals(-1, GitCommitGraph.write(repo));
+    assertArrayEquals(before, Files.readAllBytes(GitCommitGraph.graphPath(repo)));
+    GitCommitGraph graph = new GitCommitGraph(GitCommitGraph.graphPath(repo));
+    assertNotNull(graph.lookup(first));
+    assertNull(graph.lookup(shallow));
+  }
+
+  private ObjectId commit(List<ObjectId> parents, long time) {
+    return GitObjectUtil.objectWrite(repo, TestObjects.commit(tree, parents, time));
+  }
+
+  private static void assertInfo(
+      CommitInfo info, ObjectId tree, List<ObjectId> parents, long time, int generation) {
+    assertNotNull(info);
+    assertEquals(tree, info.tree);
+    assertEquals(parents, info.parents);
+    assertEquals(time, info.commitTime);
+    assertEquals(generation, info.generation);
+  }
+}
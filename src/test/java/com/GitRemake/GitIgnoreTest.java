@@ -0,0 +1,149 @@
+package com.GitRemake;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitIgnoreTest {
+  @TempDir Path dir;
+  private GitRepository repo;
+  private Path excludes;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    GitRepository.repoCreate(dir.resolve("repo").toString());
+    // the excludes file of whoever runs the tests stays out of them
+    excludes = dir.resolve("excludes");
+    Files.writeString(
+        dir.resolve("repo/.git/config"),
+        "[core]\n\trepositoryformatversion = 0\n\tbare = false\n\texcludesFile = "
+            + excludes
+            + "\n");
+    repo = new GitRepository(dir.resolve("repo").toString(), false);
+  }
+
+  @Test
+  void patternsMatchLikeGit() throws IOException {
+    write(
+        ".gitignore",
+        "# a comment",
+        "*.log",
+        "build/",
+        "/TODO",
+        "doc/*.html",
+        "**/tmp",
+        "cache-?",
+        "\\#not-a-comment");
+    GitIgnore ignore = GitIgnore.load(repo);
+
+    assertTrue(ignore.isIgnored("app.log", false));
+    assertTrue(ignore.isIgnored("src/deep/app.log", false));
+    assertFalse(ignore.isIgnored("app.logs", false));
+
+    // dir-only patterns do not match files
+    assertTrue(ignore.isIgnored("build", true));
+    assertTrue(ignore.isIgnored("src/build", true));
+    assertFalse(ignore.isIgnored("build", false));
+
+    // a leading slash anchors to the directory of the .gitignore
+    assertTrue(ignore.isIgnored("TODO", false));
+    assertFalse(ignore.isIgnored("src/TODO", false));
+
+    // a slash in the middle anchors too, and "*" does not cross it
+    assertTrue(ignore.isIgnored("doc/index.html", false));
+    assertFalse(ignore.isIgnored("doc/api/index.html", false));
+    assertFalse(ignore.isIgnored("src/doc/index.html", false));
+
+    assertTrue(ignore.isIgnored("a/b/tmp", true));
+    assertTrue(ignore.isIgnored("tmp", false));
+    assertTrue(ignore.isIgnored("cache-1", false));
+    assertFalse(ignore.isIgnored("cache-10", false));
+    assertTrue(ignore.isIgnored("#not-a-comment", false));
+    assertFalse(ignore.isIgnored("# a comment", false));
+  }
+
+  @Test
+  void theLastMatchingLineWinsAndCanNegate() throws IOException {
+    write(".gitignore", "*.log", "!keep.log", "keep.log.d/");
+    GitIgnore ignore = GitIgnore.load(repo);
+
+    GitIgnore.Rule rule = ignore.match("keep.log", false);
+    assertNotNull(rule);
+    assertTrue(rule.isNegated());
+    assertEquals("!keep.log", rule.getPattern());
+    assertEquals(2, rule.getLine());
+    assertEquals(".gitignore", rule.getSource());
+    assertFalse(ignore.isIgnored("keep.log", false));
+    assertTrue(ignore.isIgnored("other.log", false));
+    assertNull(ignore.match("README", false));
+  }
+
+  @Test
+  void deeperFilesWinOverShallowerAndGlobalOnes() throws IOException {
+    Files.writeString(excludes, "*.bak\n*.o\n");
+    write(".git/info/exclude", "*.o", "!*.bak", "secret");
+    write(".gitignore", "*.txt", "!secret");
+    write("src/.gitignore", "!notes.txt", "generated/");
+    GitIgnore ignore = GitIgnore.load(repo);
+
+    assertTrue(ignore.isIgnored("a.txt", false));
+    assertTrue(ignore.isIgnored("lib/a.txt", false));
+    assertFalse(ignore.isIgnored("src/notes.txt", false));
+    assertTrue(ignore.isIgnored("src/other.txt", false));
+    assertEquals("src/.gitignore", ignore.match("src/notes.txt", false).getSource());
+
+    // any .gitignore wins over info/exclude, and that over core.excludesFile
+    assertFalse(ignore.isIgnored("secret", false));
+    assertFalse(ignore.isIgnored("x.bak", false));
+    assertTrue(ignore.isIgnored("x.o", false));
+    assertEquals(".git/info/exclude", ignore.match("x.o", false).getSource());
+
+    // a pattern in src/.gitignore is relative to src
+    assertTrue(ignore.isIgnored("src/generated", true));
+    assertFalse(ignore.isIgnored("generated", true));
+  }
+
+  @Test
+  void nothingBelowAnIgnoredDirectoryComesBack() throws IOException {
+    write(".gitignore", "out/", "!out/keep.txt");
+    GitIgnore ignore = GitIgnore.load(repo);
+
+    // match alone assumes the parents are not ignored
+    assertTrue(ignore.match("out/keep.txt", false).isNegated());
+    GitIgnore.Rule rule = ignore.matchWithParents("out/keep.txt", false);
+    assertEquals("out/", rule.getPattern());
+    assertFalse(rule.isNegated());
+    assertNull(ignore.matchWithParents("src/keep.txt", false));
+  }
+
+  @Test
+  void globsCompileToAnchoredRegularExpressions() {
+    assertTrue("a/b/c.txt".matches(GitIgnore.globToRegex("a/**/c.txt")));
+    assertTrue("a/c.txt".matches(GitIgnore.globToRegex("a/**/c.txt")));
+    assertFalse("a/b/c.txt".matches(GitIgnore.globToRegex("a/*.txt")));
+    assertTrue("x1.txt".matches(GitIgnore.globToRegex("x[0-9].txt")));
+    assertFalse("xa.txt".matches(GitIgnore.globToRegex("x[0-9].txt")));
+    assertTrue("a+b.txt".matches(GitIgnore.globToRegex("a+b.txt")));
+    assertFalse("axb.txt".matches(GitIgnore.globToRegex("a.b.txt")));
+
+    GitIgnore.PatternList list = GitIgnore.PatternList.parse("test", List.of("*.c", "!main.c"));
+    assertFalse(list.match("util.c", false).isNegated());
+    assertTrue(list.match("main.c", false).isNegated());
+  }
+
+  private void write(String path, String... lines) throws IOException {
+    Path file = dir.resolve("repo").resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, String.join("\n", lines) + "\n");
+  }
+}
@@ -0,0 +1,244 @@
+package com.GitRemake;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class GitIndexTest {
+  private static final String[] PATHS = {
+    "README", "src/main/App.java", "src/main/AppConfig.java", "src/test/AppTest.java", "z"
+  };
+
+  @TempDir Path dir;
+  private GitRepository repo;
+
+  @BeforeEach
+  void setUp() {
+    GitRepository.repoCreate(dir.toString());
+    repo = new GitRepository(dir.toString(), false);
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {2, 3, 4})
+  void entriesSurviveAWriteAndRead(int version) throws IOException {
+    GitIndex index = new GitIndex(version);
+    for (int i = 0; i < PATHS.length; i++) {
+      index.add(entry(PATHS[i], i));
+    }
+    index.write(repo);
+
+    GitIndex read = GitIndex.read(repo);
+    assertEquals(version, read.getVersion());
+    assertEquals(PATHS.length, read.size());
+    for (int i = 0; i < PATHS.length; i++) {
+      GitIndexEntry entry = read.get(i);
+      GitIndexEntry expected = entry(PATHS[i], i);
+      assertEquals(PATHS[i], entry.getPath());
+      assertEquals(PATHS[i], read.getPath(i));
+      assertEquals(expected.getSha(), entry.getSha());
+      assertEquals(expected.getMode(), entry.getMode());
+      assertTrue(expected.getStat().matches(entry.getStat()), PATHS[i]);
+    }
+    assertEquals(2, read.findPosition("src/main/AppConfig.java", 0));
+    assertNotNull(read.getEntry("z"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {2, 3, 4})
+  void pathsLongerThanTheFlagsCanHoldRoundTrip(int version) throws IOException {
+    String longPath = "d/" + "x".repeat(5000);
+    GitIndex index = new GitIndex(version);
+    index.add(entry(longPath, 1));
+    index.add(entry("e", 2));
+    index.write(repo);
+
+    GitIndex read = GitIndex.read(repo);
+    assertEquals(longPath, read.get(0).getPath());
+    assertEquals("e", read.get(1).getPath());
+  }
+
+  @Test
+  void extendedFlagsRaiseVersion2To3() throws IOException {
+    GitIndex index = new GitIndex(2);
+    index.add(entry("a", 1));
+    ObjectId id = entry("b", 2).getSha();
+    int mode = GitIndexEntry.MODE_FILE;
+    // skip-worktree on b, assume-valid and intent-to-add on c
+    index.add(new GitIndexEntry("b", id, mode, 0, stat(1_000_000, 1), false, true, false));
+    index.add(new GitIndexEntry("c", id, mode, 0, stat(1_000_000, 1), true, false, true));
+    index.write(repo);
+
+    GitIndex read = GitIndex.read(repo);
+    assertEquals(3, read.getVersion());
+    assertFalse(read.get(0).isSkipWorktree());
+    assertTrue(read.get(1).isSkipWorktree());
+    assertFalse(read.get(1).isIntentToAdd());
+    assertTrue(read.get(2).isIntentToAdd());
+    assertTrue(read.get(2).isAssumeValid());
+  }
+
+  @Test
+  void version4StoresEachPathAsASuffixOfTheOneBefore() throws IOException {
+    GitIndex index = new GitIndex(4);
+    for (int i = 0; i < PATHS.length; i++) {
+      index.add(entry(PATHS[i], i));
+    }
+    index.write(repo);
+    byte[] v4 = Files.readAllBytes(GitIndex.indexPath(repo));
+
+    // "src/main/AppConfig.java" follows "src/main/App.java": drop ".java", append "Config.java"
+    assertTrue(contains(v4, bytes("src/main/App.java\0")));
+    assertFalse(contains(v4, bytes("src/main/AppConfig.java")));
+    assertTrue(contains(v4, new byte[] {5, 'C', 'o', 'n', 'f', 'i', 'g', '.', 'j', 'a', 'v', 'a'}));
+
+    index.setVersion(2);
+    index.write(repo);
+    byte[] v2 = Files.readAllBytes(GitIndex.indexPath(repo));
+    assertTrue(contains(v2, bytes("src/main/AppConfig.java")));
+    assertTrue(v4.length < v2.length);
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {2, 4})
+  void optionalExtensionsAreKeptUntilTheEntriesChange(int version) throws Exception {
+    GitIndex index = new GitIndex(version);
+    index.add(entry("a", 1));
+    index.add(entry("b", 2));
+    index.write(repo);
+    addExtension("ZETA", new byte[] {1, 2, 3});
+
+    GitIndex read = GitIndex.read(repo);
+    assertEquals(2, read.size());
+    read.refreshStat(0, stat(7, 9));
+    read.write(repo);
+    assertTrue(contains(Files.readAllBytes(GitIndex.indexPath(repo)), bytes("ZETA")));
+    assertTrue(stat(7, 9).matches(GitIndex.read(repo).get(0).getStat()));
+
+    GitIndex changed = GitIndex.read(repo);
+    changed.add(entry("c", 3));
+    changed.write(repo);
+    assertFalse(contains(Files.readAllBytes(GitIndex.indexPath(repo)), bytes("ZETA")));
+    assertEquals(3, GitIndex.read(repo).size());
+  }
+
+  @Test
+  void unknownRequiredExtensionIsAnError() throws Exception {
+    GitIndex index = new GitIndex(2);
+    index.add(entry("a", 1));
+    index.write(repo);
+    addExtension("zeta", new byte[] {1});
+
+    IOException e = assertThrows(IOException.class, () -> GitIndex.read(repo));
+    assertTrue(e.getMessage().contains("zeta"), e.getMessage());
+  }
+
+  @Test
+  void corruptChecksumIsAnError() throws IOException {
+    GitIndex index = new GitIndex(2);
+    index.add(entry("a", 1));
+    index.write(repo);
+    Path path = GitIndex.indexPath(repo);
+    byte[] raw = Files.readAllBytes(path);
+    raw[raw.length - 1] ^= 1;
+    Files.write(path, raw);
+
+    assertThrows(IOException.class, () -> GitIndex.read(repo));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {2, 3, 4})
+  void untrackedCacheRoundTrips(int version) throws IOException {
+    GitIndex index = new GitIndex(version);
+    index.add(entry("a", 1));
+    GitUntrackedCache cache = GitUntrackedCache.create(repo);
+    cache.getRoot().reset(stat(1_000_000, 0), false, null);
+    cache.getRoot().addUntracked("new.txt");
+    cache.getRoot().addUntracked("build/");
+    cache.getRoot().enter("src").reset(stat(1_000_001, 0), true, null);
+    index.setUntrackedCache(cache);
+    index.write(repo);
+
+    GitUntrackedCache read = GitIndex.read(repo).getUntrackedCache();
+    assertNotNull(read);
+    assertTrue(read.getRoot().isValid());
+    assertEquals(List.of("new.txt", "build/"), read.getRoot().getUntracked());
+    GitUntrackedCache.Directory src = read.getRoot().getDirectory("src");
+    assertNotNull(src);
+    assertTrue(src.isValid());
+    assertTrue(src.isCheckOnly());
+    assertTrue(src.getUntracked().isEmpty());
+  }
+
+  @Test
+  void entriesModifiedInTheSecondOfTheWriteAreSmudged() throws IOException {
+    int now = (int) (System.currentTimeMillis() / 1000);
+    GitIndex index = new GitIndex(2);
+    index.add(entry("old", 1));
+    GitIndexEntry fresh = entry("fresh", 2);
+    index.add(fresh.withStat(stat(now + 60, 42)));
+    index.write(repo);
+
+    GitIndex read = GitIndex.read(repo);
+    assertEquals(0, read.getEntry("fresh").getStat().getSize());
+    assertTrue(read.isRacilyClean(read.getEntry("fresh")));
+    assertEquals(entry("old", 1).getStat().getSize(), read.getEntry("old").getStat().getSize());
+    assertFalse(read.isRacilyClean(read.getEntry("old")));
+  }
+
+  // a file entry with stat data from long before any index in the test is written
+  private static GitIndexEntry entry(String path, int n) {
+    byte[] raw = new byte[ObjectId.RAW_LENGTH];
+    Arrays.fill(raw, (byte) (n + 1));
+    return new GitIndexEntry(
+        path, ObjectId.fromRaw(raw), GitIndexEntry.MODE_FILE, stat(1_000_000 + n, 100 + n));
+  }
+
+  private static GitFileStat stat(int mtime, int size) {
+    return new GitFileStat(mtime, 1, mtime, 2, 3, 4, GitIndexEntry.MODE_FILE, 5, 6, size);
+  }
+
+  // inserts an extension in front of the trailer and recomputes the checksum
+  private void addExtension(String signature, byte[] content) throws Exception {
+    Path path = GitIndex.indexPath(repo);
+    byte[] raw = Files.readAllBytes(path);
+    int end = raw.length - ObjectId.RAW_LENGTH;
+    ByteBuffer out = ByteBuffer.allocate(end + 8 + content.length + ObjectId.RAW_LENGTH);
+    out.put(raw, 0, end);
+    out.put(bytes(signature));
+    out.putInt(content.length);
+    out.put(content);
+    MessageDigest digest = MessageDigest.getInstance("SHA-1");
+    digest.update(out.array(), 0, out.position());
+    out.put(digest.digest());
+    Files.write(path, out.array());
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static boolean contains(byte[] haystack, byte[] needle) {
+    for (int i = 0; i + needle.length <= haystack.length; i++) {
+      if (Arrays.equals(haystack, i, i + needle.length, needle, 0, needle.length)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,202 @@
+package com.GitRemake;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitPackTest {
+  @TempDir Path dir;
+  private GitRepository repo;
+
+  @BeforeEach
+  void setUp() {
+    GitRepository.repoCreate(dir.toString());
+    repo = new GitRepository(dir.toString(), false);
+  }
+
+  @Test
+  void deltaAppliesBackToTheTarget() {
+    byte[] base = text(20_000, 1);
+    byte[] target = edit(base);
+
+    byte[] delta = GitDelta.create(new GitDelta.DeltaIndex(base), target, target.length);
+    assertNotNull(delta);
+    assertTrue(delta.length < target.length / 10, "delta of " + delta.length + " bytes");
+    assertArrayEquals(target, GitDelta.apply(base, delta));
+  }
+
+  @Test
+  void deltaHandlesBasesAndTargetsSmallerThanABlock() {
+    byte[] tiny = "abc".getBytes(StandardCharsets.UTF_8);
+    byte[] target = "abcdef".getBytes(StandardCharsets.UTF_8);
+    assertArrayEquals(target, roundTrip(tiny, target));
+    assertArrayEquals(new byte[0], roundTrip(tiny, new byte[0]));
+    assertArrayEquals(target, roundTrip(new byte[0], target));
+  }
+
+  @Test
+  void deltaGivesUpPastMaxSize() {
+    byte[] base = text(4096, 1);
+    byte[] unrelated = text(4096, 2);
+    assertNull(GitDelta.create(new GitDelta.DeltaIndex(base), unrelated, 100));
+  }
+
+  @Test
+  void deltaRejectsTheWrongBase() {
+    byte[] base = text(4096, 1);
+    byte[] delta = GitDelta.create(new GitDelta.DeltaIndex(base), edit(base), 4096);
+    assertThrows(IllegalStateException.class, () -> GitDelta.apply(text(100, 1), delta));
+  }
+
+  @Test
+  void packWithAnOfsDeltaChainReadsBack() throws IOException {
+    List<byte[]> versions = new ArrayList<>();
+    versions.add(text(8192, 3));
+    for (int i = 1; i < 5; i++) {
+      versions.add(edit(versions.get(i - 1)));
+    }
+    List<ObjectId> ids = new ArrayList<>();
+    for (byte[] version : versions) {
+      ids.add(GitObjectUtil.objectWrite(null, new GitBlob(version)));
+    }
+
+    Path packDir = Paths.get(repo.getGitDir(), "objects", "pack");
+    Path packPath;
+    try (GitPackWriter writer = new GitPackWriter(packDir, versions.size())) {
+      writer.writeWhole(ids.get(0), GitPackFile.OBJ_BLOB, versions.get(0));
+      // each version is a delta against the one before, so the last one is four deltas deep
+      for (int i = 1; i < versions.size(); i++) {
+        GitDelta.DeltaIndex index = new GitDelta.DeltaIndex(versions.get(i - 1));
+        byte[] delta = GitDelta.create(index, versions.get(i), versions.get(i).length);
+        writer.writeDelta(ids.get(i), ids.get(i - 1), delta);
+      }
+      packPath = writer.finish();
+    }
+    assertTrue(Files.exists(packPath));
+    String base = packPath.toString().substring(0, packPath.toString().length() - 5);
+    assertTrue(Files.exists(Paths.get(base + ".idx")));
+
+    List<GitPackFile> packs = repo.getPacks();
+    assertEquals(1, packs.size());
+    GitPackFile pack = packs.get(0);
+    assertEquals(versions.size(), pack.getObjectCount());
+    byte[] raw = Files.readAllBytes(packPath);
+    for (int i = 0; i < versions.size(); i++) {
+      long offset = pack.findOffset(ids.get(i));
+      assertTrue(offset > 0);
+      int type = (raw[(int) offset] >> 4) & 7;
+      assertEquals(i == 0 ? GitPackFile.OBJ_BLOB : GitPackFile.OBJ_OFS_DELTA, type);
+
+      assertEquals("blob", pack.getType(repo, offset));
+      ObjectInfo info = pack.getInfo(repo, offset);
+      assertEquals("blob", info.type);
+      assertEquals(versions.get(i).length, info.size);
+      try (ObjectStream in = pack.open(repo, offset)) {
+        assertArrayEquals(versions.get(i), in.readContent());
+      }
+      try (ObjectStream in = GitObjectUtil.objectOpen(repo, ids.get(i))) {
+        assertArrayEquals(versions.get(i), in.readContent());
+      }
+    }
+    assertEquals(-1, pack.findOffset(ObjectId.zeroId()));
+  }
+
+  @Test
+  void deltaBaseMustBeWrittenFirst() throws IOException {
+    Path packDir = Paths.get(repo.getGitDir(), "objects", "pack");
+    try (GitPackWriter writer = new GitPackWriter(packDir, 1)) {
+      ObjectId id = GitObjectUtil.objectWrite(null, new GitBlob(new byte[] {1}));
+      assertThrows(
+          IllegalStateException.class, () -> writer.writeDelta(id, ObjectId.zeroId(), new byte[0]));
+    }
+  }
+
+  @Test
+  void repackDeltifiesSimilarBlobsAndPrunesTheLooseCopies() throws IOException {
+    List<byte[]> versions = new ArrayList<>();
+    versions.add(text(8192, 4));
+    for (int i = 1; i < 4; i++) {
+      versions.add(edit(versions.get(i - 1)));
+    }
+    ObjectId parent = null;
+    List<ObjectId> ids = new ArrayList<>();
+    for (byte[] version : versions) {
+      ObjectId blob = GitObjectUtil.objectWrite(repo, new GitBlob(version));
+      ids.add(blob);
+      ObjectId tree = GitObjectUtil.objectWrite(repo, TestObjects.tree("file.txt", blob));
+      parent = GitObjectUtil.objectWrite(repo, TestObjects.commit(tree, parent, 1000));
+      ids.add(tree);
+      ids.add(parent);
+    }
+    GitRefUtil.refCreate(repo, "heads/master", parent);
+
+    CommandGc.repack(repo, 10, 50);
+
+    assertEquals(1, repo.getPacks().size());
+    GitPackFile pack = repo.getPacks().get(0);
+    byte[] raw = Files.readAllBytes(pack.getPackPath());
+    int deltas = 0;
+    for (ObjectId id : ids) {
+      assertTrue(pack.contains(id), id.name());
+      assertFalse(Files.exists(TestObjects.loosePath(repo, id)), id.name());
+      if (((raw[(int) pack.findOffset(id)] >> 4) & 7) == GitPackFile.OBJ_OFS_DELTA) {
+        deltas++;
+      }
+    }
+    assertTrue(deltas >= versions.size() - 1, deltas + " deltas");
+    for (int i = 0; i < versions.size(); i++) {
+      try (ObjectStream in = GitObjectUtil.objectOpen(repo, ids.get(3 * i))) {
+        assertArrayEquals(versions.get(i), in.readContent());
+      }
+    }
+    GitCommitGraph graph = new GitCommitGraph(GitCommitGraph.graphPath(repo));
+    assertEquals(versions.size(), graph.getCommitCount());
+  }
+
+  private static byte[] roundTrip(byte[] base, byte[] target) {
+    byte[] delta = GitDelta.create(new GitDelta.DeltaIndex(base), target, 1 << 16);
+    return GitDelta.apply(base, delta);
+  }
+
+  // lines of pseudo-random words, so blocks repeat only where an edit copied them
+  static byte[] text(int size, long seed) {
+    Random random = new Random(seed);
+    StringBuilder text = new StringBuilder();
+    while (text.length() < size) {
+      text.append("line ").append(random.nextInt(1_000_000)).append(' ');
+      text.append(Long.toHexString(random.nextLong())).append('\n');
+    }
+    return text.substring(0, size).getBytes(StandardCharsets.UTF_8);
+  }
+
+  // a copy with a few lines inserted, one cut out and a tail appended
+  static byte[] edit(byte[] base) {
+    String text = new String(base, StandardCharsets.UTF_8);
+    int third = text.length() / 3;
+    String edited =
+        text.substring(0, third)
+            + "inserted line\n"
+            + text.substring(third, 2 * third)
+            + text.substring(2 * third + 40)
+            + "appended "
+            + base.length
+            + "\n";
+    return edited.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,140 @@
+package com.GitRemake;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class GitRefTransactionTest {
+  private static final ObjectId A = GitReftableTest.id(1);
+  private static final ObjectId B = GitReftableTest.id(2);
+  private static final ObjectId C = GitReftableTest.id(3);
+
+  @TempDir Path dir;
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void updateWithTheWrongOldValueFails(boolean reftable) throws IOException {
+    GitRepository repo = create(reftable);
+    new GitRefTransaction(repo).create("refs/heads/main", A).commit();
+
+    IOException e =
+        assertThrows(
+            IOException.class,
+            () -> new GitRefTransaction(repo).update("refs/heads/main", C, B).commit());
+    assertTrue(e.getMessage().contains("refs/heads/main"), e.getMessage());
+    assertEquals(A, GitRefUtil.refResolve(repo, "refs/heads/main"));
+
+    new GitRefTransaction(repo).update("refs/heads/main", C, A).commit();
+    assertEquals(C, GitRefUtil.refResolve(repo, "refs/heads/main"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void createFailsWhenTheRefExists(boolean reftable) throws IOException {
+    GitRepository repo = create(reftable);
+    new GitRefTransaction(repo).create("refs/tags/v1", A).commit();
+
+    assertThrows(
+        IOException.class, () -> new GitRefTransaction(repo).create("refs/tags/v1", B).commit());
+    assertEquals(A, GitRefUtil.refResolve(repo, "refs/tags/v1"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void oneConflictLeavesEveryRefAsItWas(boolean reftable) throws IOException {
+    GitRepository repo = create(reftable);
+    new GitRefTransaction(repo).create("refs/heads/a", A).create("refs/heads/z", A).commit();
+
+    GitRefTransaction transaction =
+        new GitRefTransaction(repo)
+            .update("refs/heads/a", B, A)
+            .create("refs/heads/new", B)
+            .delete("refs/heads/z", A)
+            .verify("refs/heads/m", B);
+    assertThrows(IOException.class, transaction::commit);
+
+    assertEquals(A, GitRefUtil.refResolve(repo, "refs/heads/a"));
+    assertEquals(A, GitRefUtil.refResolve(repo, "refs/heads/z"));
+    assertNull(GitRefUtil.refResolve(repo, "refs/heads/new"));
+    assertThrows(IllegalStateException.class, transaction::commit);
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void deleteAndVerifyCheckTheOldValue(boolean reftable) throws IOException {
+    GitRepository repo = create(reftable);
+    new GitRefTransaction(repo).create("refs/heads/a", A).create("refs/heads/b", B).commit();
+
+    assertThrows(
+        IOException.class, () -> new GitRefTransaction(repo).delete("refs/heads/a", B).commit());
+    new GitRefTransaction(repo).verify("refs/heads/b", B).delete("refs/heads/a", A).commit();
+
+    assertNull(GitRefUtil.refResolve(repo, "refs/heads/a"));
+    assertEquals(B, GitRefUtil.refResolve(repo, "refs/heads/b"));
+    // verifying that a ref does not exist
+    new GitRefTransaction(repo).verify("refs/heads/a", ObjectId.zeroId()).commit();
+  }
+
+  @Test
+  void aHeldLockFailsTheTransaction() throws IOException {
+    GitRepository repo = create(false);
+    new GitRefTransaction(repo).create("refs/heads/main", A).commit();
+    Path lock = Paths.get(repo.getGitDir(), "refs", "heads", "main.lock");
+    Files.writeString(lock, "");
+
+    assertThrows(
+        IOException.class,
+        () ->
+            new GitRefTransaction(repo)
+                .create("refs/heads/other", B)
+                .update("refs/heads/main", B, A)
+                .commit());
+    assertEquals(A, GitRefUtil.refResolve(repo, "refs/heads/main"));
+    assertNull(GitRefUtil.readLoose(repo, "refs/heads/other"));
+    // the other process's lock is still there
+    assertTrue(Files.exists(lock));
+
+    Files.delete(lock);
+    new GitRefTransaction(repo).update("refs/heads/main", B, A).commit();
+    assertEquals(B, GitRefUtil.refResolve(repo, "refs/heads/main"));
+  }
+
+  @Test
+  void packedUpdatesLeaveNoLooseFiles() throws IOException {
+    GitRepository repo = create(false);
+    new GitRefTransaction(repo).create("refs/tags/v1", A).commit();
+
+    new GitRefTransaction(repo)
+        .setPacked(true)
+        .update("refs/tags/v1", B, A)
+        .create("refs/tags/v2", C)
+        .commit();
+
+    assertNull(GitRefUtil.readLoose(repo, "refs/tags/v1"));
+    assertNull(GitRefUtil.readLoose(repo, "refs/tags/v2"));
+    assertEquals(B, GitRefUtil.refResolve(repo, "refs/tags/v1"));
+    assertEquals(C, GitRefUtil.refResolve(repo, "refs/tags/v2"));
+
+    assertThrows(
+        IOException.class, () -> new GitRefTransaction(repo).delete("refs/tags/v2", A).commit());
+    new GitRefTransaction(repo).delete("refs/tags/v2", C).commit();
+    assertNull(GitRefUtil.refResolve(repo, "refs/tags/v2"));
+    assertFalse(Files.readString(Paths.get(repo.getGitDir(), "packed-refs")).contains("v2"));
+  }
+
+  private GitRepository create(boolean reftable) {
+    GitRepository.repoCreate(dir.toString(), reftable);
+    return new GitRepository(dir.toString(), false);
+  }
+}
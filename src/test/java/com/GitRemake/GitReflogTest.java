@@ -0,0 +1,135 @@
+package com.GitRemake;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class GitReflogTest {
+  private static final String MASTER = "refs/heads/master";
+
+  @TempDir Path dir;
+  private GitRepository repo;
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void nthCountsBackFromTheNewestEntry(boolean reftable) throws IOException {
+    create(reftable);
+    writeLog(100, 200, 300, 400);
+
+    assertEquals(id(4), GitReflog.nth(repo, MASTER, 0).getNewId());
+    assertEquals(id(3), GitReflog.nth(repo, MASTER, 1).getNewId());
+    assertEquals(id(1), GitReflog.nth(repo, MASTER, 3).getNewId());
+    assertEquals(ObjectId.zeroId(), GitReflog.nth(repo, MASTER, 3).getOldId());
+    assertEquals("update 2", GitReflog.nth(repo, MASTER, 2).getMessage());
+    assertNull(GitReflog.nth(repo, MASTER, 4));
+    assertEquals(4, GitReflog.read(repo, MASTER).size());
+    assertEquals(100, GitReflog.read(repo, MASTER).get(0).getTime());
+
+    assertEquals(id(4), GitObjectUtil.objectFind(repo, "master@{0}", null));
+    assertEquals(id(2), GitObjectUtil.objectFind(repo, "master@{2}", null));
+    assertEquals(id(3), GitObjectUtil.objectFind(repo, "@{1}", null));
+    assertThrows(
+        IllegalArgumentException.class, () -> GitObjectUtil.objectFind(repo, "master@{4}", null));
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void atFindsTheValueAtATime(boolean reftable) throws IOException {
+    create(reftable);
+    writeLog(100, 200, 300);
+
+    assertEquals(id(1), GitReflog.at(repo, MASTER, 100));
+    assertEquals(id(1), GitReflog.at(repo, MASTER, 199));
+    assertEquals(id(2), GitReflog.at(repo, MASTER, 250));
+    assertEquals(id(3), GitReflog.at(repo, MASTER, 1_000_000));
+    // before the first entry: the ref was created then, so its first value
+    assertEquals(id(1), GitReflog.at(repo, MASTER, 50));
+
+    assertEquals(id(2), GitObjectUtil.objectFind(repo, "master@{@250}", null));
+    assertEquals(id(3), GitObjectUtil.objectFind(repo, "master@{now}", null));
+    assertNull(GitReflog.at(repo, "refs/heads/none", 100));
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void atTakesTheNewestEntryAtOrBeforeTheTimeEvenOutOfOrder(boolean reftable)
+      throws IOException {
+    create(reftable);
+    // a clock that went back: the last update has an earlier time than the one before it
+    writeLog(100, 300, 200);
+
+    assertEquals(id(3), GitReflog.at(repo, MASTER, 250));
+    assertEquals(id(3), GitReflog.at(repo, MASTER, 200));
+    assertEquals(id(1), GitReflog.at(repo, MASTER, 150));
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void beforeTheFirstEntryIsTheValueItReplaced(boolean reftable) throws IOException {
+    create(reftable);
+    // the log starts after the ref was created, as it does once old entries expire
+    List<GitReflog.Entry> entries = new ArrayList<>();
+    entries.add(GitReftableTest.entry(id(7), id(1), 100, "update 1"));
+    entries.add(GitReftableTest.entry(id(1), id(2), 200, "update 2"));
+    write(entries);
+
+    assertEquals(id(7), GitReflog.at(repo, MASTER, 50));
+  }
+
+  private void create(boolean reftable) {
+    GitRepository.repoCreate(dir.toString(), reftable);
+    repo = new GitRepository(dir.toString(), false);
+  }
+
+  // the ref created at the first time and moved at each later one, to id(1), id(2) and so on
+  private void writeLog(long... times) throws IOException {
+    List<GitReflog.Entry> entries = new ArrayList<>();
+    for (int i = 0; i < times.length; i++) {
+      ObjectId oldId = i == 0 ? ObjectId.zeroId() : id(i);
+      entries.add(GitReftableTest.entry(oldId, id(i + 1), times[i], "update " + (i + 1)));
+    }
+    write(entries);
+  }
+
+  // sets master to the last entry's new id, with the entries as its log
+  private void write(List<GitReflog.Entry> entries) throws IOException {
+    ObjectId last = entries.get(entries.size() - 1).getNewId();
+    if (repo.usesReftable()) {
+      GitReftableStack stack = repo.getReftableStack();
+      long index = stack.getMaxUpdateIndex() + 1;
+      List<GitReftable.Log> logs = new ArrayList<>();
+      for (int i = 0; i < entries.size(); i++) {
+        logs.add(GitReftable.Log.of(MASTER, index + i, entries.get(i)));
+      }
+      long max = index + entries.size() - 1;
+      try (GitLockFile lock = stack.lock()) {
+        stack.add(lock, List.of(GitReftable.Ref.of(MASTER, max, last, null)), logs);
+      }
+      return;
+    }
+    StringBuilder log = new StringBuilder();
+    for (GitReflog.Entry entry : entries) {
+      log.append(entry.getOldId().name()).append(' ').append(entry.getNewId().name());
+      log.append(' ').append(entry.getIdentity()).append('\t').append(entry.getMessage());
+      log.append('\n');
+    }
+    Path file = GitReflog.path(repo, MASTER);
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, log);
+    Files.writeString(Paths.get(repo.getGitDir(), MASTER), last.name() + "\n");
+  }
+
+  private static ObjectId id(int n) {
+    return GitReftableTest.id(n);
+  }
+}
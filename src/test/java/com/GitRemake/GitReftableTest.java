@@ -0,0 +1,207 @@
+package com.GitRemake;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitReftableTest {
+  @TempDir Path dir;
+
+  @Test
+  void refsInOneBlockUseARestartPointEvery16Records() throws IOException {
+    List<GitReftable.Ref> refs = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      refs.add(GitReftable.Ref.of(String.format("refs/heads/b%03d", i), 5, id(i), null));
+    }
+    byte[] bytes = GitReftable.serialize(refs, List.of(), 5, 5, GitReftable.DEFAULT_BLOCK_SIZE);
+
+    // the first block starts after the 24 byte header, and its length counts the header
+    ByteBuffer data = ByteBuffer.wrap(bytes);
+    assertEquals('r', data.get(24));
+    int blockEnd = data.getInt(24) & 0xffffff;
+    assertEquals(3, data.getShort(blockEnd - 2));
+
+    GitReftable table = open(bytes);
+    assertEquals(5, table.getMinUpdateIndex());
+    assertEquals(5, table.getMaxUpdateIndex());
+    for (int i = 0; i < 40; i++) {
+      GitReftable.Ref ref = table.find(String.format("refs/heads/b%03d", i));
+      assertNotNull(ref, "b" + i);
+      assertEquals(id(i), ref.getId());
+      assertEquals(5, ref.getUpdateIndex());
+    }
+    assertNull(table.find("refs/heads/b040"));
+    assertNull(table.find("refs/heads/a"));
+    assertEquals(10, table.scan("refs/heads/b01").size());
+  }
+
+  @Test
+  void manyBlocksGetAnIndex() throws IOException {
+    List<GitReftable.Ref> refs = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      refs.add(GitReftable.Ref.of(String.format("refs/tags/v%04d", i), 1, id(i), id(i + 1)));
+    }
+    GitReftable table = open(GitReftable.serialize(refs, List.of(), 1, 1, 256));
+
+    for (int i = 0; i < 500; i += 7) {
+      GitReftable.Ref ref = table.find(String.format("refs/tags/v%04d", i));
+      assertNotNull(ref);
+      assertEquals(id(i), ref.getId());
+      assertEquals(id(i + 1), ref.getPeeled());
+    }
+    assertEquals(500, table.scan("refs/tags/").size());
+    assertEquals(100, table.scan("refs/tags/v01").size());
+  }
+
+  @Test
+  void symbolicRefsAndDeletionsRoundTrip() throws IOException {
+    List<GitReftable.Ref> refs =
+        List.of(
+            GitReftable.Ref.symbolic("HEAD", 3, "refs/heads/main"),
+            GitReftable.Ref.deletion("refs/heads/gone", 3),
+            GitReftable.Ref.of("refs/heads/main", 3, id(1), null));
+    GitReftable table = open(GitReftable.serialize(refs, List.of(), 3, 3, 1024));
+
+    assertEquals("refs/heads/main", table.find("HEAD").getTarget());
+    assertTrue(table.find("refs/heads/gone").isDeletion());
+    assertNull(table.find("refs/heads/main").getPeeled());
+  }
+
+  @Test
+  void logBlocksReturnEachRefsEntriesNewestFirst() throws IOException {
+    List<GitReftable.Log> logs = new ArrayList<>();
+    for (int i = 1; i <= 30; i++) {
+      String name = i % 2 == 0 ? "refs/heads/main" : "refs/heads/topic";
+      logs.add(GitReftable.Log.of(name, i, entry(id(i - 1), id(i), 1000 + i, "update " + i)));
+    }
+    logs.add(GitReftable.Log.deletion("refs/heads/main", 31));
+    List<GitReftable.Ref> refs = List.of(GitReftable.Ref.of("refs/heads/main", 30, id(30), null));
+    // small blocks, so the logs span several of them
+    GitReftable table = open(GitReftable.serialize(refs, logs, 1, 31, 256));
+
+    List<GitReftable.Log> main = table.logs("refs/heads/main");
+    assertEquals(16, main.size());
+    assertTrue(main.get(0).isDeletion());
+    assertEquals(31, main.get(0).getUpdateIndex());
+    GitReflog.Entry newest = main.get(1).getEntry();
+    assertEquals(id(29), newest.getOldId());
+    assertEquals(id(30), newest.getNewId());
+    assertEquals(1030, newest.getTime());
+    assertEquals("update 30", newest.getMessage());
+    assertTrue(newest.getIdentity().startsWith("A U Thor <author@example.com> 1030"));
+    assertEquals(2, main.get(main.size() - 1).getUpdateIndex());
+
+    assertEquals(15, table.logs("refs/heads/topic").size());
+    assertEquals(0, table.logs("refs/heads/mai").size());
+    assertEquals(31, table.allLogs().size());
+  }
+
+  @Test
+  void aTableOfOnlyLogsStartsWithALogBlock() throws IOException {
+    List<GitReftable.Log> logs =
+        List.of(GitReftable.Log.of("HEAD", 2, entry(id(1), id(2), 50, "moved")));
+    GitReftable table = open(GitReftable.serialize(List.of(), logs, 2, 2, 1024));
+
+    assertNull(table.find("HEAD"));
+    assertEquals(1, table.logs("HEAD").size());
+  }
+
+  @Test
+  void footerChecksumIsVerified() throws IOException {
+    List<GitReftable.Ref> refs = List.of(GitReftable.Ref.of("refs/heads/main", 1, id(1), null));
+    byte[] bytes = GitReftable.serialize(refs, List.of(), 1, 1, 1024);
+    open(bytes);
+
+    // the max update index in the footer, which the CRC covers
+    bytes[bytes.length - 68 + 23] ^= 1;
+    IOException e = assertThrows(IOException.class, () -> open(bytes));
+    assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+  }
+
+  @Test
+  void stackCompactsIntoOneTableKeepingRefsAndLogs() throws IOException {
+    GitRepository.repoCreate(dir.resolve("repo").toString(), true);
+    GitRepository repo = new GitRepository(dir.resolve("repo").toString(), false);
+    GitReftableStack stack = repo.getReftableStack();
+    // a large table at the bottom, so the small ones above it stay separate until compacted
+    GitRefTransaction base = new GitRefTransaction(repo);
+    for (int i = 0; i < 200; i++) {
+      base.create(String.format("refs/notes/n%03d", i), id(1000 + i));
+    }
+    base.commit();
+
+    for (int i = 0; i < 20; i++) {
+      new GitRefTransaction(repo)
+          .setMessage("step " + i)
+          .update("refs/heads/main", id(i), i == 0 ? ObjectId.zeroId() : id(i - 1))
+          .create("refs/tags/t" + i, id(100 + i))
+          .commit();
+      assertGeometric(stack.getTables());
+    }
+    new GitRefTransaction(repo).delete("refs/tags/t3", id(103)).commit();
+    assertTrue(stack.getTables().size() > 1);
+
+    stack.compact();
+
+    List<GitReftable> tables = stack.getTables();
+    assertEquals(1, tables.size());
+    try (var files = Files.list(GitReftableStack.directory(repo))) {
+      // the one table and tables.list
+      assertEquals(2, files.count());
+    }
+    assertEquals(id(19), stack.read("refs/heads/main").getId());
+    assertEquals("refs/heads/master", stack.read("HEAD").getTarget());
+    assertNull(stack.read("refs/tags/t3"));
+    assertNull(tables.get(0).find("refs/tags/t3"));
+    Map<String, GitReftable.Ref> tags = stack.scan("refs/tags/");
+    assertEquals(19, tags.size());
+    assertEquals(id(104), tags.get("refs/tags/t4").getId());
+    assertEquals(200, stack.scan("refs/notes/").size());
+
+    List<GitReflog.Entry> log = stack.readLog("refs/heads/main");
+    assertEquals(20, log.size());
+    assertEquals(id(19), log.get(0).getNewId());
+    assertEquals("step 19", log.get(0).getMessage());
+    assertEquals(ObjectId.zeroId(), log.get(19).getOldId());
+    assertTrue(stack.readLog("refs/tags/t3").isEmpty());
+  }
+
+  // reading from the top, each table is at least twice the size of all the tables above it
+  private static void assertGeometric(List<GitReftable> tables) throws IOException {
+    long above = 0;
+    for (int i = tables.size() - 1; i >= 0; i--) {
+      long size = Files.size(tables.get(i).getPath());
+      if (i < tables.size() - 1) {
+        assertTrue(size >= 2 * above, "table " + i + " of " + tables.size());
+      }
+      above += size;
+    }
+  }
+
+  private GitReftable open(byte[] bytes) throws IOException {
+    Path file = Files.createTempFile(dir, "table", ".ref");
+    Files.write(file, bytes);
+    return GitReftable.open(file);
+  }
+
+  static ObjectId id(int n) {
+    return ObjectId.fromString(String.format("%040x", n + 1));
+  }
+
+  static GitReflog.Entry entry(ObjectId oldId, ObjectId newId, long time, String message) {
+    String identity = "A U Thor <author@example.com> " + time + " +0000";
+    return new GitReflog.Entry(oldId, newId, identity, time, message);
+  }
+}
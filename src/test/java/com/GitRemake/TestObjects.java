@@ -0,0 +1,56 @@
+package com.GitRemake;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/** Builders for the objects the tests store, without going through a work tree. */
+final class TestObjects {
+  private TestObjects() {}
+
+  static GitTreeEntry file(String name, ObjectId blob) {
+    return new GitTreeEntry(bytes("100644"), name, blob);
+  }
+
+  static GitTreeEntry dir(String name, ObjectId tree) {
+    return new GitTreeEntry(bytes("040000"), name, tree);
+  }
+
+  static GitTree tree(String name, ObjectId blob) {
+    return tree(file(name, blob));
+  }
+
+  // a tree of the given entries, in any order
+  static GitTree tree(GitTreeEntry... entries) {
+    ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    for (GitTreeEntry entry : entries) {
+      raw.writeBytes(entry.getMode());
+      raw.write(' ');
+      raw.writeBytes(bytes(entry.getPath()));
+      raw.write(0);
+      raw.writeBytes(entry.getSha().toRaw());
+    }
+    // serializing sorts the entries the way git does
+    return new GitTree(new GitTree(raw.toByteArray()).serialize());
+  }
+
+  static GitCommit commit(ObjectId tree, ObjectId parent, long time) {
+    return commit(tree, parent == null ? List.of() : List.of(parent), time);
+  }
+
+  static GitCommit commit(ObjectId tree, List<ObjectId> parents, long time) {
+    String ident = "A U Thor <author@example.com> " + time + " +0000";
+    return new GitCommit(tree, parents, ident, ident, "commit at " + time + "\n");
+  }
+
+  static Path loosePath(GitRepository repo, ObjectId id) {
+    String name = id.name();
+    return Paths.get(repo.getGitDir(), "objects", name.substring(0, 2), name.substring(2));
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+}
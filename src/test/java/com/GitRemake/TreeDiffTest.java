@@ -0,0 +1,145 @@
+package com.GitRemake;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TreeDiffTest {
+  @TempDir Path dir;
+  private GitRepository repo;
+  private ObjectId one;
+  private ObjectId two;
+
+  @BeforeEach
+  void setUp() {
+    GitRepository.repoCreate(dir.toString());
+    repo = new GitRepository(dir.toString(), false);
+    one = blob("one\n");
+    two = blob("two\n");
+  }
+
+  @Test
+  void reportsAddsDeletesAndModificationsInPathOrder() {
+    ObjectId before =
+        tree(
+            TestObjects.file("a.txt", one),
+            TestObjects.file("b.txt", one),
+            TestObjects.file("c.txt", one));
+    ObjectId after =
+        tree(
+            TestObjects.file("b.txt", two),
+            TestObjects.file("c.txt", one),
+            TestObjects.file("d.txt", one));
+
+    List<TreeDiff.Change> changes = diff(before, after, true);
+    assertEquals(List.of("D a.txt", "M b.txt", "A d.txt"), describe(changes));
+
+    TreeDiff.Change deleted = changes.get(0);
+    assertEquals(0100644, deleted.getOldMode());
+    assertEquals(0, deleted.getNewMode());
+    assertEquals(one, deleted.getOldId());
+    assertEquals(ObjectId.zeroId(), deleted.getNewId());
+    TreeDiff.Change modified = changes.get(1);
+    assertEquals(one, modified.getOldId());
+    assertEquals(two, modified.getNewId());
+    TreeDiff.Change added = changes.get(2);
+    assertEquals(0, added.getOldMode());
+    assertEquals(ObjectId.zeroId(), added.getOldId());
+  }
+
+  @Test
+  void walksIntoChangedSubtreesAndSkipsUnchangedOnes() {
+    ObjectId lib = tree(TestObjects.file("util.c", one));
+    ObjectId src = tree(TestObjects.file("main.c", one), TestObjects.file("old.c", one));
+    ObjectId newSrc = tree(TestObjects.file("main.c", two), TestObjects.dir("sub", lib));
+    ObjectId before = tree(TestObjects.dir("lib", lib), TestObjects.dir("src", src));
+    ObjectId after = tree(TestObjects.dir("lib", lib), TestObjects.dir("src", newSrc));
+
+    assertEquals(
+        List.of("M src/main.c", "D src/old.c", "A src/sub/util.c"),
+        describe(diff(before, after, true)));
+
+    List<TreeDiff.Change> top = diff(before, after, false);
+    assertEquals(List.of("M src"), describe(top));
+    assertEquals(src, top.get(0).getOldId());
+    assertEquals(newSrc, top.get(0).getNewId());
+  }
+
+  @Test
+  void emptySidesAddOrDeleteEverything() {
+    ObjectId tree =
+        tree(TestObjects.file("z", one), TestObjects.dir("a", tree(TestObjects.file("x", two))));
+
+    assertEquals(List.of("A a/x", "A z"), describe(diff(null, tree, true)));
+    assertEquals(List.of("D a/x", "D z"), describe(diff(tree, null, true)));
+    assertEquals(List.of("A a", "A z"), describe(diff(null, tree, false)));
+    assertEquals(List.of("A a/x", "A z"), describe(diff(tree(), tree, true)));
+    assertFalse(new TreeDiff(repo, tree, tree).hasNext());
+    assertFalse(new TreeDiff(repo, null, null).hasNext());
+  }
+
+  @Test
+  void aFileReplacedByADirectoryIsADeleteAndAnAdd() {
+    ObjectId sub = tree(TestObjects.file("x", one));
+    // "a.txt" sorts before the tree "a", which sorts before "a0"
+    ObjectId before =
+        tree(
+            TestObjects.file("a", one),
+            TestObjects.file("a.txt", one),
+            TestObjects.file("a0", one));
+    ObjectId after =
+        tree(
+            TestObjects.dir("a", sub),
+            TestObjects.file("a.txt", one),
+            TestObjects.file("a0", one));
+
+    // a file and a tree never share a place in the join, so the two sides are reported apart
+    assertEquals(List.of("D a", "A a/x"), describe(diff(before, after, true)));
+  }
+
+  @Test
+  void aModeChangeIsReported() {
+    ObjectId before = tree(TestObjects.file("run.sh", one));
+    GitTreeEntry executable =
+        new GitTreeEntry("100755".getBytes(StandardCharsets.UTF_8), "run.sh", one);
+    GitTreeEntry link = new GitTreeEntry("120000".getBytes(StandardCharsets.UTF_8), "run.sh", one);
+
+    List<TreeDiff.Change> changes = diff(before, tree(executable), true);
+    assertEquals(List.of("M run.sh"), describe(changes));
+    assertEquals(0100644, changes.get(0).getOldMode());
+    assertEquals(0100755, changes.get(0).getNewMode());
+    assertEquals(List.of("T run.sh"), describe(diff(before, tree(link), true)));
+  }
+
+  private List<TreeDiff.Change> diff(ObjectId before, ObjectId after, boolean recursive) {
+    TreeDiff diff = new TreeDiff(repo, before, after).setRecursive(recursive);
+    List<TreeDiff.Change> changes = new ArrayList<>();
+    while (diff.hasNext()) {
+      changes.add(diff.next());
+    }
+    return changes;
+  }
+
+  private static List<String> describe(List<TreeDiff.Change> changes) {
+    List<String> lines = new ArrayList<>();
+    for (TreeDiff.Change change : changes) {
+      lines.add(change.getType().getCode() + " " + change.getPath());
+    }
+    return lines;
+  }
+
+  private ObjectId tree(GitTreeEntry... entries) {
+    return GitObjectUtil.objectWrite(repo, TestObjects.tree(entries));
+  }
+
+  private ObjectId blob(String content) {
+    return GitObjectUtil.objectWrite(repo, new GitBlob(content.getBytes(StandardCharsets.UTF_8)));
+  }
+}